@@ -0,0 +1,181 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss.provider;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import net.groboclown.groborss.Strings;
+import net.groboclown.groborss.util.EntryBodyCodec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FeedDataContentProviderTest {
+    private static final String GUID_SELECTION = FeedData.EntryColumns.GUID + "=?";
+
+    /** how long to wait for notifications that should not come */
+    private static final long QUIET_MILLIS = 1000;
+
+    private Context context;
+
+    private ContentResolver resolver;
+
+    private SharedPreferences preferences;
+
+    private boolean compressEntries;
+
+    private String feedId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        resolver = context.getContentResolver();
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        compressEntries = preferences.getBoolean(Strings.SETTINGS_COMPRESSENTRIES, false);
+        preferences.edit().putBoolean(Strings.SETTINGS_COMPRESSENTRIES, true).commit();
+
+        ContentValues feed = new ContentValues();
+        feed.put(FeedData.FeedColumns.URL, "http://feed.example.com/" + System.nanoTime());
+        feedId = resolver.insert(FeedData.FeedColumns.CONTENT_URI, feed).getLastPathSegment();
+    }
+
+    @After
+    public void tearDown() {
+        resolver.delete(FeedData.FeedColumns.CONTENT_URI(feedId), null, null);
+        preferences.edit().putBoolean(Strings.SETTINGS_COMPRESSENTRIES, compressEntries).commit();
+    }
+
+    /**
+     * The way the feed parser stores a new entry: an update to find an
+     * existing one, then an insert with the same values.
+     */
+    @Test
+    public void insertAfterUpdateMiss_compressed() {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < EntryBodyCodec.MIN_COMPRESS_LENGTH * 2) {
+            body.append("<p>A paragraph of the entry.</p>");
+        }
+
+        Uri entriesUri = FeedData.EntryColumns.CONTENT_URI(feedId);
+        ContentValues values = new ContentValues();
+        values.put(FeedData.EntryColumns.TITLE, "Title");
+        values.put(FeedData.EntryColumns.ABSTRACT, body.toString());
+        values.put(FeedData.EntryColumns.GUID, "guid-1");
+        values.put(FeedData.EntryColumns.DATE, 1000L);
+
+        assertThat(resolver.update(entriesUri, values, GUID_SELECTION, new String[] {"guid-1"}), is(0));
+        values.put(FeedData.EntryColumns.LINK, "http://feed.example.com/1");
+        String entryId = resolver.insert(entriesUri, values).getLastPathSegment();
+
+        assertThat(values.getAsString(FeedData.EntryColumns.ABSTRACT), is(body.toString()));
+        assertFalse(values.containsKey(FeedData.EntryColumns.ABSTRACT_DATA));
+
+        Cursor cursor = resolver.query(FeedData.EntryColumns.ENTRY_CONTENT_URI(entryId), new String[] {FeedData.EntryColumns.ABSTRACT_FORMAT, FeedData.EntryColumns.ABSTRACT, FeedData.EntryColumns.ABSTRACT_DATA}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertThat(cursor.getInt(0), is(EntryBodyCodec.FORMAT_DEFLATE));
+            assertThat(EntryBodyCodec.decode(cursor.getInt(0), cursor.getString(1), cursor.getBlob(2)), is(body.toString()));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * A refresh stores the entries of a feed inside one notification
+     * batch, so the lists observing the feed reload once.
+     */
+    @Test
+    public void insertsInNotificationBatch_notifyOnce() throws InterruptedException {
+        Uri entriesUri = FeedData.EntryColumns.CONTENT_URI(feedId);
+        HandlerThread observerThread = new HandlerThread("observer");
+        observerThread.start();
+
+        final AtomicInteger changes = new AtomicInteger();
+        final CountDownLatch notified = new CountDownLatch(1);
+        ContentObserver observer = new ContentObserver(new Handler(observerThread.getLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                changes.incrementAndGet();
+                notified.countDown();
+            }
+        };
+
+        resolver.registerContentObserver(entriesUri, false, observer);
+        try {
+            FeedData.beginNotificationBatch(context);
+            try {
+                for (int n = 0; n < 1000; n++) {
+                    ContentValues values = new ContentValues();
+                    values.put(FeedData.EntryColumns.TITLE, "Entry " + n);
+                    values.put(FeedData.EntryColumns.ABSTRACT, "<p>The body of entry " + n + ".</p>");
+                    values.put(FeedData.EntryColumns.GUID, "guid-" + n);
+                    values.put(FeedData.EntryColumns.DATE, 1000L + n);
+                    resolver.insert(entriesUri, values);
+                }
+                Thread.sleep(QUIET_MILLIS);
+                assertThat(changes.get(), is(0));
+            } finally {
+                FeedData.endNotificationBatch(context);
+            }
+            assertTrue(notified.await(5, TimeUnit.SECONDS));
+            Thread.sleep(QUIET_MILLIS);
+            assertThat(changes.get(), is(1));
+        } finally {
+            resolver.unregisterContentObserver(observer);
+            observerThread.quit();
+        }
+
+        Cursor cursor = resolver.query(entriesUri, new String[] {"COUNT(*)"}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertThat(cursor.getInt(0), is(1000));
+        } finally {
+            cursor.close();
+        }
+    }
+}
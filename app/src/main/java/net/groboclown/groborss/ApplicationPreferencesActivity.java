@@ -36,8 +36,12 @@ import android.preference.Preference;
 import android.preference.Preference.OnPreferenceChangeListener;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
+import android.text.format.Formatter;
 
+import net.groboclown.groborss.handler.ImageStore;
+import net.groboclown.groborss.service.MaintenanceService;
 import net.groboclown.groborss.service.RefreshService;
+import net.groboclown.groborss.util.TaskRunner;
 import net.groboclown.groborss.util.ThemeSetting;
 
 public class ApplicationPreferencesActivity extends PreferenceActivity {
@@ -53,11 +57,7 @@ public class ApplicationPreferencesActivity extends PreferenceActivity {
 		preference.setOnPreferenceChangeListener(new OnPreferenceChangeListener() {
 			public boolean onPreferenceChange(Preference preference, Object newValue) {
 				if (Boolean.TRUE.equals(newValue)) {
-					new Thread() {
-						public void run() {
-							startService(new Intent(ApplicationPreferencesActivity.this, RefreshService.class));
-						}
-					}.start();
+					startService(new Intent(ApplicationPreferencesActivity.this, RefreshService.class));
 				} else {
 					stopService(new Intent(ApplicationPreferencesActivity.this, RefreshService.class));
 					getPreferences(MODE_PRIVATE).edit().putLong(Strings.PREFERENCE_LASTSCHEDULEDREFRESH, 0).apply();
@@ -122,6 +122,31 @@ public class ApplicationPreferencesActivity extends PreferenceActivity {
 				}
 			}
 		});
+		
+		preference = findPreference(Strings.SETTINGS_COMPRESSENTRIES);
+		preference.setOnPreferenceChangeListener(new OnPreferenceChangeListener() {
+			public boolean onPreferenceChange(Preference preference, Object newValue) {
+				if (Boolean.TRUE.equals(newValue)) {
+					// compress the existing entries now rather than with the next daily run
+					MaintenanceService.compress(ApplicationPreferencesActivity.this);
+				}
+				return true;
+			}
+		});
+		
+		final Preference storagePreference = findPreference(Strings.SETTINGS_PICTURESTORAGE);
+		
+		TaskRunner.get().run(new TaskRunner.Task("picture statistics", TaskRunner.PRIORITY_HIGH, null) {
+			protected void execute() {
+				final ImageStore.Statistics statistics = ImageStore.getStatistics(ApplicationPreferencesActivity.this);
+				
+				runOnUiThread(new Runnable() {
+					public void run() {
+						storagePreference.setSummary(getString(R.string.settings_picturestorage_summary, statistics.getReferences(), statistics.getBlobs(), statistics.getDedupRatio(), statistics.getFiles(), Formatter.formatFileSize(ApplicationPreferencesActivity.this, statistics.getBytes()), statistics.getHitRate(), statistics.getEvictions()));
+					}
+				});
+			}
+		});
 	}
 	
 }
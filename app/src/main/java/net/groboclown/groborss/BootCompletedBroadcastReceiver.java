@@ -31,6 +31,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.preference.PreferenceManager;
+import net.groboclown.groborss.service.MaintenanceService;
 import net.groboclown.groborss.service.RefreshService;
 
 public class BootCompletedBroadcastReceiver extends BroadcastReceiver {
@@ -43,6 +44,7 @@ public class BootCompletedBroadcastReceiver extends BroadcastReceiver {
 			if (preferences.getBoolean(Strings.SETTINGS_REFRESHENABLED, false)) {
 				context.startService(new Intent(context, RefreshService.class));
 			}
+			MaintenanceService.schedule(context);
 			context.sendBroadcast(new Intent(Strings.ACTION_UPDATEWIDGET));
 		} catch (NameNotFoundException e) {
 		}
@@ -28,18 +28,20 @@ package net.groboclown.groborss;
 import android.app.AlertDialog;
 import android.app.AlertDialog.Builder;
 import android.app.ListActivity;
+import android.app.LoaderManager;
+import android.app.SearchManager;
 import android.content.ContentUris;
+import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.Loader;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.ClipboardManager;
-import android.util.TypedValue;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.Menu;
@@ -47,15 +49,19 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnCreateContextMenuListener;
 import android.view.Window;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import net.groboclown.groborss.util.FeedIconCache;
+import net.groboclown.groborss.util.TaskRunner;
 import net.groboclown.groborss.util.ThemeSetting;
 
 import net.groboclown.groborss.provider.FeedData;
 
-public class EntriesListActivity extends ListActivity {
+public class EntriesListActivity extends ListActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 	private static final int CONTEXTMENU_MARKASREAD_ID = 6;
 	
 	private static final int CONTEXTMENU_MARKASUNREAD_ID = 7;
@@ -70,6 +76,14 @@ public class EntriesListActivity extends ListActivity {
 
 	public static final String EXTRA_AUTORELOAD = "autoreload";
 	
+	private static final int SEARCH_PAGESIZE = 200;
+	
+	/** the next page of search results is loaded this close to the end of the list */
+	private static final int SEARCH_PRELOAD = 50;
+	
+	/** the entries are loaded by the adapter with loader 0 */
+	private static final int FEED_LOADER_ID = 1;
+	
 	private static final String[] FEED_PROJECTION = {FeedData.FeedColumns.NAME,
 		FeedData.FeedColumns.URL,
 		FeedData.FeedColumns.ICON
@@ -83,6 +97,35 @@ public class EntriesListActivity extends ListActivity {
 	
 	private byte[] iconBytes;
 	
+	private boolean searchResults;
+	
+	private String searchQuery;
+	
+	/** the number of search results asked for, a multiple of the page size */
+	private int searchLimit;
+	
+	private boolean leftIcon;
+	
+	/** the last mark all as read or unread, which a later one makes obsolete */
+	private TaskRunner.Task readStateTask;
+	
+	/** shows how far the marking and deleting of entries has got */
+	private final TaskProgress taskProgress = new TaskProgress(this);
+	
+	/** reloads the entries after a delete; the list may not observe them */
+	private final TaskRunner.Listener reloadListener = new TaskRunner.Listener() {
+		public void onProgress(TaskRunner.Task task, int done, int total) {
+			taskProgress.onProgress(task, done, total);
+		}
+		
+		public void onFinished(TaskRunner.Task task) {
+			taskProgress.onFinished(task);
+			if (!isFinishing()) {
+				entriesListAdapter.reload();
+			}
+		}
+	};
+	
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		ThemeSetting.setTheme(this);
@@ -96,46 +139,46 @@ public class EntriesListActivity extends ListActivity {
 		
 		feedId = intent.getLongExtra(FeedData.FeedColumns._ID, 0);
 		
-		if (feedId > 0) {
-			Cursor cursor = getContentResolver().query(FeedData.FeedColumns.CONTENT_URI(feedId), FEED_PROJECTION, null, null, null);
-			
-			if (cursor.moveToFirst()) {
-				title = cursor.isNull(0) ? cursor.getString(1) : cursor.getString(0);
-				iconBytes = cursor.getBlob(2);
-			}
-			cursor.close();
-		}
-
-		if (!MainTabActivity.POSTGINGERBREAD && iconBytes != null && iconBytes.length > 0) { // we cannot insert the icon here because it would be overwritten, but we have to reserve the icon here
-			if (!requestWindowFeature(Window.FEATURE_LEFT_ICON)) {
-				iconBytes = null;
-			}
+		leftIcon = false;
+		if (!MainTabActivity.POSTGINGERBREAD && feedId > 0) { // the icon is only known once the feed is loaded, but it has to be reserved here
+			leftIcon = requestWindowFeature(Window.FEATURE_LEFT_ICON);
 		}
+		requestWindowFeature(Window.FEATURE_PROGRESS); // for the marking and deleting of entries
         
 		setContentView(R.layout.entries);
 		
-		uri = intent.getData();
+		searchResults = Intent.ACTION_SEARCH.equals(intent.getAction());
+		if (searchResults) {
+			title = intent.getStringExtra(SearchManager.QUERY);
+			setSearchQuery(title);
+		} else {
+			uri = intent.getData();
+		}
 		
-		entriesListAdapter = new EntriesListAdapter(this, uri, intent.getBooleanExtra(EXTRA_SHOWFEEDINFO, false), intent.getBooleanExtra(EXTRA_AUTORELOAD, false));
+		entriesListAdapter = new EntriesListAdapter(this, uri, searchResults || intent.getBooleanExtra(EXTRA_SHOWFEEDINFO, false), intent.getBooleanExtra(EXTRA_AUTORELOAD, false));
         setListAdapter(entriesListAdapter);
+        entriesListAdapter.startLoading();
+        if (searchResults) {
+        	getListView().setOnScrollListener(new OnScrollListener() {
+				public void onScrollStateChanged(AbsListView view, int scrollState) {
+				}
+				
+				public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+					// a full page may be followed by more results; a shorter one while the next page loads
+					if (totalItemCount >= searchLimit && firstVisibleItem + visibleItemCount >= totalItemCount - SEARCH_PRELOAD) {
+						searchLimit += SEARCH_PAGESIZE;
+						uri = FeedData.EntryColumns.SEARCH_URI(searchQuery, 0, searchLimit);
+						entriesListAdapter.setUri(uri);
+					}
+				}
+			});
+        }
         
         if (title != null) {
         	setTitle(title);
         }
-        if (iconBytes != null && iconBytes.length > 0) {
-			int bitmapSizeInDip = (int)TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 24f, getResources().getDisplayMetrics());
-			Bitmap bitmap = BitmapFactory.decodeByteArray(iconBytes, 0, iconBytes.length);
-			if (bitmap != null) {
-				if (bitmap.getHeight() != bitmapSizeInDip) {
-					bitmap = Bitmap.createScaledBitmap(bitmap, bitmapSizeInDip, bitmapSizeInDip, false);
-				}
-				
-	        	if (MainTabActivity.POSTGINGERBREAD) {
-					CompatibilityHelper.setActionBarDrawable(this, new BitmapDrawable(bitmap));
-	        	} else {
-					setFeatureDrawable(Window.FEATURE_LEFT_ICON, new BitmapDrawable(bitmap));
-	        	}
-			}
+        if (feedId > 0) {
+        	getLoaderManager().initLoader(FEED_LOADER_ID, null, this);
         }
         if (RSSOverview.notificationManager != null) {
         	RSSOverview.notificationManager.cancel(0);
@@ -152,6 +195,87 @@ public class EntriesListActivity extends ListActivity {
         });
 	}
 
+	/**
+	 * Tasks of the same feed run one after the other; the entries of the
+	 * other lists, e.g. of a search, may be of any feed.
+	 */
+	private String getTaskKey() {
+		return feedId > 0 ? Long.toString(feedId) : TaskRunner.KEY_ALL;
+	}
+	
+	private void runReadStateTask(TaskRunner.Task task) {
+		if (readStateTask != null) {
+			readStateTask.cancel(); // no use marking them if they are marked otherwise right after
+		}
+		readStateTask = TaskRunner.get().run(task, taskProgress);
+	}
+	
+	@Override
+	protected void onPause() {
+		super.onPause();
+		EntryStateWriter.get(this).flushSoon();
+	}
+	
+	public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+		return new CursorLoader(this, FeedData.FeedColumns.CONTENT_URI(feedId), FEED_PROJECTION, null, null, null);
+	}
+	
+	public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+		if (cursor == null || !cursor.moveToFirst()) {
+			return;
+		}
+		setTitle(cursor.isNull(0) ? cursor.getString(1) : cursor.getString(0));
+		iconBytes = cursor.getBlob(2);
+		if (iconBytes != null && iconBytes.length > 0) {
+			Bitmap bitmap = FeedIconCache.get(this).getIcon(Long.toString(feedId), iconBytes, FeedIconCache.getSize(this, 24f));
+			if (bitmap != null) {
+	        	if (MainTabActivity.POSTGINGERBREAD) {
+					CompatibilityHelper.setActionBarDrawable(this, new BitmapDrawable(bitmap));
+	        	} else if (leftIcon) {
+					setFeatureDrawable(Window.FEATURE_LEFT_ICON, new BitmapDrawable(bitmap));
+	        	}
+			}
+		}
+	}
+	
+	public void onLoaderReset(Loader<Cursor> loader) {
+		// the title and the icon stay as they are
+	}
+
+	@Override
+	protected void onNewIntent(Intent intent) {
+		super.onNewIntent(intent);
+		if (searchResults && Intent.ACTION_SEARCH.equals(intent.getAction())) {
+			/** a new search while the results of the last one are shown */
+			setIntent(intent);
+			
+			String query = intent.getStringExtra(SearchManager.QUERY);
+			
+			setSearchQuery(query);
+			entriesListAdapter = new EntriesListAdapter(this, uri, true, intent.getBooleanExtra(EXTRA_AUTORELOAD, false));
+			setListAdapter(entriesListAdapter);
+			entriesListAdapter.reload();
+			setTitle(query);
+		}
+	}
+	
+	/**
+	 * Shows the first page of the results of the query.
+	 */
+	private void setSearchQuery(String query) {
+		searchQuery = query;
+		searchLimit = SEARCH_PAGESIZE;
+		uri = FeedData.EntryColumns.SEARCH_URI(query, 0, searchLimit);
+	}
+	
+	/**
+	 * The uri of a single entry of the list; search results are no entry
+	 * collection of their own.
+	 */
+	private Uri getEntryUri(long id) {
+		return searchResults ? FeedData.EntryColumns.ENTRY_CONTENT_URI(Long.toString(id)) : ContentUris.withAppendedId(uri, id);
+	}
+	
 	@Override
 	protected void onListItemClick(ListView listView, View view, int position, long id) {
 		TextView textView = (TextView) view.findViewById(android.R.id.text1);
@@ -160,7 +284,7 @@ public class EntriesListActivity extends ListActivity {
 		textView.setEnabled(false);
 		view.findViewById(android.R.id.text2).setEnabled(false);
 		entriesListAdapter.neutralizeReadState();
-		startActivity(new Intent(Intent.ACTION_VIEW, ContentUris.withAppendedId(uri, id)).putExtra(EXTRA_SHOWREAD, entriesListAdapter.isShowRead()).putExtra(FeedData.FeedColumns.ICON, iconBytes));
+		startActivity(new Intent(Intent.ACTION_VIEW, getEntryUri(id)).putExtra(EXTRA_SHOWREAD, entriesListAdapter.isShowRead()).putExtra(FeedData.FeedColumns.ICON, iconBytes));
 	}
 	
 	@Override
@@ -171,27 +295,30 @@ public class EntriesListActivity extends ListActivity {
 
 	@Override
 	public boolean onPrepareOptionsMenu(Menu menu) {
-		menu.setGroupVisible(R.id.menu_group_0, entriesListAdapter.getCount() > 0);
+		menu.setGroupVisible(R.id.menu_group_0, !searchResults && entriesListAdapter.getCount() > 0);
+		menu.setGroupVisible(R.id.menu_group_1, !searchResults);
 		return true;
 	}
 
 	public boolean onMenuItemSelected(int featureId, MenuItem item) {
 		switch (item.getItemId()) {
 			case R.id.menu_markasread: {
-				new Thread() { // the update process takes some time
-					public void run() {
-						getContentResolver().update(uri, RSSOverview.getReadContentValues(), null, null);
+				runReadStateTask(new EntriesTask("mark entries read", TaskRunner.PRIORITY_NORMAL, getTaskKey(), this) { // the update process takes some time
+					protected void execute() {
+						EntryStateWriter.get(EntriesListActivity.this).flush();
+						updateEntries(uri, FeedData.EntryColumns.READDATE + Strings.DB_ISNULL, RSSOverview.getReadContentValues());
 					}
-				}.start();
+				});
 				entriesListAdapter.markAsRead();
 				break;
 			}
 			case R.id.menu_markasunread: {
-				new Thread() { // the update process takes some time
-					public void run() {
-						getContentResolver().update(uri, RSSOverview.getUnreadContentValues(), null, null);
+				runReadStateTask(new EntriesTask("mark entries unread", TaskRunner.PRIORITY_NORMAL, getTaskKey(), this) { // the update process takes some time
+					protected void execute() {
+						EntryStateWriter.get(EntriesListActivity.this).flush();
+						updateEntries(uri, Strings.READDATE_GREATERZERO, RSSOverview.getUnreadContentValues());
 					}
-				}.start();
+				});
 				entriesListAdapter.markAsUnread();
 				break;
 			}
@@ -206,19 +333,14 @@ public class EntriesListActivity extends ListActivity {
 				break;
 			}
 			case R.id.menu_deleteread: {
-				new Thread() { // the delete process takes some time
-					public void run() {
+				TaskRunner.get().run(new EntriesTask("delete read entries", TaskRunner.PRIORITY_NORMAL, getTaskKey(), this) { // the delete process takes some time
+					protected void execute() {
 						String selection = Strings.READDATE_GREATERZERO+Strings.DB_AND+" ("+Strings.DB_EXCUDEFAVORITE+")";
 						
-						getContentResolver().delete(uri, selection, null);
-						FeedData.deletePicturesOfFeed(EntriesListActivity.this, uri, selection);
-						runOnUiThread(new Runnable() {
-							public void run() {
-								entriesListAdapter.getCursor().requery();
-							}
-						});
+						EntryStateWriter.get(EntriesListActivity.this).flush();
+						deleteEntries(uri, selection);
 					}
-				}.start();
+				}, reloadListener);
 				break;
 			}
 			case R.id.menu_deleteallentries: {
@@ -229,22 +351,22 @@ public class EntriesListActivity extends ListActivity {
 				builder.setMessage(R.string.question_areyousure);
 				builder.setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
 		            public void onClick(DialogInterface dialog, int which) {
-		            	new Thread() {
-							public void run() {
-								getContentResolver().delete(uri, Strings.DB_EXCUDEFAVORITE, null);
-								runOnUiThread(new Runnable() {
-									public void run() {
-										entriesListAdapter.getCursor().requery();
-									}
-								});
+		            	TaskRunner.get().run(new EntriesTask("delete all entries", TaskRunner.PRIORITY_NORMAL, getTaskKey(), EntriesListActivity.this) {
+							protected void execute() {
+								EntryStateWriter.get(EntriesListActivity.this).flush();
+								deleteEntries(uri, Strings.DB_EXCUDEFAVORITE);
 							}
-						}.start();
+						}, reloadListener);
 		            }
 		        });
 				builder.setNegativeButton(android.R.string.no, null);
 				builder.show();
 				break;
 			}
+			case R.id.menu_search: {
+				onSearchRequested();
+				break;
+			}
 			case R.id.menu_settings: {
 				startActivity(new Intent(Intent.ACTION_EDIT).setData(FeedData.FeedColumns.CONTENT_URI(feedId)));
 				break;
@@ -256,23 +378,25 @@ public class EntriesListActivity extends ListActivity {
 			case CONTEXTMENU_MARKASREAD_ID: {
 				long id = ((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id;
 				
-				getContentResolver().update(ContentUris.withAppendedId(uri, id), RSSOverview.getReadContentValues(), null, null);
+				EntryStateWriter.get(this).markRead(uri, id);
 				entriesListAdapter.markAsRead(id);
 				break;
 			}
 			case CONTEXTMENU_MARKASUNREAD_ID: {
 				long id = ((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id;
 				
-				getContentResolver().update(ContentUris.withAppendedId(uri, id), RSSOverview.getUnreadContentValues(), null, null);
+				EntryStateWriter.get(this).markUnread(uri, id);
 				entriesListAdapter.markAsUnread(id);
 				break;
 			}
 			case CONTEXTMENU_DELETE_ID: {
-				long id = ((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id;
+				final Uri entryUri = getEntryUri(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
 				
-				getContentResolver().delete(ContentUris.withAppendedId(uri, id), null, null);
-				FeedData.deletePicturesOfEntry(Long.toString(id));
-				entriesListAdapter.getCursor().requery(); // he have no other choice
+				TaskRunner.get().run(new TaskRunner.Task("delete entry", TaskRunner.PRIORITY_HIGH, getTaskKey()) {
+					protected void execute() {
+						getContentResolver().delete(entryUri, null, null);
+					}
+				}, reloadListener); // he have no other choice
 				break;
 			}
 			case CONTEXTMENU_COPYURL: {
@@ -27,19 +27,19 @@ package net.groboclown.groborss;
 
 import java.text.DateFormat;
 import java.util.Date;
-import java.util.Vector;
 
 import android.app.Activity;
-import android.content.ContentValues;
+import android.app.LoaderManager;
 import android.content.Context;
+import android.content.CursorLoader;
+import android.content.Loader;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
+import android.os.Bundle;
 import android.preference.PreferenceManager;
-import android.util.TypedValue;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.ImageView;
@@ -48,9 +48,13 @@ import android.widget.TextView;
 
 import net.groboclown.groborss.Strings;
 import net.groboclown.groborss.provider.FeedData;
+import net.groboclown.groborss.util.FeedIconCache;
+import net.groboclown.groborss.util.LongHashSet;
 import net.groboclown.groborss.R;
 
-public class EntriesListAdapter extends ResourceCursorAdapter {
+public class EntriesListAdapter extends ResourceCursorAdapter implements LoaderManager.LoaderCallbacks<Cursor> {
+	private static final int LOADER_ID = 0;
+	
 	private static final int STATE_NEUTRAL = 0;
 	
 	private static final int STATE_ALLREAD = 1;
@@ -69,6 +73,8 @@ public class EntriesListAdapter extends ResourceCursorAdapter {
 	
 	private int feedIconColumn;
 	
+	private int feedIdColumn;
+	
 	private int feedNameColumn;
 	
 	private int linkColumn;
@@ -76,6 +82,11 @@ public class EntriesListAdapter extends ResourceCursorAdapter {
 	private static final String SQLREAD = "length(readdate) ASC, ";
 	
 	public static final String READDATEISNULL = "readdate is null";
+	
+	/** the columns shown, leaving the bodies out of the cursor window */
+	private static final String[] PROJECTION = {FeedData.EntryColumns._ID, FeedData.EntryColumns.TITLE, FeedData.EntryColumns.DATE, FeedData.EntryColumns.READDATE, FeedData.EntryColumns.FAVORITE, FeedData.EntryColumns.LINK};
+	
+	private static final String[] PROJECTION_FEEDINFO = {FeedData.EntryColumns._ID, FeedData.EntryColumns.TITLE, FeedData.EntryColumns.DATE, FeedData.EntryColumns.READDATE, FeedData.EntryColumns.FAVORITE, FeedData.EntryColumns.LINK, FeedData.EntryColumns.FEED_ID, FeedData.FeedColumns.NAME, FeedData.FeedColumns.ICON};
 
 	private boolean showRead;
 	
@@ -85,44 +96,42 @@ public class EntriesListAdapter extends ResourceCursorAdapter {
 	
 	private boolean showFeedInfo;
 	
+	private boolean autoreload;
+	
 	private int forcedState;
 	
-	private Vector<Long> markedAsRead;
+	private LongHashSet markedAsRead;
 	
-	private Vector<Long> markedAsUnread;
+	private LongHashSet markedAsUnread;
 	
-	private Vector<Long> favorited;
+	private LongHashSet favorited;
 	
-	private Vector<Long> unfavorited;
+	private LongHashSet unfavorited;
 	
 	private DateFormat dateFormat;
 	
 	private DateFormat timeFormat;
 	
+	private FeedIconCache iconCache;
+	
+	private int iconSize;
+	
 	public EntriesListAdapter(Activity context, Uri uri, boolean showFeedInfo, boolean autoreload) {
-		super(context, R.layout.entrylistitem, createManagedCursor(context, uri, true), autoreload);
+		super(context, R.layout.entrylistitem, null, 0); // the loader observes the content
 		showRead = true;
 		this.context = context;
 		this.uri = uri;
-		
-		Cursor cursor = getCursor();
-		
-		titleColumnPosition = cursor.getColumnIndex(FeedData.EntryColumns.TITLE);
-		dateColumn = cursor.getColumnIndex(FeedData.EntryColumns.DATE);
-		readDateColumn = cursor.getColumnIndex(FeedData.EntryColumns.READDATE);
-		favoriteColumn = cursor.getColumnIndex(FeedData.EntryColumns.FAVORITE);
-		idColumn = cursor.getColumnIndex(FeedData.EntryColumns._ID);
-		linkColumn = cursor.getColumnIndex(FeedData.EntryColumns.LINK);
+		this.autoreload = autoreload;
 		this.showFeedInfo = showFeedInfo;
 		if (showFeedInfo) {
-			feedIconColumn = cursor.getColumnIndex(FeedData.FeedColumns.ICON);
-			feedNameColumn = cursor.getColumnIndex(FeedData.FeedColumns.NAME);
+			iconCache = FeedIconCache.get(context);
+			iconSize = FeedIconCache.getSize(context, 18f);
 		}
 		forcedState = STATE_NEUTRAL;
-		markedAsRead = new Vector<Long>();
-		markedAsUnread = new Vector<Long>();
-		favorited = new Vector<Long>();
-		unfavorited = new Vector<Long>();
+		markedAsRead = new LongHashSet();
+		markedAsUnread = new LongHashSet();
+		favorited = new LongHashSet();
+		unfavorited = new LongHashSet();
 		dateFormat = android.text.format.DateFormat.getDateFormat(context);
 		timeFormat = android.text.format.DateFormat.getTimeFormat(context);
 	}
@@ -160,34 +169,23 @@ public class EntriesListAdapter extends ResourceCursorAdapter {
 					unfavorited.add(id);
 					favorited.remove(id);
 				}
-				
-				ContentValues values = new ContentValues();
-				
-				values.put(FeedData.EntryColumns.FAVORITE, newFavorite ? 1 : 0);
-				view.getContext().getContentResolver().update(uri, values, new StringBuilder(FeedData.EntryColumns._ID).append(Strings.DB_ARG).toString(), new String[] {Long.toString(id)});
-				context.getContentResolver().notifyChange(FeedData.EntryColumns.FAVORITES_CONTENT_URI, null);
-				
+				EntryStateWriter.get(context).setFavorite(uri, id, newFavorite);
 			}
 		});
 		
 		Date date = new Date(cursor.getLong(dateColumn));
 		
 		if (showFeedInfo && feedIconColumn > -1 && feedNameColumn > -1) {
-			byte[] iconBytes = cursor.getBlob(feedIconColumn);
-			
-			if (iconBytes != null && iconBytes.length > 0) {
-				Bitmap bitmap = BitmapFactory.decodeByteArray(iconBytes, 0, iconBytes.length);
+			if (!cursor.isNull(feedIconColumn)) {
+				Bitmap bitmap = iconCache.getIcon(cursor.getString(feedIdColumn), cursor, feedIconColumn, iconSize);
 				
 				if (bitmap != null) {
-					int bitmapSizeInDip = (int)TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 18f, context.getResources().getDisplayMetrics());
-					if (bitmap.getHeight() != bitmapSizeInDip) {
-						bitmap = Bitmap.createScaledBitmap(bitmap, bitmapSizeInDip, bitmapSizeInDip, false);
-					}
 					dateTextView.setText(new StringBuilder().append(' ').append(dateFormat.format(date)).append(' ').append(timeFormat.format(date)).append(Strings.COMMASPACE).append(cursor.getString(feedNameColumn))); // bad style
+					dateTextView.setCompoundDrawablesWithIntrinsicBounds(new BitmapDrawable(bitmap), null, null,  null);
 				} else {
 					dateTextView.setText(new StringBuilder(dateFormat.format(date)).append(' ').append(timeFormat.format(date)).append(Strings.COMMASPACE).append(cursor.getString(feedNameColumn)));
+					dateTextView.setCompoundDrawablesWithIntrinsicBounds(null, null, null,  null);
 				}
-				dateTextView.setCompoundDrawablesWithIntrinsicBounds(new BitmapDrawable(bitmap), null, null,  null);
 			} else {
 				dateTextView.setCompoundDrawablesWithIntrinsicBounds(null, null, null, null);
 				dateTextView.setText(new StringBuilder(dateFormat.format(date)).append(' ').append(timeFormat.format(date)).append(Strings.COMMASPACE).append(cursor.getString(feedNameColumn)));
@@ -209,11 +207,66 @@ public class EntriesListAdapter extends ResourceCursorAdapter {
 		}
 	}
 
+	@Override
+	public Cursor swapCursor(Cursor cursor) {
+		if (cursor != null) {
+			titleColumnPosition = cursor.getColumnIndex(FeedData.EntryColumns.TITLE);
+			dateColumn = cursor.getColumnIndex(FeedData.EntryColumns.DATE);
+			readDateColumn = cursor.getColumnIndex(FeedData.EntryColumns.READDATE);
+			favoriteColumn = cursor.getColumnIndex(FeedData.EntryColumns.FAVORITE);
+			idColumn = cursor.getColumnIndex(FeedData.EntryColumns._ID);
+			linkColumn = cursor.getColumnIndex(FeedData.EntryColumns.LINK);
+			if (showFeedInfo) {
+				feedIconColumn = cursor.getColumnIndex(FeedData.FeedColumns.ICON);
+				feedNameColumn = cursor.getColumnIndex(FeedData.FeedColumns.NAME);
+				feedIdColumn = cursor.getColumnIndex(FeedData.EntryColumns.FEED_ID);
+			}
+		}
+		return super.swapCursor(cursor);
+	}
+	
+	/**
+	 * Starts loading the entries in the background, reusing the entries
+	 * already loaded for the activity.
+	 */
+	public void startLoading() {
+		context.getLoaderManager().initLoader(LOADER_ID, null, this);
+	}
+	
+	/**
+	 * Loads the entries again in the background, after the uri or the
+	 * read filter changed or entries were deleted.  A load still running
+	 * is cancelled; the entries shown stay until the new ones are there.
+	 */
+	public void reload() {
+		context.getLoaderManager().restartLoader(LOADER_ID, null, this);
+	}
+	
+	/**
+	 * Shows the entries of another uri, e.g. a longer page of search
+	 * results, once they are loaded.
+	 */
+	public void setUri(Uri uri) {
+		this.uri = uri;
+		reload();
+	}
+	
+	public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+		return new EntriesLoader(context, uri, showFeedInfo ? PROJECTION_FEEDINFO : PROJECTION, showRead ? null : READDATEISNULL, new StringBuilder(PreferenceManager.getDefaultSharedPreferences(context).getBoolean(Strings.SETTINGS_PRIORITIZE, false) ? SQLREAD : Strings.EMPTY).append(FeedData.EntryColumns.DATE).append(Strings.DB_DESC).append(Strings.COMMASPACE).append(FeedData.EntryColumns._ID).append(Strings.DB_DESC).toString(), autoreload);
+	}
+	
+	public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+		swapCursor(cursor);
+	}
+	
+	public void onLoaderReset(Loader<Cursor> loader) {
+		swapCursor(null);
+	}
+
 	public void showRead(boolean showRead) {
 		if (showRead != this.showRead) {
-			context.stopManagingCursor(getCursor());
-			changeCursor(createManagedCursor(context, uri, showRead));
 			this.showRead = showRead;
+			reload();
 		}
 	}
 	
@@ -221,8 +274,43 @@ public class EntriesListAdapter extends ResourceCursorAdapter {
 		return showRead;
 	}
 	
-	private static Cursor createManagedCursor(Activity context, Uri uri, boolean showRead) {
-		return context.managedQuery(uri, null, showRead ? null : READDATEISNULL, null, new StringBuilder(PreferenceManager.getDefaultSharedPreferences(context).getBoolean(Strings.SETTINGS_PRIORITIZE, false) ? SQLREAD : Strings.EMPTY).append(FeedData.EntryColumns.DATE).append(Strings.DB_DESC).toString());
+	/**
+	 * The loader outlives the activity on configuration changes, so it must
+	 * not hold on to the adapter.
+	 */
+	private static class EntriesLoader extends CursorLoader {
+		private boolean autoreload;
+		
+		/** a change seen while the list was shown without autoreload */
+		private boolean changePending;
+		
+		public EntriesLoader(Context context, Uri uri, String[] projection, String selection, String sortOrder, boolean autoreload) {
+			super(context, uri, projection, selection, null, sortOrder);
+			this.autoreload = autoreload;
+		}
+		
+		/**
+		 * Without autoreload the list stays as it is while it is shown, but
+		 * the changes are loaded once it is shown again, e.g. the entries
+		 * read or starred in the entry view.
+		 */
+		@Override
+		public void onContentChanged() {
+			if (autoreload || !isStarted()) {
+				super.onContentChanged(); // while stopped this defers the load to the next start
+			} else {
+				changePending = true;
+			}
+		}
+		
+		@Override
+		protected void onStopLoading() {
+			super.onStopLoading();
+			if (changePending) {
+				changePending = false;
+				super.onContentChanged();
+			}
+		}
 	}
 	
 	public void markAsRead() {
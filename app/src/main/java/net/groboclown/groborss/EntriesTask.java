@@ -0,0 +1,152 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import net.groboclown.groborss.provider.FeedData;
+import net.groboclown.groborss.util.TaskRunner;
+
+/**
+ * A task that marks or deletes many entries.  The entries are changed in
+ * batches, with the progress reported after each one, and the task stops
+ * between batches once it is cancelled.  The lists are notified once, at
+ * the end.
+ */
+abstract class EntriesTask extends TaskRunner.Task {
+    /** entries changed per statement; keeps the write lock short */
+    private static final int BATCHSIZE = 200;
+
+    private static final String[] IDPROJECTION = new String[] { FeedData.EntryColumns._ID };
+
+    private static final String[] COUNTPROJECTION = new String[] { "COUNT(*)" };
+
+    private final Context context;
+
+    EntriesTask(String name, int priority, String key, Context context) {
+        super(name, priority, key);
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * @param selection the entries to update; the update must make them
+     *      no longer match it
+     * @return the number of updated entries
+     */
+    protected int updateEntries(Uri uri, String selection, ContentValues values) {
+        return changeEntries(uri, selection, values);
+    }
+
+    /**
+     * @return the number of deleted entries
+     */
+    protected int deleteEntries(Uri uri, String selection) {
+        return changeEntries(uri, selection, null);
+    }
+
+    /**
+     * Updates the entries with the values, or deletes them if there are no
+     * values.
+     */
+    private int changeEntries(Uri uri, String selection, ContentValues values) {
+        ContentResolver contentResolver = context.getContentResolver();
+
+        int total = count(contentResolver, uri, selection);
+
+        if (total == 0) {
+            return 0;
+        }
+
+        Uri batchUri = FeedData.LIMITED_URI(uri, BATCHSIZE);
+
+        int done = 0;
+
+        int changed = 0;
+
+        publishProgress(0, total);
+        FeedData.beginNotificationBatch(context);
+        try {
+            while (!isCancelled()) {
+                Cursor cursor = contentResolver.query(batchUri, IDPROJECTION, selection, null, null);
+
+                if (cursor == null) {
+                    break;
+                }
+
+                StringBuilder ids = new StringBuilder(FeedData.EntryColumns._ID).append(" IN (");
+
+                int count = 0;
+
+                try {
+                    while (cursor.moveToNext()) {
+                        if (count++ > 0) {
+                            ids.append(',');
+                        }
+                        ids.append(cursor.getLong(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if (count == 0) {
+                    break;
+                }
+
+                String idSelection = ids.append(')').toString();
+
+                int batchChanged = values != null
+                        ? contentResolver.update(uri, values, idSelection, null)
+                        : contentResolver.delete(uri, idSelection, null);
+
+                changed += batchChanged;
+                done = Math.min(done + count, total); // entries may have arrived meanwhile
+                publishProgress(done, total);
+                if (batchChanged == 0 || count < BATCHSIZE) {
+                    break;
+                }
+            }
+        } finally {
+            FeedData.endNotificationBatch(context);
+        }
+        return changed;
+    }
+
+    private static int count(ContentResolver contentResolver, Uri uri, String selection) {
+        Cursor cursor = contentResolver.query(uri, COUNTPROJECTION, selection, null, null);
+
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
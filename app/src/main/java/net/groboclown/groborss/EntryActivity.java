@@ -29,16 +29,15 @@ import android.app.AlertDialog;
 import android.app.AlertDialog.Builder;
 import android.app.NotificationManager;
 import android.content.BroadcastReceiver;
-import android.content.ContentValues;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.text.ClipboardManager;
@@ -66,26 +65,19 @@ import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.ViewFlipper;
 
-import net.groboclown.groborss.handler.EntryTextBuilder;
+import net.groboclown.groborss.handler.ImageStore;
 import net.groboclown.groborss.provider.FeedData;
+import net.groboclown.groborss.util.TaskRunner;
 import net.groboclown.groborss.util.ThemeSetting;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class EntryActivity
         extends Activity {
     private static final String TAG = "EntryActivity";
 
-    private static final String OR_DATE = " or date ";
-
-    private static final String DATE = "(date=";
-
-    private static final String AND_ID = " and _id";
-
-    private static final String ASC = "date asc, _id desc limit 1";
-
-    private static final String DESC = "date desc, _id asc limit 1";
-
     private static final int BUTTON_ALPHA = 180;
 
     private static final String IMAGE_ENCLOSURE = "[@]image/";
@@ -94,23 +86,11 @@ public class EntryActivity
 
     private static final String BRACKET = " (";
 
-    private int titlePosition;
-
-    private int datePosition;
+    private static final int STEP_NONE = 0;
 
-    private int abstractPosition;
+    private static final int STEP_SUCCESSOR = 1;
 
-    private int linkPosition;
-
-    private int feedIdPosition;
-
-    private int favoritePosition;
-
-    private int readDatePosition;
-
-    private int enclosurePosition;
-
-    private int authorPosition;
+    private static final int STEP_PREDECESSOR = 2;
 
     private String _id;
 
@@ -118,23 +98,46 @@ public class EntryActivity
 
     private String _previousId;
 
+    /** only touched by the loading tasks, which run one after the other */
+    private final EntryNeighbours successors = new EntryNeighbours(true);
+
+    private final EntryNeighbours predecessors = new EntryNeighbours(false);
+
+    private boolean currentDeleted;
+
     private Uri uri;
 
     private Uri parentUri;
 
-    private int feedId;
-
     boolean favorite;
 
     private boolean showRead;
 
     private boolean canShowIcon;
 
-    private byte[] iconBytes;
+    private EntryLoader loader;
+
+    /** the latest load; the results of earlier ones are dropped */
+    private LoadTask loadTask;
+
+    private EntryLoader.Entry shownEntry;
+
+    /** the prefetched neighbours, null if they could not be loaded */
+    private EntryLoader.Entry successorEntry;
+
+    private EntryLoader.Entry predecessorEntry;
+
+    /** the entry loaded into webView0, or null */
+    private EntryLoader.Entry spareEntry;
+
+    /** true if the last move was to a successor, which makes the next one the likely one */
+    private boolean movingOn = true;
+
+    private Bitmap shownIcon;
 
     private WebView webView;
 
-    private WebView webView0; // only needed for the animation
+    private WebView webView0; // the spare one, for the animation and the entry shown next
 
     private ViewFlipper viewFlipper;
 
@@ -156,8 +159,6 @@ public class EntryActivity
 
     private View content;
 
-    private boolean localPictures;
-
     private TextView titleTextView;
 
     @Override
@@ -199,31 +200,15 @@ public class EntryActivity
         uri = getIntent().getData();
         parentUri = FeedData.EntryColumns.PARENT_URI(uri.getPath());
         showRead = getIntent().getBooleanExtra(EntriesListActivity.EXTRA_SHOWREAD, true);
-        iconBytes = getIntent().getByteArrayExtra(FeedData.FeedColumns.ICON);
-        feedId = 0;
-
-        Cursor entryCursor = getContentResolver().query(uri, null, null, null, null);
-        if (entryCursor == null) {
-            Log.w(TAG, "Could not find entry for " + uri);
-            throw new IllegalStateException("no entry for uri " + uri);
-        }
-
-        titlePosition = entryCursor.getColumnIndex(FeedData.EntryColumns.TITLE);
-        datePosition = entryCursor.getColumnIndex(FeedData.EntryColumns.DATE);
-        abstractPosition = entryCursor.getColumnIndex(FeedData.EntryColumns.ABSTRACT);
-        linkPosition = entryCursor.getColumnIndex(FeedData.EntryColumns.LINK);
-        feedIdPosition = entryCursor.getColumnIndex(FeedData.EntryColumns.FEED_ID);
-        favoritePosition = entryCursor.getColumnIndex(FeedData.EntryColumns.FAVORITE);
-        readDatePosition = entryCursor.getColumnIndex(FeedData.EntryColumns.READDATE);
-        enclosurePosition = entryCursor.getColumnIndex(FeedData.EntryColumns.ENCLOSURE);
-        authorPosition = entryCursor.getColumnIndex(FeedData.EntryColumns.AUTHOR);
+        loader = new EntryLoader(this, getIntent().getByteArrayExtra(FeedData.FeedColumns.ICON),
+                canShowIcon ? (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 24f,
+                        getResources().getDisplayMetrics()) : 0);
 
         // TODO new functionality / improvements
         //   - "mark unread" button
         //   - The url link button should always be active; if the entry itself doesn't have
         //		a URI, then the page's source should be used, and the button icon changed slightly.
 
-        entryCursor.close();
         if (RSSOverview.notificationManager == null) {
             RSSOverview.notificationManager = (NotificationManager) getSystemService(
                     Context.NOTIFICATION_SERVICE);
@@ -360,260 +345,237 @@ public class EntryActivity
         setIntent(intent);
     }
 
-    private void reload() {
-        if (_id != null && _id.equals(uri.getLastPathSegment())) {
-            return;
-        }
+    /**
+     * Records that the cached pictures of the entry have been shown.
+     */
+    private void recordImageViews(EntryLoader.Entry entry) {
+        final List<Long> shown = new ArrayList<>();
 
-        _id = uri.getLastPathSegment();
+        for (String url : entry.text.getShownCachedImages()) {
+            shown.add(entry.imageBlobIds.get(url));
+        }
 
-        ContentValues values = new ContentValues();
+        final int misses = entry.text.getCachedImageMisses();
 
-        values.put(FeedData.EntryColumns.READDATE, System.currentTimeMillis());
+        if (!shown.isEmpty() || misses > 0) {
+            TaskRunner.get().run(new TaskRunner.Task("record image views", TaskRunner.PRIORITY_LOW, null) {
+                protected void execute() {
+                    ImageStore.recordViews(EntryActivity.this, shown, misses);
+                }
+            });
+        }
+    }
 
-        Cursor entryCursor = getContentResolver().query(uri, null, null, null, null);
-        if (entryCursor == null) {
+    private void reload() {
+        if (_id != null && _id.equals(uri.getLastPathSegment())) {
             return;
         }
 
-        if (entryCursor.moveToFirst()) {
-            String abstractText = entryCursor.getString(abstractPosition);
-
-            if (entryCursor.isNull(readDatePosition)) {
-                getContentResolver().update(
-                        uri, values, FeedData.EntryColumns.READDATE + Strings.DB_ISNULL, null);
-            }
-            if (abstractText == null) {
-                String link = entryCursor.getString(linkPosition);
-
-                if (link != null && !link.isEmpty()) {
-                    // Do not directly visit the web page.
-                    // entryCursor.close();
-                    // finish();
-                    // startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(link)));
-                    abstractText = "<a href='" + link + "'>" + link + "</a>";
-                } else {
-                    // TODO figure out what to correctly show here.
-                    // If you view this entry, it currently causes the page view to disconnect.
-                    abstractText = "<font color='gray'><small><i>No content</i></small></font>";
-                    Log.d(TAG, "Nothing to show for " + uri);
-                }
-            }
-            setTitle(entryCursor.getString(titlePosition));
-            if (titleTextView != null) {
-                titleTextView.requestFocus(); // restart ellipsize
-            }
+        _id = uri.getLastPathSegment();
+        start(new LoadTask(STEP_NONE, null));
+		
+		/*
+		new Thread() {
+			public void run() {
+				sendBroadcast(new Intent(Strings.ACTION_UPDATEWIDGET)); // this is slow
+			}
+		}.start();
+		*/
+    }
 
-            int _feedId = entryCursor.getInt(feedIdPosition);
+    /**
+     * Starts loading in the background.  The buttons are disabled until the
+     * neighbours of the entry are known.
+     */
+    private void start(LoadTask task) {
+        disableButton(previousButton);
+        disableButton(nextButton);
+        loadTask = task;
+        loadTask.execute();
+        currentDeleted = false;
+    }
 
-            if (feedId != _feedId) {
-                if (feedId != 0) {
-                    iconBytes = null; // triggers re-fetch of the icon
-                }
-                feedId = _feedId;
+    /**
+     * Shows a loaded entry.
+     *
+     * @param flip true to show it in the spare web view and flip over to
+     *      it, which needs no loading if it has been preloaded there
+     */
+    private void show(EntryLoader.Entry entry, boolean flip, Animation inAnimation, Animation outAnimation) {
+        if (flip) {
+            if (spareEntry != entry) {
+                entry.text.render(webView0, content, ThemeSetting.isLightColorMode(this));
             }
 
-            if (canShowIcon) {
-                if (iconBytes == null || iconBytes.length == 0) {
-                    Cursor iconCursor = getContentResolver().query(
-                            FeedData.FeedColumns.CONTENT_URI(Integer.toString(feedId)),
-                            new String[]{FeedData.FeedColumns._ID, FeedData.FeedColumns.ICON},
-                            null, null, null);
-                    if (iconCursor != null) {
-                        if (iconCursor.moveToFirst()) {
-                            iconBytes = iconCursor.getBlob(1);
-                        }
-                        iconCursor.close();
-                    }
-                }
+            WebView dummy = webView; // switch reference
 
-                if (iconBytes != null && iconBytes.length > 0) {
-                    int bitmapSizeInDip = (int) TypedValue.applyDimension(
-                            TypedValue.COMPLEX_UNIT_DIP, 24f,
-                            getResources().getDisplayMetrics());
-                    Bitmap bitmap = BitmapFactory.decodeByteArray(
-                            iconBytes, 0, iconBytes.length);
-                    if (bitmap != null) {
-                        if (bitmap.getHeight() != bitmapSizeInDip) {
-                            bitmap = Bitmap.createScaledBitmap(
-                                    bitmap, bitmapSizeInDip, bitmapSizeInDip, false);
-                        }
+            webView = webView0;
+            webView0 = dummy;
+            spareEntry = shownEntry;
+            viewFlipper.setInAnimation(inAnimation);
+            viewFlipper.setOutAnimation(outAnimation);
+            viewFlipper.addView(webView, layoutParams);
+            viewFlipper.showNext();
+            viewFlipper.removeViewAt(0);
+        } else {
+            entry.text.render(webView, content, ThemeSetting.isLightColorMode(this));
+        }
+        webView.scrollTo(scrollX, scrollY); // resets the scrolling
+        shownEntry = entry;
 
-                        if (MainTabActivity.POSTGINGERBREAD) {
-                            CompatibilityHelper.setActionBarDrawable(
-                                    this, new BitmapDrawable(bitmap));
-                        } else {
-                            setFeatureDrawable(
-                                    Window.FEATURE_LEFT_ICON, new BitmapDrawable(bitmap));
-                        }
-                    }
-                }
+        setTitle(entry.title);
+        if (titleTextView != null) {
+            titleTextView.requestFocus(); // restart ellipsize
+        }
+
+        if (canShowIcon && entry.icon != null && entry.icon != shownIcon) {
+            if (MainTabActivity.POSTGINGERBREAD) {
+                CompatibilityHelper.setActionBarDrawable(
+                        this, new BitmapDrawable(entry.icon));
+            } else {
+                setFeatureDrawable(
+                        Window.FEATURE_LEFT_ICON, new BitmapDrawable(entry.icon));
             }
+            shownIcon = entry.icon;
+        }
 
-            long timestamp = entryCursor.getLong(datePosition);
+        Date date = new Date(entry.date);
 
-            Date date = new Date(timestamp);
+        StringBuilder dateStringBuilder = new StringBuilder(
+                DateFormat.getDateFormat(this).format(date)).append(' ').append(
+                DateFormat.getTimeFormat(this).format(date));
 
-            StringBuilder dateStringBuilder = new StringBuilder(
-                    DateFormat.getDateFormat(this).format(date)).append(' ').append(
-                    DateFormat.getTimeFormat(this).format(date));
+        if (entry.author != null) {
+            dateStringBuilder.append(BRACKET).append(entry.author).append(')');
+        }
 
-            String author = entryCursor.getString(authorPosition);
+        ((TextView) findViewById(R.id.entry_date)).setText(dateStringBuilder);
 
-            if (author != null) {
-                dateStringBuilder.append(BRACKET).append(author).append(')');
-            }
+        final ImageView imageView = findViewById(android.R.id.icon);
 
-            ((TextView) findViewById(R.id.entry_date)).setText(dateStringBuilder);
+        favorite = entry.favorite;
 
-            final ImageView imageView = findViewById(android.R.id.icon);
+        imageView.setImageResource(
+                favorite ? android.R.drawable.star_on : android.R.drawable.star_off);
+        imageView.setOnClickListener(new OnClickListener() {
+            public void onClick(View view) {
+                favorite = !favorite;
+                shownEntry.favorite = favorite;
+                imageView.setImageResource(favorite
+                        ? android.R.drawable.star_on
+                        : android.R.drawable.star_off);
+                EntryStateWriter.get(EntryActivity.this).setFavorite(shownEntry.uri, Long.parseLong(shownEntry.id), favorite);
+            }
+        });
 
-            favorite = entryCursor.getInt(favoritePosition) == 1;
+        recordImageViews(entry);
 
-            imageView.setImageResource(
-                    favorite ? android.R.drawable.star_on : android.R.drawable.star_off);
-            imageView.setOnClickListener(new OnClickListener() {
+        // TODO if the link is empty, think about instead linking to the feed's URL.
+        link = entry.link;
+        if (link != null && !link.isEmpty()) {
+            urlButton.setEnabled(true);
+            urlButton.setAlpha(BUTTON_ALPHA + 20);
+            urlButton.setOnClickListener(new OnClickListener() {
                 public void onClick(View view) {
-                    favorite = !favorite;
-                    imageView.setImageResource(favorite
-                            ? android.R.drawable.star_on
-                            : android.R.drawable.star_off);
-                    ContentValues values = new ContentValues();
-
-                    values.put(FeedData.EntryColumns.FAVORITE, favorite ? 1 : 0);
-                    getContentResolver().update(uri, values, null, null);
+                    startActivityForResult(
+                            new Intent(Intent.ACTION_VIEW, Uri.parse(link)), 0);
                 }
             });
+        } else {
+            urlButton.setEnabled(false);
+            urlButton.setAlpha(80);
+        }
 
-            final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(
-                    this);
-
-            EntryTextBuilder entryText = new EntryTextBuilder()
-                    .withAbstractText(abstractText)
-                    .withEntryId(_id)
-                    .withUri(uri)
-                    .withPreferences(preferences);
-            entryText.render(webView, content, ThemeSetting.isLightColorMode(this));
-            localPictures = entryText.hasImages();
-
-
-            link = entryCursor.getString(linkPosition);
-            // TODO if the link is empty, think about instead linking to the feed's URL.
-
-            if (link == null || link.isEmpty()) {
-                Cursor linkCursor = getContentResolver().query(
-                        FeedData.FeedColumns.CONTENT_URI(Integer.toString(feedId)),
-                        new String[]{FeedData.FeedColumns._ID, FeedData.FeedColumns.HOMEPAGE},
-                        null, null, null);
-                if (linkCursor != null) {
-                    if (linkCursor.moveToFirst()) {
-                        link = linkCursor.getString(1);
-                    }
-                    linkCursor.close();
-                }
-            }
-            if (link != null && !link.isEmpty()) {
-                urlButton.setEnabled(true);
-                urlButton.setAlpha(BUTTON_ALPHA + 20);
-                urlButton.setOnClickListener(new OnClickListener() {
-                    public void onClick(View view) {
-                        startActivityForResult(
-                                new Intent(Intent.ACTION_VIEW, Uri.parse(link)), 0);
-                    }
-                });
-            } else {
-                urlButton.setEnabled(false);
-                urlButton.setAlpha(80);
-            }
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(
+                this);
 
-            // Enclosures are the multimedia attachment.
-            final String enclosure = entryCursor.getString(enclosurePosition);
+        // Enclosures are the multimedia attachment.
+        final String enclosure = entry.enclosure;
 
-            if (enclosure != null && enclosure.length() > 6 && !enclosure.contains(
-                    IMAGE_ENCLOSURE)) {
-                playButton.setVisibility(View.VISIBLE);
-                playButton.setOnClickListener(new OnClickListener() {
-                    public void onClick(View v) {
-                        final int position1 = enclosure.indexOf(Strings.ENCLOSURE_SEPARATOR);
+        if (enclosure != null && enclosure.length() > 6 && !enclosure.contains(
+                IMAGE_ENCLOSURE)) {
+            playButton.setVisibility(View.VISIBLE);
+            playButton.setOnClickListener(new OnClickListener() {
+                public void onClick(View v) {
+                    final int position1 = enclosure.indexOf(Strings.ENCLOSURE_SEPARATOR);
 
-                        final int position2 = enclosure.indexOf(
-                                Strings.ENCLOSURE_SEPARATOR, position1 + 3);
+                    final int position2 = enclosure.indexOf(
+                            Strings.ENCLOSURE_SEPARATOR, position1 + 3);
 
-                        final Uri uri = Uri.parse(enclosure.substring(0, position1));
+                    final Uri uri = Uri.parse(enclosure.substring(0, position1));
 
-                        if (preferences.getBoolean(
-                                Strings.SETTINGS_ENCLOSUREWARNINGSENABLED, true)) {
-                            Builder builder = new AlertDialog.Builder(EntryActivity.this);
+                    if (preferences.getBoolean(
+                            Strings.SETTINGS_ENCLOSUREWARNINGSENABLED, true)) {
+                        Builder builder = new AlertDialog.Builder(EntryActivity.this);
 
-                            builder.setTitle(R.string.question_areyousure);
-                            builder.setIcon(android.R.drawable.ic_dialog_alert);
-                            if (position2 + 4 > enclosure.length()) {
+                        builder.setTitle(R.string.question_areyousure);
+                        builder.setIcon(android.R.drawable.ic_dialog_alert);
+                        if (position2 + 4 > enclosure.length()) {
+                            builder.setMessage(
+                                    getString(R.string.question_playenclosure, uri,
+                                            position2 + 4 > enclosure.length()
+                                                    ? Strings.QUESTIONMARKS
+                                                    : enclosure.substring(position2 + 3)));
+                        } else {
+                            try {
                                 builder.setMessage(
                                         getString(R.string.question_playenclosure, uri,
-                                                position2 + 4 > enclosure.length()
-                                                        ? Strings.QUESTIONMARKS
-                                                        : enclosure.substring(position2 + 3)));
-                            } else {
-                                try {
-                                    builder.setMessage(
-                                            getString(R.string.question_playenclosure, uri,
-                                                    (Integer.parseInt(
-                                                            enclosure.substring(position2 + 3))
-                                                            / 1024f) + getString(R.string.kb)));
-                                } catch (Exception e) {
-                                    builder.setMessage(
-                                            getString(R.string.question_playenclosure, uri,
-                                                    enclosure.substring(position2 + 3)));
-                                }
+                                                (Integer.parseInt(
+                                                        enclosure.substring(position2 + 3))
+                                                        / 1024f) + getString(R.string.kb)));
+                            } catch (Exception e) {
+                                builder.setMessage(
+                                        getString(R.string.question_playenclosure, uri,
+                                                enclosure.substring(position2 + 3)));
                             }
-                            builder.setCancelable(true);
-                            builder.setPositiveButton(
-                                    android.R.string.ok, new DialogInterface.OnClickListener() {
-                                        public void onClick(DialogInterface dialog, int which) {
-                                            showEnclosure(uri, enclosure, position1, position2);
-                                        }
-                                    });
-                            builder.setNeutralButton(
-                                    R.string.button_alwaysokforall,
-                                    new DialogInterface.OnClickListener() {
-                                        public void onClick(DialogInterface dialog, int which) {
-                                            preferences.edit().putBoolean(
-                                                    Strings.SETTINGS_ENCLOSUREWARNINGSENABLED,
-                                                    false).commit();
-                                            showEnclosure(uri, enclosure, position1, position2);
-                                        }
-                                    });
-                            builder.setNegativeButton(
-                                    android.R.string.cancel,
-                                    new DialogInterface.OnClickListener() {
-                                        public void onClick(DialogInterface dialog, int which) {
-                                            dialog.dismiss();
-                                        }
-                                    });
-                            builder.show();
-                        } else {
-                            showEnclosure(uri, enclosure, position1, position2);
                         }
+                        builder.setCancelable(true);
+                        builder.setPositiveButton(
+                                android.R.string.ok, new DialogInterface.OnClickListener() {
+                                    public void onClick(DialogInterface dialog, int which) {
+                                        showEnclosure(uri, enclosure, position1, position2);
+                                    }
+                                });
+                        builder.setNeutralButton(
+                                R.string.button_alwaysokforall,
+                                new DialogInterface.OnClickListener() {
+                                    public void onClick(DialogInterface dialog, int which) {
+                                        preferences.edit().putBoolean(
+                                                Strings.SETTINGS_ENCLOSUREWARNINGSENABLED,
+                                                false).commit();
+                                        showEnclosure(uri, enclosure, position1, position2);
+                                    }
+                                });
+                        builder.setNegativeButton(
+                                android.R.string.cancel,
+                                new DialogInterface.OnClickListener() {
+                                    public void onClick(DialogInterface dialog, int which) {
+                                        dialog.dismiss();
+                                    }
+                                });
+                        builder.show();
+                    } else {
+                        showEnclosure(uri, enclosure, position1, position2);
                     }
-                });
-            } else {
-                playButton.setVisibility(View.GONE);
-            }
-            entryCursor.close();
-            setupButton(previousButton, false, timestamp);
-            setupButton(nextButton, true, timestamp);
-            webView.scrollTo(scrollX, scrollY); // resets the scrolling
+                }
+            });
         } else {
-            entryCursor.close();
+            playButton.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Loads the neighbour that is likely to be shown next into the spare
+     * web view, so that moving to it shows it at once.
+     */
+    private void preloadSpare() {
+        EntryLoader.Entry entry = movingOn ? successorEntry : predecessorEntry;
+
+        if (entry != null && entry != spareEntry) {
+            entry.text.render(webView0, content, ThemeSetting.isLightColorMode(this));
+            webView0.scrollTo(0, 0);
+            spareEntry = entry;
         }
-		
-		/*
-		new Thread() {
-			public void run() {
-				sendBroadcast(new Intent(Strings.ACTION_UPDATEWIDGET)); // this is slow
-			}
-		}.start();
-		*/
     }
 
     private void showEnclosure(Uri uri, String enclosure, int position1, int position2) {
@@ -631,28 +593,11 @@ public class EntryActivity
         }
     }
 
-    private void setupButton(ImageButton button, final boolean successor, long date) {
-        StringBuilder queryString = new StringBuilder(DATE).append(date).append(AND_ID).append(
-                successor ? '>' : '<').append(_id).append(')').append(OR_DATE).append(
-                successor ? '<' : '>').append(date);
-
-        if (!showRead) {
-            queryString.append(Strings.DB_AND).append(EntriesListAdapter.READDATEISNULL);
-        }
-
-        Cursor cursor = getContentResolver().query(
-                parentUri, new String[]{FeedData.EntryColumns._ID}, queryString.toString(), null,
-                successor ? DESC : ASC);
-        if (cursor == null) {
-            return;
-        }
-
-        if (cursor.moveToFirst()) {
+    private void setupButton(ImageButton button, final boolean successor, String id) {
+        if (id != null) {
             button.setEnabled(true);
             button.setAlpha(BUTTON_ALPHA);
 
-            final String id = cursor.getString(0);
-
             if (successor) {
                 _nextId = id;
             } else {
@@ -668,43 +613,148 @@ public class EntryActivity
                 }
             });
         } else {
-            button.setEnabled(false);
-            button.setAlpha(60);
+            disableButton(button);
         }
-        cursor.close();
     }
 
-    private void switchEntry(
-            String id, boolean animate, Animation inAnimation, Animation outAnimation) {
+    private void disableButton(ImageButton button) {
+        button.setEnabled(false);
+        button.setAlpha(60);
+    }
+
+    private void switchEntry(String id, boolean successor,
+            boolean animate, Animation inAnimation, Animation outAnimation) {
+        EntryLoader.Entry entry = successor ? successorEntry : predecessorEntry;
+
         uri = parentUri.buildUpon().appendPath(id).build();
         getIntent().setData(uri);
+        _id = id;
+        movingOn = successor;
         scrollX = 0;
         scrollY = 0;
 
-        if (animate) {
-            WebView dummy = webView; // switch reference
+        LoadTask task = new LoadTask(successor ? STEP_SUCCESSOR : STEP_PREDECESSOR, entry);
 
-            webView = webView0;
-            webView0 = dummy;
+        if (entry != null) {
+            show(entry, true, animate ? inAnimation : null, animate ? outAnimation : null);
         }
+        start(task);
+    }
 
-        reload();
-
-        if (animate) {
-            viewFlipper.setInAnimation(inAnimation);
-            viewFlipper.setOutAnimation(outAnimation);
-            viewFlipper.addView(webView, layoutParams);
-            viewFlipper.showNext();
-            viewFlipper.removeViewAt(0);
+    /**
+     * Moves the prefetched neighbours one step ahead, so that the next
+     * entry needs no query for its buttons.
+     */
+    private void moveNeighbours(EntryNeighbours ahead, EntryNeighbours behind,
+            EntryLoader.Entry shown, boolean shownDeleted) {
+        ahead.poll();
+        // without read entries the list behind no longer holds the current one
+        if (showRead && !shownDeleted && shown != null) {
+            behind.push(shown.id, shown.date);
         }
     }
 
     private void nextEntry(boolean animate) {
-        switchEntry(_nextId, animate, Animations.SLIDE_IN_RIGHT, Animations.SLIDE_OUT_LEFT);
+        switchEntry(_nextId, true, animate, Animations.SLIDE_IN_RIGHT, Animations.SLIDE_OUT_LEFT);
     }
 
     private void previousEntry(boolean animate) {
-        switchEntry(_previousId, animate, Animations.SLIDE_IN_LEFT, Animations.SLIDE_OUT_RIGHT);
+        switchEntry(_previousId, false, animate, Animations.SLIDE_IN_LEFT, Animations.SLIDE_OUT_RIGHT);
+    }
+
+    /**
+     * Loads an entry unless it has been prefetched, moves the neighbours
+     * along and prefetches the nearest ones.  As the tasks run one after
+     * the other, on a single background thread, they are the only ones to
+     * touch the neighbours and the loader.
+     */
+    private class LoadTask extends AsyncTask<Void, EntryLoader.Entry, EntryLoader.Entry[]> {
+        private final Uri entryUri = uri;
+
+        private final Uri entryParentUri = parentUri;
+
+        private final int step;
+
+        private final EntryLoader.Entry shown = shownEntry;
+
+        private final boolean shownDeleted = currentDeleted;
+
+        /** the entries at hand, which need not be loaded again */
+        private final EntryLoader.Entry[] known = { shownEntry, successorEntry, predecessorEntry, spareEntry };
+
+        /** the loaded entry, or the prefetched one, which is shown already */
+        private EntryLoader.Entry entry;
+
+        private String nextId;
+
+        private String previousId;
+
+        LoadTask(int step, EntryLoader.Entry entry) {
+            this.step = step;
+            this.entry = entry;
+        }
+
+        @Override
+        protected EntryLoader.Entry[] doInBackground(Void... params) {
+            if (step == STEP_SUCCESSOR) {
+                moveNeighbours(successors, predecessors, shown, shownDeleted);
+            } else if (step == STEP_PREDECESSOR) {
+                moveNeighbours(predecessors, successors, shown, shownDeleted);
+            } else {
+                successors.clear();
+                predecessors.clear();
+            }
+            if (entry == null) {
+                entry = loader.load(entryUri);
+                if (entry == null) {
+                    Log.d(TAG, "Nothing to show for " + entryUri);
+                    return null;
+                }
+                publishProgress(entry);
+            }
+            loader.markRead(entry);
+            loader.recordArticleView(entry);
+
+            ContentResolver contentResolver = getContentResolver();
+
+            nextId = successors.first(contentResolver, entryParentUri, showRead, entry.id, entry.date);
+            previousId = predecessors.first(contentResolver, entryParentUri, showRead, entry.id, entry.date);
+            return new EntryLoader.Entry[] { entry, prefetch(nextId), prefetch(previousId) };
+        }
+
+        private EntryLoader.Entry prefetch(String id) {
+            if (id == null || isCancelled()) {
+                return null;
+            }
+            for (EntryLoader.Entry candidate : known) {
+                if (candidate != null && candidate.id.equals(id)) {
+                    return candidate;
+                }
+            }
+            return loader.load(entryParentUri.buildUpon().appendPath(id).build());
+        }
+
+        @Override
+        protected void onProgressUpdate(EntryLoader.Entry... entries) {
+            if (loadTask == this) {
+                show(entries[0], false, null, null);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(EntryLoader.Entry[] entries) {
+            if (loadTask != this) {
+                return;
+            }
+            loadTask = null;
+            if (entries != null) {
+                successorEntry = entries[1];
+                predecessorEntry = entries[2];
+                setupButton(previousButton, false, previousId);
+                setupButton(nextButton, true, nextId);
+                preloadSpare();
+            }
+        }
     }
 
     @Override
@@ -715,6 +765,15 @@ public class EntryActivity
         }
         scrollX = webView.getScrollX();
         scrollY = webView.getScrollY();
+        EntryStateWriter.get(this).flushSoon();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (loadTask != null) {
+            loadTask.cancel(false);
+        }
+        super.onDestroy();
     }
 
     @Override
@@ -740,9 +799,7 @@ public class EntryActivity
             }
             case R.id.menu_delete: {
                 getContentResolver().delete(uri, null, null);
-                if (localPictures) {
-                    FeedData.deletePicturesOfEntry(_id);
-                }
+                currentDeleted = true;
 
                 if (nextButton.isEnabled()) {
                     nextButton.performClick();
@@ -0,0 +1,304 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+
+import net.groboclown.groborss.handler.ArticleStore;
+import net.groboclown.groborss.handler.EntryTextBuilder;
+import net.groboclown.groborss.handler.ImageStore;
+import net.groboclown.groborss.handler.TrackerMatcher;
+import net.groboclown.groborss.provider.FeedData;
+import net.groboclown.groborss.util.EntryBodyCodec;
+import net.groboclown.groborss.util.FeedIconCache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads entries for {@link EntryActivity} off the UI thread, with their
+ * text prepared, so that showing one only has to bind the views and load
+ * the text into a web view.  An instance is used by one loading thread at
+ * a time.
+ */
+class EntryLoader {
+    private static final String[] PROJECTION = {
+            FeedData.EntryColumns._ID, FeedData.EntryColumns.TITLE, FeedData.EntryColumns.DATE,
+            FeedData.EntryColumns.ABSTRACT, FeedData.EntryColumns.ABSTRACT_FORMAT, FeedData.EntryColumns.ABSTRACT_DATA,
+            FeedData.EntryColumns.RENDERED, FeedData.EntryColumns.RENDERED_KEY, FeedData.EntryColumns.LINK,
+            FeedData.EntryColumns.FEED_ID, FeedData.EntryColumns.FAVORITE, FeedData.EntryColumns.READDATE,
+            FeedData.EntryColumns.ENCLOSURE, FeedData.EntryColumns.AUTHOR
+    };
+
+    private static final int TITLE = 1;
+    private static final int DATE = 2;
+    private static final int ABSTRACT = 3;
+    private static final int ABSTRACT_FORMAT = 4;
+    private static final int ABSTRACT_DATA = 5;
+    private static final int RENDERED = 6;
+    private static final int RENDERED_KEY = 7;
+    private static final int LINK = 8;
+    private static final int FEED_ID = 9;
+    private static final int FAVORITE = 10;
+    private static final int READDATE = 11;
+    private static final int ENCLOSURE = 12;
+    private static final int AUTHOR = 13;
+
+    private static final String[] FEED_PROJECTION = {
+            FeedData.FeedColumns._ID, FeedData.FeedColumns.ICON, FeedData.FeedColumns.HOMEPAGE
+    };
+
+    private static final String NO_CONTENT = "<font color='gray'><small><i>No content</i></small></font>";
+
+    /**
+     * An entry ready to be shown.
+     */
+    static final class Entry {
+        final String id;
+
+        final Uri uri;
+
+        String title;
+
+        long date;
+
+        String author;
+
+        int feedId;
+
+        boolean favorite;
+
+        boolean read;
+
+        /** the link of the entry, or the homepage of its feed */
+        String link;
+
+        String enclosure;
+
+        /** the icon of the feed, scaled; null if there is none to show */
+        Bitmap icon;
+
+        EntryTextBuilder text;
+
+        /** whether the text is the article stored from the link */
+        boolean article;
+
+        /** the blob of each cached picture, by url */
+        final Map<String, Long> imageBlobIds = new HashMap<>();
+
+        Entry(String id, Uri uri) {
+            this.id = id;
+            this.uri = uri;
+        }
+    }
+
+    private final Context context;
+
+    private final ContentResolver contentResolver;
+
+    private final SharedPreferences preferences;
+
+    private final FeedIconCache iconCache;
+
+    private final int iconSize;
+
+    /** the icon passed along with the first entry, or null */
+    private byte[] firstIconBytes;
+
+    private int iconFeedId;
+
+    private Bitmap icon;
+
+    /**
+     * @param iconBytes the icon of the feed of the first entry, or null to
+     *      read it along with the entry
+     * @param iconSize the size to scale the feed icons to, or 0 to load no
+     *      icons
+     */
+    EntryLoader(Context context, byte[] iconBytes, int iconSize) {
+        this.context = context.getApplicationContext();
+        this.contentResolver = context.getContentResolver();
+        this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this.iconCache = FeedIconCache.get(context);
+        this.firstIconBytes = iconBytes;
+        this.iconSize = iconSize;
+    }
+
+    /**
+     * Reads the entry and prepares its text.  This must not run on the UI
+     * thread.
+     *
+     * @return the entry, or null if it does not exist (anymore)
+     */
+    Entry load(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, PROJECTION, null, null, null);
+
+        if (cursor == null) {
+            return null;
+        }
+
+        Entry entry;
+
+        String abstractText;
+
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            entry = new Entry(cursor.getString(0), uri);
+            entry.title = cursor.getString(TITLE);
+            entry.date = cursor.getLong(DATE);
+            entry.author = cursor.getString(AUTHOR);
+            entry.feedId = cursor.getInt(FEED_ID);
+            entry.favorite = cursor.getInt(FAVORITE) == 1;
+            entry.read = !cursor.isNull(READDATE);
+            entry.link = cursor.getString(LINK);
+            entry.enclosure = cursor.getString(ENCLOSURE);
+            abstractText = EntryBodyCodec.decode(cursor.getInt(ABSTRACT_FORMAT),
+                    cursor.getString(ABSTRACT), cursor.getBlob(ABSTRACT_DATA));
+            if (abstractText == null) {
+                // Do not directly visit the web page.
+                abstractText = entry.link != null && !entry.link.isEmpty()
+                        ? "<a href='" + entry.link + "'>" + entry.link + "</a>"
+                        : NO_CONTENT;
+            }
+
+            String article = ArticleStore.get(contentResolver, entry.id);
+
+            if (article != null) {
+                // the feed of the entry may only have a teaser
+                abstractText = article;
+                entry.article = true;
+            }
+            entry.text = new EntryTextBuilder()
+                    .withAbstractText(abstractText)
+                    .withEntryId(entry.id)
+                    .withUri(uri)
+                    .withPreferences(preferences)
+                    .withTrackerMatcher(TrackerMatcher.get(context));
+            if (!entry.article) {
+                entry.text.withStoredText(cursor.getBlob(RENDERED), cursor.getString(RENDERED_KEY));
+            }
+        } finally {
+            cursor.close();
+        }
+        loadFeed(entry);
+        entry.text.withCachedImages(ImageStore.getCachedImages(contentResolver, entry.id, entry.imageBlobIds))
+                .prepareText();
+
+        byte[] textToStore = entry.text.getTextToStore();
+
+        if (textToStore != null && !entry.article) {
+            // opening the entry again skips the preparation; the lists do not show it.
+            // The prepared article is not stored, it would not count against the article budget
+            ContentValues values = new ContentValues();
+
+            values.put(FeedData.EntryColumns.RENDERED, textToStore);
+            values.put(FeedData.EntryColumns.RENDERED_KEY, entry.text.getPreparedKey());
+            contentResolver.update(FeedData.SILENT_URI(uri), values, null, null);
+        }
+        return entry;
+    }
+
+    /**
+     * Marks the entry as read, unless it already is.  The change is written
+     * behind.
+     */
+    void markRead(Entry entry) {
+        if (!entry.read) {
+            EntryStateWriter.get(context).markRead(entry.uri, Long.parseLong(entry.id));
+            entry.read = true;
+        }
+    }
+
+    /**
+     * Records that the stored article of the entry has been shown, if it
+     * has one.  This must not run on the UI thread.
+     */
+    void recordArticleView(Entry entry) {
+        if (entry.article) {
+            ArticleStore.recordView(contentResolver, entry.id);
+        }
+    }
+
+    /**
+     * Reads the icon of the feed, unless it is the one of the previous
+     * entry, and its homepage if the entry has no link.
+     */
+    private void loadFeed(Entry entry) {
+        boolean needsIcon = iconSize > 0 && entry.feedId != iconFeedId;
+
+        String feedId = Integer.toString(entry.feedId);
+
+        if (needsIcon) {
+            Bitmap cached = iconCache.get(feedId, iconSize);
+
+            if (cached != null) {
+                icon = cached;
+                iconFeedId = entry.feedId;
+                needsIcon = false;
+            }
+        }
+
+        boolean needsLink = entry.link == null || entry.link.isEmpty();
+
+        byte[] iconBytes = null;
+
+        if (needsIcon && firstIconBytes != null && firstIconBytes.length > 0) {
+            iconBytes = firstIconBytes;
+            needsIcon = false;
+        }
+        firstIconBytes = null;
+        if (needsIcon || needsLink) {
+            Cursor cursor = contentResolver.query(FeedData.FeedColumns.CONTENT_URI(feedId),
+                    FEED_PROJECTION, null, null, null);
+
+            if (cursor != null) {
+                if (cursor.moveToFirst()) {
+                    if (needsIcon) {
+                        iconBytes = cursor.getBlob(1);
+                    }
+                    if (needsLink) {
+                        entry.link = cursor.getString(2);
+                    }
+                }
+                cursor.close();
+            }
+        }
+        if (iconSize > 0 && entry.feedId != iconFeedId) {
+            icon = iconCache.getIcon(feedId, iconBytes, iconSize);
+            iconFeedId = entry.feedId;
+        }
+        entry.icon = icon;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import net.groboclown.groborss.provider.FeedData;
+
+import java.util.ArrayDeque;
+
+/**
+ * The neighbours of the shown entry in one direction of the entry list,
+ * nearest first.  They are fetched a few at a time with a keyset condition
+ * on (date, _id), which the entry indices answer with a range scan in
+ * index order, so a step costs the same at any table size.
+ */
+class EntryNeighbours {
+    /** neighbours fetched per query */
+    private static final int PREFETCH = 8;
+
+    /** neighbours kept when stepping away from them */
+    private static final int MAX_KEPT = 2 * PREFETCH;
+
+    private static final String[] PROJECTION = { FeedData.EntryColumns._ID, FeedData.EntryColumns.DATE };
+
+    private final boolean successors;
+
+    /** {id, date} pairs */
+    private final ArrayDeque<long[]> neighbours = new ArrayDeque<>();
+
+    /** true if there are no neighbours beyond the fetched ones */
+    private boolean complete;
+
+    /**
+     * @param successors true for the older entries, which follow in the
+     *      list, false for the newer ones
+     */
+    EntryNeighbours(boolean successors) {
+        this.successors = successors;
+    }
+
+    void clear() {
+        neighbours.clear();
+        complete = false;
+    }
+
+    /**
+     * @return the id of the nearest neighbour, or null if there is none
+     */
+    String first(ContentResolver contentResolver, Uri parentUri, boolean showRead, String id, long date) {
+        if (neighbours.isEmpty() && !complete) {
+            fetch(contentResolver, parentUri, showRead, Long.parseLong(id), date);
+        }
+        return neighbours.isEmpty() ? null : Long.toString(neighbours.getFirst()[0]);
+    }
+
+    /**
+     * Steps to the nearest neighbour.
+     */
+    void poll() {
+        neighbours.pollFirst();
+    }
+
+    /**
+     * Steps away from the neighbours; the entry that was shown becomes the
+     * nearest one.
+     */
+    void push(String id, long date) {
+        neighbours.addFirst(new long[] { Long.parseLong(id), date });
+        if (neighbours.size() > MAX_KEPT) {
+            neighbours.removeLast();
+            complete = false;
+        }
+    }
+
+    private void fetch(ContentResolver contentResolver, Uri parentUri, boolean showRead, long id, long date) {
+        /* (date, _id) < (X, Y) spelled out: row values need SQLite 3.15 */
+        StringBuilder selection = new StringBuilder(FeedData.EntryColumns.DATE).append(successors ? "<=" : ">=").append(date)
+                .append(Strings.DB_AND).append('(').append(FeedData.EntryColumns.DATE).append(successors ? '<' : '>').append(date)
+                .append(" OR ").append(FeedData.EntryColumns._ID).append(successors ? '<' : '>').append(id).append(')');
+
+        if (!showRead) {
+            selection.append(Strings.DB_AND).append(EntriesListAdapter.READDATEISNULL);
+        }
+
+        String direction = successors ? Strings.DB_DESC : Strings.DB_ASC;
+
+        String order = new StringBuilder(FeedData.EntryColumns.DATE).append(direction).append(", ")
+                .append(FeedData.EntryColumns._ID).append(direction).toString();
+
+        Cursor cursor = contentResolver.query(FeedData.LIMITED_URI(parentUri, PREFETCH), PROJECTION, selection.toString(), null, order);
+
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                neighbours.addLast(new long[] { cursor.getLong(0), cursor.getLong(1) });
+            }
+            complete = cursor.getCount() < PREFETCH;
+        } finally {
+            cursor.close();
+        }
+    }
+}
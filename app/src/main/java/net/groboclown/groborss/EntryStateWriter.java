@@ -0,0 +1,241 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.util.Log;
+
+import net.groboclown.groborss.provider.FeedData;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the read and favorite state of single entries behind the UI.  The
+ * changes are collected in memory, where later changes of an entry replace
+ * earlier ones, and written in one transaction shortly after, or as soon as
+ * the activity showing them is paused.  The lists show the changes right
+ * away through their own overrides.
+ * <p>
+ * Anything that reads or changes the state of many entries at once should
+ * {@link #flush()} first, so that it sees and keeps the pending changes in
+ * the order they were made.
+ */
+public final class EntryStateWriter {
+    private static final String TAG = "EntryStateWriter";
+
+    /** how long changes are collected before they are written */
+    private static final long FLUSH_DELAY = 2000;
+
+    private static final String WHERE_ID = FeedData.EntryColumns._ID + Strings.DB_ARG;
+
+    private static final String WHERE_ID_UNREAD = WHERE_ID + Strings.DB_AND + FeedData.EntryColumns.READDATE + Strings.DB_ISNULL;
+
+    private static EntryStateWriter instance;
+
+    /** the pending change of an entry */
+    private static final class Change {
+        /** the uri the entry is updated through, and whose observers are notified */
+        Uri uri;
+
+        /** null if the read state did not change */
+        Boolean read;
+
+        long readDate;
+
+        /** null if the favorite state did not change */
+        Boolean favorite;
+
+        Change(Uri uri) {
+            this.uri = uri;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final Object writeLock = new Object();
+
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    /** the pending changes, by entry id; guarded by itself */
+    private final Map<Long, Change> changes = new LinkedHashMap<Long, Change>();
+
+    private boolean flushScheduled;
+
+    private EntryStateWriter(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static synchronized EntryStateWriter get(Context context) {
+        if (instance == null) {
+            instance = new EntryStateWriter(context.getApplicationContext().getContentResolver());
+        }
+        return instance;
+    }
+
+    /**
+     * Marks the entry as read, unless it already is.
+     *
+     * @param uri the entries list or the entry itself; the entry is selected
+     *      by its id within it
+     */
+    public void markRead(Uri uri, long entryId) {
+        synchronized (changes) {
+            Change change = change(uri, entryId);
+
+            if (!Boolean.TRUE.equals(change.read)) {
+                change.read = Boolean.TRUE;
+                change.readDate = System.currentTimeMillis();
+            }
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * @see #markRead(Uri, long)
+     */
+    public void markUnread(Uri uri, long entryId) {
+        synchronized (changes) {
+            change(uri, entryId).read = Boolean.FALSE;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * @see #markRead(Uri, long)
+     */
+    public void setFavorite(Uri uri, long entryId, boolean favorite) {
+        synchronized (changes) {
+            change(uri, entryId).favorite = favorite;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Writes the pending changes soon, without waiting for the delay; for
+     * when the activity that made them is paused.
+     */
+    public void flushSoon() {
+        executor.execute(flushTask);
+    }
+
+    /**
+     * Writes the pending changes now.  This must not run on the UI thread.
+     */
+    public void flush() {
+        ArrayList<ContentProviderOperation> operations;
+
+        boolean favorites = false;
+
+        // only one flush writes at a time, so that the changes are written in order
+        synchronized (writeLock) {
+            synchronized (changes) {
+                if (changes.isEmpty()) {
+                    return;
+                }
+                operations = new ArrayList<ContentProviderOperation>(changes.size());
+                for (Map.Entry<Long, Change> entry : changes.entrySet()) {
+                    String[] id = { entry.getKey().toString() };
+
+                    Change change = entry.getValue();
+
+                    if (Boolean.TRUE.equals(change.read)) {
+                        operations.add(ContentProviderOperation.newUpdate(change.uri)
+                                .withValue(FeedData.EntryColumns.READDATE, change.readDate)
+                                .withSelection(WHERE_ID_UNREAD, id).build());
+                    } else if (Boolean.FALSE.equals(change.read)) {
+                        operations.add(ContentProviderOperation.newUpdate(change.uri)
+                                .withValue(FeedData.EntryColumns.READDATE, null)
+                                .withSelection(WHERE_ID, id).build());
+                    }
+                    if (change.favorite != null) {
+                        operations.add(ContentProviderOperation.newUpdate(change.uri)
+                                .withValue(FeedData.EntryColumns.FAVORITE, change.favorite ? 1 : 0)
+                                .withSelection(WHERE_ID, id).build());
+                        favorites = true;
+                    }
+                }
+                changes.clear();
+                flushScheduled = false;
+            }
+            try {
+                contentResolver.applyBatch(FeedData.AUTHORITY, operations);
+            } catch (RemoteException e) {
+                Log.w(TAG, "Could not write " + operations.size() + " entry state changes", e);
+            } catch (OperationApplicationException e) {
+                Log.w(TAG, "Could not write " + operations.size() + " entry state changes", e);
+            }
+        }
+        if (favorites) {
+            // the favorites list does not observe the entries of the feeds
+            contentResolver.notifyChange(FeedData.EntryColumns.FAVORITES_CONTENT_URI, null);
+        }
+    }
+
+    private Change change(Uri uri, long entryId) {
+        Change change = changes.get(entryId);
+
+        if (change == null) {
+            change = new Change(uri);
+            changes.put(entryId, change);
+        } else {
+            change.uri = uri;
+        }
+        return change;
+    }
+
+    private void scheduleFlush() {
+        synchronized (changes) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        executor.schedule(flushTask, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+    }
+}
@@ -45,7 +45,8 @@ public class FeedConfigActivity
             FeedData.FeedColumns.NAME,
             FeedData.FeedColumns.URL,
             FeedData.FeedColumns.WIFIONLY,
-            FeedData.FeedColumns.ENTRY_LINK_IMG_PATTERN
+            FeedData.FeedColumns.ENTRY_LINK_IMG_PATTERN,
+            FeedData.FeedColumns.FETCHARTICLES
     };
 
     private EditText nameEditText;
@@ -54,6 +55,8 @@ public class FeedConfigActivity
 
     private CheckBox refreshOnlyWifiCheckBox;
 
+    private CheckBox fetchArticlesCheckBox;
+
     private EditText entryLinkImgPattern;
 
     @Override
@@ -68,6 +71,7 @@ public class FeedConfigActivity
         nameEditText = findViewById(R.id.feed_title);
         urlEditText = findViewById(R.id.feed_url);
         refreshOnlyWifiCheckBox = findViewById(R.id.wifionlycheckbox);
+        fetchArticlesCheckBox = findViewById(R.id.fetcharticlescheckbox);
         entryLinkImgPattern = findViewById(R.id.feed_entry_link_img_pattern);
 
         if (intent.getAction().equals(Intent.ACTION_INSERT)) {
@@ -99,6 +103,9 @@ public class FeedConfigActivity
                         values.put(
                                 FeedData.FeedColumns.WIFIONLY,
                                 refreshOnlyWifiCheckBox.isChecked() ? 1 : 0);
+                        values.put(
+                                FeedData.FeedColumns.FETCHARTICLES,
+                                fetchArticlesCheckBox.isChecked() ? 1 : 0);
                         values.put(FeedData.FeedColumns.URL, url);
                         values.put(FeedData.FeedColumns.ERROR, (String) null);
 
@@ -130,6 +137,7 @@ public class FeedConfigActivity
                     urlEditText.setText(cursor.getString(1));
                     refreshOnlyWifiCheckBox.setChecked(cursor.getInt(2) == 1);
                     entryLinkImgPattern.setText(cursor.getString(3));
+                    fetchArticlesCheckBox.setChecked(cursor.getInt(4) == 1);
                     cursor.close();
                 } else {
                     cursor.close();
@@ -172,6 +180,9 @@ public class FeedConfigActivity
                         values.put(
                                 FeedData.FeedColumns.WIFIONLY,
                                 refreshOnlyWifiCheckBox.isChecked() ? 1 : 0);
+                        values.put(
+                                FeedData.FeedColumns.FETCHARTICLES,
+                                fetchArticlesCheckBox.isChecked() ? 1 : 0);
                         values.put(
                                 FeedData.FeedColumns.ENTRY_LINK_IMG_PATTERN,
                                 imgPattern.trim().isEmpty() ? null : imgPattern);
@@ -200,6 +211,8 @@ public class FeedConfigActivity
             urlEditText.setText(savedInstanceState.getCharSequence(FeedData.FeedColumns.URL));
             refreshOnlyWifiCheckBox.setChecked(
                     savedInstanceState.getBoolean(FeedData.FeedColumns.WIFIONLY));
+            fetchArticlesCheckBox.setChecked(
+                    savedInstanceState.getBoolean(FeedData.FeedColumns.FETCHARTICLES));
             return true;
         } else {
             return false;
@@ -212,6 +225,7 @@ public class FeedConfigActivity
         outState.putCharSequence(FeedData.FeedColumns.NAME, nameEditText.getText());
         outState.putCharSequence(FeedData.FeedColumns.URL, urlEditText.getText());
         outState.putBoolean(FeedData.FeedColumns.WIFIONLY, refreshOnlyWifiCheckBox.isChecked());
+        outState.putBoolean(FeedData.FeedColumns.FETCHARTICLES, fetchArticlesCheckBox.isChecked());
     }
 
 }
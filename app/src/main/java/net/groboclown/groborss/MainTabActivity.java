@@ -89,6 +89,7 @@ public class MainTabActivity extends TabActivity {
 	    
         //We need to display progress information
         requestWindowFeature(Window.FEATURE_INDETERMINATE_PROGRESS);
+        requestWindowFeature(Window.FEATURE_PROGRESS); // of the tasks of the tabs
         
 	    setContentView(R.layout.tabs);
 	    INSTANCE = this;
@@ -0,0 +1,111 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss;
+
+import android.graphics.Bitmap;
+
+import java.util.List;
+
+/**
+ * What a row of the feed overview shows, loaded in the background, so that
+ * the rows can be compared with the ones shown before.
+ */
+final class OverviewRow {
+    final long id;
+
+    /** the name of the feed, or its url if it has none */
+    final String title;
+
+    final long lastUpdate;
+
+    /** null if the last refresh succeeded */
+    final String error;
+
+    final int unreadCount;
+
+    final int count;
+
+    /** the scaled icon, or null */
+    final Bitmap icon;
+
+    /** whether the feed is refreshed over wifi only; not shown */
+    final boolean wifiOnly;
+
+    OverviewRow(long id, String title, long lastUpdate, String error, int unreadCount, int count, Bitmap icon, boolean wifiOnly) {
+        this.id = id;
+        this.title = title;
+        this.lastUpdate = lastUpdate;
+        this.error = error;
+        this.unreadCount = unreadCount;
+        this.count = count;
+        this.icon = icon;
+        this.wifiOnly = wifiOnly;
+    }
+
+    /**
+     * @return true if the row looks the same as the other one; the icons are
+     *      compared by identity, as they come from the icon cache
+     */
+    boolean looksLike(OverviewRow other) {
+        return id == other.id
+                && lastUpdate == other.lastUpdate
+                && unreadCount == other.unreadCount
+                && count == other.count
+                && icon == other.icon
+                && equal(title, other.title)
+                && equal(error, other.error);
+    }
+
+    /**
+     * @return the number of rows that look different, with their positions
+     *      in the start of positions; or -1 if feeds were added, removed or
+     *      moved, so that the whole list has to be shown again
+     */
+    static int changedPositions(List<OverviewRow> shown, List<OverviewRow> loaded, int[] positions) {
+        if (shown == null || shown.size() != loaded.size()) {
+            return -1;
+        }
+
+        int changed = 0;
+
+        for (int position = 0, n = loaded.size(); position < n; position++) {
+            OverviewRow before = shown.get(position);
+
+            OverviewRow after = loaded.get(position);
+
+            if (before.id != after.id) {
+                return -1;
+            }
+            if (!before.looksLike(after)) {
+                positions[changed++] = position;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -34,7 +34,6 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
@@ -51,6 +50,7 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnCreateContextMenuListener;
 import android.view.View.OnTouchListener;
+import android.view.Window;
 import android.view.WindowManager;
 import android.view.WindowManager.LayoutParams;
 import android.widget.AdapterView;
@@ -60,10 +60,12 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import net.groboclown.groborss.action.OpmlImportAction;
+import net.groboclown.groborss.util.TaskRunner;
 import net.groboclown.groborss.util.ThemeSetting;
 
 import net.groboclown.groborss.provider.FeedData;
 import net.groboclown.groborss.provider.OPML;
+import net.groboclown.groborss.service.MaintenanceService;
 import net.groboclown.groborss.service.RefreshService;
 
 // TODO "ListActivity" is essentially deprecated.
@@ -109,6 +111,9 @@ public class RSSOverview extends ListActivity {
 	
 	private RSSOverviewListAdapter listAdapter;
 	
+	/** shows how far the marking and deleting of entries has got */
+	private final TaskProgress taskProgress = new TaskProgress(this);
+	
     /** Called when the activity is first created. */
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -118,9 +123,11 @@ public class RSSOverview extends ListActivity {
     	if (notificationManager == null) {
         	notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         }
+        requestWindowFeature(Window.FEATURE_PROGRESS); // for the marking and deleting of entries
         setContentView(R.layout.main);
         listAdapter = new RSSOverviewListAdapter(this);
         setListAdapter(listAdapter);
+        listAdapter.startLoading(getListView());
         getListView().setOnCreateContextMenuListener(new OnCreateContextMenuListener() {
 			public void onCreateContextMenu(ContextMenu menu, View view, ContextMenuInfo menuInfo) {
 				menu.setHeaderTitle(((TextView) ((AdapterView.AdapterContextMenuInfo) menuInfo).targetView.findViewById(android.R.id.text1)).getText());
@@ -225,12 +232,9 @@ public class RSSOverview extends ListActivity {
         } else {
         	stopService(new Intent(this, RefreshService.class));
         }
+        MaintenanceService.schedule(this);
         if (PreferenceManager.getDefaultSharedPreferences(this).getBoolean(Strings.SETTINGS_REFRESHONPENENABLED, false)) {
-        	new Thread() {
-				public void run() {
-					sendBroadcast(new Intent(Strings.ACTION_REFRESHFEEDS));
-				}
-        	}.start();
+        	sendBroadcast(new Intent(Strings.ACTION_REFRESHFEEDS));
         }
     }
     
@@ -265,11 +269,7 @@ public class RSSOverview extends ListActivity {
 				break;
 			}
 			case R.id.menu_refresh: {
-				new Thread() {
-					public void run() {
-						sendBroadcast(new Intent(Strings.ACTION_REFRESHFEEDS).putExtra(Strings.SETTINGS_OVERRIDEWIFIONLY, PreferenceManager.getDefaultSharedPreferences(RSSOverview.this).getBoolean(Strings.SETTINGS_OVERRIDEWIFIONLY, false)));
-					}
-				}.start();
+				sendBroadcast(new Intent(Strings.ACTION_REFRESHFEEDS).putExtra(Strings.SETTINGS_OVERRIDEWIFIONLY, PreferenceManager.getDefaultSharedPreferences(RSSOverview.this).getBoolean(Strings.SETTINGS_OVERRIDEWIFIONLY, false)));
 				break;
 			}
 			case CONTEXTMENU_EDIT_ID: {
@@ -277,7 +277,13 @@ public class RSSOverview extends ListActivity {
 				break;
 			}
 			case CONTEXTMENU_REFRESH_ID: {
-				final String id = Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
+				OverviewRow row = listAdapter.findRow(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
+				
+				if (row == null) {
+					break; // deleted meanwhile
+				}
+				
+				final String id = Long.toString(row.id);
 
 				ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
 				
@@ -286,7 +292,7 @@ public class RSSOverview extends ListActivity {
 				if (networkInfo != null && networkInfo.getState() == NetworkInfo.State.CONNECTED) { // since we have acquired the networkInfo, we use it for basic checks
 					final Intent intent = new Intent(Strings.ACTION_REFRESHFEEDS).putExtra(Strings.FEEDID, id);
 					
-					final Thread thread = new Thread() {
+					final Runnable refresh = new Runnable() {
 						public void run() {
 							sendBroadcast(intent);
 						}
@@ -294,91 +300,87 @@ public class RSSOverview extends ListActivity {
 					
 					if (networkInfo.getType() == ConnectivityManager.TYPE_WIFI || PreferenceManager.getDefaultSharedPreferences(RSSOverview.this).getBoolean(Strings.SETTINGS_OVERRIDEWIFIONLY, false)) {
 						intent.putExtra(Strings.SETTINGS_OVERRIDEWIFIONLY, true);
-						thread.start();
+						refresh.run();
+					} else if (!row.wifiOnly) {
+						refresh.run();
 					} else {
-						Cursor cursor = getContentResolver().query(FeedData.FeedColumns.CONTENT_URI(id), new String[] {FeedData.FeedColumns.WIFIONLY}, null, null, null);
+						Builder builder = new AlertDialog.Builder(this);
 						
-						cursor.moveToFirst();
-						
-						if (cursor.isNull(0) || cursor.getInt(0) == 0) {
-							thread.start();
-						} else {
-							Builder builder = new AlertDialog.Builder(this);
-							
-							builder.setIcon(android.R.drawable.ic_dialog_alert);
-							builder.setTitle(R.string.dialog_hint);
-							builder.setMessage(R.string.question_refreshwowifi);
-							builder.setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
-					            public void onClick(DialogInterface dialog, int which) {
-					            	intent.putExtra(Strings.SETTINGS_OVERRIDEWIFIONLY, true);
-					            	thread.start();
-					            }
-					        });
-							builder.setNeutralButton(R.string.button_alwaysokforall, new DialogInterface.OnClickListener() {
-					            public void onClick(DialogInterface dialog, int which) {
-					            	PreferenceManager.getDefaultSharedPreferences(RSSOverview.this).edit().putBoolean(Strings.SETTINGS_OVERRIDEWIFIONLY, true).commit();
-					            	intent.putExtra(Strings.SETTINGS_OVERRIDEWIFIONLY, true);
-					            	thread.start();
-					            }
-					        });
-							builder.setNegativeButton(android.R.string.no, null);
-							builder.show();
-						}
-						cursor.close();
+						builder.setIcon(android.R.drawable.ic_dialog_alert);
+						builder.setTitle(R.string.dialog_hint);
+						builder.setMessage(R.string.question_refreshwowifi);
+						builder.setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
+				            public void onClick(DialogInterface dialog, int which) {
+				            	intent.putExtra(Strings.SETTINGS_OVERRIDEWIFIONLY, true);
+				            	refresh.run();
+				            }
+				        });
+						builder.setNeutralButton(R.string.button_alwaysokforall, new DialogInterface.OnClickListener() {
+				            public void onClick(DialogInterface dialog, int which) {
+				            	PreferenceManager.getDefaultSharedPreferences(RSSOverview.this).edit().putBoolean(Strings.SETTINGS_OVERRIDEWIFIONLY, true).commit();
+				            	intent.putExtra(Strings.SETTINGS_OVERRIDEWIFIONLY, true);
+				            	refresh.run();
+				            }
+				        });
+						builder.setNegativeButton(android.R.string.no, null);
+						builder.show();
 					}
 					
 				}
 				break;
 			}
 			case CONTEXTMENU_DELETE_ID: {
-				String id = Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
+				OverviewRow row = listAdapter.findRow(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
 				
-				Cursor cursor = getContentResolver().query(FeedData.FeedColumns.CONTENT_URI(id), new String[] {FeedData.FeedColumns.NAME}, null, null, null);
+				if (row == null) {
+					break; // deleted meanwhile
+				}
 				
-				cursor.moveToFirst();
+				final String id = Long.toString(row.id);
 				
 				Builder builder = new AlertDialog.Builder(this);
 				
 				builder.setIcon(android.R.drawable.ic_dialog_alert);
-				builder.setTitle(cursor.getString(0));
+				builder.setTitle(row.title);
 				builder.setMessage(R.string.question_deletefeed);
 				builder.setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
 		            public void onClick(DialogInterface dialog, int which) {
-		            	new Thread() {
-		            		public void run() {
-		            			getContentResolver().delete(FeedData.FeedColumns.CONTENT_URI(Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id)), null, null);
+		            	TaskRunner.get().run(new TaskRunner.Task("delete feed", TaskRunner.PRIORITY_HIGH, id) {
+		            		protected void execute() {
+		            			getContentResolver().delete(FeedData.FeedColumns.CONTENT_URI(id), null, null);
 								sendBroadcast(new Intent(Strings.ACTION_UPDATEWIDGET));
 		            		}
-		            	}.start();
+		            	});
 		            }
 		        });
 				builder.setNegativeButton(android.R.string.no, null);
-				cursor.close();
 				builder.show();
 				break;
 			}
 			case CONTEXTMENU_MARKASREAD_ID: {
-				new Thread() {
-					public void run() {
-						String id = Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
-						
-						if (getContentResolver().update(FeedData.EntryColumns.CONTENT_URI(id), getReadContentValues(), new StringBuilder(FeedData.EntryColumns.READDATE).append(Strings.DB_ISNULL).toString(), null) > 0) {
+				final String id = Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
+				
+				TaskRunner.get().run(new EntriesTask("mark feed read", TaskRunner.PRIORITY_NORMAL, id, this) {
+					protected void execute() {
+						EntryStateWriter.get(RSSOverview.this).flush(); // the pending changes come first
+						if (updateEntries(FeedData.EntryColumns.CONTENT_URI(id), new StringBuilder(FeedData.EntryColumns.READDATE).append(Strings.DB_ISNULL).toString(), getReadContentValues()) > 0) {
 							getContentResolver().notifyChange(FeedData.FeedColumns.CONTENT_URI(id), null);
 						}
 					}
-				}.start();
+				}, taskProgress);
 				break;
 			}
 			case CONTEXTMENU_MARKASUNREAD_ID: {
-				new Thread() {
-					public void run() {
-						String id = Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
-						
-						if (getContentResolver().update(FeedData.EntryColumns.CONTENT_URI(id), getUnreadContentValues(), null, null) > 0) {
-							getContentResolver().notifyChange(FeedData.FeedColumns.CONTENT_URI(id), null);;
+				final String id = Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
+				
+				TaskRunner.get().run(new EntriesTask("mark feed unread", TaskRunner.PRIORITY_NORMAL, id, this) {
+					protected void execute() {
+						EntryStateWriter.get(RSSOverview.this).flush();
+						if (updateEntries(FeedData.EntryColumns.CONTENT_URI(id), Strings.READDATE_GREATERZERO, getUnreadContentValues()) > 0) {
+							getContentResolver().notifyChange(FeedData.FeedColumns.CONTENT_URI(id), null);
 						}
 					}
-				}.start();
+				}, taskProgress);
                 break;
 			}
 			case CONTEXTMENU_SETTINGS_ID: {
@@ -386,24 +388,26 @@ public class RSSOverview extends ListActivity {
 				break;
 			}
 			case CONTEXTMENU_DELETEREAD_ID: {
-				new Thread() {
-					public void run() {
-						String id = Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
-						
+				final String id = Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
+				
+				TaskRunner.get().run(new EntriesTask("delete read entries", TaskRunner.PRIORITY_NORMAL, id, this) {
+					protected void execute() {
 						Uri uri = FeedData.EntryColumns.CONTENT_URI(id);
 						
 						String selection = Strings.READDATE_GREATERZERO+Strings.DB_AND+" ("+Strings.DB_EXCUDEFAVORITE+")";
 						
-						FeedData.deletePicturesOfFeed(RSSOverview.this, uri, selection);
-						if (getContentResolver().delete(uri, selection, null) > 0) {
+						EntryStateWriter.get(RSSOverview.this).flush();
+						if (deleteEntries(uri, selection) > 0) {
 							getContentResolver().notifyChange(FeedData.FeedColumns.CONTENT_URI(id), null);
 						}
 					}
-				}.start();
+				}, taskProgress);
 				break;
 			}
 			case CONTEXTMENU_DELETEALLENTRIES_ID: {
-				showDeleteAllEntriesQuestion(this, FeedData.EntryColumns.CONTENT_URI(Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id)));
+				String id = Long.toString(((AdapterView.AdapterContextMenuInfo) item.getMenuInfo()).id);
+				
+				showDeleteAllEntriesQuestion(this, FeedData.EntryColumns.CONTENT_URI(id), id, taskProgress);
 				break;
 			}
 			case CONTEXTMENU_RESETUPDATEDATE_ID: {
@@ -415,18 +419,23 @@ public class RSSOverview extends ListActivity {
 				break;
 			}
 
+			case R.id.menu_search: {
+				onSearchRequested();
+				break;
+			}
 			case R.id.menu_settings: {
 				startActivityForResult(new Intent(this, ApplicationPreferencesActivity.class), ACTIVITY_APPLICATIONPREFERENCES_ID);
 				break;
 			}
 			case R.id.menu_allread: {
-				new Thread() {
-					public void run() {
-						if (getContentResolver().update(FeedData.EntryColumns.CONTENT_URI, getReadContentValues(), new StringBuilder(FeedData.EntryColumns.READDATE).append(Strings.DB_ISNULL).toString(), null) > 0) {
+				TaskRunner.get().run(new EntriesTask("mark all read", TaskRunner.PRIORITY_NORMAL, TaskRunner.KEY_ALL, this) {
+					protected void execute() {
+						EntryStateWriter.get(RSSOverview.this).flush();
+						if (updateEntries(FeedData.EntryColumns.CONTENT_URI, new StringBuilder(FeedData.EntryColumns.READDATE).append(Strings.DB_ISNULL).toString(), getReadContentValues()) > 0) {
 							getContentResolver().notifyChange(FeedData.FeedColumns.CONTENT_URI, null);
 						}
 					}
-				}.start();
+				}, taskProgress);
 				break;
 			}
 			case R.id.menu_about: {
@@ -458,13 +467,11 @@ public class RSSOverview extends ListActivity {
 				break;
 			}
 			case R.id.menu_deleteread: {
-				FeedData.deletePicturesOfFeedAsync(this, FeedData.EntryColumns.CONTENT_URI, Strings.READDATE_GREATERZERO);
 				getContentResolver().delete(FeedData.EntryColumns.CONTENT_URI, Strings.READDATE_GREATERZERO, null);
-				((RSSOverviewListAdapter) getListAdapter()).notifyDataSetChanged();
 				break;
 			}
 			case R.id.menu_deleteallentries: {
-				showDeleteAllEntriesQuestion(this, FeedData.EntryColumns.CONTENT_URI);
+				showDeleteAllEntriesQuestion(this, FeedData.EntryColumns.CONTENT_URI, TaskRunner.KEY_ALL, taskProgress);
 				break;
 			}
 			case R.id.menu_disablefeedsort: {
@@ -553,7 +560,12 @@ public class RSSOverview extends ListActivity {
 		return builder.create();
 	}
 	
-	private static void showDeleteAllEntriesQuestion(final Context context, final Uri uri) {
+	/**
+	 * @param feedId the feed whose entries are deleted, or
+	 *      {@link TaskRunner#KEY_ALL} for all
+	 * @param listener shows the progress of the delete
+	 */
+	private static void showDeleteAllEntriesQuestion(final Context context, final Uri uri, final String feedId, final TaskRunner.Listener listener) {
 		Builder builder = new AlertDialog.Builder(context);
 		
 		builder.setIcon(android.R.drawable.ic_dialog_alert);
@@ -561,14 +573,14 @@ public class RSSOverview extends ListActivity {
 		builder.setMessage(R.string.question_areyousure);
 		builder.setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
             public void onClick(DialogInterface dialog, int which) {
-            	new Thread() {
-					public void run() {
-						FeedData.deletePicturesOfFeed(context, uri, Strings.DB_EXCUDEFAVORITE);
-						if (context.getContentResolver().delete(uri, Strings.DB_EXCUDEFAVORITE, null) > 0) {
+            	TaskRunner.get().run(new EntriesTask("delete all entries", TaskRunner.PRIORITY_NORMAL, feedId, context) {
+					protected void execute() {
+						EntryStateWriter.get(context).flush(); // pending favorites are kept
+						if (deleteEntries(uri, Strings.DB_EXCUDEFAVORITE) > 0) {
 							context.getContentResolver().notifyChange(FeedData.FeedColumns.CONTENT_URI, null);
 						}
 					}
-				}.start();
+				}, listener);
             }
         });
 		builder.setNegativeButton(android.R.string.no, null);
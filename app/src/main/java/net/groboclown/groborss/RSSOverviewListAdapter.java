@@ -26,46 +26,51 @@
 package net.groboclown.groborss;
 
 import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Vector;
 
 import android.app.Activity;
+import android.app.LoaderManager;
+import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.content.Loader;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
-import android.os.Handler;
-import android.util.TypedValue;
+import android.os.Bundle;
 import android.view.View;
-import android.widget.ResourceCursorAdapter;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
 import android.widget.TextView;
 
 import net.groboclown.groborss.provider.FeedData;
+import net.groboclown.groborss.util.FeedIconCache;
 
-public class RSSOverviewListAdapter extends ResourceCursorAdapter {
-	private static final String COUNT_UNREAD = "COUNT(*) - COUNT(readdate)";
+public class RSSOverviewListAdapter extends BaseAdapter implements LoaderManager.LoaderCallbacks<List<OverviewRow>> {
+	private static final int LOADER_ID = 0;
 	
-	private static final String COUNT = "COUNT(*)";
+	/** the feeds are loaded again at most once per 1.5 seconds while they are refreshed */
+	private static final long UPDATE_THROTTLE = 1500;
 	
-	private String COLON;
-	
-	private int nameColumnPosition;
-	
-	private int lastUpdateColumn;
+	private static final String ENTRIES_OF_FEED = new StringBuilder(" FROM entries WHERE entries.").append(FeedData.EntryColumns.FEED_ID).append("=feeds.").append(FeedData.FeedColumns._ID).append(')').toString();
 	
-	private int idPosition;
+	/** the counts come with the feeds, instead of one query per shown row */
+	private static final String[] PROJECTION = {FeedData.FeedColumns._ID, FeedData.FeedColumns.NAME, FeedData.FeedColumns.URL, FeedData.FeedColumns.LASTUPDATE, FeedData.FeedColumns.ERROR, FeedData.FeedColumns.ICON, "(SELECT COUNT(*) - COUNT(" + FeedData.EntryColumns.READDATE + ')' + ENTRIES_OF_FEED, "(SELECT COUNT(*)" + ENTRIES_OF_FEED, FeedData.FeedColumns.WIFIONLY};
 	
-	private int linkPosition;
+	private String COLON;
 	
-	private int errorPosition;
+	private Activity activity;
 	
-	private int iconPosition;
+	private ListView listView;
 	
-	private Handler handler;
+	private List<OverviewRow> rows;
 	
-	private SimpleTask updateTask;
+	/** the changed positions of the last load, reused between loads */
+	private int[] changedPositions;
 	
 	private boolean feedSort;
 	
@@ -76,62 +81,69 @@ public class RSSOverviewListAdapter extends ResourceCursorAdapter {
 	private DateFormat timeFormat;
 	
 	public RSSOverviewListAdapter(Activity activity) {
-		super(activity, R.layout.feedlistitem, activity.managedQuery(FeedData.FeedColumns.CONTENT_URI, null, null, null, null));
-		nameColumnPosition = getCursor().getColumnIndex(FeedData.FeedColumns.NAME);
-		lastUpdateColumn = getCursor().getColumnIndex(FeedData.FeedColumns.LASTUPDATE);
-		idPosition = getCursor().getColumnIndex(FeedData.FeedColumns._ID);
-		linkPosition = getCursor().getColumnIndex(FeedData.FeedColumns.URL);
-		errorPosition = getCursor().getColumnIndex(FeedData.FeedColumns.ERROR);
-		iconPosition = getCursor().getColumnIndex(FeedData.FeedColumns.ICON);
+		this.activity = activity;
+		rows = Collections.emptyList();
+		changedPositions = new int[0];
 		COLON = activity.getString(R.string.colon);
-		handler = new Handler();
-		updateTask = new SimpleTask() {
-			@Override
-			public void runControlled() {
-				RSSOverviewListAdapter.super.onContentChanged();
-				cancel(); // cancel the task such that it does not run more than once without explicit intention
-			}
-			
-			@Override
-			public void postRun() {
-				if (getPostCount() > 1) { // enforce second run even if task is canceled
-					handler.postDelayed(updateTask, 1500);
-				}
-			}
-		};
 		sortViews = new Vector<View>();
 		dateFormat = android.text.format.DateFormat.getDateFormat(activity);
 		timeFormat = android.text.format.DateFormat.getTimeFormat(activity);
 	}
-
+	
+	public int getCount() {
+		return rows.size();
+	}
+	
+	public OverviewRow getItem(int position) {
+		return rows.get(position);
+	}
+	
+	public long getItemId(int position) {
+		return rows.get(position).id;
+	}
+	
+	/**
+	 * @return the shown row of the feed, or null if the feed is not shown
+	 *      (anymore)
+	 */
+	public OverviewRow findRow(long id) {
+		for (int position = 0, n = rows.size(); position < n; position++) {
+			OverviewRow row = rows.get(position);
+			
+			if (row.id == id) {
+				return row;
+			}
+		}
+		return null;
+	}
+	
 	@Override
-	public void bindView(View view, Context context, Cursor cursor) {
+	public boolean hasStableIds() {
+		return true;
+	}
+	
+	public View getView(int position, View convertView, ViewGroup parent) {
+		View view = convertView != null ? convertView : activity.getLayoutInflater().inflate(R.layout.feedlistitem, parent, false);
+		
+		bindView(view, rows.get(position));
+		return view;
+	}
+
+	private void bindView(View view, OverviewRow row) {
 		TextView textView = ((TextView) view.findViewById(android.R.id.text1));
 		
 		textView.setSingleLine();
 		
-		Cursor countCursor = context.getContentResolver().query(FeedData.EntryColumns.CONTENT_URI(cursor.getString(idPosition)), new String[] {COUNT_UNREAD, COUNT}, null, null, null);
-		
-		countCursor.moveToFirst();
-		
-		int unreadCount = countCursor.getInt(0);
-		
-		int count = countCursor.getInt(1);
-		
-		countCursor.close();
-		
-		long timestamp = cursor.getLong(lastUpdateColumn);
-		
 		TextView updateTextView = ((TextView) view.findViewById(android.R.id.text2));;
 		
-		if (cursor.isNull(errorPosition)) {
-			Date date = new Date(timestamp);
+		if (row.error == null) {
+			Date date = new Date(row.lastUpdate);
 			
-			updateTextView.setText(new StringBuilder(context.getString(R.string.update)).append(COLON).append(timestamp == 0 ? context.getString(R.string.never) : new StringBuilder(dateFormat.format(date)).append(' ').append(timeFormat.format(date)).append(Strings.COMMASPACE).append(unreadCount).append('/').append(count).append(' ').append(context.getString(R.string.unread))));
+			updateTextView.setText(new StringBuilder(activity.getString(R.string.update)).append(COLON).append(row.lastUpdate == 0 ? activity.getString(R.string.never) : new StringBuilder(dateFormat.format(date)).append(' ').append(timeFormat.format(date)).append(Strings.COMMASPACE).append(row.unreadCount).append('/').append(row.count).append(' ').append(activity.getString(R.string.unread))));
 		} else {
-			updateTextView.setText(new StringBuilder(context.getString(R.string.error)).append(COLON).append(cursor.getString(errorPosition)));
+			updateTextView.setText(new StringBuilder(activity.getString(R.string.error)).append(COLON).append(row.error));
 		}
-		if (unreadCount > 0) {
+		if (row.unreadCount > 0) {
 			textView.setTypeface(Typeface.DEFAULT_BOLD);
 			textView.setEnabled(true);
 			updateTextView.setEnabled(true);
@@ -141,27 +153,12 @@ public class RSSOverviewListAdapter extends ResourceCursorAdapter {
 			updateTextView.setEnabled(false);
 		}
 		
-		byte[] iconBytes = cursor.getBlob(iconPosition);
-		
-		if (iconBytes != null && iconBytes.length > 0) {
-			Bitmap bitmap = BitmapFactory.decodeByteArray(iconBytes, 0, iconBytes.length);
-			
-			if (bitmap != null && bitmap.getHeight() > 0 && bitmap.getWidth() > 0) {
-				int bitmapSizeInDip = (int)TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 18f, context.getResources().getDisplayMetrics());
-				
-				if (bitmap.getHeight() != bitmapSizeInDip) {
-					bitmap = Bitmap.createScaledBitmap(bitmap, bitmapSizeInDip, bitmapSizeInDip, false);
-				}
-				textView.setCompoundDrawablesWithIntrinsicBounds(new BitmapDrawable(bitmap), null, null, null);
-				textView.setText(" " + (cursor.isNull(nameColumnPosition) ? cursor.getString(linkPosition) : cursor.getString(nameColumnPosition)));
-			} else {
-				textView.setCompoundDrawablesWithIntrinsicBounds(null, null, null, null);
-				textView.setText(cursor.isNull(nameColumnPosition) ? cursor.getString(linkPosition) : cursor.getString(nameColumnPosition));
-			}
+		if (row.icon != null) {
+			textView.setCompoundDrawablesWithIntrinsicBounds(new BitmapDrawable(row.icon), null, null, null);
+			textView.setText(" " + row.title);
 		} else {
-			view.setTag(null);
 			textView.setCompoundDrawablesWithIntrinsicBounds(null, null, null, null);
-			textView.setText(cursor.isNull(nameColumnPosition) ? cursor.getString(linkPosition) : cursor.getString(nameColumnPosition));
+			textView.setText(row.title);
 		}
 		
 		View sortView = view.findViewById(R.id.sortitem);
@@ -171,35 +168,155 @@ public class RSSOverviewListAdapter extends ResourceCursorAdapter {
 		}
 		sortView.setVisibility(feedSort ? View.VISIBLE : View.GONE);
 	}
-
-	@Override
-	protected synchronized void onContentChanged() {
-		/*
-		 * we delay the second(!) content change by 1.5 second such that it gets called at most once per 1.5 seconds 
-		 * to take stress away from the UI and avoid not needed updates
-		 */
-		if (!updateTask.isPosted()) {
-			super.onContentChanged();
-			updateTask.post(2); // we post 2 tasks
-			handler.postDelayed(updateTask, 1500); // waits one second until the task gets unposted
-			updateTask.cancel(); // put the canceled task in the queue to enable it again optionally
+	
+	/**
+	 * Starts loading the feeds in the background, reusing the feeds already
+	 * loaded for the activity.
+	 * 
+	 * @param listView the list showing the feeds, whose changed rows are
+	 *      rebound after a load
+	 */
+	public void startLoading(ListView listView) {
+		this.listView = listView;
+		activity.getLoaderManager().initLoader(LOADER_ID, null, this);
+	}
+	
+	public Loader<List<OverviewRow>> onCreateLoader(int id, Bundle args) {
+		return new OverviewLoader(activity);
+	}
+	
+	public void onLoadFinished(Loader<List<OverviewRow>> loader, List<OverviewRow> loaded) {
+		if (changedPositions.length < loaded.size()) {
+			changedPositions = new int[loaded.size()];
+		}
+		
+		int changed = OverviewRow.changedPositions(rows, loaded, changedPositions);
+		
+		rows = loaded;
+		if (changed < 0 || listView == null) {
+			notifyDataSetChanged();
 		} else {
-			if (updateTask.getPostCount() < 2) {
-				updateTask.post(); // enables the task and adds a new one
-			} else {
-				updateTask.enable();
+			/*
+			 * the same feeds in the same order, so only the visible rows that
+			 * look different are bound again; the others are bound from the
+			 * new rows once they scroll into view
+			 */
+			int firstPosition = listView.getFirstVisiblePosition() - listView.getHeaderViewsCount();
+			
+			for (int n = 0; n < changed; n++) {
+				View view = listView.getChildAt(changedPositions[n] - firstPosition);
+				
+				if (view != null) {
+					bindView(view, loaded.get(changedPositions[n]));
+				}
 			}
 		}
 	}
+	
+	public void onLoaderReset(Loader<List<OverviewRow>> loader) {
+		rows = Collections.emptyList();
+		notifyDataSetChanged();
+	}
 
 	public void setFeedSortEnabled(boolean enabled) {
 		feedSort = enabled;
 		
-		/* we do not want to call notifyDataSetChanged as this requeries the cursor*/
+		/* the rows do not change, so there is no need to bind them again */
 		int visibility = feedSort ? View.VISIBLE : View.GONE;
 		
 		for (View sortView : sortViews) {
 			sortView.setVisibility(visibility);
 		}
 	}
+	
+	/**
+	 * Loads the feeds with their entry counts and icons. A refresh changes
+	 * the feeds and entries many times a second, so the loads are spaced out
+	 * to take stress away from the UI; the changes arriving in between are
+	 * picked up by a single load.
+	 */
+	static class OverviewLoader extends AsyncTaskLoader<List<OverviewRow>> {
+		private final ForceLoadContentObserver observer;
+		
+		private final FeedIconCache iconCache;
+		
+		private final int iconSize;
+		
+		private List<OverviewRow> rows;
+		
+		private boolean observing;
+		
+		OverviewLoader(Context context) {
+			super(context);
+			observer = new ForceLoadContentObserver();
+			iconCache = FeedIconCache.get(context);
+			iconSize = FeedIconCache.getSize(context, 18f);
+			setUpdateThrottle(UPDATE_THROTTLE);
+		}
+		
+		@Override
+		public List<OverviewRow> loadInBackground() {
+			Cursor cursor = getContext().getContentResolver().query(FeedData.FeedColumns.CONTENT_URI, PROJECTION, null, null, null);
+			
+			if (cursor == null) {
+				return Collections.emptyList();
+			}
+			
+			try {
+				List<OverviewRow> loaded = new ArrayList<OverviewRow>(cursor.getCount());
+				
+				while (cursor.moveToNext()) {
+					String id = cursor.getString(0);
+					
+					loaded.add(new OverviewRow(cursor.getLong(0), cursor.isNull(1) ? cursor.getString(2) : cursor.getString(1), cursor.getLong(3), cursor.isNull(4) ? null : cursor.getString(4), cursor.getInt(6), cursor.getInt(7), cursor.isNull(5) ? null : iconCache.getIcon(id, cursor, 5, iconSize), !cursor.isNull(8) && cursor.getInt(8) == 1));
+				}
+				return loaded;
+			} finally {
+				cursor.close();
+			}
+		}
+		
+		@Override
+		public void deliverResult(List<OverviewRow> loaded) {
+			if (isReset()) {
+				return;
+			}
+			rows = loaded;
+			if (isStarted()) {
+				super.deliverResult(loaded);
+			}
+		}
+		
+		@Override
+		protected void onStartLoading() {
+			if (!observing) {
+				/* the entry counts change with the entries of the feeds */
+				getContext().getContentResolver().registerContentObserver(FeedData.FeedColumns.CONTENT_URI, true, observer);
+				getContext().getContentResolver().registerContentObserver(FeedData.EntryColumns.CONTENT_URI, true, observer);
+				observing = true;
+			}
+			if (rows != null) {
+				deliverResult(rows);
+			}
+			if (takeContentChanged() || rows == null) {
+				forceLoad();
+			}
+		}
+		
+		@Override
+		protected void onStopLoading() {
+			cancelLoad();
+		}
+		
+		@Override
+		protected void onReset() {
+			super.onReset();
+			onStopLoading();
+			if (observing) {
+				getContext().getContentResolver().unregisterContentObserver(observer);
+				observing = false;
+			}
+			rows = null;
+		}
+	}
 }
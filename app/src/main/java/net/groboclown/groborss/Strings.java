@@ -55,6 +55,20 @@ public final class Strings {
 	
 	public static final String SETTINGS_FETCHPICTURES = "pictures.fetch";
 	
+	public static final String SETTINGS_PICTURESTORAGE = "pictures.storage";
+	
+	public static final String SETTINGS_PICTUREBUDGET = "pictures.budget";
+	
+	public static final String SETTINGS_PICTUREMAXWIDTH = "pictures.maxwidth";
+	
+	public static final String SETTINGS_PICTUREQUALITY = "pictures.quality";
+	
+	public static final String SETTINGS_ARTICLEBUDGET = "articles.budget";
+	
+	public static final String SETTINGS_COMPRESSENTRIES = "entries.compress";
+	
+	public static final String SETTINGS_PRERENDERENTRIES = "entries.prerender";
+	
 	public static final String SETTINGS_PROXYENABLED = "proxy.enabled";
 	
 	public static final String SETTINGS_PROXYPORT = "proxy.port";
@@ -89,6 +103,8 @@ public final class Strings {
 
 	public static final String SETTINGS_STRIP_WEB_BUGS = "pictures.stripwebbugs";
 	
+	public static final String SETTINGS_TRACKERRULES = "pictures.trackerrules";
+	
 	public static final String ACTION_REFRESHFEEDS = PACKAGE + ".REFRESH";
 	
 	public static final String ACTION_UPDATEWIDGET = PACKAGE + ".FEEDUPDATED";
@@ -101,6 +117,8 @@ public final class Strings {
 	
 	public static final String DB_DESC = " DESC";
 	
+	public static final String DB_ASC = " ASC";
+	
 	public static final String DB_ARG = "=?";
 	
 	public static final String DB_AND = " AND ";
@@ -149,6 +167,12 @@ public final class Strings {
 	
 	public static final String PREFERENCE_LASTSCHEDULEDREFRESH = "lastscheduledrefresh";
 	
+	public static final String PREFERENCE_IMAGECACHE_HITS = "imagecache.hits";
+	
+	public static final String PREFERENCE_IMAGECACHE_MISSES = "imagecache.misses";
+	
+	public static final String PREFERENCE_IMAGECACHE_EVICTIONS = "imagecache.evictions";
+	
 	public static final String HTML_LT = "&lt;";
 	
 	public static final String HTML_GT = "&gt;";
@@ -0,0 +1,70 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss;
+
+import android.app.Activity;
+import android.view.Window;
+
+import net.groboclown.groborss.util.TaskRunner;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Shows the progress of the tasks of an activity in the progress bar of
+ * its window, or of the window of the tabs for an activity shown in a
+ * tab.  The window has to request {@link Window#FEATURE_PROGRESS}.
+ */
+class TaskProgress implements TaskRunner.Listener {
+    private final Activity activity;
+
+    /** the tasks that reported progress and have not finished yet */
+    private final Set<TaskRunner.Task> tasks = new HashSet<TaskRunner.Task>();
+
+    TaskProgress(Activity activity) {
+        this.activity = activity;
+    }
+
+    public void onProgress(TaskRunner.Task task, int done, int total) {
+        Activity window = getWindowActivity();
+
+        tasks.add(task);
+        window.setProgressBarVisibility(true);
+        // the bar hides itself at the end
+        window.setProgress(total > 0 ? (int) ((long) Window.PROGRESS_END * done / total) : Window.PROGRESS_START);
+    }
+
+    public void onFinished(TaskRunner.Task task) {
+        if (tasks.remove(task) && tasks.isEmpty()) {
+            getWindowActivity().setProgressBarVisibility(false);
+        }
+    }
+
+    /** the parent is only known once the activity is created */
+    private Activity getWindowActivity() {
+        return activity.getParent() != null ? activity.getParent() : activity;
+    }
+}
@@ -0,0 +1,372 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Finds the main content of a web page the way a reading mode does: the
+ * block holding the most running text wins, while the text of links,
+ * navigation and scripts does not count.  The content is returned as html
+ * with absolute urls, and without scripts, styles and event handlers.
+ */
+final class ArticleExtractor {
+    /** the running text of the content must be at least this long, or the page has no article */
+    static final int MIN_ARTICLE_LENGTH = 250;
+
+    /** shorter runs of text are labels, buttons and bylines */
+    private static final int MIN_RUN_LENGTH = 25;
+
+    private static final String TAG_LINK = "a";
+    private static final String TAG_IMG = "img";
+    private static final String ATTRIBUTE_SRC = "src";
+    private static final String ATTRIBUTE_LAZY_SRC = "data-src";
+    private static final String ATTRIBUTE_CLASS = "class";
+    private static final String ATTRIBUTE_ID = "id";
+    private static final String ATTRIBUTE_ITEMPROP = "itemprop";
+    private static final String ITEMPROP_ARTICLE = "articleBody";
+    private static final String EVENT_PREFIX = "on";
+    private static final String JAVASCRIPT = "javascript:";
+
+    private static final Set<String> BLOCKS = set("article", "main", "section", "div", "td", "body");
+    private static final Set<String> MAIN_BLOCKS = set("article", "main");
+    private static final Set<String> SKIPPED = set("head", "script", "style", "noscript", "template", "nav",
+            "header", "footer", "aside", "form", "button", "select", "textarea", "iframe", "svg");
+    private static final Set<String> URL_ATTRIBUTES = set("href", "src", "poster");
+    private static final Set<String> DROPPED_ATTRIBUTES = set("style", "class", "id", "srcset", "sizes");
+    private static final String[] POSITIVE_HINTS = { "article", "content", "entry", "post", "story", "text" };
+    private static final String[] NEGATIVE_HINTS = { "comment", "sidebar", "share", "social", "related",
+            "promo", "banner", "menu", "footer", "nav" };
+
+    private static final int KIND_BLOCK = 0;
+    private static final int KIND_SKIPPED = 1;
+    private static final int KIND_LINK = 2;
+
+    /** An open element that matters for the scoring. */
+    private static final class Element {
+        final String tag;
+        final int kind;
+        final int start;
+        final float weight;
+        int end;
+
+        /** the long runs of text directly in the block */
+        int ownText;
+
+        /** half the own text of the child blocks */
+        int childText;
+
+        /** all the text in the block, and the part of it in links */
+        int text;
+        int linkText;
+
+        float score;
+
+        Element(String tag, int kind, int start, float weight) {
+            this.tag = tag;
+            this.kind = kind;
+            this.start = start;
+            this.weight = weight;
+        }
+    }
+
+    private ArticleExtractor() {
+        // utility class
+    }
+
+    /**
+     * @param pageUrl the url of the page, to resolve the relative urls
+     * @return the html of the main content, or null if the page does not
+     *      seem to have one
+     */
+    static String extract(String page, String pageUrl) {
+        List<SimpleHtmlParser.HtmlBit> bits = SimpleHtmlParser.parse(page);
+
+        Element best = findContent(bits);
+
+        if (best == null || best.text - best.linkText < MIN_ARTICLE_LENGTH) {
+            return null;
+        }
+
+        URL base;
+
+        try {
+            base = new URL(pageUrl);
+        } catch (MalformedURLException e) {
+            base = null;
+        }
+        return write(bits, best.start + 1, best.end, base);
+    }
+
+    private static Element findContent(List<SimpleHtmlParser.HtmlBit> bits) {
+        List<Element> open = new ArrayList<>();
+
+        Element best = null;
+
+        int skipped = 0;
+
+        int links = 0;
+
+        for (int n = 0, count = bits.size(); n < count; n++) {
+            SimpleHtmlParser.HtmlBit bit = bits.get(n);
+
+            if (bit.isPlainText()) {
+                Element block = innermostBlock(open);
+
+                if (skipped > 0 || block == null) {
+                    continue;
+                }
+
+                int length = trimmedLength(bit.toString());
+
+                block.text += length;
+                if (links > 0) {
+                    block.linkText += length;
+                } else if (length >= MIN_RUN_LENGTH) {
+                    block.ownText += length;
+                }
+            } else if (bit.isStartTag()) {
+                if (bit.isEndTag()) {
+                    // empty element
+                    continue;
+                }
+
+                String tag = bit.getTag().toLowerCase(Locale.US);
+
+                if (BLOCKS.contains(tag)) {
+                    open.add(new Element(tag, KIND_BLOCK, n, weight(bit, tag)));
+                } else if (SKIPPED.contains(tag)) {
+                    open.add(new Element(tag, KIND_SKIPPED, n, 0));
+                    skipped++;
+                } else if (TAG_LINK.equals(tag)) {
+                    open.add(new Element(tag, KIND_LINK, n, 0));
+                    links++;
+                }
+            } else {
+                String tag = bit.getTag().toLowerCase(Locale.US);
+
+                int index = open.size() - 1;
+
+                while (index >= 0 && !open.get(index).tag.equals(tag)) {
+                    index--;
+                }
+                // an end tag without start is ignored; the ones left open inside end here
+                while (index >= 0 && open.size() > index) {
+                    Element element = open.get(open.size() - 1);
+
+                    if (element.kind == KIND_SKIPPED) {
+                        skipped--;
+                    } else if (element.kind == KIND_LINK) {
+                        links--;
+                    }
+                    best = close(open, n, best);
+                }
+            }
+        }
+        while (!open.isEmpty()) {
+            // the elements left open end with the page
+            best = close(open, bits.size(), best);
+        }
+        return best;
+    }
+
+    /**
+     * Closes the innermost open element, scores it if it is a block and
+     * hands its text on to the enclosing block.
+     *
+     * @return the best block so far
+     */
+    private static Element close(List<Element> open, int end, Element best) {
+        Element element = open.remove(open.size() - 1);
+
+        element.end = end;
+        if (element.kind != KIND_BLOCK || element.text == 0) {
+            return best;
+        }
+        element.score = (element.ownText + element.childText) * element.weight
+                * (1f - (float) element.linkText / element.text);
+
+        Element parent = innermostBlock(open);
+
+        if (parent != null) {
+            parent.text += element.text;
+            parent.linkText += element.linkText;
+            parent.childText += element.ownText / 2;
+        }
+        return best == null || element.score > best.score ? element : best;
+    }
+
+    private static Element innermostBlock(List<Element> open) {
+        for (int n = open.size() - 1; n >= 0; n--) {
+            if (open.get(n).kind == KIND_BLOCK) {
+                return open.get(n);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return how much more likely the block is the content, going by its
+     *      tag and its class and id names
+     */
+    private static float weight(SimpleHtmlParser.HtmlBit bit, String tag) {
+        float weight = MAIN_BLOCKS.contains(tag) ? 1.25f : 1f;
+
+        if (ITEMPROP_ARTICLE.equals(bit.getAttributeValue(ATTRIBUTE_ITEMPROP))) {
+            weight *= 1.5f;
+        }
+
+        String names = names(bit.getAttributeValue(ATTRIBUTE_CLASS), bit.getAttributeValue(ATTRIBUTE_ID));
+
+        for (String hint : NEGATIVE_HINTS) {
+            if (names.contains(hint)) {
+                return weight * 0.5f;
+            }
+        }
+        for (String hint : POSITIVE_HINTS) {
+            if (names.contains(hint)) {
+                return weight * 1.25f;
+            }
+        }
+        return weight;
+    }
+
+    private static String names(String className, String id) {
+        if (className == null) {
+            return id == null ? "" : id.toLowerCase(Locale.US);
+        }
+        return id == null ? className.toLowerCase(Locale.US) : (className + ' ' + id).toLowerCase(Locale.US);
+    }
+
+    private static String write(List<SimpleHtmlParser.HtmlBit> bits, int start, int end, URL base) {
+        StringBuilder html = new StringBuilder();
+
+        String skippedTag = null;
+
+        int skipped = 0;
+
+        for (int n = start; n < end; n++) {
+            SimpleHtmlParser.HtmlBit bit = bits.get(n);
+
+            if (bit.isPlainText()) {
+                if (skipped == 0) {
+                    bit.appendTo(html);
+                }
+                continue;
+            }
+
+            String tag = bit.getTag().toLowerCase(Locale.US);
+
+            if (skipped > 0) {
+                if (tag.equals(skippedTag) && bit.isStartTag() != bit.isEndTag()) {
+                    skipped += bit.isStartTag() ? 1 : -1;
+                }
+            } else if (SKIPPED.contains(tag)) {
+                if (bit.isStartTag() && !bit.isEndTag()) {
+                    skippedTag = tag;
+                    skipped = 1;
+                }
+            } else {
+                if (bit.isStartTag()) {
+                    clean(bit, tag, base);
+                }
+                bit.appendTo(html);
+            }
+        }
+        return html.toString();
+    }
+
+    /**
+     * Removes the scripting and styling from the tag, and makes its urls
+     * absolute.
+     */
+    private static void clean(SimpleHtmlParser.HtmlBit bit, String tag, URL base) {
+        String lazySrc = null;
+
+        boolean hasSrc = false;
+
+        bit.moveToStart();
+        while (bit.nextAttribute()) {
+            String key = bit.getCurrentKey().toLowerCase(Locale.US);
+
+            if (key.startsWith(EVENT_PREFIX) || DROPPED_ATTRIBUTES.contains(key)) {
+                bit.removeCurrent();
+            } else if (URL_ATTRIBUTES.contains(key)) {
+                String value = bit.getCurrentValue();
+
+                if (value == null || value.trim().toLowerCase(Locale.US).startsWith(JAVASCRIPT)) {
+                    bit.removeCurrent();
+                } else {
+                    bit.addExtra(bit.getCurrentKey(), resolve(base, value));
+                    hasSrc |= ATTRIBUTE_SRC.equals(key);
+                }
+            } else if (ATTRIBUTE_LAZY_SRC.equals(key)) {
+                lazySrc = bit.getCurrentValue();
+                bit.removeCurrent();
+            }
+        }
+        if (!hasSrc && lazySrc != null && TAG_IMG.equals(tag)) {
+            // the picture is only loaded by the script of the page
+            bit.addExtra(ATTRIBUTE_SRC, resolve(base, lazySrc));
+        }
+    }
+
+    private static String resolve(URL base, String url) {
+        if (base == null) {
+            return url;
+        }
+        try {
+            return new URL(base, url.trim()).toString();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    private static int trimmedLength(String text) {
+        int start = 0;
+
+        int end = text.length();
+
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end - start;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
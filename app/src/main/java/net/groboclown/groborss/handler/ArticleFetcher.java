@@ -0,0 +1,140 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import net.groboclown.groborss.util.HttpDownload;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the linked pages of entries on a few worker threads, and hands
+ * their main content on to a listener.  When the workers fall behind, the
+ * thread submitting the pages fetches the next one itself, so that the
+ * feeds are not read much faster than their pages.
+ */
+public class ArticleFetcher {
+    /**
+     * Receives the articles, on the worker threads.
+     */
+    public interface Listener {
+        void onArticle(String entryId, String url, String article);
+    }
+
+    private static final int MAX_QUEUED = 32;
+    private static final String THREAD_NAME = "ArticleFetcher";
+
+    private final HttpDownload.Factory httpDownloadFactory;
+    private final Listener listener;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public ArticleFetcher(HttpDownload.Factory httpDownloadFactory, Listener listener, int threads) {
+        this.httpDownloadFactory = httpDownloadFactory;
+        this.listener = listener;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, THREAD_NAME);
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Queues the page of the entry.
+     */
+    public void fetch(final String entryId, final String url) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (load(entryId, url)) {
+                    fetched.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until the queued pages have been fetched; the ones still
+     * queued after the timeout are dropped.
+     *
+     * @return true if all the pages have been fetched
+     */
+    public boolean finish(long timeoutMillis) throws InterruptedException {
+        executor.shutdown();
+        if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+        executor.shutdownNow();
+        return false;
+    }
+
+    /** @return the number of articles handed to the listener */
+    public int getFetchedCount() {
+        return fetched.get();
+    }
+
+    /** @return the number of pages which could not be loaded or had no article */
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    private boolean load(String entryId, String url) {
+        HttpDownload download = null;
+
+        try {
+            download = httpDownloadFactory.connect(url);
+            if (download == null || !download.isHtmlDocument()) {
+                return false;
+            }
+
+            String article = ArticleExtractor.extract(download.getAsString(false), download.getURL().toString());
+
+            if (article == null) {
+                return false;
+            }
+            listener.onArticle(entryId, url, article);
+            return true;
+        } catch (Exception e) {
+            // the entry keeps its text from the feed
+            return false;
+        } finally {
+            if (download != null) {
+                download.disconnect();
+            }
+        }
+    }
+}
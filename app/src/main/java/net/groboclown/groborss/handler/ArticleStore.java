@@ -0,0 +1,147 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+
+import net.groboclown.groborss.Strings;
+import net.groboclown.groborss.provider.FeedData;
+import net.groboclown.groborss.util.EntryBodyCodec;
+
+/**
+ * Stores the articles of the entries for offline reading, deflated.  They
+ * are kept within the configured budget by deleting the least recently
+ * viewed ones; the entry view then shows the text from the feed again.
+ */
+public class ArticleStore implements ArticleFetcher.Listener {
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final String DEFAULT_BUDGET = "10";
+
+    private static final String[] ARTICLE_PROJECTION = { FeedData.ArticleColumns.ARTICLE };
+    private static final String[] TRIM_PROJECTION = { FeedData.ArticleColumns._ID, FeedData.ArticleColumns.SIZE };
+    private static final String ENTRY_SELECTION = FeedData.ArticleColumns.ENTRY_ID + "=?";
+    private static final String TRIM_ORDER = FeedData.ArticleColumns.LASTVIEWED + " DESC";
+
+    private final ContentResolver contentResolver;
+
+    public ArticleStore(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    @Override
+    public void onArticle(String entryId, String url, String article) {
+        byte[] data = EntryBodyCodec.compress(article);
+
+        ContentValues values = new ContentValues();
+
+        values.put(FeedData.ArticleColumns.ENTRY_ID, entryId);
+        values.put(FeedData.ArticleColumns.URL, url);
+        values.put(FeedData.ArticleColumns.ARTICLE, data);
+        values.put(FeedData.ArticleColumns.SIZE, data.length);
+        values.put(FeedData.ArticleColumns.LASTVIEWED, System.currentTimeMillis());
+        contentResolver.insert(FeedData.ArticleColumns.CONTENT_URI, values);
+    }
+
+    /**
+     * @return the stored article of the entry, or null
+     */
+    public static String get(ContentResolver contentResolver, String entryId) {
+        Cursor cursor = contentResolver.query(FeedData.ArticleColumns.CONTENT_URI, ARTICLE_PROJECTION,
+                ENTRY_SELECTION, new String[] { entryId }, null);
+
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? EntryBodyCodec.decompress(cursor.getBlob(0)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records that the article of the entry has been shown, so that it is
+     * kept longer.
+     */
+    public static void recordView(ContentResolver contentResolver, String entryId) {
+        ContentValues values = new ContentValues();
+
+        values.put(FeedData.ArticleColumns.LASTVIEWED, System.currentTimeMillis());
+        contentResolver.update(FeedData.ArticleColumns.CONTENT_URI, values, ENTRY_SELECTION, new String[] { entryId });
+    }
+
+    /**
+     * Deletes the least recently viewed articles until the stored ones fit
+     * into the configured budget.
+     *
+     * @return the number of deleted articles
+     */
+    public static int trim(Context context) {
+        long budget = Long.parseLong(PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(Strings.SETTINGS_ARTICLEBUDGET, DEFAULT_BUDGET)) * MEGABYTE;
+
+        if (budget <= 0) {
+            return 0;
+        }
+
+        ContentResolver contentResolver = context.getContentResolver();
+
+        Cursor cursor = contentResolver.query(FeedData.ArticleColumns.CONTENT_URI, TRIM_PROJECTION, null, null, TRIM_ORDER);
+
+        if (cursor == null) {
+            return 0;
+        }
+
+        StringBuilder selection = new StringBuilder(FeedData.ArticleColumns._ID).append(" IN (");
+
+        int count = 0;
+
+        try {
+            long size = 0;
+
+            while (cursor.moveToNext()) {
+                size += cursor.getLong(1);
+                if (size > budget) {
+                    if (count > 0) {
+                        selection.append(',');
+                    }
+                    selection.append(cursor.getLong(0));
+                    count++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (count > 0) {
+            contentResolver.delete(FeedData.ArticleColumns.CONTENT_URI, selection.append(')').toString(), null);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+/**
+ * A trivial BBCode converter, in one pass over the text.  It gives the same
+ * output as the chain of replacements it took over from, which ran in this
+ * order: the b/u/i/s tags, <tt>[img]url[/img]</tt>, <tt>[url]url[/url]</tt>,
+ * <tt>[code]text[/code]</tt>, and then dropping the center/color/size/img/url/pre
+ * tags that were left.  The later steps only see the text left by the earlier
+ * ones, so a construct that an earlier step converted never ends a later one.
+ * <br>
+ * Implemented such that it doesn't interfere with the HTML stuff, and
+ * without copying text that has no brackets at all.
+ */
+final class BBCodeConverter {
+    private static final String SIMPLE_TAG_NAMES = "buisBUIS";
+    private static final String[] REMOVED_TAG_NAMES = { "center", "color", "size", "img", "url", "pre" };
+    private static final String IMG = "img";
+    private static final String URL = "url";
+    private static final String CODE_START = "[code]";
+    private static final String CODE_END_START = "[/code";
+    private static final String HTTP = "http";
+    private static final String PROTOCOL_SEPARATOR = "://";
+    private static final String URL_END_CHARACTERS = " \n\r\t[]";
+
+    private final String mText;
+    private final int mLength;
+    // no closing bracket after this, which keeps unclosed tags from scanning to the end each time
+    private final int mLastClose;
+    private final StringBuilder mOut;
+
+    private BBCodeConverter(String text, StringBuilder out) {
+        mText = text;
+        mLength = text.length();
+        mLastClose = text.lastIndexOf(']');
+        mOut = out;
+    }
+
+    static String convert(String text) {
+        int first = text.indexOf('[');
+        if (first < 0 || text.indexOf(']', first) < 0) {
+            // nothing that could be a tag
+            return text;
+        }
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        out.append(text, 0, first);
+        new BBCodeConverter(text, out).convert(first, text.length(), -1);
+        return out.toString();
+    }
+
+    /**
+     * @param codeEnd the end of the code block that the text is in, or -1; the
+     *      text of a code block only gets the conversions of the earlier steps
+     * @return the position to go on from; after the end if a left over tag in
+     *      the code block dropped the text up to a closing bracket after it
+     */
+    private int convert(int start, int end, int codeEnd) {
+        int pos = start;
+        while (pos < end) {
+            int open = mText.indexOf('[', pos);
+            if (open < 0 || open >= end) {
+                mOut.append(mText, pos, end);
+                return end;
+            }
+            mOut.append(mText, pos, open);
+            pos = convertTag(open, codeEnd);
+        }
+        return pos;
+    }
+
+    /** @return the position after the converted tag */
+    private int convertTag(int open, int codeEnd) {
+        int end = matchSimple(open);
+        if (end > 0) {
+            mOut.append('<').append(mText, open + 1, end - 1).append('>');
+            return end;
+        }
+        end = matchLink(open, IMG);
+        if (end > 0) {
+            mOut.append("<img src='");
+            convert(open + IMG.length() + 2, end - IMG.length() - 3, -1);
+            mOut.append("'>");
+            return end;
+        }
+        end = matchLink(open, URL);
+        if (end > 0) {
+            int urlStart = open + URL.length() + 2;
+            int urlEnd = end - URL.length() - 3;
+            mOut.append("<a href='");
+            convert(urlStart, urlEnd, -1);
+            mOut.append("'>");
+            convert(urlStart, urlEnd, -1);
+            mOut.append("</a>");
+            return end;
+        }
+        if (codeEnd < 0) {
+            end = matchCode(open);
+            if (end > 0) {
+                int textEnd = end - CODE_END_START.length() - 1;
+                mOut.append("<pre>");
+                int resume = convert(open + CODE_START.length(), textEnd, end);
+                if (resume > textEnd) {
+                    return resume;
+                }
+                mOut.append("</pre>");
+                return end;
+            }
+        }
+        int nameEnd = matchRemovedName(open);
+        if (nameEnd > 0) {
+            // The text of a code block has no closing bracket of its own; the
+            // code step already turned the one that ends the block into </pre>.
+            int close = findClose(codeEnd < 0 ? nameEnd : codeEnd, true);
+            if (close >= 0) {
+                return close + 1;
+            }
+        }
+        mOut.append('[');
+        return open + 1;
+    }
+
+    /** <tt>[b]</tt>, <tt>[/b]</tt> and so on. */
+    private int matchSimple(int open) {
+        int pos = open + 1;
+        if (pos < mLength && mText.charAt(pos) == '/') {
+            pos++;
+        }
+        if (pos + 1 < mLength && mText.charAt(pos + 1) == ']'
+                && SIMPLE_TAG_NAMES.indexOf(mText.charAt(pos)) >= 0) {
+            return pos + 2;
+        }
+        return -1;
+    }
+
+    /** <tt>[name]http://...[/name]</tt> */
+    private int matchLink(int open, String name) {
+        int pos = open + 1;
+        if (!mText.regionMatches(true, pos, name, 0, name.length())) {
+            return -1;
+        }
+        pos += name.length();
+        if (pos >= mLength || mText.charAt(pos) != ']'
+                || !mText.regionMatches(true, ++pos, HTTP, 0, HTTP.length())) {
+            return -1;
+        }
+        pos += HTTP.length();
+        if (pos < mLength && Character.toLowerCase(mText.charAt(pos)) == 's') {
+            pos++;
+        }
+        if (!mText.startsWith(PROTOCOL_SEPARATOR, pos)) {
+            return -1;
+        }
+        pos += PROTOCOL_SEPARATOR.length();
+        int urlStart = pos;
+        while (pos < mLength) {
+            char c = mText.charAt(pos);
+            if (c == '[') {
+                // a b/u/i/s tag is already converted, and its html fits into an url
+                int end = matchSimple(pos);
+                if (end < 0) {
+                    break;
+                }
+                pos = end;
+            } else if (URL_END_CHARACTERS.indexOf(c) < 0) {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (pos == urlStart || pos + name.length() + 3 > mLength
+                || mText.charAt(pos) != '[' || mText.charAt(pos + 1) != '/'
+                || !mText.regionMatches(true, pos + 2, name, 0, name.length())
+                || mText.charAt(pos + name.length() + 2) != ']') {
+            return -1;
+        }
+        return pos + name.length() + 3;
+    }
+
+    /** <tt>[code]...[/code]</tt>, where the text has no closing bracket left. */
+    private int matchCode(int open) {
+        if (!mText.regionMatches(true, open, CODE_START, 0, CODE_START.length())) {
+            return -1;
+        }
+        int start = open + CODE_START.length();
+        int close = findClose(start, false);
+        if (close - CODE_END_START.length() >= start
+                && mText.regionMatches(true, close - CODE_END_START.length(), CODE_END_START, 0, CODE_END_START.length())) {
+            return close + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * A left over center/color/size/img/url/pre tag, which is dropped with
+     * anything up to its closing bracket.
+     *
+     * @return the position after the tag name
+     */
+    private int matchRemovedName(int open) {
+        int pos = open + 1;
+        if (pos < mLength && mText.charAt(pos) == '/') {
+            pos++;
+        }
+        for (String name : REMOVED_TAG_NAMES) {
+            if (mText.regionMatches(true, pos, name, 0, name.length())) {
+                return pos + name.length();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first closing bracket from the position on that an earlier
+     *      step did not convert away, or -1
+     */
+    private int findClose(int pos, boolean afterCode) {
+        while (pos < mLength && pos <= mLastClose) {
+            char c = mText.charAt(pos);
+            if (c == ']') {
+                return pos;
+            }
+            if (c == '[') {
+                int end = matchSimple(pos);
+                if (end < 0) {
+                    end = matchLink(pos, IMG);
+                }
+                if (end < 0) {
+                    end = matchLink(pos, URL);
+                }
+                if (end < 0 && afterCode) {
+                    end = matchCode(pos);
+                }
+                if (end > 0) {
+                    pos = end;
+                    continue;
+                }
+            }
+            pos++;
+        }
+        return -1;
+    }
+}
@@ -32,9 +32,11 @@ import android.view.View;
 import android.webkit.WebView;
 
 import net.groboclown.groborss.Strings;
+import net.groboclown.groborss.util.EntryBodyCodec;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,12 +53,26 @@ public class EntryTextBuilder {
     private static final String BODY_START = "<body>";
     private static final String BODY_END = "<br/><br/><br/><br/></body>";
 
+    /** change whenever {@link #prepare()} produces a different text, to drop the stored ones */
+    private static final String PREPARE_VERSION = "1";
+    private static final int MEMORY_CACHE_ENTRIES = 16;
+    private static final RenderedEntryCache MEMORY_CACHE = new RenderedEntryCache(MEMORY_CACHE_ENTRIES);
+
     private String mEntryId;
     private Uri mUri;
     private SharedPreferences mPreferences;
     private String mAbstractText;
+    private Map<String, String> mCachedImages;
+    private TrackerMatcher mTrackerMatcher = TrackerMatcher.BUILT_IN;
+    private List<String> mShownCachedImages = new ArrayList<>();
+    private int mCachedImageMisses = 0;
     private boolean mHasImages = false;
     private boolean mRendered = false;
+    private byte[] mStoredText;
+    private String mStoredKey;
+    private String mPreparedKey;
+    private byte[] mTextToStore;
+    private String mPreparedText;
 
     public EntryTextBuilder withEntryId(String entryId) {
         this.mEntryId = entryId;
@@ -73,16 +89,49 @@ public class EntryTextBuilder {
         return this;
     }
 
+    /**
+     * @param cachedImages the stored file of each downloaded picture, by
+     *      the url in the entry text; null for a picture whose file has
+     *      been evicted, which is then loaded from the url again
+     */
+    public EntryTextBuilder withCachedImages(Map<String, String> cachedImages) {
+        this.mCachedImages = cachedImages;
+        return this;
+    }
+
+    /**
+     * @param trackerMatcher the rules for the web bugs to strip; the built-in
+     *      rules otherwise
+     */
+    public EntryTextBuilder withTrackerMatcher(TrackerMatcher trackerMatcher) {
+        this.mTrackerMatcher = trackerMatcher;
+        return this;
+    }
+
     public EntryTextBuilder withPreferences(SharedPreferences preferences) {
         this.mPreferences = preferences;
         return this;
     }
 
+    /**
+     * @param storedText the prepared text stored with the entry, deflated
+     * @param storedKey the key the stored text was prepared for
+     */
+    public EntryTextBuilder withStoredText(byte[] storedText, String storedKey) {
+        this.mStoredText = storedText;
+        this.mStoredKey = storedKey;
+        return this;
+    }
+
+    /**
+     * Loads the text into the web view; the text is prepared only once, however
+     * many web views it is loaded into.
+     */
     public void render(WebView webView, View content, boolean isLightColorMode) {
-        if (mRendered || mAbstractText == null || mPreferences == null || mUri == null) {
+        if (mAbstractText == null || mPreferences == null || mUri == null) {
             throw new IllegalStateException();
         }
-        StringBuilder renderedText = prepare();
+        String renderedText = prepareText().mPreparedText;
 
         if (mPreferences.getBoolean(Strings.SETTINGS_DISABLEPICTURES, false)) {
             webView.getSettings().setBlockNetworkImage(true);
@@ -126,6 +175,123 @@ public class EntryTextBuilder {
     }
 
 
+    /**
+     * Prepares the text ahead of {@link #render(WebView, View, boolean)},
+     * which then only has to load it.  Unlike rendering, this can be done
+     * off the UI thread.
+     */
+    public EntryTextBuilder prepareText() {
+        if (mAbstractText == null || mPreferences == null) {
+            throw new IllegalStateException();
+        }
+        if (mPreparedText == null) {
+            mPreparedText = getPreparedText();
+        }
+        return this;
+    }
+
+    /**
+     * @return the urls of the cached pictures which the text refers to
+     */
+    public List<String> getShownCachedImages() {
+        return mShownCachedImages;
+    }
+
+    /**
+     * @return the number of downloaded pictures which the text refers to,
+     *      but whose files have been evicted
+     */
+    public int getCachedImageMisses() {
+        return mCachedImageMisses;
+    }
+
+    /**
+     * Prepares the text ahead of showing it, so that it can be stored with
+     * the entry together with {@link #getPreparedKey()}.
+     *
+     * @return the prepared text, deflated
+     */
+    public byte[] prepareToStore() {
+        if (mAbstractText == null || mPreferences == null) {
+            throw new IllegalStateException();
+        }
+        mTextToStore = EntryBodyCodec.compress(prepare().toString());
+        return mTextToStore;
+    }
+
+    /**
+     * @return the key of the prepared text, which changes with the entry
+     *      text, the cached pictures, the tracker rules and the preferences
+     *      that affect it
+     */
+    public String getPreparedKey() {
+        if (mPreparedKey == null) {
+            boolean stripWebBugs = mPreferences.getBoolean(Strings.SETTINGS_STRIP_WEB_BUGS, false);
+            mPreparedKey = new StringBuilder(PREPARE_VERSION).append(':')
+                    .append(mPreferences.getBoolean(Strings.SETTINGS_DISABLEPICTURES, false) ? '1' : '0')
+                    .append(stripWebBugs ? '1' : '0')
+                    .append(':').append(stripWebBugs ? Integer.toHexString(mTrackerMatcher.getRulesHash()) : Strings.EMPTY)
+                    .append(':').append(Integer.toHexString(mCachedImages == null ? 0 : mCachedImages.hashCode()))
+                    .append(':').append(Integer.toHexString(mAbstractText.hashCode()))
+                    .append(':').append(mAbstractText.length())
+                    .toString();
+        }
+        return mPreparedKey;
+    }
+
+    /**
+     * @return the prepared text, deflated, if it had to be prepared and
+     *      should be stored with the entry; null otherwise
+     */
+    public byte[] getTextToStore() {
+        return mTextToStore;
+    }
+
+    /**
+     * Prepares the text unless it is in the memory cache or stored with the
+     * entry for the same key.
+     */
+    String getPreparedText() {
+        String key = getPreparedKey();
+
+        String text = mEntryId == null ? null : MEMORY_CACHE.get(mEntryId, key);
+
+        if (text == null && mStoredText != null && key.equals(mStoredKey)) {
+            try {
+                text = EntryBodyCodec.decompress(mStoredText);
+            } catch (IllegalArgumentException e) {
+                // prepared again below
+            }
+        }
+        if (text == null) {
+            text = prepare().toString();
+            mTextToStore = EntryBodyCodec.compress(text);
+        } else {
+            // the prepared text refers to all the cached pictures that it was keyed with
+            countCachedImages();
+        }
+        if (mEntryId != null) {
+            MEMORY_CACHE.put(mEntryId, key, text);
+        }
+        return text;
+    }
+
+    private void countCachedImages() {
+        mShownCachedImages = new ArrayList<>();
+        mCachedImageMisses = 0;
+        // like prepare(), which leaves out all pictures when they are disabled
+        if (mCachedImages != null && !mPreferences.getBoolean(Strings.SETTINGS_DISABLEPICTURES, false)) {
+            for (Map.Entry<String, String> image : mCachedImages.entrySet()) {
+                if (image.getValue() != null) {
+                    mShownCachedImages.add(image.getKey());
+                } else {
+                    mCachedImageMisses++;
+                }
+            }
+        }
+        mHasImages = !mShownCachedImages.isEmpty();
+    }
+
     public boolean hasImages() {
         if (!mRendered) {
             throw new IllegalStateException();
@@ -152,35 +318,21 @@ public class EntryTextBuilder {
 
         // Reset our image storage flag
         mHasImages = false;
-
-        // Next, parse the HTML so we can muck about with it.
-        List<SimpleHtmlParser.HtmlBit> htmlBits = SimpleHtmlParser.parse(text);
-        List<SimpleHtmlParser.HtmlBit> finalBits = new ArrayList<>(htmlBits.size());
-        SimpleHtmlParser.HtmlBit prev = null;
-        for (int i = 0; i < htmlBits.size(); i++) {
-            SimpleHtmlParser.HtmlBit current = htmlBits.get(i);
-
-            if (current.isPlainText()) {
-                handlePlainText(current, prev, finalBits);
-            } else if (current.isStartTag()) {
-                // Special tag handling
-                String tag = current.getTag().toLowerCase();
-                if ("img".equals(tag)) {
-                    // Image tag handling
-                    handleImage(current, prev, finalBits, disablePictures);
-                } else {
-                    // A tag we don't need to mangle; just add it back in.
-                    finalBits.add(current);
-                }
-            } else {
-                // End tags are just added in.
-                finalBits.add(current);
-            }
-
-            prev = current;
+        mShownCachedImages = new ArrayList<>();
+        mCachedImageMisses = 0;
+
+        // Next, parse the HTML in one pass through the rewriting stages.
+        SimpleHtmlParser.Rewriter first = new LinkRewriter();
+        SimpleHtmlParser.Rewriter last = first;
+        if (!disablePictures && mPreferences.getBoolean(Strings.SETTINGS_STRIP_WEB_BUGS, false)) {
+            last = last.then(new WebBugRewriter(mTrackerMatcher));
         }
+        SimpleHtmlParser.HtmlWriter writer = last
+                .then(new ImageRewriter(disablePictures))
+                .then(new SimpleHtmlParser.HtmlWriter(text.length() + text.length() / 8));
+        SimpleHtmlParser.parse(text, first);
 
-        return SimpleHtmlParser.toHtml(finalBits);
+        return writer.getHtml();
     }
 
 
@@ -188,120 +340,167 @@ public class EntryTextBuilder {
     private static final Pattern SIMPLE_URL_PATTERN = Pattern.compile(
             "(?:\\s|^)(https?://[^\\s\\[\\]<>]+)(?:\\s|$)",
             Pattern.CASE_INSENSITIVE);
-    void handlePlainText(SimpleHtmlParser.HtmlBit current,
-             SimpleHtmlParser.HtmlBit prevBit, List<SimpleHtmlParser.HtmlBit> output) {
-        // Note that we can't do a simple "is in" check, because we also need to check
-        // the contents if is in.
-        List<String> previousTagAttributes = new ArrayList<>();
-        if (prevBit != null && prevBit.isHtmlTag()) {
-            prevBit.moveToStart();
-            while (prevBit.nextAttribute()) {
-                String value = prevBit.getCurrentValue();
-                if (value != null && !value.isEmpty()) {
-                    previousTagAttributes.add(value);
-                }
+    private static final String URL_MARKER = "://";
+
+    /** Turns plain text URLs into links. */
+    private static class LinkRewriter extends SimpleHtmlParser.Rewriter {
+        // The attribute values of the previous tag; empty if the previous bit was text.
+        private final List<String> mPreviousTagAttributes = new ArrayList<>();
+        private final Matcher mMaybeLink = SIMPLE_URL_PATTERN.matcher(Strings.EMPTY);
+
+        @Override
+        public boolean visit(SimpleHtmlParser.HtmlBit current) {
+            boolean more;
+            if (current.isPlainText() && current.contains(URL_MARKER)) {
+                more = handlePlainText(current.getTag());
+            } else {
+                more = emit(current);
             }
-        }
 
-        String text = current.getTag();
-
-        // handle plain text URLs
-        Matcher maybeLink = SIMPLE_URL_PATTERN.matcher(text);
-        int startPos = 0;
-        int nextSearchStart = 0;
-
-        findLoop: while (maybeLink.find(nextSearchStart)) {
-            int start = maybeLink.start(1);
-            int end = maybeLink.end(1);
-            String url = maybeLink.group(1);
-
-            // If the URL is in the previous tag's list of attributes, then assume that this is
-            // a link to the URL and we shouldn't enclose it in another link.
-            for (String attr : previousTagAttributes) {
-                if (attr.contains(url)) {
-                    // keep looking
-                    nextSearchStart = end;
-                    continue findLoop;
+            // Note that we can't do a simple "is in" check, because we also need to check
+            // the contents if is in.
+            mPreviousTagAttributes.clear();
+            if (current.isHtmlTag()) {
+                current.moveToStart();
+                while (current.nextAttribute()) {
+                    String value = current.getCurrentValue();
+                    if (value != null && !value.isEmpty()) {
+                        mPreviousTagAttributes.add(value);
+                    }
                 }
             }
+            return more;
+        }
 
-            // The previous tag does not have this URL in it, and we know it's a plain text URL,
-            // so wrap it up.
-            // Note that if we want to add in the future more plain text manipulation, this
-            // should stick the pulled out code bits into its own list for later parsing.  That
-            // will make adding back into the output ordering difficult, though.
+        private boolean handlePlainText(String text) {
+            // handle plain text URLs
+            Matcher maybeLink = mMaybeLink.reset(text);
+            int startPos = 0;
+            int nextSearchStart = 0;
+
+            findLoop: while (maybeLink.find(nextSearchStart)) {
+                int start = maybeLink.start(1);
+                int end = maybeLink.end(1);
+                String url = maybeLink.group(1);
+
+                // If the URL is in the previous tag's list of attributes, then assume that this is
+                // a link to the URL and we shouldn't enclose it in another link.
+                for (String attr : mPreviousTagAttributes) {
+                    if (attr.contains(url)) {
+                        // keep looking
+                        nextSearchStart = end;
+                        continue findLoop;
+                    }
+                }
 
-            output.add(SimpleHtmlParser.createSimple(text, startPos, start));
-            output.add(SimpleHtmlParser.createSimple("<a href='" + url + "'>" + url + "</a>"));
-            startPos = end;
-            nextSearchStart = end;
-        }
+                // The previous tag does not have this URL in it, and we know it's a plain text URL,
+                // so wrap it up.
+                if (!emit(text, startPos, start)
+                        || !emit("<a href='" + url + "'>" + url + "</a>")) {
+                    return false;
+                }
+                startPos = end;
+                nextSearchStart = end;
+            }
 
-        if (startPos < text.length()) {
-            output.add(SimpleHtmlParser.createSimple(text, startPos, text.length()));
+            return startPos >= text.length() || emit(text, startPos, text.length());
         }
     }
 
 
 
 
-    private static final Pattern[] TRACKER_SRC_URL_STYLES = {
-            Pattern.compile("/tracking/[^/]*rss-pixel.png\\?")
-    };
+    private static final String IMG = "img";
+    private static final String SRC = "src";
 
-    private void handleImage(SimpleHtmlParser.HtmlBit current, SimpleHtmlParser.HtmlBit prev, List<SimpleHtmlParser.HtmlBit> output, boolean disablePictures) {
-        // Disabled pictures means we don't add the current bit to the output.
-        if (disablePictures) {
-            return;
-        }
+    /** Replaces web bug pictures with a note. */
+    private static class WebBugRewriter extends SimpleHtmlParser.Rewriter {
+        private final TrackerMatcher mTrackerMatcher;
 
+        WebBugRewriter(TrackerMatcher trackerMatcher) {
+            mTrackerMatcher = trackerMatcher;
+        }
 
-        // Remove web bugs
-        String src = current.getAttributeValue("src");
-        if (mPreferences.getBoolean(Strings.SETTINGS_STRIP_WEB_BUGS, false) && isWebBug(current, src)) {
-            // Replace the web bug with fun text.
-            // TODO make this a String values.xml entry.
-            // but that requires a context.
-            output.add(SimpleHtmlParser.createSimple(Strings.BUG_ZAPPED_HTML));
-            // Nothing else to do
-            return;
+        @Override
+        public boolean visit(SimpleHtmlParser.HtmlBit current) {
+            if (current.isStartTag() && current.isTag(IMG)
+                    && isWebBug(current, current.getAttributeValue(SRC), mTrackerMatcher)) {
+                // Replace the web bug with fun text.
+                // TODO make this a String values.xml entry.
+                // but that requires a context.
+                return emit(Strings.BUG_ZAPPED_HTML);
+            }
+            return emit(current);
         }
+    }
 
+    /** Drops the pictures, or points them to the cached files and shows their alt text. */
+    private class ImageRewriter extends SimpleHtmlParser.Rewriter {
+        private final boolean mDisablePictures;
 
-        // Cached image management
-        if (src.contains(Strings.IMAGEID_REPLACEMENT)) {
-            mHasImages = true;
-            current.addExtra("src", src.replace(Strings.IMAGEID_REPLACEMENT, mEntryId + Strings.IMAGEFILE_IDSEPARATOR));
+        ImageRewriter(boolean disablePictures) {
+            mDisablePictures = disablePictures;
         }
 
+        @Override
+        public boolean visit(SimpleHtmlParser.HtmlBit current) {
+            if (!current.isStartTag() || !current.isTag(IMG)) {
+                return emit(current);
+            }
+            // Disabled pictures means we don't add the current bit to the output.
+            if (mDisablePictures) {
+                return true;
+            }
+
 
-        // Show the "alt" and "title" values to the user.
-        // This needs to be last, because it inserts the image into the stream on a match.
-        String altText = null;
-        current.moveToStart();
-        while (current.nextAttribute()) {
-            String key = current.getCurrentKey();
-            if ("alt".equalsIgnoreCase(key)) {
-                altText = current.getCurrentValue();
-                current.removeCurrent();
-            } else if ("title".equalsIgnoreCase(key)) {
-                altText = current.getCurrentValue();
-                current.removeCurrent();
+            // Cached image management
+            String src = current.getAttributeValue(SRC);
+            String cachedUrl = mCachedImages == null || src == null
+                    ? null
+                    : src.replace(Strings.SPACE, Strings.URL_SPACE);
+            if (cachedUrl != null && mCachedImages.containsKey(cachedUrl)) {
+                String cachedFile = mCachedImages.get(cachedUrl);
+                if (cachedFile != null) {
+                    mHasImages = true;
+                    mShownCachedImages.add(cachedUrl);
+                    current.addExtra(SRC, Strings.FILEURL + cachedFile);
+                } else {
+                    // Evicted; the remote url stays in place.
+                    mCachedImageMisses++;
+                }
+            } else if (src != null && src.contains(Strings.IMAGEID_REPLACEMENT)) {
+                // pictures stored before the image store
+                mHasImages = true;
+                current.addExtra(SRC, src.replace(Strings.IMAGEID_REPLACEMENT, mEntryId + Strings.IMAGEFILE_IDSEPARATOR));
             }
-        }
-        if (altText != null && !altText.isEmpty()) {
-            // We've stripped out the alt text, now add it as the next element.
-            output.add(current);
-            output.add(SimpleHtmlParser.createSimple("<br><font color='gray'><smaller><i>" + altText + "</i></smaller></font>"));
-            // Because we just processed the tag, we can't continue to other processing.
-            return;
-        }
 
-        // Completed processing.  The final image can be just added in.
-        output.add(current);
+
+            // Show the "alt" and "title" values to the user.
+            // This needs to be last, because it inserts the image into the stream on a match.
+            String altText = null;
+            current.moveToStart();
+            while (current.nextAttribute()) {
+                String key = current.getCurrentKey();
+                if ("alt".equalsIgnoreCase(key)) {
+                    altText = current.getCurrentValue();
+                    current.removeCurrent();
+                } else if ("title".equalsIgnoreCase(key)) {
+                    altText = current.getCurrentValue();
+                    current.removeCurrent();
+                }
+            }
+            if (altText != null && !altText.isEmpty()) {
+                // We've stripped out the alt text, now add it as the next element.
+                return emit(current)
+                        && emit("<br><font color='gray'><smaller><i>" + altText + "</i></smaller></font>");
+            }
+
+            // Completed processing.  The final image can be just added in.
+            return emit(current);
+        }
     }
 
-    private static boolean isWebBug(SimpleHtmlParser.HtmlBit bit, String srcAttrValue) {
+    private static boolean isWebBug(SimpleHtmlParser.HtmlBit bit, String srcAttrValue, TrackerMatcher trackerMatcher) {
         // Web Bug image size check - the first giveaway.
         String height = bit.getAttributeValue("height");
         String width = bit.getAttributeValue("width");
@@ -310,15 +509,7 @@ public class EntryTextBuilder {
         }
 
         // Check if the URL matches anything we know.
-        if (srcAttrValue != null) {
-            for (Pattern trackerStyle : TRACKER_SRC_URL_STYLES) {
-                if (trackerStyle.matcher(srcAttrValue).find()) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return trackerMatcher.matches(srcAttrValue);
     }
 
     private static boolean isWebBugSize(String size) {
@@ -330,15 +521,8 @@ public class EntryTextBuilder {
     }
 
 
-    // A trivial BBCode converter.  Implemented such that it doesn't
-    // interfere with the HTML stuff.
     static String convertBBCode(String src) {
-        return src
-                .replaceAll("(?i)\\[(/?(b|u|i|s))\\]", "<$1>")
-                .replaceAll("(?i)\\[img\\](https?://[^ \n\r\t\\[\\]]+)\\[/img\\]", "<img src='$1'>")
-                .replaceAll("(?i)\\[url\\](https?://[^ \n\r\t\\[\\]]+)\\[/url\\]", "<a href='$1'>$1</a>")
-                .replaceAll("(?i)\\[code\\]([^\\]]*)\\[/code\\]", "<pre>$1</pre>")
-                .replaceAll("(?i)\\[/?(center|color|size|img|url|pre)[^\\]]*\\]", "");
+        return BBCodeConverter.convert(src);
     }
 
 
@@ -0,0 +1,135 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss.handler;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import net.groboclown.groborss.util.FeedIconCache;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Turns a downloaded favicon into the small png that is stored as the feed
+ * icon, so that showing it is a trivial decode.  Payloads that are not
+ * pictures, such as the html error pages some servers return for
+ * {@code /favicon.ico}, are rejected.
+ */
+public final class FaviconScaler {
+    /** the largest size the icons are shown at, in the entries title and the entry */
+    private static final float ICON_DIP = 24f;
+
+    /** favicons are tiny; anything larger is not worth decoding */
+    static final int MAX_PAYLOAD = 256 * 1024;
+
+    private static final int PNG_QUALITY = 100;
+
+    private FaviconScaler() {
+        // utility class
+    }
+
+    /**
+     * @return the size in pixels to store the icons at
+     */
+    public static int getSize(Context context) {
+        return FeedIconCache.getSize(context, ICON_DIP);
+    }
+
+    /**
+     * @return the icon to store, at most size pixels wide and high, or null
+     *      if the payload is not a picture that can be decoded
+     */
+    public static byte[] scale(byte[] data, int size) {
+        if (data == null || data.length > MAX_PAYLOAD || !isPicture(data)) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = PictureScaler.sampleSize(Math.max(options.outWidth, options.outHeight), size);
+
+        Bitmap bitmap;
+
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (bitmap == null) {
+                return null;
+            }
+            if (bitmap.getWidth() > size || bitmap.getHeight() > size || bitmap.getWidth() != bitmap.getHeight()) {
+                // the icons are shown square, so they are stored that way
+                int side = Math.min(size, Math.max(bitmap.getWidth(), bitmap.getHeight()));
+
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, side, side, true);
+
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                    bitmap = scaled;
+                }
+            }
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            return bitmap.compress(Bitmap.CompressFormat.PNG, PNG_QUALITY, out) ? out.toByteArray() : null;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * @return true if the data starts like one of the picture formats served
+     *      as favicons
+     */
+    static boolean isPicture(byte[] data) {
+        return startsWith(data, 0, 0x89, 'P', 'N', 'G')
+                || startsWith(data, 0, 'G', 'I', 'F', '8')
+                || startsWith(data, 0, 0xff, 0xd8, 0xff)
+                || startsWith(data, 0, 0, 0, 1, 0) // ico
+                || startsWith(data, 0, 'B', 'M')
+                || (startsWith(data, 0, 'R', 'I', 'F', 'F') && startsWith(data, 8, 'W', 'E', 'B', 'P'));
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... magic) {
+        if (data.length < offset + magic.length) {
+            return false;
+        }
+        for (int n = 0; n < magic.length; n++) {
+            if ((data[offset + n] & 0xff) != magic[n]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
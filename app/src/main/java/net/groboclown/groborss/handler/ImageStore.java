@@ -0,0 +1,471 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+
+import net.groboclown.groborss.Strings;
+import net.groboclown.groborss.provider.FeedData;
+import net.groboclown.groborss.provider.FeedDataContentProvider;
+import net.groboclown.groborss.util.HttpDownload;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the pictures of the entries by content.  A url which is already
+ * referenced is not downloaded again, and a download whose content is
+ * already stored only adds a reference to the existing file.
+ * <p>
+ * The files are kept within the configured budget by evicting the least
+ * recently viewed ones; the entry view shows their urls instead, and a
+ * later entry with the same picture downloads it again.
+ */
+public class ImageStore {
+    private static final String HASH_ALGORITHM = "SHA-1";
+    private static final String URL_CHARSET = "UTF-8";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MAX_EXTENSION_LENGTH = 5;
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final String DEFAULT_BUDGET = "100";
+
+    private static final String[] BLOBID_PROJECTION = { FeedData.ImageColumns.BLOB_ID };
+    private static final String[] BLOB_PROJECTION = {
+            FeedData.ImageBlobColumns._ID, FeedData.ImageBlobColumns.FILE };
+    private static final String[] TRIM_PROJECTION = {
+            FeedData.ImageBlobColumns._ID, FeedData.ImageBlobColumns.FILE, FeedData.ImageBlobColumns.SIZE };
+    private static final String[] COUNT_PROJECTION = { "count(*)" };
+    private static final String[] CACHED_IMAGE_PROJECTION = {
+            FeedData.ImageColumns.URL, FeedData.ImageBlobColumns.FILE, FeedData.ImageColumns.BLOB_ID };
+    private static final String CACHED_IMAGE_SELECTION = " and " + FeedData.ImageColumns.BLOB_ID + " is not null";
+    private static final String[] BLOB_STATISTICS_PROJECTION = {
+            "count(*)", "count(" + FeedData.ImageBlobColumns.FILE + ')',
+            "total(CASE WHEN " + FeedData.ImageBlobColumns.FILE + " IS NULL THEN 0 ELSE " + FeedData.ImageBlobColumns.SIZE + " END)" };
+
+    private static final String URL_HASH_SELECTION = FeedData.ImageColumns.URL_HASH + "=? AND "
+            + FeedData.ImageBlobColumns.FILE + " IS NOT NULL";
+    private static final String HASH_SELECTION = FeedData.ImageBlobColumns.HASH + "=?";
+    private static final String REFERENCE_SELECTION = FeedData.ImageColumns.BLOB_ID + " IS NOT NULL";
+    /** the files of older entries are referenced by their path, so they can't fall back to the url */
+    private static final String TRIM_SELECTION = FeedData.ImageBlobColumns.FILE + " IS NOT NULL AND "
+            + FeedData.ImageBlobColumns.HASH + " NOT LIKE '" + FeedData.ImageBlobColumns.HASH_PREFIX_LEGACY + "%'";
+    private static final String TRIM_ORDER = FeedData.ImageBlobColumns.LASTVIEWED + " DESC";
+
+    private final ContentResolver contentResolver;
+    private final HttpDownload.Factory httpDownloadFactory;
+    private final PictureScaler pictureScaler;
+
+    /**
+     * @param pictureScaler scales the pictures before they are stored, or
+     *      null to store them as downloaded
+     */
+    public ImageStore(ContentResolver contentResolver, HttpDownload.Factory httpDownloadFactory, PictureScaler pictureScaler) {
+        this.contentResolver = contentResolver;
+        this.httpDownloadFactory = httpDownloadFactory;
+        this.pictureScaler = pictureScaler;
+    }
+
+    /**
+     * Makes the picture at the url available offline for the entry.
+     *
+     * @return false if the picture could not be downloaded
+     */
+    public boolean addReference(String entryId, String url) throws IOException {
+        String urlHash = hash(url.getBytes(URL_CHARSET));
+
+        Cursor cursor = contentResolver.query(FeedData.ImageColumns.CONTENT_URI, BLOBID_PROJECTION, URL_HASH_SELECTION, new String[] { urlHash }, null);
+
+        long blobId;
+
+        try {
+            blobId = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+        if (blobId < 0) {
+            blobId = download(url);
+            if (blobId < 0) {
+                return false;
+            }
+        }
+
+        ContentValues values = new ContentValues();
+
+        values.put(FeedData.ImageColumns.ENTRY_ID, entryId);
+        values.put(FeedData.ImageColumns.URL, url);
+        values.put(FeedData.ImageColumns.URL_HASH, urlHash);
+        values.put(FeedData.ImageColumns.BLOB_ID, blobId);
+        contentResolver.insert(FeedData.ImageColumns.CONTENT_URI, values);
+        return true;
+    }
+
+    private long download(String url) throws IOException {
+        byte[] data;
+
+        try {
+            HttpDownload connection = httpDownloadFactory.connect(url);
+
+            if (connection == null) {
+                return -1;
+            }
+            try {
+                data = connection.getAsBytes();
+            } finally {
+                connection.disconnect();
+            }
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            throw new IOException(e);
+        }
+
+        // the hash of the picture as served, so that it is stored once whatever the settings
+        String contentHash = hash(data);
+
+        long blobId = -1;
+
+        Cursor cursor = contentResolver.query(FeedData.ImageBlobColumns.CONTENT_URI, BLOB_PROJECTION, HASH_SELECTION, new String[] { contentHash }, null);
+
+        try {
+            if (cursor.moveToFirst()) {
+                if (!cursor.isNull(1)) {
+                    return cursor.getLong(0);
+                }
+                // evicted before, stored again below
+                blobId = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        String extension = getExtension(url);
+
+        if (pictureScaler != null) {
+            PictureScaler.Picture picture = pictureScaler.scale(data);
+
+            if (picture != null) {
+                data = picture.getData();
+                extension = picture.getExtension();
+            }
+        }
+
+        String filename = FeedDataContentProvider.IMAGEFOLDER + contentHash + extension;
+
+        ContentValues values = new ContentValues();
+
+        values.put(FeedData.ImageBlobColumns.FILE, filename);
+        values.put(FeedData.ImageBlobColumns.SIZE, data.length);
+        values.put(FeedData.ImageBlobColumns.LASTVIEWED, System.currentTimeMillis());
+
+        FileOutputStream fos = new FileOutputStream(filename);
+
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+
+        if (blobId > -1) {
+            contentResolver.update(FeedData.ImageBlobColumns.CONTENT_URI, values, FeedData.ImageBlobColumns._ID + '=' + blobId, null);
+            return blobId;
+        }
+        values.put(FeedData.ImageBlobColumns.HASH, contentHash);
+        try {
+            return Long.parseLong(contentResolver.insert(FeedData.ImageBlobColumns.CONTENT_URI, values).getLastPathSegment());
+        } catch (RuntimeException e) {
+            // the same content has been stored by a concurrent refresh
+            cursor = contentResolver.query(FeedData.ImageBlobColumns.CONTENT_URI, BLOB_PROJECTION, HASH_SELECTION, new String[] { contentHash }, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    return cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            new File(filename).delete();
+            throw e;
+        }
+    }
+
+    /**
+     * @param blobIds receives the blob of each picture, by url; may be null
+     * @return the stored file of each downloaded picture of the entry, by
+     *      url, as expected by {@link EntryTextBuilder#withCachedImages(Map)}
+     */
+    public static Map<String, String> getCachedImages(ContentResolver resolver, String entryId, Map<String, Long> blobIds) {
+        Map<String, String> cachedImages = new HashMap<>();
+
+        Cursor cursor = resolver.query(FeedData.ImageColumns.CONTENT_URI, CACHED_IMAGE_PROJECTION,
+                FeedData.ImageColumns.ENTRY_ID + '=' + entryId + CACHED_IMAGE_SELECTION, null, null);
+
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                cachedImages.put(cursor.getString(0), cursor.getString(1));
+                if (blobIds != null) {
+                    blobIds.put(cursor.getString(0), cursor.getLong(2));
+                }
+            }
+            cursor.close();
+        }
+        return cachedImages;
+    }
+
+    /**
+     * Records that the cached pictures have been shown, and that the
+     * misses had to be loaded from the web because they were evicted.
+     */
+    public static void recordViews(Context context, Collection<Long> blobIds, int misses) {
+        if (!blobIds.isEmpty()) {
+            StringBuilder selection = new StringBuilder(FeedData.ImageBlobColumns._ID).append(" IN (");
+
+            boolean first = true;
+
+            for (Long blobId : blobIds) {
+                if (!first) {
+                    selection.append(',');
+                }
+                selection.append(blobId);
+                first = false;
+            }
+
+            ContentValues values = new ContentValues();
+
+            values.put(FeedData.ImageBlobColumns.LASTVIEWED, System.currentTimeMillis());
+            context.getContentResolver().update(FeedData.ImageBlobColumns.CONTENT_URI, values, selection.append(')').toString(), null);
+        }
+        addToCounters(context, blobIds.size(), misses, 0);
+    }
+
+    /**
+     * Evicts the least recently viewed files until the stored pictures fit
+     * into the configured budget.
+     *
+     * @return the number of evicted files
+     */
+    public static int trim(Context context) {
+        long budget = Long.parseLong(PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(Strings.SETTINGS_PICTUREBUDGET, DEFAULT_BUDGET)) * MEGABYTE;
+
+        if (budget <= 0) {
+            return 0;
+        }
+
+        ContentResolver contentResolver = context.getContentResolver();
+
+        Cursor cursor = contentResolver.query(FeedData.ImageBlobColumns.CONTENT_URI, TRIM_PROJECTION, TRIM_SELECTION, null, TRIM_ORDER);
+
+        if (cursor == null) {
+            return 0;
+        }
+
+        StringBuilder selection = new StringBuilder(FeedData.ImageBlobColumns._ID).append(" IN (");
+
+        List<String> files = new ArrayList<>();
+
+        try {
+            long size = 0;
+
+            while (cursor.moveToNext()) {
+                size += cursor.getLong(2);
+                if (size > budget) {
+                    if (!files.isEmpty()) {
+                        selection.append(',');
+                    }
+                    selection.append(cursor.getLong(0));
+                    files.add(cursor.getString(1));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        ContentValues values = new ContentValues();
+
+        values.putNull(FeedData.ImageBlobColumns.FILE);
+        contentResolver.update(FeedData.ImageBlobColumns.CONTENT_URI, values, selection.append(')').toString(), null);
+        for (String file : files) {
+            new File(file).delete();
+        }
+        addToCounters(context, 0, 0, files.size());
+        return files.size();
+    }
+
+    private static synchronized void addToCounters(Context context, int hits, int misses, int evictions) {
+        if (hits == 0 && misses == 0 && evictions == 0) {
+            return;
+        }
+
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        preferences.edit()
+                .putLong(Strings.PREFERENCE_IMAGECACHE_HITS, preferences.getLong(Strings.PREFERENCE_IMAGECACHE_HITS, 0) + hits)
+                .putLong(Strings.PREFERENCE_IMAGECACHE_MISSES, preferences.getLong(Strings.PREFERENCE_IMAGECACHE_MISSES, 0) + misses)
+                .putLong(Strings.PREFERENCE_IMAGECACHE_EVICTIONS, preferences.getLong(Strings.PREFERENCE_IMAGECACHE_EVICTIONS, 0) + evictions)
+                .apply();
+    }
+
+    public static Statistics getStatistics(Context context) {
+        Statistics statistics = new Statistics();
+
+        ContentResolver contentResolver = context.getContentResolver();
+
+        Cursor cursor = contentResolver.query(FeedData.ImageColumns.CONTENT_URI, COUNT_PROJECTION, REFERENCE_SELECTION, null, null);
+
+        try {
+            if (cursor.moveToFirst()) {
+                statistics.references = cursor.getInt(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        cursor = contentResolver.query(FeedData.ImageBlobColumns.CONTENT_URI, BLOB_STATISTICS_PROJECTION, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                statistics.blobs = cursor.getInt(0);
+                statistics.files = cursor.getInt(1);
+                statistics.bytes = cursor.getLong(2);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        statistics.hits = preferences.getLong(Strings.PREFERENCE_IMAGECACHE_HITS, 0);
+        statistics.misses = preferences.getLong(Strings.PREFERENCE_IMAGECACHE_MISSES, 0);
+        statistics.evictions = preferences.getLong(Strings.PREFERENCE_IMAGECACHE_EVICTIONS, 0);
+        return statistics;
+    }
+
+    static String hash(byte[] data) {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every platform provides it
+            throw new IllegalStateException(e);
+        }
+
+        byte[] result = digest.digest(data);
+
+        char[] hex = new char[result.length * 2];
+
+        for (int n = 0; n < result.length; n++) {
+            hex[n * 2] = HEX[(result[n] >> 4) & 0xf];
+            hex[n * 2 + 1] = HEX[result[n] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * @return the extension of the last path segment, with the dot, or an
+     *      empty string; the web view sniffs the picture type anyway
+     */
+    static String getExtension(String url) {
+        int end = url.length();
+
+        for (int n = 0; n < end; n++) {
+            char c = url.charAt(n);
+
+            if (c == '?' || c == '#') {
+                end = n;
+                break;
+            }
+        }
+
+        int dot = url.lastIndexOf('.', end - 1);
+
+        if (dot < 0 || dot < url.lastIndexOf('/', end - 1) || end - dot - 1 > MAX_EXTENSION_LENGTH || end - dot < 2) {
+            return "";
+        }
+        for (int n = dot + 1; n < end; n++) {
+            if (!Character.isLetterOrDigit(url.charAt(n))) {
+                return "";
+            }
+        }
+        return url.substring(dot, end);
+    }
+
+    public static class Statistics {
+        private int references;
+        private int blobs;
+        private int files;
+        private long bytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        /** @return the number of entry pictures */
+        public int getReferences() {
+            return references;
+        }
+
+        /** @return the number of distinct pictures */
+        public int getBlobs() {
+            return blobs;
+        }
+
+        /** @return the number of pictures whose files have not been evicted */
+        public int getFiles() {
+            return files;
+        }
+
+        /** @return the size of the files on disk */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /** @return the entry pictures per distinct picture, 1 without any sharing */
+        public float getDedupRatio() {
+            return blobs == 0 ? 1f : (float) references / blobs;
+        }
+
+        /** @return the percentage of viewed pictures that were shown from the store */
+        public int getHitRate() {
+            return hits + misses == 0 ? 0 : (int) (hits * 100 / (hits + misses));
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.DisplayMetrics;
+
+import net.groboclown.groborss.Strings;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Downscales downloaded pictures to the width they can be shown at and
+ * encodes them again, before they are stored.  Pictures that can't be
+ * made smaller this way are stored as downloaded.
+ */
+public class PictureScaler {
+    /** scale to the size of the display */
+    static final int DISPLAY_WIDTH = 0;
+
+    /** store the pictures as downloaded */
+    static final int KEEP_ORIGINALS = -1;
+
+    private static final String DEFAULT_MAX_WIDTH = Integer.toString(DISPLAY_WIDTH);
+    private static final String DEFAULT_QUALITY = "75";
+
+    private static final String EXTENSION_WEBP = ".webp";
+    private static final String EXTENSION_PNG = ".png";
+
+    /** WebP with an alpha channel needs Android 4.3 to be shown */
+    private static final int WEBP_ALPHA_SDK = 18;
+
+    private static final int EXIF_ORIENTATION = 0x0112;
+    private static final int EXIF_ORIENTATION_NORMAL = 1;
+
+    /**
+     * A picture as it is to be stored.
+     */
+    public static class Picture {
+        private final byte[] data;
+        private final String extension;
+
+        Picture(byte[] data, String extension) {
+            this.data = data;
+            this.extension = extension;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final int maxWidth;
+    private final int quality;
+
+    PictureScaler(int maxWidth, int quality) {
+        this.maxWidth = maxWidth;
+        this.quality = quality;
+    }
+
+    /**
+     * @return the scaler for the user's settings, or null if the pictures
+     *      are to be stored as downloaded
+     */
+    public static PictureScaler get(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        int maxWidth = Integer.parseInt(preferences.getString(Strings.SETTINGS_PICTUREMAXWIDTH, DEFAULT_MAX_WIDTH));
+
+        if (maxWidth == KEEP_ORIGINALS) {
+            return null;
+        }
+        if (maxWidth == DISPLAY_WIDTH) {
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+
+            // the entry may be read in either orientation
+            maxWidth = Math.max(metrics.widthPixels, metrics.heightPixels);
+        }
+        return new PictureScaler(maxWidth,
+                Integer.parseInt(preferences.getString(Strings.SETTINGS_PICTUREQUALITY, DEFAULT_QUALITY)));
+    }
+
+    /**
+     * @return the picture to store instead of the downloaded one, or null to
+     *      store the downloaded one
+     */
+    public Picture scale(byte[] data) {
+        if (isAnimatedGif(data) || exifOrientation(data) > EXIF_ORIENTATION_NORMAL) {
+            // the animation or the rotation would be lost
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            // not a picture that android can decode, such as svg
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, maxWidth);
+
+        Bitmap bitmap;
+
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (bitmap == null) {
+                return null;
+            }
+            if (bitmap.getWidth() > maxWidth) {
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, maxWidth,
+                        scaledHeight(bitmap.getWidth(), bitmap.getHeight(), maxWidth), true);
+
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                    bitmap = scaled;
+                }
+            }
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+
+        try {
+            Bitmap.CompressFormat format;
+
+            String extension;
+
+            if (!bitmap.hasAlpha() || Build.VERSION.SDK_INT >= WEBP_ALPHA_SDK) {
+                format = Bitmap.CompressFormat.WEBP;
+                extension = EXTENSION_WEBP;
+            } else {
+                format = Bitmap.CompressFormat.PNG;
+                extension = EXTENSION_PNG;
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+
+            if (!bitmap.compress(format, quality, out)) {
+                return null;
+            }
+
+            byte[] encoded = out.toByteArray();
+
+            // a picture that needs no downscaling may well be smaller as served
+            return encoded.length < data.length ? new Picture(encoded, extension) : null;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * @return the largest power of two to divide the width by while decoding
+     *      without going below the maximum width
+     */
+    static int sampleSize(int width, int maxWidth) {
+        int sampleSize = 1;
+
+        while (width / (sampleSize * 2) >= maxWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    static int scaledHeight(int width, int height, int maxWidth) {
+        return Math.max(1, (int) ((long) height * maxWidth / width));
+    }
+
+    /**
+     * @return true for a gif with more than one frame
+     */
+    static boolean isAnimatedGif(byte[] data) {
+        if (data.length < 13 || data[0] != 'G' || data[1] != 'I' || data[2] != 'F') {
+            return false;
+        }
+
+        int pos = 13;
+
+        if ((data[10] & 0x80) != 0) {
+            pos += 3 << ((data[10] & 7) + 1); // global color table
+        }
+
+        int frames = 0;
+
+        while (pos < data.length) {
+            int block = data[pos] & 0xff;
+
+            if (block == 0x2c) { // image
+                if (++frames > 1) {
+                    return true;
+                }
+                if (pos + 10 > data.length) {
+                    return false;
+                }
+
+                int flags = data[pos + 9];
+
+                pos += 10;
+                if ((flags & 0x80) != 0) {
+                    pos += 3 << ((flags & 7) + 1); // local color table
+                }
+                pos++; // lzw code size
+            } else if (block == 0x21) { // extension
+                pos += 2;
+            } else {
+                return false;
+            }
+            // data sub-blocks
+            while (pos < data.length && data[pos] != 0) {
+                pos += (data[pos] & 0xff) + 1;
+            }
+            pos++;
+        }
+        return false;
+    }
+
+    /**
+     * @return the exif orientation of a jpeg, or 0 if it has none
+     */
+    static int exifOrientation(byte[] data) {
+        if (data.length < 4 || (data[0] & 0xff) != 0xff || (data[1] & 0xff) != 0xd8) {
+            return 0;
+        }
+
+        int pos = 2;
+
+        while (pos + 4 <= data.length && (data[pos] & 0xff) == 0xff) {
+            int marker = data[pos + 1] & 0xff;
+
+            int length = readShort(data, pos + 2, true);
+
+            if (marker == 0xda || length < 2) { // start of scan, the segments are over
+                return 0;
+            }
+            if (marker == 0xe1 && pos + 10 <= data.length && data[pos + 4] == 'E' && data[pos + 5] == 'x'
+                    && data[pos + 6] == 'i' && data[pos + 7] == 'f') {
+                return tiffOrientation(data, pos + 10, Math.min(data.length, pos + 2 + length));
+            }
+            pos += 2 + length;
+        }
+        return 0;
+    }
+
+    private static int tiffOrientation(byte[] data, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return 0;
+        }
+
+        boolean bigEndian = data[tiff] == 'M';
+
+        int ifd = tiff + readInt(data, tiff + 4, bigEndian);
+
+        if (ifd < tiff || ifd + 2 > end) {
+            return 0;
+        }
+
+        int entries = readShort(data, ifd, bigEndian);
+
+        for (int n = 0; n < entries; n++) {
+            int entry = ifd + 2 + n * 12;
+
+            if (entry + 12 > end) {
+                return 0;
+            }
+            if (readShort(data, entry, bigEndian) == EXIF_ORIENTATION) {
+                return readShort(data, entry + 8, bigEndian);
+            }
+        }
+        return 0;
+    }
+
+    private static int readShort(byte[] data, int pos, boolean bigEndian) {
+        int a = data[pos] & 0xff;
+        int b = data[pos + 1] & 0xff;
+
+        return bigEndian ? (a << 8) | b : (b << 8) | a;
+    }
+
+    private static int readInt(byte[] data, int pos, boolean bigEndian) {
+        return bigEndian
+                ? (readShort(data, pos, true) << 16) | readShort(data, pos + 2, true)
+                : (readShort(data, pos + 2, false) << 16) | readShort(data, pos, false);
+    }
+}
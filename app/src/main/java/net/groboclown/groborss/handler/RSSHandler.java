@@ -27,6 +27,7 @@ package net.groboclown.groborss.handler;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
@@ -43,7 +44,6 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
@@ -151,8 +151,6 @@ public class RSSHandler extends DefaultHandler {
 	
 	private static final String GMT = "GMT";
 	
-	private static final StringBuilder DB_FAVORITE  = new StringBuilder(" AND (").append(Strings.DB_EXCUDEFAVORITE).append(')');
-
     // middle () is group 1; s* is important for non-whitespaces; ' also usable
 	private static final Pattern IMG_PATTERN = Pattern.compile("<img src=\\s*['\"]([^'\"]+)['\"][^>]*>");
 	
@@ -233,8 +231,15 @@ public class RSSHandler extends DefaultHandler {
 
     private HttpDownload.Factory httpDownloadFactory;
 
+    private ImageStore imageStore;
+
+    private ArticleFetcher articleFetcher;
+
+    private SharedPreferences preferences;
+
     public RSSHandler(Context context) {
-		KEEP_TIME = Long.parseLong(PreferenceManager.getDefaultSharedPreferences(context).getString(Strings.SETTINGS_KEEPTIME, "4"))*86400000L;
+		preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		KEEP_TIME = Long.parseLong(preferences.getString(Strings.SETTINGS_KEEPTIME, "4"))*86400000L;
 		this.context = context;
 		this.efficientFeedParsing = true;
 	}
@@ -246,13 +251,7 @@ public class RSSHandler extends DefaultHandler {
 		this.lastUpdateDate = lastUpdateDate;
 		this.id = id;
 		feedEntiresUri = FeedData.EntryColumns.CONTENT_URI(id);
-		
-		final String query = FeedData.EntryColumns.DATE
-                + '<' + keepDateBorderTime + DB_FAVORITE;
-		
-		FeedData.deletePicturesOfFeed(context, feedEntiresUri, query);
-		
-		context.getContentResolver().delete(feedEntiresUri, query, null);
+		// entries older than the border are purged by the MaintenanceService
 		newCount = 0;
 		feedRefreshed = false;
 		feedTitle = title;
@@ -512,16 +511,13 @@ public class RSSHandler extends DefaultHandler {
 
                             Matcher matcher = IMG_PATTERN.matcher(description);
 
+                            // the description keeps the remote urls; the entry view maps them to the stored files
                             while (matcher.find()) {
                                 String match = matcher.group(1).replace(Strings.SPACE, Strings.URL_SPACE);
 
-                                images.add(match);
-                                descriptionString = descriptionString.replace(
-                                        match,
-                                        Strings.FILEURL
-                                                + FeedDataContentProvider.IMAGEFOLDER
-                                                + Strings.IMAGEID_REPLACEMENT
-                                                + match.substring(match.lastIndexOf('/') + 1));
+                                if (!images.contains(match)) {
+                                    images.add(match);
+                                }
                             }
                         }
 
@@ -530,20 +526,10 @@ public class RSSHandler extends DefaultHandler {
                         StringBuilder pullSrcText = new StringBuilder();
                         if (imageUrlAndAltText[0] != null) {
                             // TODO move HTML markup to Strings.
-                            addlDescription.append("<img src='");
-                            if (fetchImages) {
+                            addlDescription.append("<img src='").append(imageUrlAndAltText[0]).append("'>");
+                            if (fetchImages && !images.contains(imageUrlAndAltText[0])) {
                                 images.add(imageUrlAndAltText[0]);
-                                addlDescription
-                                        .append(Strings.FILEURL)
-                                        .append(FeedDataContentProvider.IMAGEFOLDER)
-                                        .append(Strings.IMAGEID_REPLACEMENT)
-                                        .append(
-                                                imageUrlAndAltText[0].substring(
-                                                        imageUrlAndAltText[0].lastIndexOf('/') + 1));
-                            } else {
-                                addlDescription.append(imageUrlAndAltText[0]);
                             }
-                            addlDescription.append("'>");
                             pullSrcText.append("<font color='gray'><smaller><i>image pulled from RSS entry link</i></smaller></font>");
                         } else if (! entryLinkImagePattern.isEmpty()) {
                             // Want an image for this feed, but didn't find one.
@@ -620,38 +606,34 @@ public class RSSHandler extends DefaultHandler {
 						values.put(FeedData.EntryColumns.DATE, now--);
 					}
 					
+					String abstractText = values.getAsString(FeedData.EntryColumns.ABSTRACT);
 					String entryId = context.getContentResolver().insert(feedEntiresUri, values).getLastPathSegment();
 					
 					if (fetchImages) {
                         FeedDataContentProvider.IMAGEFOLDER_FILE.mkdir(); // create images dir
+						if (imageStore == null) {
+							imageStore = new ImageStore(context.getContentResolver(), httpDownloadFactory, PictureScaler.get(context));
+						}
+						TrackerMatcher trackerMatcher = preferences.getBoolean(Strings.SETTINGS_STRIP_WEB_BUGS, false) ? TrackerMatcher.get(context) : null;
+						
 						for (int n = 0, i = images != null ? images.size() : 0; n < i; n++) {
-							String filename = null;
+							if (trackerMatcher != null && trackerMatcher.matches(images.get(n))) {
+								// the web bug is stripped from the entry, so there is no need to fetch it
+								continue;
+							}
 							try {
-								String match = images.get(n);
-								filename = FeedDataContentProvider.IMAGEFOLDER + entryId
-										+ Strings.IMAGEFILE_IDSEPARATOR
-										+ match.substring(match.lastIndexOf('/') + 1);
-
-                                HttpDownload connection = httpDownloadFactory.connect(images.get(n));
-                                if (connection != null) {
-                                    try {
-                                        byte[] data = connection.getAsBytes();
-
-                                        FileOutputStream fos = new FileOutputStream(filename);
-                                        try {
-                                            fos.write(data);
-                                        } finally {
-                                            fos.close();
-                                        }
-                                    } finally {
-                                        connection.disconnect();
-                                    }
-                                }
+								imageStore.addReference(entryId, images.get(n));
 							} catch (Exception e) {
-								Log.w(LOG_TAG, "Problem saving file " + filename, e);
+								Log.w(LOG_TAG, "Problem saving picture " + images.get(n), e);
 							}
 						}
 					}
+					if (articleFetcher != null && !entryLinkString.isEmpty()) {
+						articleFetcher.fetch(entryId, entryLinkString);
+					}
+					if (abstractText != null && preferences.getBoolean(Strings.SETTINGS_PRERENDERENTRIES, false)) {
+						prerender(entryId, abstractText);
+					}
 					
 					newCount++;
 				} else if (entryDate == null && efficientFeedParsing) {
@@ -688,32 +670,38 @@ public class RSSHandler extends DefaultHandler {
                 HttpDownload connection = httpDownloadFactory.connect(entryLinkString);
                 if (connection != null) {
                     referred = connection.getURL();
-                    imgSearch:
-                    for (SimpleHtmlParser.HtmlBit bit : SimpleHtmlParser.parse(connection.getAsString(false))) {
-                        if (bit.isStartTag() && "img".equalsIgnoreCase(bit.getTag())) {
-                            String src = bit.getAttributeValue("src");
-                            if (src != null) {
-                                for (Pattern pattern : entryLinkImagePattern) {
-                                    if (pattern.matcher(src).matches()) {
-                                        imageUrl = src;
-                                        String alt = bit.getAttributeValue("alt");
-                                        if (alt == null) {
-                                            alt = bit.getAttributeValue("title");
-                                        }
-                                        if (alt != null) {
-                                            alt = alt.trim();
-                                            if (alt.isEmpty()) {
-                                                alt = null;
+                    final String[] found = new String[2];
+                    SimpleHtmlParser.parse(connection.getAsString(false), new SimpleHtmlParser.Visitor() {
+                        @Override
+                        public boolean visit(SimpleHtmlParser.HtmlBit bit) {
+                            if (bit.isStartTag() && bit.isTag("img")) {
+                                String src = bit.getAttributeValue("src");
+                                if (src != null) {
+                                    for (Pattern pattern : entryLinkImagePattern) {
+                                        if (pattern.matcher(src).matches()) {
+                                            found[0] = src;
+                                            String alt = bit.getAttributeValue("alt");
+                                            if (alt == null) {
+                                                alt = bit.getAttributeValue("title");
+                                            }
+                                            if (alt != null) {
+                                                alt = alt.trim();
+                                                if (alt.isEmpty()) {
+                                                    alt = null;
+                                                }
                                             }
+                                            found[1] = alt;
+                                            // stop parsing the rest of the page
+                                            return false;
                                         }
-                                        imageAltText = alt;
-                                        break imgSearch;
                                     }
                                 }
                             }
+                            return true;
                         }
-                    }
-
+                    });
+                    imageUrl = found[0];
+                    imageAltText = found[1];
                 }
             } catch (IOException | KeyManagementException | NoSuchAlgorithmException e) {
                 Log.w(LOG_TAG, "Problem reading link " + entryLinkString, e);
@@ -788,6 +776,29 @@ public class RSSHandler extends DefaultHandler {
 		inputStream = null;
 	}
 	
+	/**
+	 * Stores the entry text prepared for display, keyed like the entry view
+	 * does, so that opening the entry skips the preparation.
+	 */
+	private void prerender(String entryId, String abstractText) {
+		try {
+			EntryTextBuilder entryText = new EntryTextBuilder()
+					.withEntryId(entryId)
+					.withAbstractText(abstractText)
+					.withCachedImages(ImageStore.getCachedImages(context.getContentResolver(), entryId, null))
+					.withPreferences(preferences)
+					.withTrackerMatcher(TrackerMatcher.get(context));
+			
+			ContentValues values = new ContentValues();
+			
+			values.put(FeedData.EntryColumns.RENDERED, entryText.prepareToStore());
+			values.put(FeedData.EntryColumns.RENDERED_KEY, entryText.getPreparedKey());
+			context.getContentResolver().update(FeedData.SILENT_URI(FeedData.EntryColumns.ENTRY_CONTENT_URI(entryId)), values, null, null);
+		} catch (Exception e) {
+			Log.w(LOG_TAG, "Problem preparing entry " + entryId, e);
+		}
+	}
+	
 	private void cancel() {
 		if (!cancelled) {
 			cancelled = true;
@@ -876,4 +887,12 @@ public class RSSHandler extends DefaultHandler {
         this.httpDownloadFactory = httpDownloadFactory;
     }
 
+    /**
+     * @param articleFetcher fetches the linked pages of the new entries of
+     *      the feed, or null to store none
+     */
+    public void setArticleFetcher(@Nullable ArticleFetcher articleFetcher) {
+        this.articleFetcher = articleFetcher;
+    }
+
 }
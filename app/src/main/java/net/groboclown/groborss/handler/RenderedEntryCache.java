@@ -0,0 +1,57 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The most recently prepared entry texts, so that flipping between entries
+ * does not prepare them again.  Each text is stored with the key it was
+ * prepared for, and is only returned for the same key.
+ */
+class RenderedEntryCache {
+    private final LinkedHashMap<String, String[]> entries;
+
+    RenderedEntryCache(final int maxEntries) {
+        entries = new LinkedHashMap<String, String[]>(maxEntries + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized String get(String entryId, String key) {
+        String[] entry = entries.get(entryId);
+
+        return entry != null && entry[0].equals(key) ? entry[1] : null;
+    }
+
+    synchronized void put(String entryId, String key, String text) {
+        entries.put(entryId, new String[] { key, text });
+    }
+}
@@ -43,18 +43,25 @@ import static java.lang.Character.isWhitespace;
  * The old way of doing things with regular expressions didn't scale.
  */
 class SimpleHtmlParser {
-    // For memory size reduction.  The HTML element is parsed up into an array
-    private static final int HTML_POS_INDEX_TAG_START = 0;
-    private static final int HTML_POS_INDEX_TAG_END = 1;
-    private static final int HTML_POS_INDEX_ATTRIBUTES_START = 2;
-    private static final int HTML_POS_ATTR_INDEX_KEY_START = 0;
-    private static final int HTML_POS_ATTR_INDEX_KEY_END = 1;
-    private static final int HTML_POS_ATTR_INDEX_VALUE_QUOTE_CHAR_TYPE = 2;
-    private static final int HTML_POS_ATTR_INDEX_VALUE_START = 3;
-    private static final int HTML_POS_ATTR_INDEX_VALUE_END = 4;
-    private static final int HTML_POS_ATTR_SIZE = 5;
-    private static final int HTML_POS_ATTR_COUNT = 30;
-    private static final int HTML_POS_SIZE = HTML_POS_INDEX_ATTRIBUTES_START + (HTML_POS_ATTR_SIZE * HTML_POS_ATTR_COUNT);
+    // For memory size reduction.  The HTML elements are parsed into one int array per text,
+    // each element a record of a header followed by its attributes.
+    private static final int TOKEN_INDEX_FLAGS = 0;
+    private static final int TOKEN_INDEX_TAG_START = 1;
+    private static final int TOKEN_INDEX_TAG_END = 2;
+    private static final int TOKEN_INDEX_ATTRIBUTE_COUNT = 3;
+    private static final int TOKEN_INDEX_ATTRIBUTES_START = 4;
+    private static final int TOKEN_ATTR_INDEX_KEY_START = 0;
+    private static final int TOKEN_ATTR_INDEX_KEY_END = 1;
+    private static final int TOKEN_ATTR_INDEX_VALUE_QUOTE_CHAR_TYPE = 2;
+    private static final int TOKEN_ATTR_INDEX_VALUE_START = 3;
+    private static final int TOKEN_ATTR_INDEX_VALUE_END = 4;
+    private static final int TOKEN_ATTR_SIZE = 5;
+
+    private static final int FLAG_TAG_START = 1;
+    private static final int FLAG_TAG_END = 2;
+
+    // a record for every few characters is plenty for the usual markup
+    private static final int TOKENS_PER_CHARACTER_DIVISOR = 4;
 
     private static final int QUOTE_CHAR_SINGLE = 0;
     private static final int QUOTE_CHAR_DOUBLE = 1;
@@ -62,80 +69,232 @@ class SimpleHtmlParser {
     private static final char[] QUOTE_CHAR_TYPES = { '\'', '"', '\'' };
 
 
-    /** A really simple mText snippet.  It has a single string to minimize memory. */
-    static class HtmlBit {
-        private boolean mIsTagStart = false;
-        private boolean mIsTagEnd = false;
+    /**
+     * The parsed elements of one text, in a single growable int array.  The parser
+     * builds the record at the end of the array, and {@link #close()} hands out a
+     * {@link HtmlBit} view over it.
+     * <br>
+     * A streaming token stream keeps only the one record, and hands out the same
+     * view for every element; it is overwritten by the next element.
+     */
+    static final class TokenStream {
         private final String mText;
-        private int[] mHtmlPos = new int[HTML_POS_SIZE];
-        private int mAttributeCount = 0;
+        private final boolean mStreaming;
+        private int[] mTokens;
+        private int mSize = 0;
+        private HtmlBit mStreamedBit;
+        private boolean mStreamedBitVisited = false;
+
+        TokenStream(String text, int capacity) {
+            this(text, capacity, false);
+        }
+
+        TokenStream(String text, int capacity, boolean streaming) {
+            this.mText = text;
+            this.mStreaming = streaming;
+            this.mTokens = new int[Math.max(capacity, TOKEN_INDEX_ATTRIBUTES_START)];
+        }
+
+        /** @return the number of ints used by the closed records */
+        int size() {
+            return mSize;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > mTokens.length) {
+                int[] tokens = new int[Math.max(capacity, mTokens.length * 2)];
+                System.arraycopy(mTokens, 0, tokens, 0, mTokens.length);
+                mTokens = tokens;
+            }
+        }
+
+        /** Starts over the streamed record once its view has been visited. */
+        private void reuseRecord() {
+            if (mStreamedBitVisited) {
+                mStreamedBitVisited = false;
+                mTokens[TOKEN_INDEX_FLAGS] = 0;
+                mTokens[TOKEN_INDEX_ATTRIBUTE_COUNT] = 0;
+            }
+        }
+
+        private int recordLength() {
+            return TOKEN_INDEX_ATTRIBUTES_START + mTokens[mSize + TOKEN_INDEX_ATTRIBUTE_COUNT] * TOKEN_ATTR_SIZE;
+        }
+
+        private TokenStream buildPlainText(int startPos, int endPos) {
+            reuseRecord();
+            mTokens[mSize + TOKEN_INDEX_FLAGS] = 0;
+            mTokens[mSize + TOKEN_INDEX_TAG_START] = startPos;
+            mTokens[mSize + TOKEN_INDEX_TAG_END] = endPos;
+            mTokens[mSize + TOKEN_INDEX_ATTRIBUTE_COUNT] = 0;
+            return this;
+        }
+
+        private TokenStream buildTag(int startPos, int endPos) {
+            reuseRecord();
+            mTokens[mSize + TOKEN_INDEX_TAG_START] = startPos;
+            mTokens[mSize + TOKEN_INDEX_TAG_END] = endPos;
+            return this;
+        }
+
+        private TokenStream buildOpenTag() {
+            reuseRecord();
+            mTokens[mSize + TOKEN_INDEX_FLAGS] |= FLAG_TAG_START;
+            return this;
+        }
+
+        private TokenStream buildCloseTag() {
+            reuseRecord();
+            mTokens[mSize + TOKEN_INDEX_FLAGS] |= FLAG_TAG_END;
+            return this;
+        }
+
+        private TokenStream buildNextAttributeKey(int keyStartPos, int keyEndPos) {
+            reuseRecord();
+            int attributePos = mSize + recordLength();
+            ensureCapacity(attributePos + TOKEN_ATTR_SIZE);
+            mTokens[mSize + TOKEN_INDEX_ATTRIBUTE_COUNT]++;
+
+            mTokens[attributePos + TOKEN_ATTR_INDEX_KEY_START] = keyStartPos;
+            mTokens[attributePos + TOKEN_ATTR_INDEX_KEY_END] = keyEndPos;
+
+            // Initialize the value to does-not-exist
+            mTokens[attributePos + TOKEN_ATTR_INDEX_VALUE_START] = -1;
+            return this;
+        }
+
+        private TokenStream buildNextAttributeValue(int quoteCharType, int valueStartPos, int valueEndPos) {
+            reuseRecord();
+            int attributePos = mSize + recordLength() - TOKEN_ATTR_SIZE;
+            mTokens[attributePos + TOKEN_ATTR_INDEX_VALUE_QUOTE_CHAR_TYPE] = quoteCharType;
+            mTokens[attributePos + TOKEN_ATTR_INDEX_VALUE_START] = valueStartPos;
+            mTokens[attributePos + TOKEN_ATTR_INDEX_VALUE_END] = valueEndPos;
+            return this;
+        }
+
+        /** Ends the record being built, and starts an empty one after it. */
+        private HtmlBit close() {
+            reuseRecord();
+            if (mStreaming) {
+                if (mStreamedBit == null) {
+                    mStreamedBit = new HtmlBit(this, 0);
+                } else {
+                    mStreamedBit.reset();
+                }
+                mStreamedBitVisited = true;
+                return mStreamedBit;
+            }
+            HtmlBit bit = new HtmlBit(this, mSize);
+            mSize += recordLength();
+            ensureCapacity(mSize + TOKEN_INDEX_ATTRIBUTES_START);
+            mTokens[mSize + TOKEN_INDEX_FLAGS] = 0;
+            mTokens[mSize + TOKEN_INDEX_ATTRIBUTE_COUNT] = 0;
+            return bit;
+        }
+    }
+
+
+    /** A really simple mText snippet.  A view over its record in the token stream. */
+    static class HtmlBit {
+        private final TokenStream mStream;
+        private final int mRecord;
         private Map<String, String> extraAttributes = null;
 
         // position starts one before first attribute
         private int mCurrentAttributeIndex = -1;
-        private int mCurrentAttributePos = HTML_POS_INDEX_ATTRIBUTES_START - HTML_POS_ATTR_SIZE;
+        private int mCurrentAttributePos;
 
         private String cached = null;
 
-        HtmlBit(String text) {
-            this.mText = text;
+        private HtmlBit(TokenStream stream, int record) {
+            this.mStream = stream;
+            this.mRecord = record;
+            moveToStart();
+        }
+
+        private int token(int index) {
+            return mStream.mTokens[mRecord + index];
+        }
+
+        private int attributeCount() {
+            return token(TOKEN_INDEX_ATTRIBUTE_COUNT);
         }
 
         boolean isHtmlTag() {
-            return mIsTagEnd || mIsTagStart;
+            return token(TOKEN_INDEX_FLAGS) != 0;
         }
 
         boolean isPlainText() {
-            return !mIsTagEnd && !mIsTagStart;
+            return token(TOKEN_INDEX_FLAGS) == 0;
         }
 
         boolean isStartTag() {
-            return mIsTagStart;
+            return (token(TOKEN_INDEX_FLAGS) & FLAG_TAG_START) != 0;
         }
 
         boolean isEndTag() {
-            return mIsTagEnd;
+            return (token(TOKEN_INDEX_FLAGS) & FLAG_TAG_END) != 0;
         }
 
         String getTag() {
-            return mText.substring(mHtmlPos[HTML_POS_INDEX_TAG_START], mHtmlPos[HTML_POS_INDEX_TAG_END]);
+            return mStream.mText.substring(token(TOKEN_INDEX_TAG_START), token(TOKEN_INDEX_TAG_END));
+        }
+
+        /** @return true if this is a tag of the name, in any case */
+        boolean isTag(String name) {
+            int start = token(TOKEN_INDEX_TAG_START);
+            return isHtmlTag() && token(TOKEN_INDEX_TAG_END) - start == name.length()
+                    && mStream.mText.regionMatches(true, start, name, 0, name.length());
+        }
+
+        /** @return true if the tag name or plain text contains the string */
+        boolean contains(String str) {
+            int index = mStream.mText.indexOf(str, token(TOKEN_INDEX_TAG_START));
+            return index >= 0 && index + str.length() <= token(TOKEN_INDEX_TAG_END);
+        }
+
+        private void reset() {
+            extraAttributes = null;
+            cached = null;
+            moveToStart();
         }
 
         void moveToStart() {
             mCurrentAttributeIndex = -1;
-            mCurrentAttributePos = HTML_POS_INDEX_ATTRIBUTES_START - HTML_POS_ATTR_SIZE;
+            mCurrentAttributePos = TOKEN_INDEX_ATTRIBUTES_START - TOKEN_ATTR_SIZE;
         }
 
         boolean nextAttribute() {
+            int attributeCount = attributeCount();
             do {
                 mCurrentAttributeIndex++;
-                mCurrentAttributePos += HTML_POS_ATTR_SIZE;
+                mCurrentAttributePos += TOKEN_ATTR_SIZE;
                 // Loop past removed attributes
-            } while (mCurrentAttributeIndex < mAttributeCount && mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_KEY_START] <= 0);
-            return mCurrentAttributeIndex < mAttributeCount;
+            } while (mCurrentAttributeIndex < attributeCount && token(mCurrentAttributePos + TOKEN_ATTR_INDEX_KEY_START) <= 0);
+            return mCurrentAttributeIndex < attributeCount;
         }
 
         // Note: does not protect against going past the end position
         String getCurrentKey() {
             // should have skipped passed removed attributes, so don't need to check that.
-            return mText.substring(
-                    mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_KEY_START],
-                    mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_KEY_END]);
+            return mStream.mText.substring(
+                    token(mCurrentAttributePos + TOKEN_ATTR_INDEX_KEY_START),
+                    token(mCurrentAttributePos + TOKEN_ATTR_INDEX_KEY_END));
         }
 
         // Note: does not protect against going past the end position
         String getCurrentValue() {
-            if (mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_VALUE_START] > 0) {
-                return mText.substring(
-                        mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_VALUE_START],
-                        mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_VALUE_END]);
+            if (token(mCurrentAttributePos + TOKEN_ATTR_INDEX_VALUE_START) > 0) {
+                return mStream.mText.substring(
+                        token(mCurrentAttributePos + TOKEN_ATTR_INDEX_VALUE_START),
+                        token(mCurrentAttributePos + TOKEN_ATTR_INDEX_VALUE_END));
             }
             return null;
         }
 
         void removeCurrent() {
             cached = null;
-            mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_KEY_START] = -1;
+            mStream.mTokens[mRecord + mCurrentAttributePos + TOKEN_ATTR_INDEX_KEY_START] = -1;
         }
 
         void addExtra(String key, String value) {
@@ -163,99 +322,57 @@ class SimpleHtmlParser {
             return null;
         }
 
-        private HtmlBit buildPlainText(int startPos, int endPos) {
-            cached = null;
-            mHtmlPos[HTML_POS_INDEX_TAG_START] = startPos;
-            mHtmlPos[HTML_POS_INDEX_TAG_END] = endPos;
-            mIsTagEnd = false;
-            mIsTagStart = false;
-            return this;
-        }
-
-        private HtmlBit buildTag(int startPos, int endPos) {
-            cached = null;
-            mHtmlPos[HTML_POS_INDEX_TAG_START] = startPos;
-            mHtmlPos[HTML_POS_INDEX_TAG_END] = endPos;
-            return this;
-        }
-
-        private HtmlBit buildOpenTag() {
-            cached = null;
-            this.mIsTagStart = true;
-            return this;
-        }
-
-        private HtmlBit buildCloseTag() {
-            cached = null;
-            this.mIsTagEnd = true;
-            return this;
-        }
-
-        private HtmlBit buildNextAttributeKey(int keyStartPos, int keyEndPos) {
-            cached = null;
-            mAttributeCount++;
-            mCurrentAttributeIndex++;
-            mCurrentAttributePos += HTML_POS_ATTR_SIZE;
-
-            mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_KEY_START] = keyStartPos;
-            mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_KEY_END] = keyEndPos;
-
-            // Initialize the value to does-not-exist
-            mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_VALUE_START] = -1;
-            return this;
-        }
-
-        private HtmlBit buildNextAttributeValue(int quoteCharType, int valueStartPos, int valueEndPos) {
-            cached = null;
-            mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_VALUE_QUOTE_CHAR_TYPE] = quoteCharType;
-            mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_VALUE_START] = valueStartPos;
-            mHtmlPos[mCurrentAttributePos + HTML_POS_ATTR_INDEX_VALUE_END] = valueEndPos;
-            return this;
-        }
-
-        private HtmlBit close() {
-            // force the cache load
-            toString();
-            moveToStart();
-            return this;
-        }
-
         @Override
         public String toString() {
+            if (cached == null) {
+                StringBuilder ret = new StringBuilder();
+                appendTo(ret);
+                cached = ret.toString();
+            }
+            return cached;
+        }
+
+        /** Writes the element to the output, without keeping a string of it around. */
+        void appendTo(StringBuilder ret) {
             if (cached != null) {
-                return cached;
+                ret.append(cached);
+                return;
             }
 
+            String text = mStream.mText;
+            boolean isTagStart = isStartTag();
+            boolean isTagEnd = isEndTag();
+
             // Carefully assemble the HTML element.
-            if (!mIsTagStart && !mIsTagEnd) {
+            if (!isTagStart && !isTagEnd) {
                 // not an HTML tag, but plain mText set on the tag positions.
-                cached = mText.substring(mHtmlPos[HTML_POS_INDEX_TAG_START], mHtmlPos[HTML_POS_INDEX_TAG_END]);
-                return cached;
+                ret.append(text, token(TOKEN_INDEX_TAG_START), token(TOKEN_INDEX_TAG_END));
+                return;
             }
-            if (mIsTagEnd && !mIsTagStart) {
+            if (isTagEnd && !isTagStart) {
                 // Just an end tag.
-                cached = new StringBuilder("</")
-                        .append(mText, mHtmlPos[HTML_POS_INDEX_TAG_START], mHtmlPos[HTML_POS_INDEX_TAG_END])
-                        .append('>').toString();
-                return cached;
+                ret.append("</")
+                        .append(text, token(TOKEN_INDEX_TAG_START), token(TOKEN_INDEX_TAG_END))
+                        .append('>');
+                return;
             }
             // It's a tag start.
-            StringBuilder ret = new StringBuilder()
+            ret
                     .append('<')
-                    .append(mText, mHtmlPos[HTML_POS_INDEX_TAG_START], mHtmlPos[HTML_POS_INDEX_TAG_END]);
-            for (int i = 0, p = HTML_POS_INDEX_ATTRIBUTES_START; i < mAttributeCount; i++, p += HTML_POS_ATTR_SIZE) {
-                if (mHtmlPos[p + HTML_POS_ATTR_INDEX_KEY_START] > 0) {
-                    String key = mText.substring(mHtmlPos[p + HTML_POS_ATTR_INDEX_KEY_START], mHtmlPos[p + HTML_POS_ATTR_INDEX_KEY_END]);
+                    .append(text, token(TOKEN_INDEX_TAG_START), token(TOKEN_INDEX_TAG_END));
+            for (int i = 0, p = TOKEN_INDEX_ATTRIBUTES_START, n = attributeCount(); i < n; i++, p += TOKEN_ATTR_SIZE) {
+                if (token(p + TOKEN_ATTR_INDEX_KEY_START) > 0) {
+                    String key = text.substring(token(p + TOKEN_ATTR_INDEX_KEY_START), token(p + TOKEN_ATTR_INDEX_KEY_END));
                     if (extraAttributes == null || ! extraAttributes.containsKey(key)) {
                         ret
                                 .append(' ')
                                 .append(key);
-                        if (mHtmlPos[p + HTML_POS_ATTR_INDEX_VALUE_START] > 0) {
+                        if (token(p + TOKEN_ATTR_INDEX_VALUE_START) > 0) {
                             ret
                                     .append('=')
-                                    .append(QUOTE_CHAR_TYPES[mHtmlPos[p + HTML_POS_ATTR_INDEX_VALUE_QUOTE_CHAR_TYPE]])
-                                    .append(mText, mHtmlPos[p + HTML_POS_ATTR_INDEX_VALUE_START], mHtmlPos[p + HTML_POS_ATTR_INDEX_VALUE_END])
-                                    .append(QUOTE_CHAR_TYPES[mHtmlPos[p + HTML_POS_ATTR_INDEX_VALUE_QUOTE_CHAR_TYPE]]);
+                                    .append(QUOTE_CHAR_TYPES[token(p + TOKEN_ATTR_INDEX_VALUE_QUOTE_CHAR_TYPE)])
+                                    .append(text, token(p + TOKEN_ATTR_INDEX_VALUE_START), token(p + TOKEN_ATTR_INDEX_VALUE_END))
+                                    .append(QUOTE_CHAR_TYPES[token(p + TOKEN_ATTR_INDEX_VALUE_QUOTE_CHAR_TYPE)]);
                         }
                     }
                 }
@@ -272,12 +389,10 @@ class SimpleHtmlParser {
                         .append('"');
                 }
             }
-            if (mIsTagEnd) {
+            if (isTagEnd) {
                 ret.append('/');
             }
             ret.append('>');
-            cached = ret.toString();
-            return cached;
         }
 
         @Override
@@ -292,37 +407,106 @@ class SimpleHtmlParser {
     }
 
 
-    static StringBuilder toHtml(List<HtmlBit> bits) {
-        StringBuilder ret = new StringBuilder();
-        for (HtmlBit bit : bits) {
-            ret.append(bit.toString());
+    /**
+     * Receives the parsed elements in document order.  When streaming, the bit is only
+     * valid during the call.
+     */
+    interface Visitor {
+        /** @return false to stop the parsing */
+        boolean visit(HtmlBit bit);
+    }
+
+
+    /**
+     * A stage of a rewriting pass.  It passes the bits that it keeps, changes or
+     * creates on to the next stage; the last one is usually a {@link HtmlWriter}.
+     */
+    abstract static class Rewriter implements Visitor {
+        private Visitor mNext;
+
+        /** @return the next stage, to chain more stages onto */
+        <T extends Visitor> T then(T next) {
+            mNext = next;
+            return next;
+        }
+
+        final boolean emit(HtmlBit bit) {
+            return mNext.visit(bit);
+        }
+
+        final boolean emit(String html) {
+            return mNext.visit(createSimple(html));
+        }
+
+        final boolean emit(String text, int start, int end) {
+            return mNext.visit(createSimple(text, start, end));
+        }
+    }
+
+
+    /** Collects the visited elements as HTML. */
+    static final class HtmlWriter implements Visitor {
+        private final StringBuilder mHtml;
+
+        HtmlWriter(int capacity) {
+            mHtml = new StringBuilder(capacity);
+        }
+
+        @Override
+        public boolean visit(HtmlBit bit) {
+            bit.appendTo(mHtml);
+            return true;
+        }
+
+        StringBuilder getHtml() {
+            return mHtml;
         }
-        return ret;
     }
 
 
     /** Create an unparsed bit; you can include HTML in here. */
     static HtmlBit createSimple(String text) {
-        return new HtmlBit(text).buildPlainText(0, text.length()).close();
+        return new TokenStream(text, TOKEN_INDEX_ATTRIBUTES_START).buildPlainText(0, text.length()).close();
     }
 
 
     /** Create an unparsed bit; you can include HTML in here. */
     static HtmlBit createSimple(String text, int start, int end) {
-        return new HtmlBit(text).buildPlainText(start, end).close();
+        return new TokenStream(text, TOKEN_INDEX_ATTRIBUTES_START).buildPlainText(start, end).close();
     }
 
 
     static List<HtmlBit> parse(String text) {
+        final List<HtmlBit> ret = new ArrayList<>();
+        parse(new TokenStream(text, text.length() / TOKENS_PER_CHARACTER_DIVISOR), new Visitor() {
+            @Override
+            public boolean visit(HtmlBit bit) {
+                ret.add(bit);
+                return true;
+            }
+        });
+        return ret;
+    }
+
+
+    /**
+     * Parses the text in one pass, handing each element to the visitor as soon as it
+     * is complete, and reusing one element for all of them.
+     */
+    static void parse(String text, Visitor visitor) {
+        parse(new TokenStream(text, 0, true), visitor);
+    }
+
+
+    private static void parse(TokenStream current, Visitor visitor) {
+        String text = current.mText;
         ParseState state = ParseState.PLAIN_TEXT;
-        List<HtmlBit> ret = new ArrayList<>();
-        HtmlBit current = new HtmlBit(text);
+        boolean stopped = false;
         int textStartPos = 0;
         int bitStartPos = 0;
-        char[] cbuff = text.toCharArray();
-        int len = cbuff.length;
-        for (int pos = 0; pos < len; pos++) {
-            char c = cbuff[pos];
+        int len = text.length();
+        for (int pos = 0; pos < len && !stopped; pos++) {
+            char c = text.charAt(pos);
             switch (state) {
                 case PLAIN_TEXT: {
                     if (c == '<') {
@@ -330,8 +514,7 @@ class SimpleHtmlParser {
                         state = ParseState.LESS_THAN;
                         if (pos > textStartPos + 1) {
                             // There's plain text to add.
-                            ret.add(current.buildPlainText(textStartPos, pos).close());
-                            current = new HtmlBit(text);
+                            stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         }
                         textStartPos = pos;
                     }
@@ -345,8 +528,7 @@ class SimpleHtmlParser {
                         // And keep ourselves looking for a tag start.
                         if (pos > textStartPos + 1) {
                             // There's plain text to add.
-                            ret.add(current.buildPlainText(textStartPos, pos).close());
-                            current = new HtmlBit(text);
+                            stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         }
                         textStartPos = pos;
                     } else if (c == '/') {
@@ -380,8 +562,7 @@ class SimpleHtmlParser {
                         bitStartPos = pos;
                     } else if (c == '<') {
                         // weird state, assume this "tag" is actually plain text.
-                        ret.add(current.buildPlainText(textStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         textStartPos = pos;
                         state = ParseState.LESS_THAN;
                     } else if (! isWhitespace(c)) {
@@ -405,14 +586,12 @@ class SimpleHtmlParser {
                         state = ParseState.TAG_SLASH;
                     } else if (c == '>') {
                         // end of the tag.  Assume that we'll start plain mText after this.
-                        ret.add(current.buildTag(bitStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildTag(bitStartPos, pos).close());
                         textStartPos = pos + 1;
                         state = ParseState.PLAIN_TEXT;
                     } else if (c == '<') {
                         // weird state, assume this "tag" is actually plain text.
-                        ret.add(current.buildPlainText(textStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         textStartPos = pos;
                         state = ParseState.LESS_THAN;
                     } else if (c == ':' || isLetterOrDigit(c) || c == '$' || c == '_' || c == '-') {
@@ -429,14 +608,12 @@ class SimpleHtmlParser {
                     // Found a '/' within a tag, outside an attribute.
                     if (c == '>') {
                         // valid end-of-tag
-                        ret.add(current.buildCloseTag().close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildCloseTag().close());
                         textStartPos = pos + 1;
                         state = ParseState.PLAIN_TEXT;
                     } else if (c == '<') {
                         // weird state, assume this "tag" is actually plain text.
-                        ret.add(current.buildPlainText(textStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         textStartPos = pos;
                         state = ParseState.LESS_THAN;
                     } else if (isWhitespace(c)) {
@@ -462,14 +639,12 @@ class SimpleHtmlParser {
                         state = ParseState.TAG_SLASH;
                     } else if (c == '>') {
                         // disconnect of tag.
-                        ret.add(current.close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.close());
                         textStartPos = pos + 1;
                         state = ParseState.PLAIN_TEXT;
                     } else if (c == '<') {
                         // weird state, assume this "tag" is actually plain text.
-                        ret.add(current.buildPlainText(textStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         textStartPos = pos;
                         state = ParseState.LESS_THAN;
                     } else if (!isWhitespace(c)) {
@@ -490,8 +665,7 @@ class SimpleHtmlParser {
                         state = ParseState.TAG_SLASH;
                     } else if (c == '>') {
                         // end of the tag.
-                        ret.add(current.buildNextAttributeKey(bitStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildNextAttributeKey(bitStartPos, pos).close());
                         textStartPos = pos + 1;
                         state = ParseState.PLAIN_TEXT;
                     } else if (c == '=') {
@@ -500,8 +674,7 @@ class SimpleHtmlParser {
                         state = ParseState.ATTRIBUTE_AFTER_EQUALS;
                     } else if (c == '<') {
                         // weird state, assume this "tag" is actually plain text.
-                        ret.add(current.buildPlainText(textStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         textStartPos = pos;
                         state = ParseState.LESS_THAN;
                     } else if (isWhitespace(c)) {
@@ -522,8 +695,7 @@ class SimpleHtmlParser {
                         state = ParseState.TAG_SLASH;
                     } else if (c == '>') {
                         // end of the tag.
-                        ret.add(current.close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.close());
                         textStartPos = pos + 1;
                         state = ParseState.PLAIN_TEXT;
                     } else if (c == '=') {
@@ -531,8 +703,7 @@ class SimpleHtmlParser {
                         state = ParseState.ATTRIBUTE_AFTER_EQUALS;
                     } else if (c == '<') {
                         // weird state, assume this "tag" is actually plain text.
-                        ret.add(current.buildPlainText(textStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         textStartPos = pos;
                         state = ParseState.LESS_THAN;
                     } else if (!isWhitespace(c)) {
@@ -555,14 +726,12 @@ class SimpleHtmlParser {
                     } else if (c == '>') {
                         // unquoted end-of-tag mark instead of value.  Interpreted the same as
                         // the unquoted slash.
-                        ret.add(current.close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.close());
                         textStartPos = pos + 1;
                         state = ParseState.PLAIN_TEXT;
                     } else if (c == '<') {
                         // weird state, assume this "tag" is actually plain text.
-                        ret.add(current.buildPlainText(textStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         textStartPos = pos;
                         state = ParseState.LESS_THAN;
                     } else if (c == '\'') {
@@ -609,14 +778,12 @@ class SimpleHtmlParser {
                         current.buildNextAttributeValue(QUOTE_CHAR_BARE, bitStartPos, pos);
                         state = ParseState.TAG_SLASH;
                     } else if (c == '>') {
-                        ret.add(current.buildNextAttributeValue(QUOTE_CHAR_BARE, bitStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildNextAttributeValue(QUOTE_CHAR_BARE, bitStartPos, pos).close());
                         textStartPos = pos + 1;
                         state = ParseState.PLAIN_TEXT;
                     } else if (c == '<') {
                         // weird state, assume this "tag" is actually plain text.
-                        ret.add(current.buildPlainText(textStartPos, pos).close());
-                        current = new HtmlBit(text);
+                        stopped = !visitor.visit(current.buildPlainText(textStartPos, pos).close());
                         textStartPos = pos;
                         state = ParseState.LESS_THAN;
                     } else if (isWhitespace(c)) {
@@ -631,11 +798,9 @@ class SimpleHtmlParser {
 
         // At the end of the text.  Anything that's left over is either plain text or incomplete
         // html.  Just mark it as plain text.
-        if (textStartPos + 1 < cbuff.length) {
-            ret.add(current.buildPlainText(textStartPos, cbuff.length).close());
+        if (!stopped && textStartPos + 1 < len) {
+            visitor.visit(current.buildPlainText(textStartPos, len).close());
         }
-
-        return ret;
     }
 
 
@@ -0,0 +1,412 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import net.groboclown.groborss.R;
+import net.groboclown.groborss.Strings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tells whether a picture url belongs to a tracker, with all the rules compiled
+ * into two tries, so that the cost of a match does not grow with the number of
+ * rules.  There are three kinds of rules, one per line:
+ * <ul>
+ *     <li><tt>tracker.example.com</tt> matches the host and all of its subdomains,
+ *      through a trie of the reversed host names;</li>
+ *     <li><tt>/pixel.gif?</tt> matches the text anywhere after the host, through
+ *      an Aho-Corasick automaton;</li>
+ *     <li><tt>feeds.example.com/~r/</tt> matches the urls of the host and its
+ *      subdomains whose path starts with the text.</li>
+ * </ul>
+ * Everything is matched without regard to case, and <tt>#</tt> starts a comment.
+ * The rules are the built-in ones, the bundled list and the ones the user added.
+ */
+public class TrackerMatcher {
+    private static final String TAG = "TrackerMatcher";
+    private static final String COMMENT = "#";
+    private static final String SCHEME_SEPARATOR = "://";
+    private static final String PROTOCOL_RELATIVE = "//";
+    private static final String HOST_END = "/?#:";
+    private static final String PATH_START = "/?#";
+    private static final String RULES_CHARSET = "UTF-8";
+
+    /** The rules used without a context, which the bundled list also has. */
+    static final String[] BUILT_IN_RULES = {
+            "/rss-pixel.png?"
+    };
+
+    public static final TrackerMatcher BUILT_IN = new TrackerMatcher(Arrays.asList(BUILT_IN_RULES));
+
+    private static TrackerMatcher sInstance;
+    private static String sUserRules;
+    private static List<String> sBundledRules;
+
+    private final CharTrie mHosts;
+    private final CharTrie mPaths;
+    // by host trie state: null for any path, or the path prefixes
+    private final Map<Integer, List<String>> mHostPaths = new HashMap<>();
+    private final int mRulesHash;
+
+    /**
+     * @return the matcher for the bundled and the user's rules; it is built
+     *      again when the user's rules change
+     */
+    public static synchronized TrackerMatcher get(Context context) {
+        String userRules = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(Strings.SETTINGS_TRACKERRULES, Strings.EMPTY);
+
+        if (sInstance == null || !userRules.equals(sUserRules)) {
+            if (sBundledRules == null) {
+                sBundledRules = readBundledRules(context);
+            }
+
+            List<String> rules = new ArrayList<>(Arrays.asList(BUILT_IN_RULES));
+
+            rules.addAll(sBundledRules);
+            rules.addAll(parseRules(userRules));
+            sInstance = new TrackerMatcher(rules);
+            sUserRules = userRules;
+        }
+        return sInstance;
+    }
+
+    private static List<String> readBundledRules(Context context) {
+        InputStream in = context.getResources().openRawResource(R.raw.tracker_rules);
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, RULES_CHARSET));
+            StringBuilder text = new StringBuilder();
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                text.append(line).append('\n');
+            }
+            return parseRules(text.toString());
+        } catch (IOException e) {
+            Log.w(TAG, "Problem reading the bundled tracker rules", e);
+            return Collections.emptyList();
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+
+    /** @return the rules of the text, one per line, without comments and blank lines */
+    static List<String> parseRules(String text) {
+        List<String> rules = new ArrayList<>();
+
+        for (String line : text.split("\n")) {
+            int comment = line.indexOf(COMMENT);
+            String rule = (comment < 0 ? line : line.substring(0, comment)).trim().toLowerCase(Locale.US);
+
+            if (rule.length() > 0) {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+
+    TrackerMatcher(Collection<String> rules) {
+        CharTrie.Builder hosts = new CharTrie.Builder();
+        CharTrie.Builder paths = new CharTrie.Builder();
+        Map<Integer, List<String>> hostPaths = new HashMap<>();
+
+        for (String rule : rules) {
+            rule = rule.trim().toLowerCase(Locale.US);
+            if (rule.startsWith("/")) {
+                paths.add(rule);
+            } else if (rule.length() > 0) {
+                int slash = rule.indexOf('/');
+                String host = slash < 0 ? rule : rule.substring(0, slash);
+
+                while (host.startsWith(".")) {
+                    host = host.substring(1);
+                }
+                if (host.length() == 0) {
+                    continue;
+                }
+
+                int state = hosts.add(new StringBuilder(host).reverse().toString());
+
+                if (slash < 0) {
+                    hostPaths.put(state, null);
+                } else if (!hostPaths.containsKey(state) || hostPaths.get(state) != null) {
+                    List<String> prefixes = hostPaths.get(state);
+
+                    if (prefixes == null) {
+                        prefixes = new ArrayList<>();
+                        hostPaths.put(state, prefixes);
+                    }
+                    prefixes.add(rule.substring(slash));
+                }
+            }
+        }
+        mHosts = hosts.build(false);
+        mPaths = paths.build(true);
+        mHostPaths.putAll(hostPaths);
+        mRulesHash = rules.hashCode();
+    }
+
+    /** @return a hash of the rules, which changes with them */
+    public int getRulesHash() {
+        return mRulesHash;
+    }
+
+    /** @return true if the url matches a tracker rule */
+    public boolean matches(String url) {
+        if (url == null) {
+            return false;
+        }
+
+        int scheme = url.startsWith(PROTOCOL_RELATIVE) ? 0 : url.indexOf(SCHEME_SEPARATOR);
+        int pathStart = 0;
+
+        if (scheme >= 0) {
+            int hostStart = url.indexOf(PROTOCOL_RELATIVE, scheme) + PROTOCOL_RELATIVE.length();
+            int hostEnd = indexOfAny(url, HOST_END, hostStart);
+
+            pathStart = indexOfAny(url, PATH_START, hostEnd);
+            if (matchesHost(url, hostStart, hostEnd, pathStart)) {
+                return true;
+            }
+        }
+        return mPaths.find(url, pathStart);
+    }
+
+    private boolean matchesHost(String url, int hostStart, int hostEnd, int pathStart) {
+        int state = CharTrie.ROOT;
+
+        for (int pos = hostEnd - 1; pos >= hostStart; pos--) {
+            state = mHosts.next(state, Character.toLowerCase(url.charAt(pos)));
+            if (state < 0) {
+                return false;
+            }
+            if (mHosts.isTerminal(state) && (pos == hostStart || url.charAt(pos - 1) == '.')) {
+                List<String> prefixes = mHostPaths.get(state);
+
+                if (prefixes == null) {
+                    return true;
+                }
+                for (String prefix : prefixes) {
+                    if (url.regionMatches(true, pathStart, prefix, 0, prefix.length())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int indexOfAny(String text, String characters, int from) {
+        for (int pos = from, length = text.length(); pos < length; pos++) {
+            if (characters.indexOf(text.charAt(pos)) >= 0) {
+                return pos;
+            }
+        }
+        return text.length();
+    }
+
+
+    /**
+     * A trie over chars, in flat arrays.  The edges of each state are sorted, so
+     * a step is a binary search.  With failure links it is an Aho-Corasick
+     * automaton.
+     */
+    static final class CharTrie {
+        static final int ROOT = 0;
+
+        private final int[] mEdgeStart;
+        private final char[] mEdgeChar;
+        private final int[] mEdgeTarget;
+        private final boolean[] mTerminal;
+        private final int[] mFailure;
+
+        private CharTrie(int[] edgeStart, char[] edgeChar, int[] edgeTarget, boolean[] terminal, int[] failure) {
+            mEdgeStart = edgeStart;
+            mEdgeChar = edgeChar;
+            mEdgeTarget = edgeTarget;
+            mTerminal = terminal;
+            mFailure = failure;
+        }
+
+        /** @return the state after the char, or -1 */
+        int next(int state, char c) {
+            int low = mEdgeStart[state];
+            int high = mEdgeStart[state + 1] - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char edge = mEdgeChar[middle];
+
+                if (edge < c) {
+                    low = middle + 1;
+                } else if (edge > c) {
+                    high = middle - 1;
+                } else {
+                    return mEdgeTarget[middle];
+                }
+            }
+            return -1;
+        }
+
+        boolean isTerminal(int state) {
+            return mTerminal[state];
+        }
+
+        /** @return true if any of the words occurs in the text from the position on */
+        boolean find(String text, int from) {
+            int state = ROOT;
+
+            for (int pos = from, length = text.length(); pos < length; pos++) {
+                char c = Character.toLowerCase(text.charAt(pos));
+                int next = next(state, c);
+
+                while (next < 0 && state != ROOT) {
+                    state = mFailure[state];
+                    next = next(state, c);
+                }
+                state = next < 0 ? ROOT : next;
+                if (mTerminal[state]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static final class Builder {
+            private final List<Map<Character, Integer>> mEdges = new ArrayList<>();
+            private final List<Boolean> mTerminal = new ArrayList<>();
+
+            Builder() {
+                newState();
+            }
+
+            private int newState() {
+                mEdges.add(new HashMap<Character, Integer>());
+                mTerminal.add(false);
+                return mEdges.size() - 1;
+            }
+
+            /** @return the state of the word's end */
+            int add(String word) {
+                int state = ROOT;
+
+                for (int i = 0; i < word.length(); i++) {
+                    Integer next = mEdges.get(state).get(word.charAt(i));
+
+                    if (next == null) {
+                        next = newState();
+                        mEdges.get(state).put(word.charAt(i), next);
+                    }
+                    state = next;
+                }
+                mTerminal.set(state, true);
+                return state;
+            }
+
+            /**
+             * @param withFailureLinks true to find the words anywhere in a text; a
+             *      state is then terminal if any word ends in it
+             */
+            CharTrie build(boolean withFailureLinks) {
+                int states = mEdges.size();
+                int edges = 0;
+
+                for (Map<Character, Integer> stateEdges : mEdges) {
+                    edges += stateEdges.size();
+                }
+
+                int[] edgeStart = new int[states + 1];
+                char[] edgeChar = new char[edges];
+                int[] edgeTarget = new int[edges];
+                boolean[] terminal = new boolean[states];
+
+                for (int state = 0, edge = 0; state < states; state++) {
+                    edgeStart[state] = edge;
+                    Character[] chars = mEdges.get(state).keySet().toArray(new Character[0]);
+
+                    Arrays.sort(chars);
+                    for (Character c : chars) {
+                        edgeChar[edge] = c;
+                        edgeTarget[edge++] = mEdges.get(state).get(c);
+                    }
+                    terminal[state] = mTerminal.get(state);
+                }
+                edgeStart[states] = edges;
+
+                int[] failure = new int[states];
+                CharTrie trie = new CharTrie(edgeStart, edgeChar, edgeTarget, terminal, failure);
+
+                if (withFailureLinks) {
+                    // breadth first, so the failure state is done before the states that use it
+                    ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+                    for (int edge = edgeStart[ROOT]; edge < edgeStart[ROOT + 1]; edge++) {
+                        queue.add(edgeTarget[edge]);
+                    }
+                    while (!queue.isEmpty()) {
+                        int state = queue.remove();
+
+                        for (int edge = edgeStart[state]; edge < edgeStart[state + 1]; edge++) {
+                            int target = edgeTarget[edge];
+                            int fallback = failure[state];
+                            int next = trie.next(fallback, edgeChar[edge]);
+
+                            while (next < 0 && fallback != ROOT) {
+                                fallback = failure[fallback];
+                                next = trie.next(fallback, edgeChar[edge]);
+                            }
+                            failure[target] = next < 0 ? ROOT : next;
+                            terminal[target] |= terminal[failure[target]];
+                            queue.add(target);
+                        }
+                    }
+                }
+                return trie;
+            }
+        }
+    }
+}
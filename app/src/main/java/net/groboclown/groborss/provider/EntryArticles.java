@@ -0,0 +1,65 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.provider;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Keeps the articles stored for offline reading, one per entry.
+ */
+class EntryArticles {
+    static final String TABLE = "entry_articles";
+
+    static final String CREATE_INDEX_LASTVIEWED = "CREATE INDEX IF NOT EXISTS " + TABLE + "_lastviewed ON "
+            + TABLE + " (" + FeedData.ArticleColumns.LASTVIEWED + ')';
+
+    static void createTable(SQLiteDatabase database) {
+        StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(TABLE).append(" (");
+
+        for (int n = 0; n < FeedData.ArticleColumns.COLUMNS.length; n++) {
+            if (n > 0) {
+                sql.append(", ");
+            }
+            sql.append(FeedData.ArticleColumns.COLUMNS[n]).append(' ').append(FeedData.ArticleColumns.TYPES[n]);
+        }
+        database.execSQL(sql.append(')').toString());
+        database.execSQL(CREATE_INDEX_LASTVIEWED);
+    }
+
+    /**
+     * Removes the articles of all entries matching the where clause.  Must
+     * be called in the transaction that deletes the entries.
+     */
+    static void removeOfEntries(SQLiteDatabase database, String entriesTable, String where, String[] whereArgs) {
+        StringBuilder selection = new StringBuilder(FeedData.ArticleColumns.ENTRY_ID).append(" IN (SELECT ")
+                .append(FeedData.EntryColumns._ID).append(" FROM ").append(entriesTable);
+
+        if (where != null && where.length() > 0) {
+            selection.append(" WHERE ").append(where);
+        }
+        database.delete(TABLE, selection.append(')').toString(), whereArgs);
+    }
+}
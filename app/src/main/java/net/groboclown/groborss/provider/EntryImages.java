@@ -0,0 +1,286 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.groboclown.groborss.Strings;
+
+/**
+ * Keeps track of the downloaded pictures.  Every distinct picture content
+ * is stored once as a blob; the entries reference the blobs, and a blob
+ * is deleted together with its last reference.
+ */
+class EntryImages {
+    static final String TABLE = "entry_images";
+
+    static final String TABLE_BLOBS = "image_blobs";
+
+    /** the references joined with their blobs, for the image queries */
+    static final String TABLE_WITH_BLOBS = new StringBuilder(TABLE).append(" LEFT JOIN ").append(TABLE_BLOBS)
+            .append(" ON (").append(TABLE).append('.').append(FeedData.ImageColumns.BLOB_ID).append(" = ")
+            .append(TABLE_BLOBS).append('.').append(FeedData.ImageBlobColumns._ID).append(')').toString();
+
+    static final String CREATE_INDEX_BLOBS_LASTVIEWED = "CREATE INDEX IF NOT EXISTS " + TABLE_BLOBS + "_lastviewed ON "
+            + TABLE_BLOBS + " (" + FeedData.ImageBlobColumns.LASTVIEWED + ')';
+
+    private static final String[] BLOBID_PROJECTION = { FeedData.ImageColumns.BLOB_ID };
+
+    private static final String[] FILE_PROJECTION = { FeedData.ImageBlobColumns.FILE };
+
+    private static final String[] LEGACY_PROJECTION = { FeedData.ImageColumns._ID, FeedData.ImageColumns.PATH };
+
+    static void createTable(SQLiteDatabase database) {
+        database.execSQL(createTable(TABLE, FeedData.ImageColumns.COLUMNS, FeedData.ImageColumns.TYPES, false));
+        database.execSQL("CREATE INDEX " + TABLE + "_entryid ON " + TABLE + " (" + FeedData.ImageColumns.ENTRY_ID + ')');
+        createBlobTable(database);
+    }
+
+    /**
+     * Creates the blob table, the url lookup index and the triggers which
+     * keep the reference counts.  The reference table must have its blob
+     * columns already.
+     */
+    static void createBlobTable(SQLiteDatabase database) {
+        database.execSQL(createTable(TABLE_BLOBS, FeedData.ImageBlobColumns.COLUMNS, FeedData.ImageBlobColumns.TYPES, true));
+        database.execSQL(CREATE_INDEX_BLOBS_LASTVIEWED);
+        database.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_urlhash ON " + TABLE + " (" + FeedData.ImageColumns.URL_HASH + ')');
+        database.execSQL(new StringBuilder("CREATE TRIGGER IF NOT EXISTS ").append(TABLE).append("_ref AFTER INSERT ON ").append(TABLE)
+                .append(" BEGIN ").append(updateRefcount("new", '+')).append(" END").toString());
+        database.execSQL(new StringBuilder("CREATE TRIGGER IF NOT EXISTS ").append(TABLE).append("_unref AFTER DELETE ON ").append(TABLE)
+                .append(" BEGIN ").append(updateRefcount("old", '-')).append(" END").toString());
+        database.execSQL(new StringBuilder("CREATE TRIGGER IF NOT EXISTS ").append(TABLE).append("_reref AFTER UPDATE OF ")
+                .append(FeedData.ImageColumns.BLOB_ID).append(" ON ").append(TABLE)
+                .append(" BEGIN ").append(updateRefcount("old", '-')).append(updateRefcount("new", '+')).append(" END").toString());
+    }
+
+    private static String createTable(String table, String[] columns, String[] types, boolean ifNotExists) {
+        StringBuilder sql = new StringBuilder("CREATE TABLE ");
+
+        if (ifNotExists) {
+            sql.append("IF NOT EXISTS ");
+        }
+        sql.append(table).append(" (");
+        for (int n = 0; n < columns.length; n++) {
+            if (n > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[n]).append(' ').append(types[n]);
+        }
+        return sql.append(')').toString();
+    }
+
+    private static String updateRefcount(String row, char operator) {
+        return new StringBuilder("UPDATE ").append(TABLE_BLOBS).append(" SET ").append(FeedData.ImageBlobColumns.REFCOUNT)
+                .append(" = ").append(FeedData.ImageBlobColumns.REFCOUNT).append(' ').append(operator).append(" 1 WHERE ")
+                .append(FeedData.ImageBlobColumns._ID).append(" = ").append(row).append('.').append(FeedData.ImageColumns.BLOB_ID)
+                .append(';').toString();
+    }
+
+    /**
+     * Records the pictures that were stored before the table existed.  The
+     * entry id is the prefix of the file name; files of entries that no
+     * longer exist are deleted.
+     */
+    static void importExistingFiles(SQLiteDatabase database, String entriesTable) {
+        String[] filenames = FeedDataContentProvider.IMAGEFOLDER_FILE.list();
+
+        if (filenames == null) {
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+
+        for (String filename : filenames) {
+            int separator = filename.indexOf(Strings.IMAGEFILE_IDSEPARATOR);
+
+            long entryId = -1;
+
+            if (separator > 0) {
+                try {
+                    entryId = Long.parseLong(filename.substring(0, separator));
+                } catch (NumberFormatException e) {
+                    // not one of our files
+                    continue;
+                }
+            }
+
+            String path = FeedDataContentProvider.IMAGEFOLDER + filename;
+
+            Cursor cursor = database.query(entriesTable, new String[] { FeedData.EntryColumns._ID },
+                    FeedData.EntryColumns._ID + '=' + entryId, null, null, null, null);
+
+            boolean exists = cursor.moveToFirst();
+
+            cursor.close();
+            if (exists) {
+                values.put(FeedData.ImageColumns.ENTRY_ID, entryId);
+                values.put(FeedData.ImageColumns.PATH, path);
+                database.insert(TABLE, null, values);
+            } else if (separator > 0) {
+                new File(path).delete();
+            }
+        }
+    }
+
+    /**
+     * Turns the per entry files recorded before the blob table existed into
+     * blobs with a single reference.  The files are not read, so they are
+     * not deduplicated.
+     */
+    static void moveFilesToBlobs(SQLiteDatabase database) {
+        Cursor cursor = database.query(TABLE, LEGACY_PROJECTION, FeedData.ImageColumns.PATH + " IS NOT NULL AND "
+                + FeedData.ImageColumns.BLOB_ID + " IS NULL", null, null, null, null);
+
+        try {
+            ContentValues blobValues = new ContentValues();
+
+            ContentValues referenceValues = new ContentValues();
+
+            while (cursor.moveToNext()) {
+                String path = cursor.getString(1);
+
+                blobValues.put(FeedData.ImageBlobColumns.HASH, FeedData.ImageBlobColumns.HASH_PREFIX_LEGACY + path);
+                blobValues.put(FeedData.ImageBlobColumns.FILE, path);
+                blobValues.put(FeedData.ImageBlobColumns.SIZE, new File(path).length());
+
+                long blobId = database.insert(TABLE_BLOBS, null, blobValues);
+
+                if (blobId > -1) {
+                    referenceValues.put(FeedData.ImageColumns.BLOB_ID, blobId);
+                    database.update(TABLE, referenceValues, FeedData.ImageColumns._ID + '=' + cursor.getLong(0), null);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Inserts a reference to an existing blob; fails if the blob has been
+     * removed since it was looked up.
+     *
+     * @return the row id or -1
+     */
+    static long insertReference(SQLiteDatabase database, ContentValues values) {
+        Long blobId = values.getAsLong(FeedData.ImageColumns.BLOB_ID);
+
+        database.beginTransaction();
+        try {
+            if (blobId != null) {
+                Cursor cursor = database.query(TABLE_BLOBS, FILE_PROJECTION, FeedData.ImageBlobColumns._ID + '=' + blobId, null, null, null, null);
+
+                boolean exists = cursor.moveToFirst();
+
+                cursor.close();
+                if (!exists) {
+                    return -1;
+                }
+            }
+
+            long newId = database.insert(TABLE, null, values);
+
+            database.setTransactionSuccessful();
+            return newId;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Removes the image references of all entries matching the where clause,
+     * and the blobs which lost their last reference.  Must be called in the
+     * transaction that deletes the entries.
+     *
+     * @return the files of the removed blobs; delete them with
+     *      {@link #deleteFiles(List)} once the transaction is committed
+     */
+    static List<String> removeOfEntries(SQLiteDatabase database, String entriesTable, String where, String[] whereArgs) {
+        StringBuilder selection = new StringBuilder(FeedData.ImageColumns.ENTRY_ID).append(" IN (SELECT ")
+                .append(FeedData.EntryColumns._ID).append(" FROM ").append(entriesTable);
+
+        if (where != null && where.length() > 0) {
+            selection.append(" WHERE ").append(where);
+        }
+        selection.append(')');
+
+        Cursor cursor = database.query(true, TABLE, BLOBID_PROJECTION, selection + " AND "
+                + FeedData.ImageColumns.BLOB_ID + " IS NOT NULL", whereArgs, null, null, null, null);
+
+        StringBuilder blobSelection = new StringBuilder(FeedData.ImageBlobColumns.REFCOUNT).append(" <= 0 AND ")
+                .append(FeedData.ImageBlobColumns._ID).append(" IN (");
+
+        boolean referenced = false;
+
+        try {
+            while (cursor.moveToNext()) {
+                if (referenced) {
+                    blobSelection.append(',');
+                }
+                blobSelection.append(cursor.getLong(0));
+                referenced = true;
+            }
+        } finally {
+            cursor.close();
+        }
+        if (database.delete(TABLE, selection.toString(), whereArgs) == 0 || !referenced) {
+            return new ArrayList<>(0);
+        }
+        blobSelection.append(')');
+        cursor = database.query(TABLE_BLOBS, FILE_PROJECTION, blobSelection.toString(), null, null, null, null);
+
+        int removed = cursor.getCount();
+
+        List<String> files = new ArrayList<>(removed);
+
+        try {
+            while (cursor.moveToNext()) {
+                if (!cursor.isNull(0)) {
+                    // evicted otherwise
+                    files.add(cursor.getString(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (removed > 0) {
+            database.delete(TABLE_BLOBS, blobSelection.toString(), null);
+        }
+        return files;
+    }
+
+    static void deleteFiles(List<String> paths) {
+        for (int n = 0, i = paths.size(); n < i; n++) {
+            new File(paths.get(n)).delete();
+        }
+    }
+}
@@ -25,13 +25,9 @@
 
 package net.groboclown.groborss.provider;
 
-import java.io.File;
-
-import net.groboclown.groborss.handler.PictureFilenameFilter;
-
 import android.content.Context;
-import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.BaseColumns;
 
 public class FeedData {
@@ -51,6 +47,26 @@ public class FeedData {
 	
 	public static final String FEED_DEFAULTSORTORDER = FeedColumns.PRIORITY;
 	
+	static final String METHOD_BEGIN_NOTIFICATION_BATCH = "beginNotificationBatch";
+	
+	static final String METHOD_END_NOTIFICATION_BATCH = "endNotificationBatch";
+	
+	static final String METHOD_COMPRESS_ENTRIES = "compressEntries";
+	
+	/** the updates through a uri with this parameter announce no change */
+	static final String PARAMETER_SILENT = "silent";
+	
+	/** the most rows a query through a uri with this parameter returns */
+	static final String PARAMETER_MAXROWS = "maxrows";
+	
+	static final String METHOD_INDEX_ENTRIES = "indexEntries";
+	
+	static final String METHOD_VACUUM = "vacuum";
+	
+	static final String RESULT_COUNT = "count";
+	
+	static final String RESULT_VACUUMED = "vacuumed";
+	
 	public static class FeedColumns implements BaseColumns {
 		public static final Uri CONTENT_URI = Uri.parse(new StringBuilder(CONTENT).append(AUTHORITY).append("/feeds").toString());
 		
@@ -82,9 +98,12 @@ public class FeedData {
 
 		public static final String ENTRY_LINK_IMG_PATTERN = "imgpattern";
 		
-		public static final String[] COLUMNS = new String[] {_ID, URL, NAME, LASTUPDATE, ICON, ERROR, PRIORITY, FETCHMODE, REALLASTUPDATE, ALERT_RINGTONE, OTHER_ALERT_RINGTONE, SKIP_ALERT, WIFIONLY, HOMEPAGE, ENTRY_LINK_IMG_PATTERN};
+		/** whether the linked pages of new entries are stored for offline reading */
+		public static final String FETCHARTICLES = "fetcharticles";
+		
+		public static final String[] COLUMNS = new String[] {_ID, URL, NAME, LASTUPDATE, ICON, ERROR, PRIORITY, FETCHMODE, REALLASTUPDATE, ALERT_RINGTONE, OTHER_ALERT_RINGTONE, SKIP_ALERT, WIFIONLY, HOMEPAGE, ENTRY_LINK_IMG_PATTERN, FETCHARTICLES};
 		
-		public static final String[] TYPES = new String[] {TYPE_PRIMARY_KEY, "TEXT UNIQUE", TYPE_TEXT, TYPE_DATETIME, "BLOB", TYPE_TEXT, TYPE_INT, TYPE_INT, TYPE_DATETIME, TYPE_TEXT, TYPE_INT, TYPE_INT, TYPE_BOOLEAN, TYPE_TEXT, TYPE_TEXT};
+		public static final String[] TYPES = new String[] {TYPE_PRIMARY_KEY, "TEXT UNIQUE", TYPE_TEXT, TYPE_DATETIME, "BLOB", TYPE_TEXT, TYPE_INT, TYPE_INT, TYPE_DATETIME, TYPE_TEXT, TYPE_INT, TYPE_INT, TYPE_BOOLEAN, TYPE_TEXT, TYPE_TEXT, TYPE_BOOLEAN};
 		
 		public static final Uri CONTENT_URI(String feedId) {
 			return Uri.parse(new StringBuilder(CONTENT).append(AUTHORITY).append("/feeds/").append(feedId).toString());
@@ -118,9 +137,27 @@ public class FeedData {
 
 		public static final String LINK_IMG_URL = "linkimgurl";
 		
-		public static final String[] COLUMNS = new String[] {_ID, FEED_ID, TITLE, ABSTRACT, DATE, READDATE, LINK, FAVORITE, ENCLOSURE, GUID, AUTHOR, LINK_IMG_URL};
+		/**
+		 * How the body is stored, see {@link net.groboclown.groborss.util.EntryBodyCodec}.
+		 * Writes only set the {@link #ABSTRACT}; the provider compresses it
+		 * if enabled in the settings.
+		 */
+		public static final String ABSTRACT_FORMAT = "abstractformat";
+		
+		public static final String ABSTRACT_DATA = "abstractdata";
+		
+		/**
+		 * The body as prepared for display, deflated, and the key it was
+		 * prepared for; see {@link net.groboclown.groborss.handler.EntryTextBuilder}.
+		 * Cleared whenever the body changes.
+		 */
+		public static final String RENDERED = "rendered";
+		
+		public static final String RENDERED_KEY = "renderedkey";
+		
+		public static final String[] COLUMNS = new String[] {_ID, FEED_ID, TITLE, ABSTRACT, DATE, READDATE, LINK, FAVORITE, ENCLOSURE, GUID, AUTHOR, LINK_IMG_URL, ABSTRACT_FORMAT, ABSTRACT_DATA, RENDERED, RENDERED_KEY};
 		
-		public static final String[] TYPES = new String[] {TYPE_PRIMARY_KEY, "INTEGER(7)", TYPE_TEXT, TYPE_TEXT, TYPE_DATETIME, TYPE_DATETIME, TYPE_TEXT, TYPE_BOOLEAN, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT};
+		public static final String[] TYPES = new String[] {TYPE_PRIMARY_KEY, "INTEGER(7)", TYPE_TEXT, TYPE_TEXT, TYPE_DATETIME, TYPE_DATETIME, TYPE_TEXT, TYPE_BOOLEAN, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, "INTEGER DEFAULT 0", "BLOB", "BLOB", TYPE_TEXT};
 
 		public static Uri CONTENT_URI = Uri.parse(new StringBuilder(CONTENT).append(AUTHORITY).append("/entries").toString());
 		
@@ -130,6 +167,24 @@ public class FeedData {
 			return Uri.parse(new StringBuilder(CONTENT).append(AUTHORITY).append("/feeds/").append(feedId).append("/entries").toString());
 		}
 
+		public static final String SEARCH_QUERY = "q";
+		
+		public static final String SEARCH_OFFSET = "offset";
+		
+		public static final String SEARCH_LIMIT = "limit";
+		
+		/**
+		 * Entries matching the query text in their title, author or content,
+		 * best match first.  The sort order of a query on this uri is ignored.
+		 */
+		public static Uri SEARCH_URI(String query, int offset, int limit) {
+			return Uri.parse(new StringBuilder(CONTENT).append(AUTHORITY).append("/search").toString()).buildUpon()
+				.appendQueryParameter(SEARCH_QUERY, query)
+				.appendQueryParameter(SEARCH_OFFSET, Integer.toString(offset))
+				.appendQueryParameter(SEARCH_LIMIT, Integer.toString(limit))
+				.build();
+		}
+		
 		public static Uri ENTRY_CONTENT_URI(String entryId) {
 			return Uri.parse(new StringBuilder(CONTENT).append(AUTHORITY).append("/entries/").append(entryId).toString());
 		}
@@ -140,48 +195,149 @@ public class FeedData {
 		
 	}
 		
-	private static String[] IDPROJECTION = new String[] {FeedData.EntryColumns._ID};
+	/**
+	 * The picture files that have been downloaded for an entry.  The records
+	 * and the files are removed together with their entry.
+	 */
+	public static class ImageColumns implements BaseColumns {
+		public static final Uri CONTENT_URI = Uri.parse(new StringBuilder(CONTENT).append(AUTHORITY).append("/images").toString());
+		
+		public static final String ENTRY_ID = "entryid";
+		
+		/** the file of pictures stored before the blob table; newer rows reference a blob */
+		public static final String PATH = "path";
+		
+		public static final String URL = "url";
+		
+		public static final String URL_HASH = "urlhash";
+		
+		public static final String BLOB_ID = "blobid";
+		
+		public static final String[] COLUMNS = new String[] {_ID, ENTRY_ID, PATH, URL, URL_HASH, BLOB_ID};
+		
+		public static final String[] TYPES = new String[] {TYPE_PRIMARY_KEY, TYPE_INT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_INT};
+	}
 	
-	public static void deletePicturesOfFeedAsync(final Context context, final Uri entriesUri, final String selection) {
-		if (FeedDataContentProvider.IMAGEFOLDER_FILE.exists()) {
-			new Thread() {
-				public void run() {
-					deletePicturesOfFeed(context, entriesUri, selection);
-				}
-			}.start();
-		}
+	/**
+	 * The downloaded picture files, stored once per distinct content and
+	 * shared by all the entries referencing them.  The file is null once it
+	 * has been evicted to keep the storage budget.  Querying the
+	 * {@link ImageColumns#CONTENT_URI} joins these columns.
+	 */
+	public static class ImageBlobColumns implements BaseColumns {
+		public static final Uri CONTENT_URI = Uri.parse(new StringBuilder(CONTENT).append(AUTHORITY).append("/imageblobs").toString());
+		
+		public static final String HASH = "hash";
+		
+		/** a file stored before the blob table has no content hash; its path keeps the hash unique */
+		public static final String HASH_PREFIX_LEGACY = "file:";
+		
+		public static final String FILE = "file";
+		
+		public static final String SIZE = "size";
+		
+		public static final String REFCOUNT = "refcount";
+		
+		/** the last time the picture was shown or downloaded; the file of the least recent is evicted first */
+		public static final String LASTVIEWED = "lastviewed";
+		
+		public static final String[] COLUMNS = new String[] {_ID, HASH, FILE, SIZE, REFCOUNT, LASTVIEWED};
+		
+		public static final String[] TYPES = new String[] {TYPE_PRIMARY_KEY, "TEXT UNIQUE", TYPE_TEXT, TYPE_INT, "INT DEFAULT 0", "DATETIME DEFAULT 0"};
 	}
 	
-	public static synchronized void deletePicturesOfFeed(Context context, Uri entriesUri, String selection) {
-		if (FeedDataContentProvider.IMAGEFOLDER_FILE.exists()) {
-			PictureFilenameFilter filenameFilter = new PictureFilenameFilter();
-			
-			Cursor cursor = context.getContentResolver().query(entriesUri, IDPROJECTION, selection, null, null);
-			
-			while (cursor.moveToNext()) {
-				filenameFilter.setEntryId(cursor.getString(0));
-				
-				File[] files = FeedDataContentProvider.IMAGEFOLDER_FILE.listFiles(filenameFilter);
-				
-				for (int n = 0, i = files != null ? files.length : 0; n < i; n++) {
-					files[n].delete();
-				}
-			}
-			cursor.close();
-		}
+	/**
+	 * The main content of the linked pages of entries, stored for offline
+	 * reading.  The least recently viewed articles are deleted to keep the
+	 * storage budget, and the rows are removed together with their entry.
+	 */
+	public static class ArticleColumns implements BaseColumns {
+		public static final Uri CONTENT_URI = Uri.parse(new StringBuilder(CONTENT).append(AUTHORITY).append("/articles").toString());
+		
+		public static final String ENTRY_ID = "entryid";
+		
+		public static final String URL = "url";
+		
+		/** the extracted html, deflated */
+		public static final String ARTICLE = "article";
+		
+		public static final String SIZE = "size";
+		
+		/** the last time the article was shown or downloaded */
+		public static final String LASTVIEWED = "lastviewed";
+		
+		public static final String[] COLUMNS = new String[] {_ID, ENTRY_ID, URL, ARTICLE, SIZE, LASTVIEWED};
+		
+		public static final String[] TYPES = new String[] {TYPE_PRIMARY_KEY, "INTEGER UNIQUE", TYPE_TEXT, "BLOB", TYPE_INT, "DATETIME DEFAULT 0"};
 	}
 	
-	public static synchronized void deletePicturesOfEntry(String entryId) {
-		if (FeedDataContentProvider.IMAGEFOLDER_FILE.exists()) {
-			PictureFilenameFilter filenameFilter = new PictureFilenameFilter(entryId);
-			
-			File[] files = FeedDataContentProvider.IMAGEFOLDER_FILE.listFiles(filenameFilter);
-			
-			for (int n = 0, i = files != null ? files.length : 0; n < i; n++) {
-				files[n].delete();
-			}
-		}
+	/**
+	 * Holds back the change notifications of the calling thread's writes
+	 * until the matching {@link #endNotificationBatch(Context)} on the same
+	 * thread, which sends one notification per changed uri.  Always pair
+	 * the calls with try/finally.
+	 */
+	public static void beginNotificationBatch(Context context) {
+		context.getContentResolver().call(FeedColumns.CONTENT_URI, METHOD_BEGIN_NOTIFICATION_BATCH, null, null);
+	}
+	
+	public static void endNotificationBatch(Context context) {
+		context.getContentResolver().call(FeedColumns.CONTENT_URI, METHOD_END_NOTIFICATION_BATCH, null, null);
+	}
+	
+	/**
+	 * @return the uri which updates the same rows without a change
+	 *      notification; for the columns which no list shows, so that
+	 *      writing them does not load the lists again
+	 */
+	public static Uri SILENT_URI(Uri uri) {
+		return uri.buildUpon().appendQueryParameter(PARAMETER_SILENT, "true").build();
+	}
+	
+	/**
+	 * @return the uri which queries at most the given number of rows of
+	 *      the uri, the first ones in the sort order
+	 */
+	public static Uri LIMITED_URI(Uri uri, int maxRows) {
+		return uri.buildUpon().appendQueryParameter(PARAMETER_MAXROWS, Integer.toString(maxRows)).build();
 	}
 	
+	/**
+	 * Compresses the bodies of the entries which are stored plain, in
+	 * batches.  Slow; call it from a background service.
+	 *
+	 * @return the number of compressed entries
+	 */
+	public static int compressEntries(Context context) {
+		Bundle result = context.getContentResolver().call(FeedColumns.CONTENT_URI, METHOD_COMPRESS_ENTRIES, null, null);
+		
+		return result == null ? 0 : result.getInt(RESULT_COUNT);
+	}
+	
+	/**
+	 * Adds the entries stored before the search index existed to it, in
+	 * batches.  Slow; call it from a background service.
+	 *
+	 * @return the number of indexed entries
+	 */
+	public static int indexEntries(Context context) {
+		Bundle result = context.getContentResolver().call(FeedColumns.CONTENT_URI, METHOD_INDEX_ENTRIES, null, null);
+		
+		return result == null ? 0 : result.getInt(RESULT_COUNT);
+	}
+	
+	/**
+	 * Gives the pages freed by compressing or deleting entries back to the
+	 * file system, if there are enough of them.  Blocks every access to
+	 * the database while it runs, so call it only from the idle
+	 * maintenance.
+	 *
+	 * @return true if the database was rebuilt
+	 */
+	public static boolean vacuum(Context context) {
+		Bundle result = context.getContentResolver().call(FeedColumns.CONTENT_URI, METHOD_VACUUM, null, null);
+		
+		return result != null && result.getBoolean(RESULT_VACUUMED);
+	}
 
 }
@@ -26,30 +26,42 @@
 package net.groboclown.groborss.provider;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.Environment;
+import android.preference.PreferenceManager;
 import android.text.TextUtils;
+import android.util.Log;
 
 import net.groboclown.groborss.Strings;
+import net.groboclown.groborss.util.EntryBodyCodec;
+import net.groboclown.groborss.util.FeedIconCache;
+import net.groboclown.groborss.util.TaskRunner;
 
 public class FeedDataContentProvider extends ContentProvider {
 	private static final String FOLDER = Environment.getExternalStorageDirectory()+"/groborss/";
 	
 	private static final String DATABASE_NAME = "groborss.db";
 	
-	private static final int DATABASE_VERSION = 17;
+	private static final int DATABASE_VERSION = 27;
 	
 	private static final int URI_FEEDS = 1;
 	
@@ -67,12 +79,40 @@ public class FeedDataContentProvider extends ContentProvider {
 	
 	private static final int URI_FAVORITES_ENTRY = 8;
 	
+	private static final int URI_SEARCH = 9;
+	
+	private static final int URI_IMAGES = 10;
+	
+	private static final int URI_IMAGEBLOBS = 11;
+	
+	private static final int URI_ARTICLES = 12;
+	
+	private static final int DEFAULT_SEARCH_LIMIT = 100;
+	
+	/** entries compressed per transaction by the migration */
+	private static final int COMPRESS_BATCHSIZE = 100;
+	
+	/** entries indexed per transaction by the migration */
+	private static final int INDEX_BATCHSIZE = 100;
+	
+	/** the free pages worth rebuilding the database for, about a megabyte */
+	private static final long VACUUM_FREEPAGES = 256;
+	
+	private static final String TAG = "FeedDataContentProvider";
+	
 	protected static final String TABLE_FEEDS = "feeds";
 	
 	private static final String TABLE_ENTRIES = "entries";
 	
+	/** used by the retention purge of the MaintenanceService */
+	private static final String CREATE_INDEX_ENTRIES_DATE = new StringBuilder("CREATE INDEX entries_date ON ").append(TABLE_ENTRIES).append(" (").append(FeedData.EntryColumns.DATE).append(')').toString();
+	
+	/** the neighbour queries of a feed's entries; the rowid in every index serves _id for the other lists */
+	private static final String CREATE_INDEX_ENTRIES_FEEDID_DATE = new StringBuilder("CREATE INDEX entries_feedid_date ON ").append(TABLE_ENTRIES).append(" (").append(FeedData.EntryColumns.FEED_ID).append(", ").append(FeedData.EntryColumns.DATE).append(", ").append(FeedData.EntryColumns._ID).append(')').toString();
+	
 	private static final String ALTER_TABLE = "ALTER TABLE ";
 	
+	
 	private static final String ADD = " ADD ";
 	
 	private static final String EQUALS_ONE = "=1";
@@ -98,6 +138,10 @@ public class FeedDataContentProvider extends ContentProvider {
 		URI_MATCHER.addURI(FeedData.AUTHORITY, "entries/#", URI_ALLENTRIES_ENTRY);
 		URI_MATCHER.addURI(FeedData.AUTHORITY, "favorites", URI_FAVORITES);
 		URI_MATCHER.addURI(FeedData.AUTHORITY, "favorites/#", URI_FAVORITES_ENTRY);
+		URI_MATCHER.addURI(FeedData.AUTHORITY, "search", URI_SEARCH);
+		URI_MATCHER.addURI(FeedData.AUTHORITY, "images", URI_IMAGES);
+		URI_MATCHER.addURI(FeedData.AUTHORITY, "imageblobs", URI_IMAGEBLOBS);
+		URI_MATCHER.addURI(FeedData.AUTHORITY, "articles", URI_ARTICLES);
 	}
 	
 	private static class DatabaseHelper extends SQLiteOpenHelper {
@@ -110,6 +154,11 @@ public class FeedDataContentProvider extends ContentProvider {
 		public void onCreate(SQLiteDatabase database) {
 			database.execSQL(createTable(TABLE_FEEDS, FeedData.FeedColumns.COLUMNS, FeedData.FeedColumns.TYPES));
 			database.execSQL(createTable(TABLE_ENTRIES, FeedData.EntryColumns.COLUMNS, FeedData.EntryColumns.TYPES));
+			SearchIndex.createTable(database, TABLE_ENTRIES);
+			database.execSQL(CREATE_INDEX_ENTRIES_DATE);
+			database.execSQL(CREATE_INDEX_ENTRIES_FEEDID_DATE);
+			EntryImages.createTable(database);
+			EntryArticles.createTable(database);
 			
 			File backupFile = new File(BACKUPOPML);
 			
@@ -190,6 +239,47 @@ public class FeedDataContentProvider extends ContentProvider {
 				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(TABLE_FEEDS).append(ADD).append(FeedData.FeedColumns.ENTRY_LINK_IMG_PATTERN).append(' ').append(FeedData.TYPE_TEXT).toString());
 				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(TABLE_ENTRIES).append(ADD).append(FeedData.EntryColumns.LINK_IMG_URL).append(' ').append(FeedData.TYPE_TEXT).toString());
 			}
+			if (oldVersion < 18) {
+				// the existing entries are indexed by the maintenance, see indexEntries
+				SearchIndex.createTable(database, TABLE_ENTRIES);
+			}
+			if (oldVersion < 19) {
+				executeCatchedSQL(database, CREATE_INDEX_ENTRIES_DATE);
+			}
+			if (oldVersion < 20) {
+				EntryImages.createTable(database);
+				EntryImages.importExistingFiles(database, TABLE_ENTRIES);
+			}
+			if (oldVersion < 21) {
+				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(EntryImages.TABLE).append(ADD).append(FeedData.ImageColumns.URL).append(' ').append(FeedData.TYPE_TEXT).toString());
+				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(EntryImages.TABLE).append(ADD).append(FeedData.ImageColumns.URL_HASH).append(' ').append(FeedData.TYPE_TEXT).toString());
+				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(EntryImages.TABLE).append(ADD).append(FeedData.ImageColumns.BLOB_ID).append(' ').append(FeedData.TYPE_INT).toString());
+				EntryImages.createBlobTable(database);
+				EntryImages.moveFilesToBlobs(database);
+			}
+			if (oldVersion < 22) {
+				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(EntryImages.TABLE_BLOBS).append(ADD).append(FeedData.ImageBlobColumns.LASTVIEWED).append(" DATETIME DEFAULT 0").toString());
+				executeCatchedSQL(database, EntryImages.CREATE_INDEX_BLOBS_LASTVIEWED);
+			}
+			if (oldVersion < 23) {
+				executeCatchedSQL(database, CREATE_INDEX_ENTRIES_FEEDID_DATE);
+			}
+			if (oldVersion < 24) {
+				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(TABLE_ENTRIES).append(ADD).append(FeedData.EntryColumns.ABSTRACT_FORMAT).append(" INTEGER DEFAULT 0").toString());
+				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(TABLE_ENTRIES).append(ADD).append(FeedData.EntryColumns.ABSTRACT_DATA).append(" BLOB").toString());
+			}
+			if (oldVersion < 25) {
+				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(TABLE_ENTRIES).append(ADD).append(FeedData.EntryColumns.RENDERED).append(" BLOB").toString());
+				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(TABLE_ENTRIES).append(ADD).append(FeedData.EntryColumns.RENDERED_KEY).append(' ').append(FeedData.TYPE_TEXT).toString());
+			}
+			if (oldVersion < 26) {
+				executeCatchedSQL(database, new StringBuilder(ALTER_TABLE).append(TABLE_FEEDS).append(ADD).append(FeedData.FeedColumns.FETCHARTICLES).append(' ').append(FeedData.TYPE_BOOLEAN).toString());
+				EntryArticles.createTable(database);
+			}
+			if (oldVersion < 27) {
+				// the icons were stored as downloaded; fetch them again so that they are scaled
+				executeCatchedSQL(database, new StringBuilder("UPDATE ").append(TABLE_FEEDS).append(" SET ").append(FeedData.FeedColumns.ICON).append("=NULL").toString());
+			}
 		}
 		
 		private void executeCatchedSQL(SQLiteDatabase database, String query) {
@@ -252,12 +342,9 @@ public class FeedDataContentProvider extends ContentProvider {
 						ContentValues values = new ContentValues();
 						
 						for (int n = 0; n < i; n++) {
-							if (!cursor.isNull(columnIndices[n])) {
-								if (FeedData.FeedColumns.ICON.equals(columnNames[n])) {
-									values.put(FeedData.FeedColumns.ICON, cursor.getBlob(columnIndices[n]));
-								} else {
-									values.put(columnNames[n], cursor.getString(columnIndices[n]));
-								}
+							// the icons are left out; they are fetched again and scaled
+							if (!cursor.isNull(columnIndices[n]) && !FeedData.FeedColumns.ICON.equals(columnNames[n])) {
+								values.put(columnNames[n], cursor.getString(columnIndices[n]));
 							} 
 						}
 						values.put(FeedData.FeedColumns.PRIORITY, count++);
@@ -281,6 +368,10 @@ public class FeedDataContentProvider extends ContentProvider {
 	
 	private DatabaseHelper databaseHelper;
 	
+	private OPMLBackupWriter backupWriter;
+	
+	private NotificationBatcher<Uri> notificationBatcher;
+	
 	private String[] MAXPRIORITY = new String[] {"MAX("+FeedData.FeedColumns.PRIORITY+")"};
 
 	@Override
@@ -299,11 +390,11 @@ public class FeedDataContentProvider extends ContentProvider {
 			
 				final String feedId = uri.getPathSegments().get(1);
 				
-				new Thread() {
-					public void run() {
+				TaskRunner.get().run(new TaskRunner.Task("delete entries of feed", TaskRunner.PRIORITY_LOW, feedId) {
+					protected void execute() {
 						delete(FeedData.EntryColumns.CONTENT_URI(feedId), null, null);
 					}
-				}.start();
+				});
 				
 				where.append(FeedData.FeedColumns._ID).append('=').append(feedId);
 				
@@ -347,6 +438,10 @@ public class FeedDataContentProvider extends ContentProvider {
 				where.append(FeedData.EntryColumns.FAVORITE).append(EQUALS_ONE);
 				break;
 			}
+			case URI_ARTICLES : {
+				table = EntryArticles.TABLE;
+				break;
+			}
 		}
 		
 		if (!TextUtils.isEmpty(selection)) {
@@ -356,13 +451,31 @@ public class FeedDataContentProvider extends ContentProvider {
 			where.append(selection);
 		}
 		
-		int count = database.delete(table, where.toString(), selectionArgs);
+		int count;
+		
+		if (table == TABLE_ENTRIES) { // == is ok here
+			List<String> imagePaths;
+			
+			database.beginTransaction();
+			try {
+				imagePaths = EntryImages.removeOfEntries(database, TABLE_ENTRIES, where.toString(), selectionArgs);
+				EntryArticles.removeOfEntries(database, TABLE_ENTRIES, where.toString(), selectionArgs);
+				count = database.delete(table, where.toString(), selectionArgs);
+				database.setTransactionSuccessful();
+			} finally {
+				database.endTransaction();
+			}
+			EntryImages.deleteFiles(imagePaths);
+		} else {
+			count = database.delete(table, where.toString(), selectionArgs);
+		}
 		
 		if (table == TABLE_FEEDS) { // == is ok here
-			OPML.exportToFile(BACKUPOPML, database);
+			backupWriter.schedule();
+			invalidateIcons(option, uri);
 		}
 		if (count > 0) {
-			getContext().getContentResolver().notifyChange(uri, null);
+			notificationBatcher.notifyChange(uri);
 		}
 		return count;
 	}
@@ -376,10 +489,14 @@ public class FeedDataContentProvider extends ContentProvider {
 			case URI_FEED : return "vnd.android.cursor.item/vnd.feeddata.feed";
 			case URI_FAVORITES : 
 			case URI_ALLENTRIES :
+			case URI_SEARCH :
 			case URI_ENTRIES : return "vnd.android.cursor.dir/vnd.feeddata.entry";
 			case URI_FAVORITES_ENTRY : 
 			case URI_ALLENTRIES_ENTRY : 
 			case URI_ENTRY : return "vnd.android.cursor.item/vnd.feeddata.entry";
+			case URI_IMAGES : return "vnd.android.cursor.dir/vnd.feeddata.image";
+			case URI_IMAGEBLOBS : return "vnd.android.cursor.dir/vnd.feeddata.imageblob";
+			case URI_ARTICLES : return "vnd.android.cursor.dir/vnd.feeddata.article";
 			default : throw new IllegalArgumentException("Unknown URI: "+uri);
 		}
 	}
@@ -390,6 +507,8 @@ public class FeedDataContentProvider extends ContentProvider {
 		
 		int option = URI_MATCHER.match(uri);
 		
+		values = new ContentValues(values); // the caller's values stay as they are
+		
 		SQLiteDatabase database = databaseHelper.getWritableDatabase();
 		
 		switch (option) {
@@ -403,28 +522,152 @@ public class FeedDataContentProvider extends ContentProvider {
 				}
 				cursor.close();
 				newId = database.insert(TABLE_FEEDS, null, values);
-				OPML.exportToFile(BACKUPOPML, database);
+				backupWriter.schedule();
 				break;
 			}
 			case URI_ENTRIES : {
 				values.put(FeedData.EntryColumns.FEED_ID, uri.getPathSegments().get(1));
-				newId = database.insert(TABLE_ENTRIES, null, values);
+				newId = insertEntry(database, values);
 				break;
 			}
 			case URI_ALLENTRIES : {
-				newId = database.insert(TABLE_ENTRIES, null, values);
+				newId = insertEntry(database, values);
+				break;
+			}
+			case URI_IMAGES : {
+				newId = EntryImages.insertReference(database, values);
+				break;
+			}
+			case URI_IMAGEBLOBS : {
+				newId = database.insert(EntryImages.TABLE_BLOBS, null, values);
+				break;
+			}
+			case URI_ARTICLES : {
+				/** a page fetched again replaces the article */
+				newId = database.replace(EntryArticles.TABLE, null, values);
 				break;
 			}
 			default : throw new IllegalArgumentException("Illegal insert");
 		}
 		if (newId > -1) {
-			getContext().getContentResolver().notifyChange(uri, null);
+			notificationBatcher.notifyChange(uri);
 			return ContentUris.withAppendedId(uri, newId);
 		} else {
 			throw new SQLException("Could not insert row into "+uri);
 		}
 	}
 
+	/**
+	 * Inserts the entry and its search index row in one transaction.
+	 */
+	private long insertEntry(SQLiteDatabase database, ContentValues values) {
+		String body = values.getAsString(FeedData.EntryColumns.ABSTRACT);
+		
+		encodeBody(values);
+		database.beginTransaction();
+		try {
+			long newId = database.insert(TABLE_ENTRIES, null, values);
+			
+			if (newId > -1) {
+				SearchIndex.index(database, newId, values.getAsString(FeedData.EntryColumns.TITLE), values.getAsString(FeedData.EntryColumns.AUTHOR), body);
+			}
+			database.setTransactionSuccessful();
+			return newId;
+		} finally {
+			database.endTransaction();
+		}
+	}
+	
+	/**
+	 * Stores the body of the values compressed if that is enabled, and
+	 * clears the other representation. The prepared text stays, its key
+	 * tells whether it still matches the body. The values must not be the
+	 * caller's, as in our own process the caller may pass them again, e.g.
+	 * to insert after an update that matched nothing.
+	 */
+	private void encodeBody(ContentValues values) {
+		if (!values.containsKey(FeedData.EntryColumns.ABSTRACT)) {
+			return;
+		}
+		String body = values.getAsString(FeedData.EntryColumns.ABSTRACT);
+		
+		if (EntryBodyCodec.shouldCompress(body) && PreferenceManager.getDefaultSharedPreferences(getContext()).getBoolean(Strings.SETTINGS_COMPRESSENTRIES, false)) {
+			values.putNull(FeedData.EntryColumns.ABSTRACT);
+			values.put(FeedData.EntryColumns.ABSTRACT_DATA, EntryBodyCodec.compress(body));
+			values.put(FeedData.EntryColumns.ABSTRACT_FORMAT, EntryBodyCodec.FORMAT_DEFLATE);
+		} else {
+			values.putNull(FeedData.EntryColumns.ABSTRACT_DATA);
+			values.put(FeedData.EntryColumns.ABSTRACT_FORMAT, EntryBodyCodec.FORMAT_PLAIN);
+		}
+	}
+	
+	/**
+	 * Compresses the plain bodies of the existing entries, one batch per
+	 * transaction so that a refresh is not blocked for long.  The freed
+	 * pages are reclaimed by the next {@link #vacuum(SQLiteDatabase)}.
+	 */
+	private static int compressEntries(SQLiteDatabase database) {
+		String selection = new StringBuilder(FeedData.EntryColumns.ABSTRACT_FORMAT).append('=').append(EntryBodyCodec.FORMAT_PLAIN)
+				.append(Strings.DB_AND).append("length(").append(FeedData.EntryColumns.ABSTRACT).append(")>=")
+				.append(EntryBodyCodec.MIN_COMPRESS_LENGTH).toString();
+		
+		String[] projection = new String[] {FeedData.EntryColumns._ID, FeedData.EntryColumns.ABSTRACT};
+		
+		ContentValues values = new ContentValues();
+		
+		values.putNull(FeedData.EntryColumns.ABSTRACT);
+		values.put(FeedData.EntryColumns.ABSTRACT_FORMAT, EntryBodyCodec.FORMAT_DEFLATE);
+		
+		int total = 0;
+		
+		while (true) {
+			int count = 0;
+			
+			database.beginTransaction();
+			try {
+				Cursor cursor = database.query(TABLE_ENTRIES, projection, selection, null, null, null, null, Integer.toString(COMPRESS_BATCHSIZE));
+				
+				try {
+					while (cursor.moveToNext()) {
+						values.put(FeedData.EntryColumns.ABSTRACT_DATA, EntryBodyCodec.compress(cursor.getString(1)));
+						count += database.update(TABLE_ENTRIES, values, FeedData.EntryColumns._ID + '=' + cursor.getLong(0), null);
+					}
+				} finally {
+					cursor.close();
+				}
+				database.setTransactionSuccessful();
+			} finally {
+				database.endTransaction();
+			}
+			total += count;
+			if (count < COMPRESS_BATCHSIZE) {
+				break;
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * Rebuilds the database if enough pages are free, e.g. after the
+	 * entries were compressed or purged.  Blocks all other access while it
+	 * runs.
+	 * 
+	 * @return true if the database was rebuilt
+	 */
+	private static boolean vacuum(SQLiteDatabase database) {
+		if (DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null) < VACUUM_FREEPAGES) {
+			return false;
+		}
+		try {
+			database.execSQL("VACUUM");
+			return true;
+		} catch (SQLException e) {
+			// the space is reused by new entries anyway
+			Log.w(TAG, "Could not vacuum the database", e);
+			return false;
+		}
+	}
+
 	@Override
 	public boolean onCreate() {
 		try {
@@ -435,8 +678,65 @@ public class FeedDataContentProvider extends ContentProvider {
 			
 		}
 		databaseHelper = new DatabaseHelper(getContext(), DATABASE_NAME, DATABASE_VERSION);
+		backupWriter = new OPMLBackupWriter(databaseHelper, BACKUPOPML);
+		notificationBatcher = new NotificationBatcher<>(new NotificationBatcher.Notifier<Uri>() {
+			public void notifyChange(Uri uri) {
+				getContext().getContentResolver().notifyChange(uri, null);
+			}
+		});
 		return true;
 	}
+	
+	/**
+	 * Applies the operations in a single transaction, announcing each
+	 * changed uri once at the end.
+	 */
+	@Override
+	public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+		SQLiteDatabase database = databaseHelper.getWritableDatabase();
+		
+		notificationBatcher.begin();
+		try {
+			database.beginTransaction();
+			try {
+				ContentProviderResult[] results = super.applyBatch(operations);
+				
+				database.setTransactionSuccessful();
+				return results;
+			} finally {
+				database.endTransaction();
+			}
+		} finally {
+			notificationBatcher.end();
+		}
+	}
+
+	@Override
+	public Bundle call(String method, String arg, Bundle extras) {
+		if (FeedData.METHOD_BEGIN_NOTIFICATION_BATCH.equals(method)) {
+			notificationBatcher.begin();
+			return null;
+		} else if (FeedData.METHOD_END_NOTIFICATION_BATCH.equals(method)) {
+			notificationBatcher.end();
+			return null;
+		} else if (FeedData.METHOD_COMPRESS_ENTRIES.equals(method)) {
+			Bundle result = new Bundle();
+			
+			result.putInt(FeedData.RESULT_COUNT, compressEntries(databaseHelper.getWritableDatabase()));
+			return result;
+		} else if (FeedData.METHOD_INDEX_ENTRIES.equals(method)) {
+			Bundle result = new Bundle();
+			
+			result.putInt(FeedData.RESULT_COUNT, SearchIndex.indexMissing(databaseHelper.getWritableDatabase(), TABLE_ENTRIES, INDEX_BATCHSIZE));
+			return result;
+		} else if (FeedData.METHOD_VACUUM.equals(method)) {
+			Bundle result = new Bundle();
+			
+			result.putBoolean(FeedData.RESULT_VACUUMED, vacuum(databaseHelper.getWritableDatabase()));
+			return result;
+		}
+		return super.call(method, arg, extras);
+	}
 
 	@Override
 	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
@@ -448,6 +748,8 @@ public class FeedDataContentProvider extends ContentProvider {
 			sortOrder = FeedData.FEED_DEFAULTSORTORDER;
 		}
 		
+		SQLiteDatabase database = databaseHelper.getReadableDatabase();
+		
 		switch(option) {
 			case URI_FEED : {
 				queryBuilder.setTables(TABLE_FEEDS);
@@ -483,16 +785,62 @@ public class FeedDataContentProvider extends ContentProvider {
 				queryBuilder.appendWhere(new StringBuilder(FeedData.EntryColumns.FAVORITE).append(EQUALS_ONE));
 				break;
 			}
+			case URI_IMAGES : {
+				queryBuilder.setTables(EntryImages.TABLE_WITH_BLOBS);
+				break;
+			}
+			case URI_IMAGEBLOBS : {
+				queryBuilder.setTables(EntryImages.TABLE_BLOBS);
+				break;
+			}
+			case URI_ARTICLES : {
+				queryBuilder.setTables(EntryArticles.TABLE);
+				break;
+			}
+			case URI_SEARCH : {
+				long[] ids = SearchIndex.search(database, TABLE_ENTRIES, uri.getQueryParameter(FeedData.EntryColumns.SEARCH_QUERY), selection, selectionArgs, getIntParameter(uri, FeedData.EntryColumns.SEARCH_OFFSET, 0), getIntParameter(uri, FeedData.EntryColumns.SEARCH_LIMIT, DEFAULT_SEARCH_LIMIT));
+				
+				StringBuilder where = new StringBuilder(FeedData.EntryColumns._ID).append(" IN (");
+				
+				StringBuilder order = new StringBuilder("CASE ").append(FeedData.EntryColumns._ID);
+				
+				for (int n = 0; n < ids.length; n++) {
+					if (n > 0) {
+						where.append(',');
+					}
+					where.append(ids[n]);
+					order.append(" WHEN ").append(ids[n]).append(" THEN ").append(n);
+				}
+				queryBuilder.setTables("entries join (select name, icon, _id as feed_id from feeds) as F on (entries.feedid = F.feed_id)");
+				queryBuilder.appendWhere(where.append(')'));
+				/** the selection has been applied by the search, the order is the rank */
+				selection = null;
+				selectionArgs = null;
+				sortOrder = ids.length > 0 ? order.append(" END").toString() : null;
+				break;
+			}
 		}
 		
-		SQLiteDatabase database = databaseHelper.getReadableDatabase();
+		int maxRows = getIntParameter(uri, FeedData.PARAMETER_MAXROWS, 0);
 		
-		Cursor cursor = queryBuilder.query(database, projection, selection, selectionArgs, null, null, sortOrder);
+		Cursor cursor = queryBuilder.query(database, projection, selection, selectionArgs, null, null, sortOrder, maxRows > 0 ? Integer.toString(maxRows) : null);
 
 		cursor.setNotificationUri(getContext().getContentResolver(), uri);
 		return cursor;
 	}
 
+	private static int getIntParameter(Uri uri, String name, int defaultValue) {
+		String value = uri.getQueryParameter(name);
+		
+		if (value != null) {
+			try {
+				return Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+			}
+		}
+		return defaultValue;
+	}
+	
 	@Override
 	public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
 		int option = URI_MATCHER.match(uri);
@@ -560,6 +908,19 @@ public class FeedDataContentProvider extends ContentProvider {
 				where.append(FeedData.EntryColumns.FAVORITE).append(EQUALS_ONE);				
 				break;
 			}
+			case URI_SEARCH : {
+				/** updates of single rows from the search results */
+				table = TABLE_ENTRIES;
+				break;
+			}
+			case URI_IMAGEBLOBS : {
+				table = EntryImages.TABLE_BLOBS;
+				break;
+			}
+			case URI_ARTICLES : {
+				table = EntryArticles.TABLE;
+				break;
+			}
 		}
 		
 		if (!TextUtils.isEmpty(selection)) {
@@ -570,15 +931,51 @@ public class FeedDataContentProvider extends ContentProvider {
 			}
 		}
 		
-		int count = database.update(table, values, where.toString(), selectionArgs);
+		if (table == TABLE_ENTRIES && values.containsKey(FeedData.EntryColumns.ABSTRACT)) { // == is ok here
+			values = new ContentValues(values); // the caller's values stay as they are
+			encodeBody(values);
+		}
+		
+		int count;
+		
+		if (table == TABLE_ENTRIES && (values.containsKey(FeedData.EntryColumns.TITLE) || values.containsKey(FeedData.EntryColumns.AUTHOR) || values.containsKey(FeedData.EntryColumns.ABSTRACT))) { // == is ok here
+			database.beginTransaction();
+			try {
+				String changed = SearchIndex.findChanged(database, TABLE_ENTRIES, where.toString(), selectionArgs, values);
+				
+				count = database.update(table, values, where.toString(), selectionArgs);
+				if (changed != null) {
+					SearchIndex.reindex(database, TABLE_ENTRIES, changed, null);
+				}
+				database.setTransactionSuccessful();
+			} finally {
+				database.endTransaction();
+			}
+		} else {
+			count = database.update(table, values, where.toString(), selectionArgs);
+		}
 		
 		if (table == TABLE_FEEDS && (values.containsKey(FeedData.FeedColumns.NAME) || values.containsKey(FeedData.FeedColumns.URL) || values.containsKey(FeedData.FeedColumns.PRIORITY))) { // == is ok here
-			OPML.exportToFile(BACKUPOPML, database);
+			backupWriter.schedule();
 		}
-		if (count > 0) {
-			getContext().getContentResolver().notifyChange(uri, null);
+		if (table == TABLE_FEEDS && count > 0 && values.containsKey(FeedData.FeedColumns.ICON)) { // == is ok here
+			invalidateIcons(option, uri);
+		}
+		if (count > 0 && uri.getQueryParameter(FeedData.PARAMETER_SILENT) == null) {
+			notificationBatcher.notifyChange(uri);
 		}
 		return count;
 	}
+	
+	/**
+	 * Drops the decoded icons of the feeds changed through the uri.
+	 */
+	private static void invalidateIcons(int option, Uri uri) {
+		if (option == URI_FEED) {
+			FeedIconCache.invalidate(uri.getPathSegments().get(1));
+		} else {
+			FeedIconCache.invalidateAll();
+		}
+	}
 
 }
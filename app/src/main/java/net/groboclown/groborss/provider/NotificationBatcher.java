@@ -0,0 +1,102 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.provider;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Collapses change notifications while a batch scope is open.
+ * <p>
+ * A scope belongs to the thread that opened it: the provider runs in the
+ * process of its callers, so a writer's changes arrive on its own thread.
+ * While the thread has a scope open, its changes are only recorded, and
+ * when its last scope closes each distinct key is announced exactly once,
+ * in the order in which it first changed.  Scopes may nest.  The changes
+ * of the other threads, e.g. the read state written by the UI during a
+ * refresh, are passed straight through.
+ *
+ * @param <T> the notification key; the provider uses the content Uri.
+ */
+class NotificationBatcher<T> {
+    interface Notifier<T> {
+        void notifyChange(T key);
+    }
+
+    private static class Scope<T> {
+        final Set<T> pending = new LinkedHashSet<>();
+
+        int depth;
+    }
+
+    private final Notifier<T> notifier;
+
+    /** the open scope of each thread; none while the thread has no scope open */
+    private final ThreadLocal<Scope<T>> scopes = new ThreadLocal<>();
+
+    NotificationBatcher(Notifier<T> notifier) {
+        this.notifier = notifier;
+    }
+
+    void begin() {
+        Scope<T> scope = scopes.get();
+
+        if (scope == null) {
+            scope = new Scope<>();
+            scopes.set(scope);
+        }
+        scope.depth++;
+    }
+
+    void end() {
+        Scope<T> scope = scopes.get();
+
+        if (scope == null) {
+            throw new IllegalStateException("no open notification batch");
+        }
+        if (--scope.depth > 0) {
+            return;
+        }
+        scopes.remove();
+        for (T key : scope.pending) {
+            notifier.notifyChange(key);
+        }
+    }
+
+    void notifyChange(T key) {
+        Scope<T> scope = scopes.get();
+
+        if (scope != null) {
+            scope.pending.add(key);
+        } else {
+            notifier.notifyChange(key);
+        }
+    }
+
+    boolean isBatching() {
+        return scopes.get() != null;
+    }
+}
@@ -67,12 +67,19 @@ public class OPML {
 	
 	private static final String CLOSING = "</body></opml>\n";
 	
+	private static final String TEMP_SUFFIX = ".tmp";
+	
 	private static OPMLParser parser = new OPMLParser();
 	
 	public static void importFromFile(String filename, Context context) throws FileNotFoundException, IOException, SAXException {
 		parser.context = context;
 		parser.database = null;
-		Xml.parse(new InputStreamReader(new FileInputStream(filename)), parser);
+		FeedData.beginNotificationBatch(context);
+		try {
+			Xml.parse(new InputStreamReader(new FileInputStream(filename)), parser);
+		} finally {
+			FeedData.endNotificationBatch(context);
+		}
 	}
 	
 	private static void importFromInputStream(InputStream inputStream, SQLiteDatabase database) {
@@ -123,29 +130,47 @@ public class OPML {
 		cursor.close();
 	}
 	
+	/**
+	 * Streams the feeds of the cursor into a temporary file next to the
+	 * target and renames it afterwards, so readers never see a partially
+	 * written file.
+	 */
 	private static void writeData(String filename, Cursor cursor) throws IOException {
-		StringBuilder builder = new StringBuilder(START);
-		
-		builder.append(System.currentTimeMillis());
-		builder.append(AFTERDATE);
-		
-		while(cursor.moveToNext()) {
-			builder.append(OUTLINE_TITLE);
-			builder.append(cursor.isNull(1) ? Strings.EMPTY : TextUtils.htmlEncode(cursor.getString(1)));
-			builder.append(OUTLINE_XMLURL);
-			builder.append(TextUtils.htmlEncode(cursor.getString(2)));
-			if (cursor.getInt(3) == 1) {
-				builder.append(OUTLINE_CATEGORY);
-				builder.append(ATTRIBUTE_CATEGORY_VALUE);
+		File file = new File(filename);
+		
+		File tempFile = new File(filename + TEMP_SUFFIX);
+		
+		BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile));
+		
+		try {
+			writer.write(START);
+			writer.write(Long.toString(System.currentTimeMillis()));
+			writer.write(AFTERDATE);
+			
+			while(cursor.moveToNext()) {
+				writer.write(OUTLINE_TITLE);
+				writer.write(cursor.isNull(1) ? Strings.EMPTY : TextUtils.htmlEncode(cursor.getString(1)));
+				writer.write(OUTLINE_XMLURL);
+				writer.write(TextUtils.htmlEncode(cursor.getString(2)));
+				if (cursor.getInt(3) == 1) {
+					writer.write(OUTLINE_CATEGORY);
+					writer.write(ATTRIBUTE_CATEGORY_VALUE);
+				}
+				writer.write(OUTLINE_CLOSING);
 			}
-			builder.append(OUTLINE_CLOSING);
+			writer.write(CLOSING);
+		} catch (IOException e) {
+			writer.close();
+			tempFile.delete();
+			throw e;
 		}
-		builder.append(CLOSING);
-		
-		BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
-
-		writer.write(builder.toString());
 		writer.close();
+		
+		/** renameTo does not replace an existing file on every file system */
+		if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+			tempFile.delete();
+			throw new IOException("Could not replace " + filename);
+		}
 	}
 	
 	private static class OPMLParser extends DefaultHandler {
@@ -0,0 +1,90 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.provider;
+
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Writes the OPML backup of the feed list on a background thread.
+ * <p>
+ * Feed changes only schedule a write; changes that arrive within the
+ * debounce window are coalesced into a single export, so that feed
+ * management actions do not pay for the file I/O.  A steady stream of
+ * changes still results in a write once {@link #MAX_DELAY_MILLIS} has
+ * passed since the first pending change.
+ */
+class OPMLBackupWriter implements Runnable {
+    private static final long DEBOUNCE_MILLIS = 1500;
+
+    private static final long MAX_DELAY_MILLIS = 10000;
+
+    private final SQLiteOpenHelper databaseHelper;
+
+    private final String filename;
+
+    private final Handler handler;
+
+    /** uptime of the first change that has not been written yet; 0 if none */
+    private long firstPendingChange;
+
+    OPMLBackupWriter(SQLiteOpenHelper databaseHelper, String filename) {
+        this.databaseHelper = databaseHelper;
+        this.filename = filename;
+
+        HandlerThread thread = new HandlerThread("OPMLBackupWriter", Process.THREAD_PRIORITY_BACKGROUND);
+
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Requests a backup of the current feed list.  Returns immediately.
+     */
+    synchronized void schedule() {
+        long now = SystemClock.uptimeMillis();
+
+        if (firstPendingChange == 0) {
+            firstPendingChange = now;
+        } else if (now - firstPendingChange >= MAX_DELAY_MILLIS) {
+            // keep the already scheduled write instead of postponing it again
+            return;
+        }
+        handler.removeCallbacks(this);
+        handler.postAtTime(this, Math.min(now + DEBOUNCE_MILLIS, firstPendingChange + MAX_DELAY_MILLIS));
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            firstPendingChange = 0;
+        }
+        OPML.exportToFile(filename, databaseHelper.getReadableDatabase());
+    }
+}
@@ -0,0 +1,464 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+
+import net.groboclown.groborss.util.EntryBodyCodec;
+
+/**
+ * Maintains the full text index over the entries and answers ranked
+ * searches against it.
+ * <p>
+ * The index is an FTS4 table whose docid is the entry id.  Rows are
+ * written together with the entry by the provider, so the tag stripping
+ * happens once at ingest instead of on every search; removal is handled
+ * by a delete trigger on the entries table.
+ */
+class SearchIndex {
+    static final String TABLE = "entries_search";
+
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_AUTHOR = "author";
+    private static final String COLUMN_BODY = "body";
+
+    /** Relative weight of a hit in the title, author and body column. */
+    private static final double[] COLUMN_WEIGHTS = { 4.0, 2.0, 1.0 };
+
+    private static final String MATCHINFO_FORMAT = "pcx";
+
+    private static final String INSERT = "INSERT OR REPLACE INTO " + TABLE + " (docid, " +
+            COLUMN_TITLE + ", " + COLUMN_AUTHOR + ", " + COLUMN_BODY + ") VALUES (?, ?, ?, ?)";
+
+    private static final String[] SOURCE_PROJECTION = {
+            FeedData.EntryColumns._ID, FeedData.EntryColumns.TITLE,
+            FeedData.EntryColumns.AUTHOR, FeedData.EntryColumns.ABSTRACT,
+            FeedData.EntryColumns.ABSTRACT_FORMAT, FeedData.EntryColumns.ABSTRACT_DATA
+    };
+
+    static void createTable(SQLiteDatabase database, String entriesTable) {
+        database.execSQL("CREATE VIRTUAL TABLE " + TABLE + " USING fts4(" +
+                COLUMN_TITLE + ", " + COLUMN_AUTHOR + ", " + COLUMN_BODY + ")");
+        database.execSQL("CREATE TRIGGER " + TABLE + "_delete AFTER DELETE ON " + entriesTable +
+                " BEGIN DELETE FROM " + TABLE + " WHERE docid = old." + FeedData.EntryColumns._ID + "; END");
+    }
+
+    static void index(SQLiteDatabase database, long entryId, String title, String author, String html) {
+        database.execSQL(INSERT, new Object[] { entryId, title, author, toSearchText(html) });
+    }
+
+    /**
+     * Rewrites the index rows of all entries matching the where clause.
+     */
+    static void reindex(SQLiteDatabase database, String entriesTable, String where, String[] whereArgs) {
+        index(database, database.query(entriesTable, SOURCE_PROJECTION, where, whereArgs, null, null, null));
+    }
+
+    /**
+     * Indexes the entries that have no index row yet, i.e. those stored
+     * before the index was created; one batch per transaction, so that a
+     * refresh is not blocked for long.
+     *
+     * @return the number of indexed entries
+     */
+    static int indexMissing(SQLiteDatabase database, String entriesTable, int batchSize) {
+        String where = "NOT EXISTS (SELECT 1 FROM " + TABLE + " WHERE docid = " + entriesTable + '.'
+                + FeedData.EntryColumns._ID + ')';
+
+        int total = 0;
+
+        while (true) {
+            int count;
+
+            database.beginTransaction();
+            try {
+                count = index(database, database.query(entriesTable, SOURCE_PROJECTION, where, null, null, null, null,
+                        Integer.toString(batchSize)));
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            total += count;
+            if (count < batchSize) {
+                return total;
+            }
+        }
+    }
+
+    private static int index(SQLiteDatabase database, Cursor cursor) {
+        try {
+            while (cursor.moveToNext()) {
+                index(database, cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                        EntryBodyCodec.decode(cursor.getInt(4), cursor.getString(3), cursor.getBlob(5)));
+            }
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Finds the entries matching the where clause whose indexed text the
+     * values change.  The feed parser writes every known entry again on
+     * each refresh, mostly unchanged, so only these are indexed again.
+     *
+     * @param values the values about to be written, with the body encoded
+     * @return a where clause selecting the changed entries, or null if
+     *      there are none
+     */
+    static String findChanged(SQLiteDatabase database, String entriesTable, String where, String[] whereArgs,
+            ContentValues values) {
+        boolean hasTitle = values.containsKey(FeedData.EntryColumns.TITLE);
+        boolean hasAuthor = values.containsKey(FeedData.EntryColumns.AUTHOR);
+        boolean hasBody = values.containsKey(FeedData.EntryColumns.ABSTRACT);
+
+        String title = values.getAsString(FeedData.EntryColumns.TITLE);
+        String author = values.getAsString(FeedData.EntryColumns.AUTHOR);
+        Integer format = values.getAsInteger(FeedData.EntryColumns.ABSTRACT_FORMAT);
+        String text = values.getAsString(FeedData.EntryColumns.ABSTRACT);
+        byte[] data = values.getAsByteArray(FeedData.EntryColumns.ABSTRACT_DATA);
+
+        StringBuilder changed = null;
+
+        Cursor cursor = database.query(entriesTable, SOURCE_PROJECTION, where, whereArgs, null, null, null);
+
+        try {
+            while (cursor.moveToNext()) {
+                if ((hasTitle && !equal(title, cursor.getString(1)))
+                        || (hasAuthor && !equal(author, cursor.getString(2)))
+                        || (hasBody && !sameBody(cursor.getInt(4), cursor.getString(3), cursor.getBlob(5),
+                                format == null ? EntryBodyCodec.FORMAT_PLAIN : format, text, data))) {
+                    if (changed == null) {
+                        changed = new StringBuilder(FeedData.EntryColumns._ID).append(" IN (");
+                    } else {
+                        changed.append(',');
+                    }
+                    changed.append(cursor.getLong(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return changed == null ? null : changed.append(')').toString();
+    }
+
+    /**
+     * @return true if both encoded bodies hold the same text; the text is
+     *      only decompressed if the bodies are stored in different formats
+     */
+    static boolean sameBody(int formatA, String textA, byte[] dataA, int formatB, String textB, byte[] dataB) {
+        if (formatA == formatB) {
+            return formatA == EntryBodyCodec.FORMAT_DEFLATE ? Arrays.equals(dataA, dataB) : equal(textA, textB);
+        }
+        return equal(EntryBodyCodec.decode(formatA, textA, dataA), EntryBodyCodec.decode(formatB, textB, dataB));
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Finds the ids of the entries that match the user entered query, best
+     * match first.  All matches are ranked: the first pass reads only
+     * their ids and match statistics, and only the best ones up to the
+     * end of the page are kept in order.
+     *
+     * @param entriesFilter optional condition on the entries table, or null
+     * @return the ids of the requested page of results
+     */
+    static long[] search(SQLiteDatabase database, String entriesTable, String query, String entriesFilter,
+            String[] filterArgs, int offset, int limit) {
+        String match = toMatchExpression(query);
+
+        if (match == null || limit <= 0) {
+            return new long[0];
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(TABLE).append(".docid, matchinfo(")
+                .append(TABLE).append(", '").append(MATCHINFO_FORMAT).append("') FROM ").append(TABLE);
+
+        String[] args;
+
+        if (entriesFilter != null && entriesFilter.length() > 0) {
+            // the entries are only read for the filter
+            sql.append(" JOIN ").append(entriesTable).append(" ON (").append(entriesTable).append('.')
+                    .append(FeedData.EntryColumns._ID).append(" = ").append(TABLE).append(".docid) WHERE ")
+                    .append(TABLE).append(" MATCH ? AND (").append(entriesFilter).append(')');
+            args = new String[1 + (filterArgs == null ? 0 : filterArgs.length)];
+            if (filterArgs != null) {
+                System.arraycopy(filterArgs, 0, args, 1, filterArgs.length);
+            }
+        } else {
+            sql.append(" WHERE ").append(TABLE).append(" MATCH ?");
+            args = new String[1];
+        }
+        args[0] = match;
+
+        Cursor cursor = database.rawQuery(sql.toString(), args);
+
+        long[] ids;
+        double[] scores;
+
+        try {
+            int count = cursor.getCount();
+
+            ids = new long[count];
+            scores = new double[count];
+            for (int n = 0; cursor.moveToNext(); n++) {
+                ids[n] = cursor.getLong(0);
+                scores[n] = score(cursor.getBlob(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return rank(ids, scores, offset, limit);
+    }
+
+    /**
+     * Reduces html to the words that should be searchable: tags are
+     * dropped and the common entities decoded.  A '<' that no '>'
+     * follows is kept as text.
+     */
+    static String toSearchText(String html) {
+        if (html == null) {
+            return null;
+        }
+
+        int length = html.length();
+
+        StringBuilder result = new StringBuilder(length);
+
+        // once no '>' follows, every later '<' is text as well
+        boolean closed = true;
+
+        for (int n = 0; n < length; n++) {
+            char c = html.charAt(n);
+
+            if (c == '<' && closed) {
+                int end = html.indexOf('>', n);
+
+                if (end < 0) {
+                    closed = false;
+                } else {
+                    n = end;
+                    c = ' ';
+                }
+            } else if (c == '&') {
+                int end = html.indexOf(';', n);
+
+                if (end > n && end - n <= 6) {
+                    String entity = html.substring(n + 1, end);
+
+                    n = end;
+                    switch (entity) {
+                        case "amp": c = '&'; break;
+                        case "lt": c = '<'; break;
+                        case "gt": c = '>'; break;
+                        case "quot": c = '"'; break;
+                        case "#39":
+                        case "apos": c = '\''; break;
+                        default: c = ' ';
+                    }
+                }
+            }
+            if (c <= ' ') {
+                // collapse all whitespace into a single space
+                if (result.length() > 0 && result.charAt(result.length() - 1) != ' ') {
+                    result.append(' ');
+                }
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * Turns free text into an FTS query: every word must match, and the
+     * last word may be a prefix.  Operators and quotes typed by the user
+     * are not interpreted, so the expression is always valid.
+     *
+     * @return the expression, or null if the query contains no words
+     */
+    static String toMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        StringBuilder result = new StringBuilder();
+
+        boolean inWord = false;
+
+        for (int n = 0, i = query.length(); n < i; n++) {
+            char c = query.charAt(n);
+
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord && result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append(c);
+                inWord = true;
+            } else {
+                inWord = false;
+            }
+        }
+        if (result.length() == 0) {
+            return null;
+        }
+        // lower case, so that words such as "or" and "near" are not taken as operators
+        return result.append('*').toString().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Scores a row from its {@code matchinfo(..., 'pcx')} blob: every hit
+     * of a phrase in a column counts in relation to the hits of that
+     * phrase in the same column of all rows, weighted by the column.
+     */
+    static double score(byte[] matchinfo) {
+        if (matchinfo == null || matchinfo.length < 8) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+
+        double score = 0;
+
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                int offset = 4 * (2 + 3 * (phrase * columns + column));
+
+                if (offset + 8 > matchinfo.length) {
+                    return score;
+                }
+
+                int hitsInRow = buffer.getInt(offset);
+                int hitsInAllRows = buffer.getInt(offset + 4);
+
+                if (hitsInRow > 0 && hitsInAllRows > 0) {
+                    double weight = column < COLUMN_WEIGHTS.length ? COLUMN_WEIGHTS[column] : 1.0;
+
+                    score += weight * hitsInRow / hitsInAllRows;
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Orders the ids by descending score (newer entries, i.e. higher ids,
+     * first on a tie) and cuts out the requested page.  Only the best
+     * matches up to the end of the page are kept, in a heap with the worst
+     * of them on top, so a page costs O(n log(offset + limit)).
+     */
+    static long[] rank(long[] ids, double[] scores, int offset, int limit) {
+        int count = ids.length;
+
+        offset = Math.max(offset, 0);
+        if (offset >= count || limit <= 0) {
+            return new long[0];
+        }
+
+        int kept = (int) Math.min(count, (long) offset + limit);
+
+        int[] heap = new int[kept];
+
+        int size = 0;
+
+        for (int n = 0; n < count; n++) {
+            if (size < kept) {
+                int child = size++;
+
+                // sift up
+                while (child > 0) {
+                    int parent = (child - 1) / 2;
+
+                    if (!isBetter(ids, scores, heap[parent], n)) {
+                        break;
+                    }
+                    heap[child] = heap[parent];
+                    child = parent;
+                }
+                heap[child] = n;
+            } else if (isBetter(ids, scores, n, heap[0])) {
+                siftDown(ids, scores, heap, size, n);
+            }
+        }
+
+        // taking the worst off the top fills the order from its end
+        int[] order = new int[kept];
+
+        while (size > 0) {
+            order[--size] = heap[0];
+            if (size > 0) {
+                siftDown(ids, scores, heap, size, heap[size]);
+            }
+        }
+
+        long[] page = new long[kept - offset];
+
+        for (int n = 0; n < page.length; n++) {
+            page[n] = ids[order[offset + n]];
+        }
+        return page;
+    }
+
+    /** Puts the index at the top of the heap and moves it down to its place. */
+    private static void siftDown(long[] ids, double[] scores, int[] heap, int size, int index) {
+        int parent = 0;
+
+        while (true) {
+            int child = 2 * parent + 1;
+
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && isBetter(ids, scores, heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!isBetter(ids, scores, index, heap[child])) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = index;
+    }
+
+    /** @return true if the match a ranks before the match b */
+    private static boolean isBetter(long[] ids, double[] scores, int a, int b) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && ids[a] > ids[b]);
+    }
+}
@@ -63,6 +63,9 @@ import net.groboclown.groborss.BASE64;
 import net.groboclown.groborss.MainTabActivity;
 import net.groboclown.groborss.R;
 import net.groboclown.groborss.Strings;
+import net.groboclown.groborss.handler.ArticleFetcher;
+import net.groboclown.groborss.handler.ArticleStore;
+import net.groboclown.groborss.handler.FaviconScaler;
 import net.groboclown.groborss.handler.RSSHandler;
 import net.groboclown.groborss.provider.FeedData;
 import net.groboclown.groborss.util.HttpDownload;
@@ -98,6 +101,11 @@ public class FetcherService extends IntentService {
 	
 	private static final String ZERO = "0";
 	
+	private static final int ARTICLE_THREADS = 3;
+	
+	/** the pages still queued after this are left for the browser */
+	private static final long ARTICLE_TIMEOUT = 5 * 60 * 1000L;
+	
 	private static final String GZIP = "gzip";
 	
 	private NotificationManager notificationManager;
@@ -259,12 +267,19 @@ public class FetcherService extends IntentService {
 		int fetchmodePosition = cursor.getColumnIndex(FeedData.FeedColumns.FETCHMODE);
 		
 		int iconPosition = cursor.getColumnIndex(FeedData.FeedColumns.ICON);
+		
+		int iconSize = FaviconScaler.getSize(context);
 
 		// int homepagePosition = cursor.getColumnIndex(FeedData.FeedColumns.HOMEPAGE);
 
 		int entryLinkImgPattern = cursor.getColumnIndex(FeedData.FeedColumns.ENTRY_LINK_IMG_PATTERN);
 		
 		int skipAlertPosition = cursor.getColumnIndex(FeedData.FeedColumns.SKIP_ALERT);
+		
+		int fetchArticlesPosition = cursor.getColumnIndex(FeedData.FeedColumns.FETCHARTICLES);
+		
+		// the linked pages are much larger than the feeds, so they are only fetched over wifi unless that is overridden
+		boolean articlesAllowed = overrideWifiOnly || networkInfo.getType() == ConnectivityManager.TYPE_WIFI;
 
 		int result = 0;
 		ArrayList<String> ids = new ArrayList<>();
@@ -276,15 +291,28 @@ public class FetcherService extends IntentService {
 		handler.setEfficientFeedParsing(preferences.getBoolean(Strings.SETTINGS_EFFICIENTFEEDPARSING, true));
 		handler.setFetchImages(preferences.getBoolean(Strings.SETTINGS_FETCHPICTURES, false));
         handler.setHttpDownloadFactory(connectionFactory);
+		
+		ArticleFetcher articleFetcher = null;
 
 		while (cursor.moveToNext()) {
 			String id = cursor.getString(idPosition);
+			
+			if (articlesAllowed && cursor.getInt(fetchArticlesPosition) == 1) {
+				if (articleFetcher == null) {
+					articleFetcher = new ArticleFetcher(connectionFactory, new ArticleStore(context.getContentResolver()), ARTICLE_THREADS);
+				}
+				handler.setArticleFetcher(articleFetcher);
+			} else {
+				handler.setArticleFetcher(null);
+			}
 
 			// TODO This is a big hack
 			handler.setEntryLinkImagePattern(cursor.getString(entryLinkImgPattern));
 
 			HttpDownload connection = null;
 
+			// the entries of one feed are announced with a single change notification
+			FeedData.beginNotificationBatch(context);
 			try {
 				String feedUrl = cursor.getString(urlPosition);
 
@@ -365,10 +393,10 @@ public class FetcherService extends IntentService {
 					HttpDownload iconURLConnection = connection.getFaviconConnection();
 					
 					try {
-						iconBytes = iconURLConnection.getAsBytes();
+						iconBytes = FaviconScaler.scale(iconURLConnection.getAsBytes(), iconSize);
 						ContentValues values = new ContentValues();
 						
-						values.put(FeedData.FeedColumns.ICON, iconBytes); 
+						values.put(FeedData.FeedColumns.ICON, iconBytes != null ? iconBytes : new byte[0]); // empty if it is not a picture
 						context.getContentResolver().update(FeedData.FeedColumns.CONTENT_URI(id), values, null, null);
 					} catch (Exception e) {
 						ContentValues values = new ContentValues();
@@ -437,6 +465,7 @@ public class FetcherService extends IntentService {
 				if (connection != null) {
 					connection.disconnect();
 				}
+				FeedData.endNotificationBatch(context);
 			}
 			if (cursor.getInt(skipAlertPosition) != 1) {
 				result += handler.getNewCount();
@@ -451,6 +480,17 @@ public class FetcherService extends IntentService {
 		}
 		cursor.close();
 		
+		if (articleFetcher != null) {
+			try {
+				articleFetcher.finish(ARTICLE_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (articleFetcher.getFailedCount() > 0) {
+				Log.i(TAG, articleFetcher.getFailedCount() + " of " + (articleFetcher.getFailedCount() + articleFetcher.getFetchedCount()) + " articles could not be stored");
+			}
+		}
+		
 		if (updateWidget) {
 			context.sendBroadcast(new Intent(Strings.ACTION_UPDATEWIDGET));
 		}
@@ -1,7 +1,7 @@
 /**
- * Sparse rss
+ * GroboRSS
  *
- * Copyright (c) 2012 Stefan Handschuh
+ * Copyright (c) 2017 Groboclown
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -23,37 +23,33 @@
  *
  */
 
-package net.groboclown.groborss.handler;
+package net.groboclown.groborss.service;
 
-import java.io.File;
-import java.io.FilenameFilter;
-import java.util.regex.Pattern;
-
-import net.groboclown.groborss.provider.FeedDataContentProvider;
-
-public class PictureFilenameFilter implements FilenameFilter {
-	private static final String REGEX = "__[^\\.]*\\.[A-Za-z]*";
-	
-	private Pattern pattern;
-	
-	public PictureFilenameFilter(String entryId) {
-		setEntryId(entryId);
-	}
-
-	public PictureFilenameFilter() {
-
-	}
-
-	public void setEntryId(String entryId) {
-		pattern = Pattern.compile(entryId+REGEX);
-	}
-
-	public boolean accept(File dir, String filename) {
-		if (dir != null && dir.equals(FeedDataContentProvider.IMAGEFOLDER_FILE)) { // this should be always true but lets check it anyway
-			return pattern.matcher(filename).find();
-		} else {
-			return false;
-		}
-	}
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
 
+/**
+ * Runs the maintenance of {@link MaintenanceService} when the job scheduler
+ * decides that the device is idle and charging.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MaintenanceJobService extends JobService {
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        // background services may not be started from here on newer platforms
+        new Thread() {
+            public void run() {
+                MaintenanceService.runMaintenance(MaintenanceJobService.this);
+                jobFinished(params, false);
+            }
+        }.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return false;
+    }
 }
@@ -0,0 +1,231 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.service;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import net.groboclown.groborss.Strings;
+import net.groboclown.groborss.handler.ArticleStore;
+import net.groboclown.groborss.handler.ImageStore;
+import net.groboclown.groborss.provider.FeedData;
+
+/**
+ * Housekeeping that must not slow down a refresh: removes the entries
+ * that are older than the configured keep time.  The provider deletes
+ * their pictures along with them.  Then indexes the entries stored
+ * before the search index existed, compresses the entries stored
+ * before the compression was enabled, evicts pictures and articles
+ * beyond their storage budgets and gives the freed space back.
+ * <p>
+ * The service runs once a day.  Where the platform supports it the run
+ * is deferred until the device is idle and charging.
+ */
+public class MaintenanceService extends IntentService {
+    private static final String TAG = "MaintenanceService";
+
+    private static final String SERVICENAME = "MaintenanceService";
+
+    private static final int JOB_ID = 1;
+
+    /** Entries removed per delete statement; keeps the write lock short. */
+    private static final int PURGE_BATCHSIZE = 200;
+
+    private static final String[] IDPROJECTION = new String[] { FeedData.EntryColumns._ID };
+
+    /** Compresses the stored entries, and nothing else. */
+    private static final String ACTION_COMPRESS = "net.groboclown.groborss.service.COMPRESS";
+
+    public MaintenanceService() {
+        super(SERVICENAME);
+    }
+
+    /**
+     * Makes sure that the maintenance is scheduled.  Cheap enough to be
+     * called on every start of the application.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(context);
+        } else {
+            Intent intent = new Intent(context, MaintenanceService.class);
+
+            if (PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_NO_CREATE) == null) {
+                AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+
+                // not a wakeup alarm: the run waits until the device is in use anyway
+                alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME, AlarmManager.INTERVAL_HALF_HOUR,
+                        AlarmManager.INTERVAL_DAY, PendingIntent.getService(context, 0, intent, 0));
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+        jobScheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context, MaintenanceJobService.class))
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(AlarmManager.INTERVAL_DAY)
+                .setPersisted(true)
+                .build());
+    }
+
+    /**
+     * Compresses the entries stored before the compression was enabled,
+     * in the background.  The space is given back by the next scheduled
+     * maintenance, which rebuilds the database while the device is idle.
+     */
+    public static void compress(Context context) {
+        context.startService(new Intent(ACTION_COMPRESS, null, context, MaintenanceService.class));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (ACTION_COMPRESS.equals(intent.getAction())) {
+            compressEntries(this);
+        } else {
+            runMaintenance(this);
+        }
+    }
+
+    /**
+     * Runs all maintenance tasks on the calling thread.
+     */
+    static void runMaintenance(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        long keepTime = Long.parseLong(preferences.getString(Strings.SETTINGS_KEEPTIME, "4")) * 86400000L;
+
+        if (keepTime > 0) {
+            purgeEntries(context, System.currentTimeMillis() - keepTime);
+        }
+
+        int indexed = FeedData.indexEntries(context);
+
+        if (indexed > 0) {
+            Log.i(TAG, "Indexed " + indexed + " entries for the search");
+        }
+
+        if (preferences.getBoolean(Strings.SETTINGS_COMPRESSENTRIES, false)) {
+            compressEntries(context);
+        }
+
+        int evicted = ImageStore.trim(context);
+
+        if (evicted > 0) {
+            Log.i(TAG, "Evicted " + evicted + " pictures");
+        }
+
+        int deleted = ArticleStore.trim(context);
+
+        if (deleted > 0) {
+            Log.i(TAG, "Deleted " + deleted + " articles");
+        }
+        if (FeedData.vacuum(context)) {
+            Log.i(TAG, "Rebuilt the database");
+        }
+    }
+
+    private static void compressEntries(Context context) {
+        int compressed = FeedData.compressEntries(context);
+
+        if (compressed > 0) {
+            Log.i(TAG, "Compressed " + compressed + " entries");
+        }
+    }
+
+    /**
+     * Deletes the non-favorite entries of all feeds that are older than the
+     * border, oldest first, in batches of {@link #PURGE_BATCHSIZE}.
+     */
+    private static void purgeEntries(Context context, long keepDateBorder) {
+        String selection = new StringBuilder(FeedData.EntryColumns.DATE).append('<').append(keepDateBorder)
+                .append(Strings.DB_AND).append('(').append(Strings.DB_EXCUDEFAVORITE).append(')').toString();
+
+        Uri batchUri = FeedData.LIMITED_URI(FeedData.EntryColumns.CONTENT_URI, PURGE_BATCHSIZE);
+
+        int purged = 0;
+
+        FeedData.beginNotificationBatch(context);
+        try {
+            while (true) {
+                Cursor cursor = context.getContentResolver().query(batchUri, IDPROJECTION, selection, null, FeedData.EntryColumns.DATE);
+
+                if (cursor == null) {
+                    break;
+                }
+
+                StringBuilder ids = new StringBuilder();
+
+                int count = 0;
+
+                while (cursor.moveToNext()) {
+                    String id = cursor.getString(0);
+
+                    if (count++ > 0) {
+                        ids.append(',');
+                    }
+                    ids.append(id);
+                }
+                cursor.close();
+                if (count == 0) {
+                    break;
+                }
+                purged += context.getContentResolver().delete(FeedData.EntryColumns.CONTENT_URI,
+                        new StringBuilder(FeedData.EntryColumns._ID).append(" IN (").append(ids).append(')').toString(), null);
+                if (count < PURGE_BATCHSIZE) {
+                    break;
+                }
+            }
+        } finally {
+            FeedData.endNotificationBatch(context);
+        }
+        if (purged > 0) {
+            Log.i(TAG, "Purged " + purged + " old entries");
+            context.sendBroadcast(new Intent(Strings.ACTION_UPDATEWIDGET));
+        }
+    }
+}
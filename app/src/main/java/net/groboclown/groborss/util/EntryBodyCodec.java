@@ -0,0 +1,116 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encoding of the stored entry bodies.  A body is either plain text in the
+ * abstract column, or deflated UTF-8 in the abstract data column; the
+ * abstract format column tells which.
+ */
+public final class EntryBodyCodec {
+    public static final int FORMAT_PLAIN = 0;
+
+    public static final int FORMAT_DEFLATE = 1;
+
+    /** shorter bodies are kept plain, they don't gain enough to pay for the inflate on open */
+    public static final int MIN_COMPRESS_LENGTH = 512;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private EntryBodyCodec() {
+        // utility class
+    }
+
+    public static boolean shouldCompress(String body) {
+        return body != null && body.length() >= MIN_COMPRESS_LENGTH;
+    }
+
+    public static byte[] compress(String body) {
+        byte[] input = body.getBytes(UTF8);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 3 + 16);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String decompress(byte[] data) {
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(data);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+
+                if (length == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated entry body");
+                }
+                output.write(buffer, 0, length);
+            }
+            return new String(output.toByteArray(), UTF8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt entry body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return the body stored in the columns of an entry
+     */
+    public static String decode(int format, String text, byte[] data) {
+        if (format == FORMAT_DEFLATE && data != null) {
+            return decompress(data);
+        }
+        return text;
+    }
+}
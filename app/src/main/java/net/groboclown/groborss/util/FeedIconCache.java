@@ -0,0 +1,215 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.util;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+import android.util.TypedValue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The decoded feed icons, scaled to the size they are shown at, shared by
+ * the lists, the widget and the entry view.  The cache is bounded by the
+ * memory of the bitmaps; the provider drops the icons of a feed when its
+ * icon changes, and the cache empties itself when the system runs low on
+ * memory.
+ */
+public final class FeedIconCache implements ComponentCallbacks2 {
+    /** the share of the heap that the icons may use */
+    private static final int HEAP_DIVISOR = 64;
+    private static final char KEY_SEPARATOR = ':';
+
+    private static FeedIconCache instance;
+
+    private final LruCache<String, Bitmap> icons;
+
+    /** the keys of the icons which could not be decoded, so that they are not tried on every bind */
+    private final Set<String> undecodable = Collections.synchronizedSet(new HashSet<String>());
+
+    private FeedIconCache(int maxBytes) {
+        icons = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    public static synchronized FeedIconCache get(Context context) {
+        if (instance == null) {
+            instance = new FeedIconCache((int) (Runtime.getRuntime().maxMemory() / HEAP_DIVISOR));
+            context.getApplicationContext().registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Forgets the icons of the feed, after its icon has changed.
+     */
+    public static void invalidate(String feedId) {
+        FeedIconCache cache;
+
+        synchronized (FeedIconCache.class) {
+            cache = instance;
+        }
+        if (cache != null) {
+            String prefix = feedId + KEY_SEPARATOR;
+
+            for (String key : cache.icons.snapshot().keySet()) {
+                if (key.startsWith(prefix)) {
+                    cache.icons.remove(key);
+                }
+            }
+            synchronized (cache.undecodable) {
+                for (Object key : cache.undecodable.toArray()) {
+                    if (((String) key).startsWith(prefix)) {
+                        cache.undecodable.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets all the icons, after the icons of several feeds have changed.
+     */
+    public static void invalidateAll() {
+        FeedIconCache cache;
+
+        synchronized (FeedIconCache.class) {
+            cache = instance;
+        }
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the size in pixels of an icon shown at the size in dip
+     */
+    public static int getSize(Context context, float dip) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dip, context.getResources().getDisplayMetrics());
+    }
+
+    /**
+     * @return the icon of the feed at the size in pixels if it has been
+     *      decoded already, or null
+     */
+    public Bitmap get(String feedId, int size) {
+        return icons.get(key(feedId, size));
+    }
+
+    /**
+     * @param iconBytes the icon of the feed as stored, used if it has not
+     *      been decoded yet
+     * @return the icon of the feed at the size in pixels, or null if it has
+     *      none or it can't be decoded
+     */
+    public Bitmap getIcon(String feedId, byte[] iconBytes, int size) {
+        String key = key(feedId, size);
+
+        Bitmap bitmap = icons.get(key);
+
+        if (bitmap != null || iconBytes == null || iconBytes.length == 0 || undecodable.contains(key)) {
+            return bitmap;
+        }
+        bitmap = decode(iconBytes, size);
+        if (bitmap == null) {
+            undecodable.add(key);
+        } else {
+            icons.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Reads the icon from the cursor only if it has not been decoded yet.
+     *
+     * @see #getIcon(String, byte[], int)
+     */
+    public Bitmap getIcon(String feedId, Cursor cursor, int iconColumn, int size) {
+        Bitmap bitmap = icons.get(key(feedId, size));
+
+        return bitmap != null || cursor.isNull(iconColumn) ? bitmap : getIcon(feedId, cursor.getBlob(iconColumn), size);
+    }
+
+    private void clear() {
+        icons.evictAll();
+        undecodable.clear();
+    }
+
+    private static String key(String feedId, int size) {
+        return new StringBuilder(feedId).append(KEY_SEPARATOR).append(size).toString();
+    }
+
+    private static Bitmap decode(byte[] iconBytes, int size) {
+        try {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(iconBytes, 0, iconBytes.length);
+
+            if (bitmap == null || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
+                return null;
+            }
+            if (bitmap.getWidth() != size || bitmap.getHeight() != size) {
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, size, size, true);
+
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                }
+                bitmap = scaled;
+            }
+            return bitmap;
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // the icons are cheap to decode again, so there is no point in
+        // keeping some of them around once the system asks for memory
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            clear();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // the icons are keyed by their size in pixels
+    }
+}
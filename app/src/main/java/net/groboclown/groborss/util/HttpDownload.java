@@ -73,12 +73,27 @@ public class HttpDownload {
         return new Factory(context);
     }
 
+    /**
+     * @return a factory for direct connections with the default settings,
+     *      which does not look at the network state
+     */
+    public static Factory setupDirect() {
+        return new Factory(true, false);
+    }
+
     public static class Factory {
         private final boolean online;
         private final Proxy proxy;
         private final boolean imposeUserAgent;
         private boolean followHttpHttpsRedirects;
 
+        private Factory(boolean imposeUserAgent, boolean followHttpHttpsRedirects) {
+            this.online = true;
+            this.proxy = null;
+            this.imposeUserAgent = imposeUserAgent;
+            this.followHttpHttpsRedirects = followHttpHttpsRedirects;
+        }
+
         private Factory(Context context) {
             SharedPreferences preferences;
             try {
@@ -0,0 +1,191 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs without boxing, using open addressing with linear probing.
+ * Removed slots are refilled by shifting back the following entries, so the
+ * lookups stay short however many ids are added and removed.
+ * <p>
+ * Not thread safe.
+ */
+public final class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+
+    /** marks a free slot; the value itself is tracked by {@link #hasFree} */
+    private static final long FREE = 0L;
+
+    private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    private boolean hasFree;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize the number of values to hold without growing
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return hasFree ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(long value) {
+        if (value == FREE) {
+            return hasFree;
+        }
+
+        long[] slots = this.slots;
+
+        for (int slot = slot(value); ; slot = (slot + 1) & mask) {
+            long current = slots[slot];
+
+            if (current == value) {
+                return true;
+            }
+            if (current == FREE) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return true if the value was not in the set yet
+     */
+    public boolean add(long value) {
+        if (value == FREE) {
+            boolean added = !hasFree;
+
+            hasFree = true;
+            return added;
+        }
+
+        int slot = slot(value);
+
+        while (slots[slot] != FREE) {
+            if (slots[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = value;
+        // keep at least half of the slots free
+        if (++size > slots.length / 2) {
+            rehash(slots.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the value was in the set
+     */
+    public boolean remove(long value) {
+        if (value == FREE) {
+            boolean removed = hasFree;
+
+            hasFree = false;
+            return removed;
+        }
+
+        int slot = slot(value);
+
+        while (slots[slot] != value) {
+            if (slots[slot] == FREE) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // move back the entries of the probe sequence that would no longer be reachable
+        int free = slot;
+
+        for (slot = (slot + 1) & mask; slots[slot] != FREE; slot = (slot + 1) & mask) {
+            int home = slot(slots[slot]);
+
+            // the entry may move if its home is not cyclically within (free, slot]
+            if (free <= slot ? home <= free || home > slot : home <= free && home > slot) {
+                slots[free] = slots[slot];
+                free = slot;
+            }
+        }
+        slots[free] = FREE;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, FREE);
+        size = 0;
+        hasFree = false;
+    }
+
+    private int slot(long value) {
+        long hash = value * GOLDEN_RATIO;
+
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = slots;
+
+        allocate(capacity);
+        for (long value : old) {
+            if (value != FREE) {
+                int slot = slot(value);
+
+                while (slots[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+
+        while (capacity / 2 < expectedSize) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+}
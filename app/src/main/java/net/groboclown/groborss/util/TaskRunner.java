@@ -0,0 +1,360 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the background work started from the UI, such as marking or deleting
+ * the entries of a feed, on a few shared threads instead of a new thread for
+ * each tap.  Tasks with a higher priority run first, tasks of the same
+ * feed run one after the other in the order they were started, a task of
+ * all feeds runs between the tasks of any feed, and tasks can be cancelled
+ * until they run.  The progress and the end of a task are
+ * reported on the UI thread.
+ */
+public final class TaskRunner {
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 5;
+    /** for work the user is waiting for */
+    public static final int PRIORITY_HIGH = 10;
+
+    /**
+     * The key of a task that works on all feeds.  It runs once the tasks
+     * with any key started before it are done, and the tasks with a key
+     * started after it wait for it.
+     */
+    public static final String KEY_ALL = "*";
+
+    /** enough for a slow task not to hold up the others, few enough not to contend for the database */
+    private static final int THREADS = 2;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final String THREAD_NAME = "TaskRunner";
+
+    private static TaskRunner instance;
+
+    /**
+     * Informed on the UI thread about a task.
+     */
+    public interface Listener {
+        /**
+         * @param done the units of work done so far, out of total
+         */
+        void onProgress(Task task, int done, int total);
+
+        /**
+         * Called once the task has run, or instead if it was cancelled
+         * before it could.
+         */
+        void onFinished(Task task);
+    }
+
+    /**
+     * A unit of background work.
+     */
+    public abstract static class Task implements Runnable, Comparable<Task> {
+        private final String name;
+        private final int priority;
+        private final String key;
+
+        private TaskRunner runner;
+        private Listener listener;
+        private long sequence;
+        private volatile boolean cancelled;
+
+        /**
+         * @param key the feed or other object the task works on, or
+         *      {@link #KEY_ALL}; tasks with the same key run one after the
+         *      other, tasks with no key as they come
+         */
+        protected Task(String name, int priority, String key) {
+            this.name = name;
+            this.priority = priority;
+            this.key = key;
+        }
+
+        /**
+         * Does the work on a background thread.  Long running work should
+         * check {@link #isCancelled()} now and then.
+         */
+        protected abstract void execute();
+
+        public String getName() {
+            return name;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Cancels the task; it won't start if it has not yet.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (runner != null) {
+                runner.dequeue(this);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Reports the progress to the listener of the task.
+         */
+        protected void publishProgress(final int done, final int total) {
+            final Listener listener = this.listener;
+
+            if (listener != null && !cancelled) {
+                runner.callbackExecutor.execute(new Runnable() {
+                    public void run() {
+                        listener.onProgress(Task.this, done, total);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public final void run() {
+            Thread thread = Thread.currentThread();
+
+            String threadName = thread.getName();
+
+            try {
+                if (!cancelled) {
+                    thread.setName(THREAD_NAME + ": " + name);
+                    execute();
+                }
+            } finally {
+                thread.setName(threadName);
+                runner.finished(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    private final Executor callbackExecutor;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** the tasks waiting for a running task with the same key; guarded by itself */
+    private final Map<String, ArrayDeque<Task>> waiting = new HashMap<String, ArrayDeque<Task>>();
+
+    /** the keyed tasks waiting for a task of all feeds, in the order they were started; guarded by waiting */
+    private final ArrayDeque<Task> blocked = new ArrayDeque<Task>();
+
+    TaskRunner(int threads, Executor callbackExecutor) {
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, THREAD_NAME);
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public static synchronized TaskRunner get() {
+        if (instance == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+
+            instance = new TaskRunner(THREADS, new Executor() {
+                public void execute(Runnable runnable) {
+                    handler.post(runnable);
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Starts the task once the tasks with a higher priority and the earlier
+     * tasks with the same key are done.
+     *
+     * @param listener informed on the UI thread, or null
+     * @return the task, to cancel it
+     */
+    public Task run(Task task, Listener listener) {
+        if (task.runner != null) {
+            throw new IllegalStateException("already started: " + task.name);
+        }
+        task.runner = this;
+        task.listener = listener;
+        task.sequence = sequence.incrementAndGet();
+        if (task.key != null) {
+            synchronized (waiting) {
+                if (!blocked.isEmpty() || isBlocked(task)) {
+                    blocked.add(task);
+                    return task;
+                }
+                if (!admit(task)) {
+                    return task;
+                }
+            }
+        }
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * @see #run(Task, Listener)
+     */
+    public Task run(Task task) {
+        return run(task, null);
+    }
+
+    private void dequeue(Task task) {
+        if (executor.remove(task)) {
+            finished(task);
+        } else if (task.key != null) {
+            boolean removed;
+
+            List<Task> next = new ArrayList<Task>();
+
+            synchronized (waiting) {
+                ArrayDeque<Task> queue = waiting.get(task.key);
+
+                removed = queue != null && queue.remove(task);
+                if (!removed && blocked.remove(task)) {
+                    removed = true;
+                    release(next);
+                }
+            }
+            for (Task runnable : next) {
+                executor.execute(runnable);
+            }
+            if (removed) {
+                notifyFinished(task);
+            }
+        }
+    }
+
+    private void finished(Task task) {
+        if (task.key != null) {
+            List<Task> next = new ArrayList<Task>();
+
+            synchronized (waiting) {
+                ArrayDeque<Task> queue = waiting.get(task.key);
+
+                Task following = queue != null ? queue.poll() : null;
+
+                if (following == null) {
+                    waiting.remove(task.key);
+                    release(next);
+                } else {
+                    next.add(following);
+                }
+            }
+            for (Task runnable : next) {
+                executor.execute(runnable);
+            }
+        }
+        notifyFinished(task);
+    }
+
+    /**
+     * @return whether the keyed task has to wait for a task of all feeds,
+     *      or is one and has to wait for the running tasks; the caller
+     *      holds the lock of waiting
+     */
+    private boolean isBlocked(Task task) {
+        return waiting.containsKey(KEY_ALL) || (KEY_ALL.equals(task.key) && !waiting.isEmpty());
+    }
+
+    /**
+     * Marks the keyed task as running, unless a task with the same key
+     * is; then it goes after that one.  The caller holds the lock of
+     * waiting.
+     *
+     * @return whether the task can run now
+     */
+    private boolean admit(Task task) {
+        ArrayDeque<Task> queue = waiting.get(task.key);
+
+        if (queue != null) {
+            // a task with the same key is running; this one goes after it
+            queue.add(task);
+            return false;
+        }
+        waiting.put(task.key, new ArrayDeque<Task>());
+        return true;
+    }
+
+    /**
+     * Admits the blocked tasks in the order they were started, up to the
+     * first one that still has to wait.  The caller holds the lock of
+     * waiting and runs the tasks added to runnable.
+     */
+    private void release(List<Task> runnable) {
+        while (!blocked.isEmpty() && !isBlocked(blocked.peek())) {
+            Task task = blocked.poll();
+
+            if (admit(task)) {
+                runnable.add(task);
+            }
+        }
+    }
+
+    private void notifyFinished(final Task task) {
+        final Listener listener = task.listener;
+
+        if (listener != null) {
+            callbackExecutor.execute(new Runnable() {
+                public void run() {
+                    listener.onFinished(task);
+                }
+            });
+        }
+    }
+}
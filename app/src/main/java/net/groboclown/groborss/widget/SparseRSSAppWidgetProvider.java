@@ -34,13 +34,13 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.view.View;
 import android.widget.RemoteViews;
 import net.groboclown.groborss.MainTabActivity;
 import net.groboclown.groborss.R;
 import net.groboclown.groborss.Strings;
 import net.groboclown.groborss.provider.FeedData;
+import net.groboclown.groborss.util.FeedIconCache;
 
 public class SparseRSSAppWidgetProvider extends AppWidgetProvider {
 	private static final String LIMIT = " limit ";
@@ -84,31 +84,28 @@ public class SparseRSSAppWidgetProvider extends AppWidgetProvider {
 			selection.append(FeedData.EntryColumns.FEED_ID).append(" IN ("+feedIds).append(')');
 		}
 
-		Cursor cursor = context.getContentResolver().query(FeedData.EntryColumns.CONTENT_URI, new String[] {FeedData.EntryColumns.TITLE, FeedData.EntryColumns._ID, FeedData.FeedColumns.ICON}, selection.toString(), null, new StringBuilder(FeedData.EntryColumns.DATE).append(Strings.DB_DESC).append(LIMIT).append(entryCount).toString());
+		Cursor cursor = context.getContentResolver().query(FeedData.EntryColumns.CONTENT_URI, new String[] {FeedData.EntryColumns.TITLE, FeedData.EntryColumns._ID, FeedData.FeedColumns.ICON, FeedData.EntryColumns.FEED_ID}, selection.toString(), null, new StringBuilder(FeedData.EntryColumns.DATE).append(Strings.DB_DESC).append(LIMIT).append(entryCount).toString());
         
         RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.homescreenwidget);
 
         views.setOnClickPendingIntent(R.id.feed_icon, PendingIntent.getActivity(context, 0, new Intent(context, MainTabActivity.class), 0));
         
         int k = 0;
+
+        FeedIconCache iconCache = FeedIconCache.get(context);
+
+        int iconSize = FeedIconCache.getSize(context, 16f);
         
         while (cursor.moveToNext() && k < IDS.length) {
         	views.setViewVisibility(IDS[k], View.VISIBLE);
 			if (!cursor.isNull(2)) {
 				try {
-					byte[] iconBytes = cursor.getBlob(2);
+					Bitmap bitmap = iconCache.getIcon(cursor.getString(3), cursor, 2, iconSize);
 					
-					if (iconBytes != null && iconBytes.length > 0) {
-						Bitmap bitmap = BitmapFactory.decodeByteArray(iconBytes, 0, iconBytes.length);
-						
-						if (bitmap != null) {
-							views.setBitmap(ICON_IDS[k], "setImageBitmap", bitmap);
-							views.setViewVisibility(ICON_IDS[k], View.VISIBLE);
-							views.setTextViewText(IDS[k], " "+cursor.getString(0)); // bad style
-						} else {
-							views.setViewVisibility(ICON_IDS[k], View.GONE);
-							views.setTextViewText(IDS[k], cursor.getString(0));
-						}
+					if (bitmap != null) {
+						views.setBitmap(ICON_IDS[k], "setImageBitmap", bitmap);
+						views.setViewVisibility(ICON_IDS[k], View.VISIBLE);
+						views.setTextViewText(IDS[k], " "+cursor.getString(0)); // bad style
 					} else {
 						views.setViewVisibility(ICON_IDS[k], View.GONE);
 						views.setTextViewText(IDS[k], cursor.getString(0));
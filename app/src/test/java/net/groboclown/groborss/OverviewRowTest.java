@@ -0,0 +1,67 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class OverviewRowTest {
+    @Test
+    public void changedPositions_sameRows() {
+        List<OverviewRow> shown = Arrays.asList(row(1, "a", 0), row(2, "b", 0));
+        int[] positions = new int[2];
+        assertThat(OverviewRow.changedPositions(shown, Arrays.asList(row(1, "a", 0), row(2, "b", 0)), positions), is(0));
+    }
+
+    @Test
+    public void changedPositions_changedRows() {
+        List<OverviewRow> shown = Arrays.asList(row(1, "a", 0), row(2, "b", 0), row(3, "c", 0));
+        int[] positions = new int[3];
+        assertThat(OverviewRow.changedPositions(shown,
+                Arrays.asList(row(1, "a", 4), row(2, "b", 0), new OverviewRow(3, "c", 0, "failed", 0, 0, null, false)),
+                positions), is(2));
+        assertThat(positions[0], is(0));
+        assertThat(positions[1], is(2));
+    }
+
+    @Test
+    public void changedPositions_changedStructure() {
+        List<OverviewRow> shown = Arrays.asList(row(1, "a", 0), row(2, "b", 0));
+        int[] positions = new int[3];
+        assertThat(OverviewRow.changedPositions(null, shown, positions), is(-1));
+        assertThat(OverviewRow.changedPositions(shown, Arrays.asList(row(2, "b", 0), row(1, "a", 0)), positions), is(-1));
+        assertThat(OverviewRow.changedPositions(shown,
+                Arrays.asList(row(1, "a", 0), row(2, "b", 0), row(3, "c", 0)), positions), is(-1));
+    }
+
+    private static OverviewRow row(long id, String title, int unreadCount) {
+        return new OverviewRow(id, title, 100L, null, unreadCount, 10, null, false);
+    }
+}
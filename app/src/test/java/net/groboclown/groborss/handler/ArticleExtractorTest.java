@@ -0,0 +1,108 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ArticleExtractorTest {
+    private static final String PARAGRAPH = "<p>This is a paragraph of the story, long enough to count as running text, "
+            + "with a <a href='/other'>link</a> in it.</p>\n";
+
+    @Test
+    public void extract_article() {
+        String page = "<html><head><title>T</title><style>p { color: red }</style></head><body>"
+                + "<nav><ul><li><a href='/'>Home</a></li><li><a href='/news'>All of the news of the day</a></li></ul></nav>"
+                + "<div class='sidebar'><p>Something else which is long enough to count as running text.</p></div>"
+                + "<div id='story'>" + PARAGRAPH + PARAGRAPH + PARAGRAPH + PARAGRAPH + "</div>"
+                + "<div class='comments'>" + PARAGRAPH + "</div>"
+                + "<footer>Copyright by the publisher of the example pages</footer>"
+                + "</body></html>";
+
+        String article = ArticleExtractor.extract(page, "http://example.com/news/1");
+
+        assertThat(article, containsString("This is a paragraph of the story"));
+        assertThat(article, not(containsString("Home")));
+        assertThat(article, not(containsString("Something else")));
+        assertThat(article, not(containsString("Copyright")));
+        assertThat(article.split("This is a paragraph").length, is(5));
+    }
+
+    @Test
+    public void extract_splitParagraphs() {
+        String page = "<body><div class='menu'><a href='/a'>A link with a long text in the menu of the page</a></div>"
+                + "<section><div>" + PARAGRAPH + "</div><div>" + PARAGRAPH + "</div><div>" + PARAGRAPH + "</div>"
+                + "<div>" + PARAGRAPH + "</div></section></body>";
+
+        String article = ArticleExtractor.extract(page, "http://example.com/");
+
+        assertThat(article.split("This is a paragraph").length, is(5));
+        assertThat(article, not(containsString("menu of the page")));
+    }
+
+    @Test
+    public void extract_cleaned() {
+        String page = "<body><article>" + PARAGRAPH + PARAGRAPH + PARAGRAPH
+                + "<script>document.write('<p>Injected text which is long enough to count</p>');</script>"
+                + "<p style='x' onclick='go()'><img src='pic.png' srcset='a.png 2x'> <img data-src='//cdn.example.com/lazy.png'>"
+                + "<a href='javascript:go()'>run</a></p></article></body>";
+
+        String article = ArticleExtractor.extract(page, "https://example.com/news/1");
+
+        assertThat(article, containsString("href=\"https://example.com/other\""));
+        assertThat(article, containsString("src=\"https://example.com/news/pic.png\""));
+        assertThat(article, containsString("src=\"https://cdn.example.com/lazy.png\""));
+        assertThat(article, not(containsString("Injected")));
+        assertThat(article, not(containsString("onclick")));
+        assertThat(article, not(containsString("style")));
+        assertThat(article, not(containsString("srcset")));
+        assertThat(article, not(containsString("javascript")));
+    }
+
+    @Test
+    public void extract_noArticle() {
+        StringBuilder page = new StringBuilder("<body><div>");
+
+        for (int n = 0; n < 20; n++) {
+            page.append("<a href='/").append(n).append("'>A teaser of the story number ").append(n).append("</a><br>");
+        }
+        page.append("<p>Short text.</p></div></body>");
+        assertThat(ArticleExtractor.extract(page.toString(), "http://example.com/"), nullValue());
+        assertThat(ArticleExtractor.extract("", "http://example.com/"), nullValue());
+    }
+
+    @Test
+    public void extract_unclosed() {
+        String page = "<body><div><div>" + PARAGRAPH + PARAGRAPH + PARAGRAPH + "<p>The end";
+
+        assertThat(ArticleExtractor.extract(page, "http://example.com/"), containsString("The end"));
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.groboclown.groborss.util.HttpDownload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Fetches from a local stand-in for the web sites.
+ */
+public class ArticleFetcherTest {
+    private static final String PARAGRAPH = "<p>A paragraph of the full story, which is long enough to count as running text.</p>";
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Map<String, String> articles = new ConcurrentHashMap<>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/story/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+
+                respond(exchange, 200, "text/html; charset=UTF-8", "<html><body><nav><a href='/'>Home</a></nav><article><p>Story "
+                        + path.substring(path.lastIndexOf('/') + 1) + " \u00e9t\u00e9</p>"
+                        + PARAGRAPH + PARAGRAPH + PARAGRAPH + PARAGRAPH + "<img src='pic.png'></article></body></html>");
+            }
+        });
+        server.createContext("/teaser", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "text/html", "<html><body><p>Subscribe to read more.</p></body></html>");
+            }
+        });
+        server.createContext("/feed.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "application/rss+xml", "<rss>" + PARAGRAPH + PARAGRAPH + PARAGRAPH + PARAGRAPH + "</rss>");
+            }
+        });
+        server.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 404, "text/html", "<html><body>" + PARAGRAPH + PARAGRAPH + PARAGRAPH + PARAGRAPH + "</body></html>");
+            }
+        });
+        server.start();
+        baseUrl = "http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void fetch() throws InterruptedException {
+        ArticleFetcher fetcher = new ArticleFetcher(HttpDownload.setupDirect(), new Collector(), 2);
+
+        fetcher.fetch("1", baseUrl + "/story/1");
+        fetcher.fetch("2", baseUrl + "/teaser");
+        fetcher.fetch("3", baseUrl + "/feed.xml");
+        fetcher.fetch("4", baseUrl + "/missing");
+        fetcher.fetch("5", "http://127.0.0.1:1/nothing");
+        assertThat(fetcher.finish(10000), is(true));
+
+        assertThat(articles.keySet().toString(), is("[1]"));
+        assertThat(articles.get("1"), containsString("Story 1 \u00e9t\u00e9"));
+        assertThat(articles.get("1"), containsString("src=\"" + baseUrl + "/story/pic.png\""));
+        assertThat(fetcher.getFetchedCount(), is(1));
+        assertThat(fetcher.getFailedCount(), is(4));
+    }
+
+    @Test
+    public void fetch_moreThanQueued() throws InterruptedException {
+        ArticleFetcher fetcher = new ArticleFetcher(HttpDownload.setupDirect(), new Collector(), 2);
+
+        for (int n = 0; n < 100; n++) {
+            fetcher.fetch(Integer.toString(n), baseUrl + "/story/" + n);
+        }
+        assertThat(fetcher.finish(30000), is(true));
+        assertThat(articles.size(), is(100));
+        assertThat(articles.get("99"), containsString("Story 99 "));
+        assertThat(requests.get(), is(100));
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] data = body.getBytes("UTF-8");
+
+        requests.incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, data.length);
+
+        OutputStream out = exchange.getResponseBody();
+
+        out.write(data);
+        out.close();
+    }
+
+    private class Collector implements ArticleFetcher.Listener {
+        @Override
+        public void onArticle(String entryId, String url, String article) {
+            articles.put(entryId, article);
+        }
+    }
+}
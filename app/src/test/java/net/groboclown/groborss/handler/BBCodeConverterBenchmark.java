@@ -0,0 +1,110 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+/**
+ * Compares {@link BBCodeConverter} with the chain of regular expression
+ * replacements it replaced, on the usual bodies without any BBCode, on forum
+ * posts full of it, and on bodies made to make the scanning hard.
+ * <p>
+ * Not a unit test; run the main method by hand.
+ */
+public class BBCodeConverterBenchmark {
+    private static final int BODIES = 100;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        String[] articles = new String[BODIES];
+        String[] posts = new String[BODIES];
+        String[] pathological = new String[BODIES];
+
+        for (int n = 0; n < BODIES; n++) {
+            articles[n] = SimpleHtmlParserBenchmark.createArticle(n);
+            posts[n] = createPost(n);
+            pathological[n] = createPathological(n);
+        }
+
+        run("Articles", articles);
+        run("Posts", posts);
+        run("Pathological", pathological);
+    }
+
+    private static void run(String name, String[] bodies) {
+        long chars = 0;
+        for (String body : bodies) {
+            chars += body.length();
+            if (!BBCodeConverter.convert(body).equals(BBCodeConverterTest.convertWithRegex(body))) {
+                throw new IllegalStateException("different output for " + body);
+            }
+        }
+
+        long bestRegex = Long.MAX_VALUE;
+        long bestConverter = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int length = 0;
+
+            for (String body : bodies) {
+                length += BBCodeConverterTest.convertWithRegex(body).length();
+            }
+            bestRegex = Math.min(bestRegex, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (String body : bodies) {
+                length -= BBCodeConverter.convert(body).length();
+            }
+            bestConverter = Math.min(bestConverter, System.nanoTime() - start);
+            if (length != 0) {
+                throw new IllegalStateException();
+            }
+        }
+        System.out.println(name + " (" + (chars / bodies.length) + " chars): replaceAll "
+                + (bestRegex / bodies.length / 1000.0) + " us, converter "
+                + (bestConverter / bodies.length / 1000.0) + " us per body");
+    }
+
+    private static String createPost(int seed) {
+        StringBuilder body = new StringBuilder();
+
+        for (int p = 0; p < 10 + seed % 20; p++) {
+            body.append("[b]Re: topic ").append(seed).append("[/b]\n[quote]Someone wrote: [i]something[/i][/quote]\n")
+                    .append("[color=#").append(seed % 10).append("0a0a0]Colored[/color] text with [url]https://example.com/")
+                    .append(p).append("[/url] and [img]http://example.com/img/").append(p).append(".png[/img]\n")
+                    .append("[code]for (x[i] = 0; i < n; i++) {}[/code] [size=2]small [u]print[/u][/size]\n");
+        }
+        return body.toString();
+    }
+
+    private static String createPathological(int seed) {
+        StringBuilder body = new StringBuilder();
+
+        for (int p = 0; p < 500 + seed; p++) {
+            body.append("[color no close [b [img]http://unclosed.example.com/").append(p).append(' ');
+        }
+        return body.append(']').toString();
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class BBCodeConverterTest {
+    private static final String[] FRAGMENTS = {
+            "[b]", "[/b]", "[I]", "[/s]", "[u]", "[x]", "[img]", "[/img]", "[IMG]", "[url]", "[/URL]",
+            "[code]", "[/code]", "[Code]", "[color=red]", "[/color]", "[size=2", "[center]", "[pre]",
+            "[preview]", "[", "]", "/", "http://a.b/c", "HTTPS://x.y", "https:/", "text", " ", "\n", "<b>"
+    };
+
+    /** The chain of replacements that the converter took over from. */
+    static String convertWithRegex(String src) {
+        return src
+                .replaceAll("(?i)\\[(/?(b|u|i|s))\\]", "<$1>")
+                .replaceAll("(?i)\\[img\\](https?://[^ \n\r\t\\[\\]]+)\\[/img\\]", "<img src='$1'>")
+                .replaceAll("(?i)\\[url\\](https?://[^ \n\r\t\\[\\]]+)\\[/url\\]", "<a href='$1'>$1</a>")
+                .replaceAll("(?i)\\[code\\]([^\\]]*)\\[/code\\]", "<pre>$1</pre>")
+                .replaceAll("(?i)\\[/?(center|color|size|img|url|pre)[^\\]]*\\]", "");
+    }
+
+    @Test
+    public void convert_noBrackets() {
+        String text = "<p>No tags [at all</p>";
+        assertThat(BBCodeConverter.convert(text), sameInstance(text));
+    }
+
+    @Test
+    public void convert_mixed() {
+        assertConverted("[B]bold[/b] [img]http://a.b/c.png[/img] [url]https://a.b[/url] [size=3]x[/size]");
+    }
+
+    @Test
+    public void convert_code() {
+        assertConverted("a [code]x [b]y[/b] [img]http://a.b/c[/img] z[/code] b");
+        assertConverted("[code]a[code]b[/code]");
+        assertConverted("[code]a ] b[/code]");
+        assertConverted("[code][/code]");
+        assertConverted("[code][color=red]x[/code]");
+    }
+
+    @Test
+    public void convert_removedSpansConvertedTags() {
+        assertConverted("[size=2 [b]x] y]");
+        assertConverted("[color [code]x[/code] y] z");
+        assertConverted("[img]not a url[/img]");
+        assertConverted("[color no close [b]");
+    }
+
+    @Test
+    public void convert_sameAsRegex() {
+        Random random = new Random(0x5eed);
+        for (int n = 0; n < 20000; n++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(12); i >= 0; i--) {
+                text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertConverted(text.toString());
+        }
+    }
+
+    private static void assertConverted(String text) {
+        assertThat(text, BBCodeConverter.convert(text), is(convertWithRegex(text)));
+    }
+}
@@ -28,11 +28,17 @@ package net.groboclown.groborss.handler;
 import android.content.SharedPreferences;
 
 import net.groboclown.groborss.Strings;
+import net.groboclown.groborss.util.EntryBodyCodec;
 
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -71,6 +77,152 @@ public class EntryTextBuilderTest {
     }
 
 
+    @Test
+    public void testCachedImage() {
+        EntryTextBuilder builder = new EntryTextBuilder()
+                .withAbstractText("<img src='http://a.site/one picture.png'><img src='http://a.site/two.png'>")
+                .withCachedImages(Collections.singletonMap("http://a.site/one%20picture.png", "/sdcard/groborss/images/0a1b.png"))
+                .withPreferences(prefs(false, false, 1))
+                ;
+
+        assertThat(
+                builder.prepare().toString(),
+                is("<img src=\"file:///sdcard/groborss/images/0a1b.png\"><img src='http://a.site/two.png'>")
+        );
+    }
+
+    @Test
+    public void testCachedImage_evicted() {
+        Map<String, String> cachedImages = new HashMap<>();
+        cachedImages.put("http://a.site/one.png", null);
+        cachedImages.put("http://a.site/two.png", "/sdcard/groborss/images/0a1b.png");
+        EntryTextBuilder builder = new EntryTextBuilder()
+                .withAbstractText("<img src='http://a.site/one.png'><img src='http://a.site/two.png'>")
+                .withCachedImages(cachedImages)
+                .withPreferences(prefs(false, false, 1))
+                ;
+
+        assertThat(
+                builder.prepare().toString(),
+                is("<img src='http://a.site/one.png'><img src=\"file:///sdcard/groborss/images/0a1b.png\">")
+        );
+        assertThat(builder.getShownCachedImages(), is(Collections.singletonList("http://a.site/two.png")));
+        assertThat(builder.getCachedImageMisses(), is(1));
+    }
+
+    @Test
+    public void testPreparedText_stored() {
+        EntryTextBuilder builder = new EntryTextBuilder()
+                .withEntryId("stored-1")
+                .withAbstractText("<p>Entry text</p>")
+                .withPreferences(prefs(false, false, 1));
+        builder.withStoredText(EntryBodyCodec.compress("<p>Stored text</p>"), builder.getPreparedKey());
+
+        assertThat(builder.getPreparedText(), is("<p>Stored text</p>"));
+        assertThat(builder.getTextToStore(), is(nullValue()));
+    }
+
+    @Test
+    public void testPreparedText_storedForOtherPreferences() {
+        String staleKey = new EntryTextBuilder()
+                .withAbstractText("<p>Entry text</p>")
+                .withPreferences(prefs(true, false, 1))
+                .getPreparedKey();
+        EntryTextBuilder builder = new EntryTextBuilder()
+                .withEntryId("stored-2")
+                .withAbstractText("<p>Entry text</p>")
+                .withPreferences(prefs(false, false, 1))
+                .withStoredText(EntryBodyCodec.compress("<p>Stored text</p>"), staleKey);
+
+        assertThat(builder.getPreparedText(), is("<p>Entry text</p>"));
+        assertThat(EntryBodyCodec.decompress(builder.getTextToStore()), is("<p>Entry text</p>"));
+    }
+
+    @Test
+    public void testPrepareToStore() {
+        Map<String, String> cachedImages = new HashMap<>();
+        cachedImages.put("http://a.site/one.png", "/sdcard/groborss/images/0a1b.png");
+        EntryTextBuilder ingest = new EntryTextBuilder()
+                .withEntryId("ingest-1")
+                .withAbstractText("<img src='http://a.site/one.png'>")
+                .withCachedImages(cachedImages)
+                .withPreferences(prefs(false, false, 1));
+        byte[] stored = ingest.prepareToStore();
+
+        EntryTextBuilder view = new EntryTextBuilder()
+                .withEntryId("ingest-2")
+                .withAbstractText("<img src='http://a.site/one.png'>")
+                .withCachedImages(new HashMap<>(cachedImages))
+                .withPreferences(prefs(false, false, 1))
+                .withStoredText(stored, ingest.getPreparedKey());
+
+        assertThat(view.getPreparedText(), is("<img src=\"file:///sdcard/groborss/images/0a1b.png\">"));
+        assertThat(view.getTextToStore(), is(nullValue()));
+        assertThat(view.getShownCachedImages(), is(Collections.singletonList("http://a.site/one.png")));
+    }
+
+    @Test
+    public void testPrepareToStore_picturesDisabled() {
+        Map<String, String> cachedImages = new HashMap<>();
+        cachedImages.put("http://a.site/one.png", "/sdcard/groborss/images/0a1b.png");
+        cachedImages.put("http://a.site/two.png", null);
+        EntryTextBuilder ingest = new EntryTextBuilder()
+                .withEntryId("ingest-3")
+                .withAbstractText("<img src='http://a.site/one.png'><img src='http://a.site/two.png'>")
+                .withCachedImages(cachedImages)
+                .withPreferences(prefs(false, true, 1));
+        byte[] stored = ingest.prepareToStore();
+
+        EntryTextBuilder view = new EntryTextBuilder()
+                .withEntryId("ingest-4")
+                .withAbstractText("<img src='http://a.site/one.png'><img src='http://a.site/two.png'>")
+                .withCachedImages(new HashMap<>(cachedImages))
+                .withPreferences(prefs(false, true, 1))
+                .withStoredText(stored, ingest.getPreparedKey());
+
+        view.getPreparedText();
+        assertThat(view.getTextToStore(), is(nullValue()));
+        assertThat(view.getShownCachedImages(), is(ingest.getShownCachedImages()));
+        assertThat(view.getShownCachedImages().isEmpty(), is(true));
+        assertThat(view.getCachedImageMisses(), is(0));
+    }
+
+    @Test
+    public void testPrepareText_onlyOnce() {
+        EntryTextBuilder builder = new EntryTextBuilder()
+                .withEntryId("ahead-1")
+                .withAbstractText("<p>Loaded ahead</p>")
+                .withPreferences(prefs(false, false, 1));
+        byte[] toStore = builder.prepareText().getTextToStore();
+        assertThat(toStore != null, is(true));
+
+        // preparing again, as rendering does, keeps the first result
+        assertThat(builder.prepareText().getTextToStore(), is(toStore));
+    }
+
+    @Test
+    public void testPreparedText_memoryCache() {
+        EntryTextBuilder first = new EntryTextBuilder()
+                .withEntryId("memory-1")
+                .withAbstractText("<p>Entry text</p>")
+                .withPreferences(prefs(false, false, 1));
+        assertThat(first.getPreparedText(), is("<p>Entry text</p>"));
+        assertThat(first.getTextToStore() != null, is(true));
+
+        EntryTextBuilder second = new EntryTextBuilder()
+                .withEntryId("memory-1")
+                .withAbstractText("<p>Entry text</p>")
+                .withPreferences(prefs(false, false, 1));
+        assertThat(second.getPreparedText(), is("<p>Entry text</p>"));
+        assertThat(second.getTextToStore(), is(nullValue()));
+
+        EntryTextBuilder changed = new EntryTextBuilder()
+                .withEntryId("memory-1")
+                .withAbstractText("<p>Changed text</p>")
+                .withPreferences(prefs(false, false, 1));
+        assertThat(changed.getPreparedText(), is("<p>Changed text</p>"));
+    }
+
     @Test
     public void testXkcd() {
         EntryTextBuilder builder = new EntryTextBuilder()
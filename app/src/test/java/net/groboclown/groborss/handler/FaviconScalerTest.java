@@ -0,0 +1,69 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss.handler;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class FaviconScalerTest {
+    @Test
+    public void isPicture() {
+        assertThat(FaviconScaler.isPicture(bytes(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a)), is(true));
+        assertThat(FaviconScaler.isPicture(bytes('G', 'I', 'F', '8', '9', 'a')), is(true));
+        assertThat(FaviconScaler.isPicture(bytes(0xff, 0xd8, 0xff, 0xe0)), is(true));
+        assertThat(FaviconScaler.isPicture(bytes(0, 0, 1, 0, 2, 0)), is(true));
+        assertThat(FaviconScaler.isPicture(bytes('B', 'M', 0x36, 0)), is(true));
+        assertThat(FaviconScaler.isPicture(bytes('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P')), is(true));
+    }
+
+    @Test
+    public void isPicture_rejected() {
+        assertThat(FaviconScaler.isPicture("<!DOCTYPE html><html>404</html>".getBytes()), is(false));
+        assertThat(FaviconScaler.isPicture(bytes('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E')), is(false));
+        // a cursor file, not an icon
+        assertThat(FaviconScaler.isPicture(bytes(0, 0, 2, 0, 1, 0)), is(false));
+        assertThat(FaviconScaler.isPicture(bytes(0x89, 'P')), is(false));
+        assertThat(FaviconScaler.isPicture(new byte[0]), is(false));
+    }
+
+    @Test
+    public void scale_rejected() {
+        assertThat(FaviconScaler.scale(null, 36), is(nullValue()));
+        assertThat(FaviconScaler.scale("<html></html>".getBytes(), 36), is(nullValue()));
+        assertThat(FaviconScaler.scale(new byte[FaviconScaler.MAX_PAYLOAD + 1], 36), is(nullValue()));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+
+        for (int n = 0; n < values.length; n++) {
+            bytes[n] = (byte) values[n];
+        }
+        return bytes;
+    }
+}
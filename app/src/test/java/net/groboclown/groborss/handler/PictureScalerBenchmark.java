@@ -0,0 +1,175 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Compares the size of stored pictures, and the time to decode them when
+ * an entry is shown, as downloaded and as {@link PictureScaler} stores them.
+ * The android codecs are not available here, so the pictures are decoded
+ * and encoded again with the desktop jpeg codec, using the sample size and
+ * scaling of the scaler; webp, which the scaler uses, comes out smaller
+ * still.
+ * <p>
+ * Not a unit test; run the main method by hand.
+ */
+public class PictureScalerBenchmark {
+    private static final int PICTURES = 24;
+    private static final int[] WIDTHS = { 640, 1200, 2048, 3000, 4000, 6000 };
+    private static final int[] MAX_WIDTHS = { 1920, 1280, 800 };
+    private static final float SERVED_QUALITY = 0.92f;
+    private static final float STORED_QUALITY = 0.75f;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(42);
+        List<byte[]> served = new ArrayList<>();
+
+        for (int n = 0; n < PICTURES; n++) {
+            int width = WIDTHS[n % WIDTHS.length];
+
+            served.add(encode(createPhoto(random, width, width * 2 / 3), SERVED_QUALITY));
+        }
+        report("as downloaded", served);
+
+        for (int maxWidth : MAX_WIDTHS) {
+            List<byte[]> stored = new ArrayList<>();
+
+            for (byte[] data : served) {
+                byte[] scaled = scale(data, maxWidth);
+
+                stored.add(scaled.length < data.length ? scaled : data);
+            }
+            report("scaled to " + maxWidth, stored);
+        }
+    }
+
+    private static void report(String name, List<byte[]> pictures) throws IOException {
+        long bytes = 0;
+
+        for (byte[] data : pictures) {
+            bytes += data.length;
+        }
+
+        long best = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+
+            for (byte[] data : pictures) {
+                ImageIO.read(new ByteArrayInputStream(data));
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + ": " + (bytes / 1024) + " KB, decoding "
+                + (best / pictures.size() / 1000) + " us per picture");
+    }
+
+    private static byte[] scale(byte[] data, int maxWidth) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        int sampleSize = PictureScaler.sampleSize(image.getWidth(), maxWidth);
+        int width = image.getWidth() / sampleSize;
+        int height = image.getHeight() / sampleSize;
+
+        if (width > maxWidth) {
+            height = PictureScaler.scaledHeight(width, height, maxWidth);
+            width = maxWidth;
+        }
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return encode(scaled, STORED_QUALITY);
+    }
+
+    /**
+     * @return smooth gradients with some noise and edges, which compress
+     *      about as well as photos
+     */
+    private static BufferedImage createPhoto(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+
+        for (int y = 0; y < height; y += 8) {
+            graphics.setColor(new Color(y * 255 / height, 120 + random.nextInt(20), 255 - y * 255 / height));
+            graphics.fillRect(0, y, width, 8);
+        }
+        for (int n = 0; n < 40; n++) {
+            graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            graphics.fillOval(random.nextInt(width), random.nextInt(height), width / 8, height / 8);
+        }
+        graphics.dispose();
+        for (int n = width * height / 4; n > 0; n--) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            int rgb = image.getRGB(x, y);
+            int noise = random.nextInt(24) - 12;
+
+            image.setRGB(x, y, new Color(clamp((rgb >> 16 & 0xff) + noise), clamp((rgb >> 8 & 0xff) + noise),
+                    clamp((rgb & 0xff) + noise)).getRGB());
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static byte[] encode(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
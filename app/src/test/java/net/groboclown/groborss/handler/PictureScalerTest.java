@@ -0,0 +1,135 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PictureScalerTest {
+    @Test
+    public void sampleSize() {
+        assertThat(PictureScaler.sampleSize(800, 1080), is(1));
+        assertThat(PictureScaler.sampleSize(2159, 1080), is(1));
+        assertThat(PictureScaler.sampleSize(2160, 1080), is(2));
+        assertThat(PictureScaler.sampleSize(4000, 1080), is(2));
+        assertThat(PictureScaler.sampleSize(4320, 1080), is(4));
+        assertThat(PictureScaler.sampleSize(12000, 480), is(16));
+    }
+
+    @Test
+    public void scaledHeight() {
+        assertThat(PictureScaler.scaledHeight(4000, 3000, 1080), is(810));
+        assertThat(PictureScaler.scaledHeight(40000, 3, 1080), is(1));
+    }
+
+    @Test
+    public void isAnimatedGif() {
+        assertThat(PictureScaler.isAnimatedGif(gif(1, false)), is(false));
+        assertThat(PictureScaler.isAnimatedGif(gif(1, true)), is(false));
+        assertThat(PictureScaler.isAnimatedGif(gif(2, false)), is(true));
+        assertThat(PictureScaler.isAnimatedGif(gif(3, true)), is(true));
+        assertThat(PictureScaler.isAnimatedGif(new byte[] { 'G', 'I', 'F' }), is(false));
+        assertThat(PictureScaler.isAnimatedGif(jpeg(null)), is(false));
+    }
+
+    @Test
+    public void exifOrientation() {
+        assertThat(PictureScaler.exifOrientation(jpeg(null)), is(0));
+        assertThat(PictureScaler.exifOrientation(jpeg(exif(true, 1))), is(1));
+        assertThat(PictureScaler.exifOrientation(jpeg(exif(true, 6))), is(6));
+        assertThat(PictureScaler.exifOrientation(jpeg(exif(false, 8))), is(8));
+        assertThat(PictureScaler.exifOrientation(gif(1, false)), is(0));
+
+        byte[] truncated = jpeg(exif(true, 6));
+
+        assertThat(PictureScaler.exifOrientation(Arrays.copyOf(truncated, 30)), is(0));
+    }
+
+    /**
+     * @return a gif of 1x1 frames, with a global color table if asked
+     */
+    private static byte[] gif(int frames, boolean colorTable) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        write(out, 'G', 'I', 'F', '8', '9', 'a', 1, 0, 1, 0, colorTable ? 0x80 : 0, 0, 0);
+        if (colorTable) {
+            write(out, 0, 0, 0, 0xff, 0xff, 0xff);
+        }
+        for (int n = 0; n < frames; n++) {
+            // graphic control extension, then the frame
+            write(out, 0x21, 0xf9, 4, 0, 10, 0, 0, 0);
+            write(out, 0x2c, 0, 0, 0, 0, 1, 0, 1, 0, 0);
+            write(out, 2, 2, 0x4c, 0x01, 0);
+        }
+        write(out, 0x3b);
+        return out.toByteArray();
+    }
+
+    private static byte[] exif(boolean bigEndian, int orientation) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        write(out, 'E', 'x', 'i', 'f', 0, 0);
+        if (bigEndian) {
+            write(out, 'M', 'M', 0, 42, 0, 0, 0, 8);
+            write(out, 0, 2);
+            write(out, 0x01, 0x0f, 0, 2, 0, 0, 0, 4, 0, 0, 0, 0); // make
+            write(out, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, orientation, 0, 0);
+        } else {
+            write(out, 'I', 'I', 42, 0, 8, 0, 0, 0);
+            write(out, 2, 0);
+            write(out, 0x0f, 0x01, 2, 0, 4, 0, 0, 0, 0, 0, 0, 0);
+            write(out, 0x12, 0x01, 3, 0, 1, 0, 0, 0, orientation, 0, 0, 0);
+        }
+        write(out, 0, 0, 0, 0);
+        return out.toByteArray();
+    }
+
+    private static byte[] jpeg(byte[] app1) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        write(out, 0xff, 0xd8);
+        // jfif
+        write(out, 0xff, 0xe0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0);
+        if (app1 != null) {
+            write(out, 0xff, 0xe1, (app1.length + 2) >> 8, (app1.length + 2) & 0xff);
+            out.write(app1, 0, app1.length);
+        }
+        // start of scan
+        write(out, 0xff, 0xda, 0, 8, 1, 1, 0, 0, 63, 0, 0x12, 0x34, 0xff, 0xd9);
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, int... bytes) {
+        for (int b : bytes) {
+            out.write(b);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 /**
- * Sparse rss
- * 
- * Copyright (c) 2012 Stefan Handschuh
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -23,58 +23,35 @@
  *
  */
 
-package net.groboclown.groborss;
+package net.groboclown.groborss.handler;
+
+import org.junit.Test;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
 
-public abstract class SimpleTask implements Runnable {
-	private boolean canceled = false;
-	
-	private int postCount = 0;
-	
-	public abstract void runControlled();
-	
-	public void cancel() {
-		canceled = true;
-	}
-	
-	public boolean isCanceled() {
-		return canceled;
-	}
-	
-	public void post() {
-		post(1);
-	}
-	
-	public synchronized void post(int count) {
-		postCount += count;
-		canceled = false;
-	}
-	
-	public boolean isPosted() {
-		return postCount > 0;
-	}
-	
-	public int getPostCount() {
-		return postCount;
-	}
+public class RenderedEntryCacheTest {
+    @Test
+    public void testGet_otherKey() {
+        RenderedEntryCache cache = new RenderedEntryCache(2);
+        cache.put("1", "a", "text");
 
-	public final synchronized void run() {
-		if (!canceled) {
-			runControlled();
-		}
-		postRun();
-		postCount--;
-	}
-	
-	/**
-	 * Override to use
-	 */
-	public void postRun() {
-		
-	}
+        assertThat(cache.get("1", "a"), is("text"));
+        assertThat(cache.get("1", "b"), is(nullValue()));
+        assertThat(cache.get("2", "a"), is(nullValue()));
+    }
 
-	public void enable() {
-		canceled = false;
-	}
+    @Test
+    public void testPut_evictsLeastRecentlyUsed() {
+        RenderedEntryCache cache = new RenderedEntryCache(2);
+        cache.put("1", "a", "one");
+        cache.put("2", "a", "two");
+        cache.get("1", "a");
+        cache.put("3", "a", "three");
 
+        assertThat(cache.get("1", "a"), is("one"));
+        assertThat(cache.get("2", "a"), is(nullValue()));
+        assertThat(cache.get("3", "a"), is("three"));
+    }
 }
@@ -2,6 +2,8 @@ package net.groboclown.groborss.handler;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -75,6 +77,62 @@ public class SimpleEntryTextParserTest {
         assertTagEquals(bits, 0, "ab");
     }
 
+    @Test
+    public void parse_manyAttributes() {
+        StringBuilder html = new StringBuilder("<img");
+        String[] expected = new String[80];
+        for (int i = 0; i < 40; i++) {
+            html.append(" a").append(i).append("='").append(i).append('\'');
+            expected[i * 2] = "a" + i;
+            expected[i * 2 + 1] = Integer.toString(i);
+        }
+        List<SimpleHtmlParser.HtmlBit> bits = parse(html.append("><b>xy</b>").toString());
+        assertThat(bits.size(), is(4));
+        assertTagEquals(bits, 0, "img", expected);
+        assertTagEquals(bits, 1, "b");
+        assertPlainText(bits, 2, "xy");
+        assertTagState(bits, 3, false, true);
+    }
+
+    @Test
+    public void parse_removedAttributeSharedStream() {
+        List<SimpleHtmlParser.HtmlBit> bits = parse("<a href='x' title='t'>yz</a><a title='u'>");
+        bits.get(0).moveToStart();
+        while (bits.get(0).nextAttribute()) {
+            if ("title".equals(bits.get(0).getCurrentKey())) {
+                bits.get(0).removeCurrent();
+            }
+        }
+        assertThat(bits.get(0).toString(), is("<a href='x'>"));
+        assertThat(bits.get(3).toString(), is("<a title='u'>"));
+    }
+
+    @Test
+    public void parse_streamingMatchesList() {
+        String html = "ab<p class='x'>cd <img src=\"e.png\" alt=f/>gh</p><<i>j k</i> l";
+        SimpleHtmlParser.HtmlWriter writer = new SimpleHtmlParser.HtmlWriter(0);
+        SimpleHtmlParser.parse(html, writer);
+
+        StringBuilder expected = new StringBuilder();
+        for (SimpleHtmlParser.HtmlBit bit : parse(html)) {
+            expected.append(bit.toString());
+        }
+        assertThat(writer.getHtml().toString(), is(expected.toString()));
+    }
+
+    @Test
+    public void parse_streamingStops() {
+        final List<String> tags = new ArrayList<>();
+        SimpleHtmlParser.parse("<a><b><c><d>", new SimpleHtmlParser.Visitor() {
+            @Override
+            public boolean visit(SimpleHtmlParser.HtmlBit bit) {
+                tags.add(bit.getTag());
+                return !bit.isTag("B");
+            }
+        });
+        assertThat(tags, is(Arrays.asList("a", "b")));
+    }
+
     private static void assertPlainText(List<SimpleHtmlParser.HtmlBit> bits, int index, String text) {
         assertTrue("No such index " + index, bits.size() > index);
         assertPlainText("bit " + index, bits.get(index), text);
@@ -117,4 +175,4 @@ public class SimpleEntryTextParserTest {
         assertThat(msg + ": start?", bit.isStartTag(), is(isStart));
         assertThat(msg + ": end?", bit.isEndTag(), is(isEnd));
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,144 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Measures what {@link SimpleHtmlParser#parse(String)} and the streaming
+ * {@link SimpleHtmlParser#parse(String, SimpleHtmlParser.Visitor)} allocate
+ * and how long they take for article-sized bodies: paragraphs, links, pictures with
+ * several attributes and the usual inline markup.
+ * <p>
+ * The allocation counter is the one of the desktop JVM, so this only runs
+ * there.  Not a unit test; run the main method by hand.
+ */
+public class SimpleHtmlParserBenchmark {
+    private static final int ARTICLES = 200;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        String[] articles = new String[ARTICLES];
+
+        long chars = 0;
+        long bits = 0;
+
+        for (int n = 0; n < ARTICLES; n++) {
+            articles[n] = createArticle(n);
+            chars += articles[n].length();
+            bits += SimpleHtmlParser.parse(articles[n]).size();
+        }
+
+        // warm up
+        parseAll(articles);
+        parseAll(articles);
+        streamAll(articles);
+        streamAll(articles);
+
+        long bestTime = Long.MAX_VALUE;
+        long bestAllocated = Long.MAX_VALUE;
+        long bestStreamTime = Long.MAX_VALUE;
+        long bestStreamAllocated = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+
+            parseAll(articles);
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+            bestAllocated = Math.min(bestAllocated, allocatedBytes() - allocated);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+
+            streamAll(articles);
+            bestStreamTime = Math.min(bestStreamTime, System.nanoTime() - start);
+            bestStreamAllocated = Math.min(bestStreamAllocated, allocatedBytes() - allocated);
+        }
+        System.out.println("Articles:   " + ARTICLES + " (" + (chars / ARTICLES) + " chars, "
+                + (bits / ARTICLES) + " bits each)");
+        System.out.println("Allocated:  " + (bestAllocated / ARTICLES) + " bytes per article, "
+                + (bestAllocated / bits) + " bytes per bit");
+        System.out.println("Parse:      " + (bestTime / ARTICLES / 1000.0) + " us per article");
+        System.out.println("Streaming:  " + (bestStreamAllocated / ARTICLES) + " bytes, "
+                + (bestStreamTime / ARTICLES / 1000.0) + " us per article");
+    }
+
+    private static int streamAll(String[] articles) {
+        final int[] count = new int[1];
+
+        for (String article : articles) {
+            SimpleHtmlParser.parse(article, new SimpleHtmlParser.Visitor() {
+                @Override
+                public boolean visit(SimpleHtmlParser.HtmlBit bit) {
+                    count[0]++;
+                    return true;
+                }
+            });
+        }
+        return count[0];
+    }
+
+    private static int parseAll(String[] articles) {
+        int count = 0;
+
+        for (String article : articles) {
+            List<SimpleHtmlParser.HtmlBit> bits = SimpleHtmlParser.parse(article);
+            count += bits.size();
+        }
+        return count;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static String createArticle(int seed) {
+        StringBuilder body = new StringBuilder();
+
+        body.append("<div class=\"entry-content\"><figure class=\"wp-block-image size-large\">")
+                .append("<img loading=\"lazy\" width=\"1024\" height=\"576\" src=\"https://media.example.com/uploads/")
+                .append(seed).append("/header.jpg\" alt=\"Header picture\" class=\"wp-image-").append(seed)
+                .append("\" srcset=\"https://media.example.com/uploads/").append(seed).append("/header-300.jpg 300w\">")
+                .append("<figcaption>Photo: Someone <em>Else</em></figcaption></figure>\n");
+        for (int p = 0; p < 10 + seed % 20; p++) {
+            body.append("<p>Paragraph ").append(p).append(" of the article about <a href=\"https://example.com/topic/")
+                    .append((seed * 31 + p) % 17).append("\" rel=\"noopener\" target=\"_blank\">topic ").append(seed % 17)
+                    .append("</a>, with some <strong>emphasis</strong> &amp; an entity or two.  The text goes on ")
+                    .append("for a while, <span style=\"color: #333\">styled</span> here and there, so that it ")
+                    .append("looks like a real news article ").append(seed * p).append(".<br/></p>\n");
+            if (p % 4 == 3) {
+                body.append("<blockquote><p>A quote in between, see https://example.com/quote/").append(p)
+                        .append(" for more.</p></blockquote>\n");
+            }
+        }
+        body.append("<img src=\"https://feeds.example.com/tracking/").append(seed)
+                .append("/rss-pixel.png?x=1\" width=\"1\" height=\"1\"></div>");
+        return body.toString();
+    }
+}
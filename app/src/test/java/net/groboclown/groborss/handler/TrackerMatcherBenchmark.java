@@ -0,0 +1,99 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Shows that the cost of {@link TrackerMatcher#matches(String)} stays the same
+ * as the rules grow, where a loop over one regular expression per rule grows
+ * with them.
+ * <p>
+ * Not a unit test; run the main method by hand.
+ */
+public class TrackerMatcherBenchmark {
+    private static final int URLS = 2000;
+    private static final int ROUNDS = 20;
+    private static final int[] RULE_COUNTS = { 10, 100, 1000, 10000 };
+
+    public static void main(String[] args) {
+        String[] urls = new String[URLS];
+
+        for (int n = 0; n < URLS; n++) {
+            urls[n] = "https://media" + (n % 7) + ".example" + (n % 13) + ".com/assets/img/"
+                    + n + "/picture-" + (n * 31) + ".jpg?s=600&t=" + n;
+        }
+
+        for (int ruleCount : RULE_COUNTS) {
+            List<String> rules = new ArrayList<>();
+            List<Pattern> patterns = new ArrayList<>();
+
+            for (int n = 0; n < ruleCount; n++) {
+                String rule = n % 2 == 0 ? "tracker" + n + ".example.net" : "/pixel-" + n + ".gif?";
+
+                rules.add(rule);
+                patterns.add(Pattern.compile(Pattern.quote(rule)));
+            }
+
+            TrackerMatcher matcher = new TrackerMatcher(rules);
+
+            long bestMatcher = Long.MAX_VALUE;
+            long bestPatterns = Long.MAX_VALUE;
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                int found = 0;
+
+                for (String url : urls) {
+                    if (matcher.matches(url)) {
+                        found++;
+                    }
+                }
+                bestMatcher = Math.min(bestMatcher, System.nanoTime() - start);
+
+                if (ruleCount <= 1000) {
+                    start = System.nanoTime();
+                    for (String url : urls) {
+                        for (Pattern pattern : patterns) {
+                            if (pattern.matcher(url).find()) {
+                                found--;
+                                break;
+                            }
+                        }
+                    }
+                    bestPatterns = Math.min(bestPatterns, System.nanoTime() - start);
+                    if (found != 0) {
+                        throw new IllegalStateException("different matches");
+                    }
+                }
+            }
+            System.out.println(ruleCount + " rules: matcher " + (bestMatcher / URLS) + " ns, patterns "
+                    + (bestPatterns == Long.MAX_VALUE ? "-" : Long.toString(bestPatterns / URLS)) + " ns per url");
+        }
+    }
+}
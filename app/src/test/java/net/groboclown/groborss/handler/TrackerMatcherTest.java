@@ -0,0 +1,121 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.handler;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TrackerMatcherTest {
+    private static final TrackerMatcher MATCHER = new TrackerMatcher(TrackerMatcher.parseRules(
+            "# comment\n"
+            + "doubleclick.net\n"
+            + "  .Stats.Example.com  # trailing comment\n"
+            + "feeds.feedburner.com/~r/\n"
+            + "/pixel.gif?\n"
+            + "/__utm.gif\n"
+            + "/rss-pixel.png?\n"));
+
+    @Test
+    public void parseRules() {
+        assertThat(TrackerMatcher.parseRules("a.com\n\n # only a comment\n/B.gif # x\r\n"),
+                is(Arrays.asList("a.com", "/b.gif")));
+    }
+
+    @Test
+    public void matches_host() {
+        assertMatch("https://doubleclick.net/a.png", true);
+        assertMatch("https://ad.DoubleClick.net:8080/a.png", true);
+        assertMatch("//ad.doubleclick.net/a.png", true);
+        assertMatch("https://notdoubleclick.net/a.png", false);
+        assertMatch("https://doubleclick.net.example.org/a.png", false);
+        assertMatch("https://stats.example.com?x=1", true);
+        assertMatch("https://example.com/stats.example.com", false);
+    }
+
+    @Test
+    public void matches_hostPath() {
+        assertMatch("http://feeds.feedburner.com/~r/Feed/~4/abc", true);
+        assertMatch("http://feeds.feedburner.com/Feed", false);
+        assertMatch("http://feeds.feedburner.com", false);
+    }
+
+    @Test
+    public void matches_path() {
+        assertMatch("https://media.a.news.site/include/images/tracking/rss-pixel.png?story=1234", true);
+        assertMatch("https://a.site/img/PIXEL.GIF?u=1", true);
+        assertMatch("https://a.site/img/pixel.gif", false);
+        assertMatch("https://a.site/x/__utm.gif", true);
+        assertMatch("https://pixel.gif/", false);
+        assertMatch("/relative/pixel.gif?x", true);
+        assertMatch(null, false);
+    }
+
+    @Test
+    public void matches_overlappingPaths() {
+        TrackerMatcher matcher = new TrackerMatcher(Arrays.asList("/abcd", "/bc", "/abx"));
+        assertThat(matcher.matches("http://h/abx"), is(true));
+        assertThat(matcher.matches("http://h/a/bcd"), is(true));
+        assertThat(matcher.matches("http://h/abc"), is(false));
+    }
+
+    @Test
+    public void parseRules_turkishLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            TrackerMatcher matcher = new TrackerMatcher(TrackerMatcher.parseRules("PIXEL.Stats.example.com\n/TRACKING/"));
+            assertThat(matcher.matches("https://pixel.stats.example.com/a.png"), is(true));
+            assertThat(matcher.matches("https://a.site/tracking/a.png"), is(true));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void builtIn() {
+        assertThat(TrackerMatcher.BUILT_IN.matches("https://a.b/tracking/rss-pixel.png?story=1"), is(true));
+        assertThat(TrackerMatcher.BUILT_IN.matches("https://a.b/picture.png"), is(false));
+    }
+
+    @Test
+    public void rulesHash() {
+        assertThat(new TrackerMatcher(Arrays.asList("a.com")).getRulesHash()
+                        == new TrackerMatcher(Arrays.asList("a.com")).getRulesHash(),
+                is(true));
+        assertThat(new TrackerMatcher(Arrays.asList("a.com")).getRulesHash()
+                        == new TrackerMatcher(Arrays.asList("b.com")).getRulesHash(),
+                is(false));
+    }
+
+    private static void assertMatch(String url, boolean match) {
+        assertThat(url, MATCHER.matches(url), is(match));
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.provider;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class NotificationBatcherTest {
+    private static final String FEEDS = "content://feeds";
+    private static final String FEED_ENTRIES = "content://feeds/3/entries";
+    private static final String ALL_ENTRIES = "content://entries";
+
+    @Test
+    public void testUnbatched_passesThrough() {
+        Recorder recorder = new Recorder();
+        NotificationBatcher<String> batcher = new NotificationBatcher<>(recorder);
+
+        batcher.notifyChange(FEED_ENTRIES);
+        batcher.notifyChange(FEED_ENTRIES);
+
+        assertThat(recorder.notified, is(Arrays.asList(FEED_ENTRIES, FEED_ENTRIES)));
+    }
+
+    @Test
+    public void testSyntheticIngest_oneNotificationPerUri() {
+        Recorder recorder = new Recorder();
+        NotificationBatcher<String> batcher = new NotificationBatcher<>(recorder);
+
+        batcher.begin();
+        for (int i = 0; i < 1000; i++) {
+            // an entry insert, followed by the existence update of the efficient parsing mode
+            batcher.notifyChange(FEED_ENTRIES);
+            batcher.notifyChange(ALL_ENTRIES);
+        }
+        batcher.notifyChange(FEEDS);
+        assertThat(recorder.notified.size(), is(0));
+        batcher.end();
+
+        assertThat(recorder.notified, is(Arrays.asList(FEED_ENTRIES, ALL_ENTRIES, FEEDS)));
+    }
+
+    @Test
+    public void testNestedScopes_notifyOnOutermostEnd() {
+        Recorder recorder = new Recorder();
+        NotificationBatcher<String> batcher = new NotificationBatcher<>(recorder);
+
+        batcher.begin();
+        batcher.begin();
+        batcher.notifyChange(FEEDS);
+        batcher.end();
+        assertThat(recorder.notified.size(), is(0));
+        batcher.end();
+
+        assertThat(recorder.notified, is(Arrays.asList(FEEDS)));
+        assertThat(batcher.isBatching(), is(false));
+    }
+
+    @Test
+    public void testEmptyScope_noNotification() {
+        Recorder recorder = new Recorder();
+        NotificationBatcher<String> batcher = new NotificationBatcher<>(recorder);
+
+        batcher.begin();
+        batcher.end();
+
+        assertThat(recorder.notified.size(), is(0));
+    }
+
+    @Test
+    public void testSyntheticRefresh_countsNotifications() {
+        Recorder recorder = new Recorder();
+        NotificationBatcher<String> batcher = new NotificationBatcher<>(recorder);
+
+        for (int feed = 0; feed < 3; feed++) {
+            // the scope of one feed in the fetcher service
+            batcher.begin();
+            batcher.notifyChange(FEEDS); // the favicon
+            for (int i = 0; i < 100; i++) {
+                batcher.notifyChange(FEED_ENTRIES);
+            }
+            batcher.notifyChange(FEEDS); // the last update
+            batcher.end();
+        }
+
+        assertThat(recorder.notified.size(), is(6));
+    }
+
+    @Test
+    public void testOtherThreads_notBatched() throws InterruptedException {
+        final Recorder recorder = new Recorder();
+        final NotificationBatcher<String> batcher = new NotificationBatcher<>(recorder);
+
+        batcher.begin();
+        batcher.notifyChange(FEED_ENTRIES);
+
+        // the read state written by the UI while the refresh runs
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                batcher.notifyChange(ALL_ENTRIES);
+            }
+        };
+        writer.start();
+        writer.join();
+
+        assertThat(recorder.notified, is(Arrays.asList(ALL_ENTRIES)));
+        batcher.end();
+
+        assertThat(recorder.notified, is(Arrays.asList(ALL_ENTRIES, FEED_ENTRIES)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnbalancedEnd() {
+        new NotificationBatcher<>(new Recorder()).end();
+    }
+
+    private static class Recorder implements NotificationBatcher.Notifier<String> {
+        final List<String> notified = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void notifyChange(String key) {
+            notified.add(key);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.provider;
+
+/**
+ * Measures the part of the search index cost that is paid on the refresh
+ * thread for every new entry: reducing the entry html to its searchable
+ * text.  The SQLite side (one additional FTS row per entry, written in the
+ * same transaction as the entry) can only be measured on a device.
+ * <p>
+ * Not a unit test; run the main method by hand.
+ */
+public class SearchIndexBenchmark {
+    private static final int ENTRIES = 1000;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        String[] bodies = new String[ENTRIES];
+
+        for (int n = 0; n < ENTRIES; n++) {
+            bodies[n] = createBody(n);
+        }
+
+        long bytes = 0;
+
+        for (String body : bodies) {
+            bytes += body.length();
+        }
+
+        // warm up
+        run(bodies);
+
+        long best = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+
+            run(bodies);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println("Entries:           " + ENTRIES + " (" + (bytes / ENTRIES) + " chars each)");
+        System.out.println("Best total time:   " + (best / 1000) + " us");
+        System.out.println("Per entry:         " + (best / ENTRIES / 1000.0) + " us");
+    }
+
+    private static int run(String[] bodies) {
+        int length = 0;
+
+        for (String body : bodies) {
+            length += SearchIndex.toSearchText(body).length();
+        }
+        return length;
+    }
+
+    private static String createBody(int seed) {
+        StringBuilder body = new StringBuilder();
+
+        body.append("<img src='https://media.example.com/assets/img/").append(seed).append(".jpg' alt='Image description'/>");
+        for (int p = 0; p < 12; p++) {
+            body.append("<p>Paragraph ").append(p).append(" of the article about <a href='https://example.com/topic/")
+                    .append(seed % 17).append("'>topic ").append(seed % 17)
+                    .append("</a>, with some <b>emphasis</b> &amp; an entity or two.  The text goes on for a while ")
+                    .append("so that it looks like the summary of a real news article.</p>\n");
+        }
+        return body.toString();
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.provider;
+
+import net.groboclown.groborss.util.EntryBodyCodec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SearchIndexTest {
+    @Test
+    public void testSearchText_stripsTags() {
+        assertThat(
+                SearchIndex.toSearchText("<p>News <b>article</b> summary</p><img src='x.png'/>\n<p>Second&nbsp;line &amp; more</p>"),
+                is("News article summary Second line & more"));
+    }
+
+    @Test
+    public void testSearchText_unclosedTag() {
+        assertThat(SearchIndex.toSearchText("text <a href='"), is("text <a href='"));
+        assertThat(SearchIndex.toSearchText("<b>a</b> < b and c"), is("a < b and c"));
+    }
+
+    @Test
+    public void testSearchText_null() {
+        assertThat(SearchIndex.toSearchText(null), is(nullValue()));
+    }
+
+    @Test
+    public void testMatchExpression_words() {
+        assertThat(SearchIndex.toMatchExpression("Android  Release"), is("android release*"));
+    }
+
+    @Test
+    public void testMatchExpression_operatorsNotInterpreted() {
+        assertThat(SearchIndex.toMatchExpression("\"cats\" OR -dogs NEAR(x"), is("cats or dogs near x*"));
+    }
+
+    @Test
+    public void testMatchExpression_noWords() {
+        assertThat(SearchIndex.toMatchExpression(" \"*- "), is(nullValue()));
+    }
+
+    @Test
+    public void testScore_titleOutweighsBody() {
+        // one phrase, three columns: title, author, body
+        double titleHit = SearchIndex.score(matchinfo(1, 3, 1, 10, 5, 0, 0, 0, 0, 20, 10));
+        double bodyHit = SearchIndex.score(matchinfo(1, 3, 0, 10, 5, 0, 0, 0, 1, 20, 10));
+
+        assertTrue(titleHit > bodyHit);
+    }
+
+    @Test
+    public void testScore_moreHitsRankHigher() {
+        double oneHit = SearchIndex.score(matchinfo(1, 3, 0, 0, 0, 0, 0, 0, 1, 20, 10));
+        double threeHits = SearchIndex.score(matchinfo(1, 3, 0, 0, 0, 0, 0, 0, 3, 20, 10));
+
+        assertTrue(threeHits > oneHit);
+    }
+
+    @Test
+    public void testScore_invalid() {
+        assertThat(SearchIndex.score(null), is(0.0));
+        assertThat(SearchIndex.score(new byte[2]), is(0.0));
+    }
+
+    @Test
+    public void testSameBody() {
+        byte[] deflated = EntryBodyCodec.compress("a body");
+
+        assertTrue(SearchIndex.sameBody(EntryBodyCodec.FORMAT_PLAIN, "a body", null, EntryBodyCodec.FORMAT_PLAIN, "a body", null));
+        assertFalse(SearchIndex.sameBody(EntryBodyCodec.FORMAT_PLAIN, "a body", null, EntryBodyCodec.FORMAT_PLAIN, "other", null));
+        assertTrue(SearchIndex.sameBody(EntryBodyCodec.FORMAT_DEFLATE, null, deflated, EntryBodyCodec.FORMAT_DEFLATE, null, EntryBodyCodec.compress("a body")));
+        assertTrue(SearchIndex.sameBody(EntryBodyCodec.FORMAT_PLAIN, "a body", null, EntryBodyCodec.FORMAT_DEFLATE, null, deflated));
+        assertFalse(SearchIndex.sameBody(EntryBodyCodec.FORMAT_DEFLATE, null, deflated, EntryBodyCodec.FORMAT_PLAIN, null, null));
+    }
+
+    @Test
+    public void testRank_pages() {
+        long[] ids = { 1, 2, 3, 4, 5 };
+        double[] scores = { 0.5, 2.0, 0.5, 1.0, 0.1 };
+
+        assertArrayEquals(new long[] { 2, 4, 3 }, SearchIndex.rank(ids, scores, 0, 3));
+        assertArrayEquals(new long[] { 1, 5 }, SearchIndex.rank(ids, scores, 3, 3));
+        assertArrayEquals(new long[0], SearchIndex.rank(ids, scores, 5, 3));
+    }
+
+    @Test
+    public void testRank_allPagesInOrder() {
+        Random random = new Random(7);
+        int count = 1000;
+        long[] ids = new long[count];
+        double[] scores = new double[count];
+
+        for (int n = 0; n < count; n++) {
+            ids[n] = n + 1;
+            scores[n] = random.nextInt(50); // with ties
+        }
+
+        long[] all = SearchIndex.rank(ids, scores, 0, count);
+        assertThat(all.length, is(count));
+        for (int n = 1; n < count; n++) {
+            double before = scores[(int) all[n - 1] - 1];
+            double after = scores[(int) all[n] - 1];
+            assertTrue(before > after || (before == after && all[n - 1] > all[n]));
+        }
+
+        for (int offset = 0; offset < count; offset += 70) {
+            long[] page = SearchIndex.rank(ids, scores, offset, 70);
+            assertArrayEquals(Arrays.copyOfRange(all, offset, Math.min(count, offset + 70)), page);
+        }
+    }
+
+    private static byte[] matchinfo(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.nativeOrder());
+
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+}
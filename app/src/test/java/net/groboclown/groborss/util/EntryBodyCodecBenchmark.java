@@ -0,0 +1,111 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * Measures the stored size of compressed entry bodies, the cost that the
+ * refresh pays per new entry (compress) and the cost that opening an entry
+ * pays (decompress).  The saved database pages and the cursor window
+ * copies can only be measured on a device.
+ * <p>
+ * Not a unit test; run the main method by hand.
+ */
+public class EntryBodyCodecBenchmark {
+    private static final int ENTRIES = 1000;
+    private static final int ROUNDS = 20;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) {
+        String[] bodies = new String[ENTRIES];
+        byte[][] compressed = new byte[ENTRIES][];
+
+        long plainBytes = 0;
+        long compressedBytes = 0;
+
+        for (int n = 0; n < ENTRIES; n++) {
+            bodies[n] = createBody(n);
+            compressed[n] = EntryBodyCodec.compress(bodies[n]);
+            plainBytes += bodies[n].getBytes(UTF8).length;
+            compressedBytes += compressed[n].length;
+        }
+
+        // warm up
+        compressAll(bodies);
+        decompressAll(compressed);
+
+        long bestCompress = Long.MAX_VALUE;
+        long bestDecompress = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+
+            compressAll(bodies);
+            bestCompress = Math.min(bestCompress, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            decompressAll(compressed);
+            bestDecompress = Math.min(bestDecompress, System.nanoTime() - start);
+        }
+        System.out.println("Entries:            " + ENTRIES + " (" + (plainBytes / ENTRIES) + " bytes each)");
+        System.out.println("Stored size:        " + plainBytes + " -> " + compressedBytes + " bytes ("
+                + (compressedBytes * 100 / plainBytes) + "%)");
+        System.out.println("Compress (ingest):  " + (bestCompress / ENTRIES / 1000.0) + " us per entry");
+        System.out.println("Decompress (open):  " + (bestDecompress / ENTRIES / 1000.0) + " us per entry");
+    }
+
+    private static int compressAll(String[] bodies) {
+        int length = 0;
+
+        for (String body : bodies) {
+            length += EntryBodyCodec.compress(body).length;
+        }
+        return length;
+    }
+
+    private static int decompressAll(byte[][] compressed) {
+        int length = 0;
+
+        for (byte[] data : compressed) {
+            length += EntryBodyCodec.decompress(data).length();
+        }
+        return length;
+    }
+
+    private static String createBody(int seed) {
+        StringBuilder body = new StringBuilder();
+
+        body.append("<img src='https://media.example.com/assets/img/").append(seed).append(".jpg' alt='Image description'/>");
+        for (int p = 0; p < 12 + seed % 20; p++) {
+            body.append("<p>Paragraph ").append(p).append(" of the article about <a href='https://example.com/topic/")
+                    .append((seed * 31 + p) % 17).append("'>topic ").append(seed % 17)
+                    .append("</a>, with some <b>emphasis</b> &amp; an entity or two.  The text goes on for a while ")
+                    .append("so that it looks like the summary of a real news article ").append(seed * p).append(".</p>\n");
+        }
+        return body.toString();
+    }
+}
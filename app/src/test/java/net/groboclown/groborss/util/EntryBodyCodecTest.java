@@ -0,0 +1,79 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package net.groboclown.groborss.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class EntryBodyCodecTest {
+    @Test
+    public void testRoundTrip() {
+        StringBuilder body = new StringBuilder();
+        for (int n = 0; n < 200; n++) {
+            body.append("<p>Paragraph ").append(n).append(" with \u00e9t\u00e9 and \u65e5\u672c.</p>");
+        }
+        byte[] data = EntryBodyCodec.compress(body.toString());
+
+        assertTrue(data.length < body.length() / 4);
+        assertThat(EntryBodyCodec.decompress(data), is(body.toString()));
+        assertThat(EntryBodyCodec.decode(EntryBodyCodec.FORMAT_DEFLATE, null, data), is(body.toString()));
+    }
+
+    @Test
+    public void testRoundTrip_empty() {
+        assertThat(EntryBodyCodec.decompress(EntryBodyCodec.compress("")), is(""));
+    }
+
+    @Test
+    public void testDecode_plain() {
+        assertThat(EntryBodyCodec.decode(EntryBodyCodec.FORMAT_PLAIN, "<p>abc</p>", null), is("<p>abc</p>"));
+        assertThat(EntryBodyCodec.decode(EntryBodyCodec.FORMAT_PLAIN, null, null), is(nullValue()));
+    }
+
+    @Test
+    public void testShouldCompress() {
+        assertThat(EntryBodyCodec.shouldCompress(null), is(false));
+        assertThat(EntryBodyCodec.shouldCompress("<p>short</p>"), is(false));
+        assertThat(EntryBodyCodec.shouldCompress(new String(new char[EntryBodyCodec.MIN_COMPRESS_LENGTH])), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecompress_corrupt() {
+        EntryBodyCodec.decompress(new byte[] { 1, 2, 3, 4 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecompress_truncated() {
+        byte[] data = EntryBodyCodec.compress("<p>some text that is long enough to be cut in half</p>");
+        byte[] truncated = new byte[data.length / 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        EntryBodyCodec.decompress(truncated);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss.util;
+
+import java.util.Vector;
+
+/**
+ * Measures the lookups that the entries list makes for every bound row
+ * against the ids marked as read or unread and favorited or unfavorited
+ * while the list is shown, with the synchronized vectors of boxed ids that
+ * were used before and with {@link LongHashSet}.
+ * <p>
+ * Not a unit test; run the main method by hand.
+ */
+public class LongHashSetBenchmark {
+    private static final int[] OVERRIDES = { 10, 1000, 5000 };
+    private static final int ROWS = 10000;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        for (int overrides : OVERRIDES) {
+            Vector<Long> markedAsRead = new Vector<Long>();
+            Vector<Long> markedAsUnread = new Vector<Long>();
+            Vector<Long> favorited = new Vector<Long>();
+            Vector<Long> unfavorited = new Vector<Long>();
+
+            LongHashSet readSet = new LongHashSet();
+            LongHashSet unreadSet = new LongHashSet();
+            LongHashSet favoritedSet = new LongHashSet();
+            LongHashSet unfavoritedSet = new LongHashSet();
+
+            // mostly read after a "mark many as read" session, a few of each of the others
+            for (long id = 0; id < overrides; id++) {
+                markedAsRead.add(id * 3);
+                readSet.add(id * 3);
+                if (id % 10 == 0) {
+                    markedAsUnread.add(id * 3 + 1);
+                    unreadSet.add(id * 3 + 1);
+                    favorited.add(id * 3 + 2);
+                    favoritedSet.add(id * 3 + 2);
+                    unfavorited.add(id * 3 + 1);
+                    unfavoritedSet.add(id * 3 + 1);
+                }
+            }
+
+            // warm up
+            int sink = bindVectors(markedAsRead, markedAsUnread, favorited, unfavorited)
+                    + bindSets(readSet, unreadSet, favoritedSet, unfavoritedSet);
+
+            long bestVectors = Long.MAX_VALUE;
+            long bestSets = Long.MAX_VALUE;
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+
+                sink += bindVectors(markedAsRead, markedAsUnread, favorited, unfavorited);
+                bestVectors = Math.min(bestVectors, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                sink += bindSets(readSet, unreadSet, favoritedSet, unfavoritedSet);
+                bestSets = Math.min(bestSets, System.nanoTime() - start);
+            }
+            System.out.println("Overrides: " + overrides + " (" + sink % 2 + ")");
+            System.out.println("  Vector<Long>:  " + (bestVectors / ROWS) + " ns per bind");
+            System.out.println("  LongHashSet:   " + (bestSets / ROWS) + " ns per bind");
+        }
+    }
+
+    /**
+     * @return the number of unread rows, the lookups as made by bindView
+     */
+    private static int bindVectors(Vector<Long> markedAsRead, Vector<Long> markedAsUnread,
+            Vector<Long> favorited, Vector<Long> unfavorited) {
+        int unread = 0;
+
+        for (long id = 0; id < ROWS; id++) {
+            boolean favorite = !unfavorited.contains(id) && (id % 7 == 0 || favorited.contains(id));
+
+            if (id % 2 == 0 && !markedAsRead.contains(id) || markedAsUnread.contains(id)) {
+                unread++;
+            }
+            if (favorite) {
+                unread++;
+            }
+        }
+        return unread;
+    }
+
+    private static int bindSets(LongHashSet markedAsRead, LongHashSet markedAsUnread,
+            LongHashSet favorited, LongHashSet unfavorited) {
+        int unread = 0;
+
+        for (long id = 0; id < ROWS; id++) {
+            boolean favorite = !unfavorited.contains(id) && (id % 7 == 0 || favorited.contains(id));
+
+            if (id % 2 == 0 && !markedAsRead.contains(id) || markedAsUnread.contains(id)) {
+                unread++;
+            }
+            if (favorite) {
+                unread++;
+            }
+        }
+        return unread;
+    }
+}
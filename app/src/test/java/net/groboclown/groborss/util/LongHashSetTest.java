@@ -0,0 +1,119 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LongHashSetTest {
+    @Test
+    public void addContainsRemove() {
+        LongHashSet set = new LongHashSet();
+
+        assertThat(set.isEmpty(), is(true));
+        assertThat(set.add(42L), is(true));
+        assertThat(set.add(42L), is(false));
+        assertThat(set.contains(42L), is(true));
+        assertThat(set.contains(43L), is(false));
+        assertThat(set.size(), is(1));
+        assertThat(set.remove(43L), is(false));
+        assertThat(set.remove(42L), is(true));
+        assertThat(set.contains(42L), is(false));
+        assertThat(set.isEmpty(), is(true));
+    }
+
+    @Test
+    public void zeroAndNegative() {
+        LongHashSet set = new LongHashSet();
+
+        assertThat(set.contains(0L), is(false));
+        assertThat(set.add(0L), is(true));
+        assertThat(set.add(-1L), is(true));
+        assertThat(set.add(Long.MIN_VALUE), is(true));
+        assertThat(set.contains(0L), is(true));
+        assertThat(set.contains(-1L), is(true));
+        assertThat(set.contains(Long.MIN_VALUE), is(true));
+        assertThat(set.size(), is(3));
+        assertThat(set.remove(0L), is(true));
+        assertThat(set.contains(0L), is(false));
+        assertThat(set.size(), is(2));
+    }
+
+    @Test
+    public void grow() {
+        LongHashSet set = new LongHashSet(1);
+
+        for (long n = 1; n <= 10000; n++) {
+            set.add(n);
+        }
+        assertThat(set.size(), is(10000));
+        for (long n = 1; n <= 10000; n++) {
+            assertThat(set.contains(n), is(true));
+        }
+        assertThat(set.contains(10001L), is(false));
+    }
+
+    @Test
+    public void clear() {
+        LongHashSet set = new LongHashSet();
+
+        set.add(0L);
+        set.add(7L);
+        set.clear();
+        assertThat(set.size(), is(0));
+        assertThat(set.contains(0L), is(false));
+        assertThat(set.contains(7L), is(false));
+    }
+
+    @Test
+    public void matchesHashSet() {
+        // a small range makes for many collisions and removals in the middle of probe sequences
+        Random random = new Random(17);
+
+        LongHashSet set = new LongHashSet();
+
+        Set<Long> expected = new HashSet<Long>();
+
+        for (int n = 0; n < 200000; n++) {
+            long value = random.nextInt(300) - 20;
+
+            if (random.nextBoolean()) {
+                assertThat(set.add(value), is(expected.add(value)));
+            } else {
+                assertThat(set.remove(value), is(expected.remove(value)));
+            }
+            assertThat(set.size(), is(expected.size()));
+        }
+        for (long value = -20; value < 280; value++) {
+            assertThat(set.contains(value), is(expected.contains(value)));
+        }
+    }
+}
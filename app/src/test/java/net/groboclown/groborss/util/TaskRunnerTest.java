@@ -0,0 +1,258 @@
+/**
+ * GroboRSS
+ *
+ * Copyright (c) 2017 Groboclown
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package net.groboclown.groborss.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TaskRunnerTest {
+    private static final Executor DIRECT = new Executor() {
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Test
+    public void priority() throws InterruptedException {
+        TaskRunner runner = new TaskRunner(1, DIRECT);
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        Done done = new Done(4);
+
+        runner.run(new Blocking("blocker", release, order), done);
+        runner.run(new Recording("low", TaskRunner.PRIORITY_LOW, null, order), done);
+        runner.run(new Recording("normal", TaskRunner.PRIORITY_NORMAL, null, order), done);
+        runner.run(new Recording("high", TaskRunner.PRIORITY_HIGH, null, order), done);
+        release.countDown();
+        done.await();
+        assertThat(order, is(Arrays.asList("blocker", "high", "normal", "low")));
+    }
+
+    @Test
+    public void sameKeyRunsInOrder() throws InterruptedException {
+        TaskRunner runner = new TaskRunner(4, DIRECT);
+
+        final AtomicInteger running = new AtomicInteger();
+
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        Done done = new Done(20);
+
+        for (int n = 0; n < 20; n++) {
+            // the later ones have the higher priority, but the key comes first
+            runner.run(new Recording(Integer.toString(n), n, "feed", order) {
+                @Override
+                protected void execute() {
+                    if (running.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.execute();
+                    running.decrementAndGet();
+                }
+            }, done);
+        }
+        done.await();
+        assertThat(overlaps.get(), is(0));
+        for (int n = 0; n < 20; n++) {
+            assertThat(order.get(n), is(Integer.toString(n)));
+        }
+    }
+
+    @Test
+    public void cancelBeforeRun() throws InterruptedException {
+        TaskRunner runner = new TaskRunner(1, DIRECT);
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        Done done = new Done(4);
+
+        runner.run(new Blocking("blocker", release, order), done);
+
+        TaskRunner.Task queued = runner.run(new Recording("queued", TaskRunner.PRIORITY_NORMAL, null, order), done);
+
+        runner.run(new Recording("keyed", TaskRunner.PRIORITY_NORMAL, "feed", order), done);
+
+        TaskRunner.Task waiting = runner.run(new Recording("waiting", TaskRunner.PRIORITY_NORMAL, "feed", order), done);
+
+        queued.cancel();
+        waiting.cancel();
+        release.countDown();
+        done.await();
+        assertThat(order, is(Arrays.asList("blocker", "keyed")));
+        assertThat(queued.isCancelled(), is(true));
+    }
+
+    @Test
+    public void allFeedsRunBetweenFeeds() throws InterruptedException {
+        TaskRunner runner = new TaskRunner(4, DIRECT);
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        Done done = new Done(3);
+
+        runner.run(new Blocking("feed a", "a", release, order), done);
+        runner.run(new Recording("all", TaskRunner.PRIORITY_NORMAL, TaskRunner.KEY_ALL, order), done);
+        // another feed, with a thread free, still waits for the task of all feeds
+        runner.run(new Recording("feed b", TaskRunner.PRIORITY_HIGH, "b", order), done);
+        release.countDown();
+        done.await();
+        assertThat(order, is(Arrays.asList("feed a", "all", "feed b")));
+    }
+
+    @Test
+    public void cancelAllFeeds() throws InterruptedException {
+        TaskRunner runner = new TaskRunner(4, DIRECT);
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        Done done = new Done(2);
+
+        Done feedB = new Done(1);
+
+        runner.run(new Blocking("feed a", "a", release, order), done);
+
+        TaskRunner.Task all = runner.run(new Recording("all", TaskRunner.PRIORITY_NORMAL, TaskRunner.KEY_ALL, order), done);
+
+        runner.run(new Recording("feed b", TaskRunner.PRIORITY_NORMAL, "b", order), feedB);
+        all.cancel();
+        feedB.await();
+        release.countDown();
+        done.await();
+        assertThat(order, is(Arrays.asList("feed b", "feed a")));
+    }
+
+    @Test
+    public void progress() throws InterruptedException {
+        TaskRunner runner = new TaskRunner(1, DIRECT);
+
+        final List<String> progress = Collections.synchronizedList(new ArrayList<String>());
+
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        runner.run(new TaskRunner.Task("counting", TaskRunner.PRIORITY_NORMAL, null) {
+            @Override
+            protected void execute() {
+                for (int n = 1; n <= 3; n++) {
+                    publishProgress(n, 3);
+                }
+            }
+        }, new TaskRunner.Listener() {
+            public void onProgress(TaskRunner.Task task, int done, int total) {
+                progress.add(done + "/" + total);
+            }
+
+            public void onFinished(TaskRunner.Task task) {
+                progress.add(task.getName());
+                finished.countDown();
+            }
+        });
+        assertThat(finished.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(progress, is(Arrays.asList("1/3", "2/3", "3/3", "counting")));
+    }
+
+    private static class Recording extends TaskRunner.Task {
+        private final List<String> order;
+
+        Recording(String name, int priority, String key, List<String> order) {
+            super(name, priority, key);
+            this.order = order;
+        }
+
+        @Override
+        protected void execute() {
+            order.add(getName());
+        }
+    }
+
+    private static class Blocking extends Recording {
+        private final CountDownLatch release;
+
+        Blocking(String name, CountDownLatch release, List<String> order) {
+            this(name, null, release, order);
+        }
+
+        Blocking(String name, String key, CountDownLatch release, List<String> order) {
+            super(name, TaskRunner.PRIORITY_LOW, key, order);
+            this.release = release;
+        }
+
+        @Override
+        protected void execute() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.execute();
+        }
+    }
+
+    /** counts the finished tasks, whether they ran or were cancelled */
+    private static class Done implements TaskRunner.Listener {
+        private final CountDownLatch latch;
+
+        Done(int tasks) {
+            latch = new CountDownLatch(tasks);
+        }
+
+        public void onProgress(TaskRunner.Task task, int done, int total) {
+        }
+
+        public void onFinished(TaskRunner.Task task) {
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        }
+    }
+}